@@ -1,5 +1,6 @@
 plugins {
     java
+    application
 }
 
 group = "org.itmo.java"
@@ -27,8 +28,53 @@ sourceSets {
         java.setSrcDirs(listOf("test"))
         resources.setSrcDirs(listOf("testResources"))
     }
+    create("jmh") {
+        java.setSrcDirs(listOf("jmh"))
+        resources.setSrcDirs(listOf("jmhResources"))
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
+configurations["jmhImplementation"].extendsFrom(configurations.implementation.get())
+configurations["jmhRuntimeOnly"].extendsFrom(configurations.runtimeOnly.get())
+
+dependencies {
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+}
+
+// ./gradlew jmh [-Pjmh.includes=<benchmark regexp>] [-Pjmh.params=fileCount=1000,10000]
+// results are exported to build/reports/jmh/results.json
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+
+    val resultsFile = layout.buildDirectory.file("reports/jmh/results.json").get().asFile
+    doFirst { resultsFile.parentFile.mkdirs() }
+    args("-rf", "json", "-rff", resultsFile.absolutePath)
+
+    (project.findProperty("jmh.params") as String?)?.split(";")?.forEach { param ->
+        args("-p", param)
+    }
+    (project.findProperty("jmh.includes") as String?)?.let { args(it) }
+}
+
+application {
+    mainClass.set("ru.hse.mit.git.MiniGitMain")
+    applicationName = "mini-git"
 }
 
 tasks.test {
     useJUnitPlatform()
 }
+
+// ./gradlew generateRepository --args="--output <dir> --objects 100000 --history 1000 [--json]"
+tasks.register<JavaExec>("generateRepository") {
+    group = "benchmark"
+    description = "Generates a synthetic repository and reports per-operation latencies"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("ru.hse.mit.git.benchmarks.RepositoryGenerator")
+}
@@ -0,0 +1,105 @@
+package ru.hse.mit.git.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.MiniGit;
+
+/**
+ * Temporary repository used as a benchmark fixture.
+ * <p>
+ * {@code fileCount} files are spread over directories nested {@code depth} levels deep,
+ * and the history consists of {@code historyLength} commits, each one modifying a single file.
+ */
+public final class BenchmarkRepository implements AutoCloseable {
+   public static final String REPOSITORY_DIR = ".mini-git";
+   public static final String TREES_DIR = "trees";
+   public static final String COMMITS_DIR = "commits";
+   public static final String INDEX_FILE = "INDEX";
+
+   private static final int DIRECTORY_FAN_OUT = 8;
+
+   private final Path workingDir;
+   private final MiniGit git;
+   private final int fileCount;
+   private final int depth;
+
+   private BenchmarkRepository(Path workingDir, int fileCount, int depth) {
+      this.workingDir = workingDir;
+      this.git = new MiniGit(workingDir.toString());
+      this.fileCount = fileCount;
+      this.depth = depth;
+   }
+
+   public static BenchmarkRepository create(int fileCount, int depth, int historyLength) throws IOException, GitException {
+      BenchmarkRepository repository = new BenchmarkRepository(
+          Files.createTempDirectory("mini-git-bench"),
+          fileCount,
+          depth
+      );
+      repository.populate(historyLength);
+      return repository;
+   }
+
+   public MiniGit getGit() {
+      return git;
+   }
+
+   public Path getWorkingDir() {
+      return workingDir;
+   }
+
+   public Path getRepositoryPath(String... paths) {
+      return Path.of(workingDir.resolve(REPOSITORY_DIR).toString(), paths);
+   }
+
+   public String getFileName(int index) {
+      StringBuilder name = new StringBuilder();
+      int rest = index;
+      for (int level = 0; level < depth; level++) {
+         name.append("dir").append(level).append('-').append(rest % DIRECTORY_FAN_OUT).append('/');
+         rest /= DIRECTORY_FAN_OUT;
+      }
+      return name.append("file").append(index).append(".txt").toString();
+   }
+
+   /**
+    * Rewrites one file and stages it, so that the next commit has something to store
+    */
+   public void modifyAndAdd(int index, String content) throws IOException, GitException {
+      String fileName = getFileName(index % fileCount);
+      Files.writeString(workingDir.resolve(fileName), content);
+      git.add(List.of(fileName));
+   }
+
+   @Override
+   public void close() throws IOException {
+      try (Stream<Path> walk = Files.walk(workingDir)) {
+         for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+            Files.delete(path);
+         }
+      }
+   }
+
+   private void populate(int historyLength) throws IOException, GitException {
+      git.init();
+
+      for (int i = 0; i < fileCount; i++) {
+         Path file = workingDir.resolve(getFileName(i));
+         Files.createDirectories(file.getParent());
+         Files.writeString(file, "file " + i + System.lineSeparator());
+      }
+
+      git.add(List.of("."));
+      git.commit("Initial commit");
+
+      for (int commit = 1; commit < historyLength; commit++) {
+         modifyAndAdd(commit, "revision " + commit + System.lineSeparator());
+         git.commit("Commit " + commit);
+      }
+   }
+}
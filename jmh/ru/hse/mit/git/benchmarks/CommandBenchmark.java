@@ -0,0 +1,83 @@
+package ru.hse.mit.git.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.hse.mit.git.GitConstants;
+import ru.hse.mit.git.GitException;
+
+/**
+ * End-to-end cost of the history related commands
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CommandBenchmark {
+   @Param({"100", "1000"})
+   public int fileCount;
+
+   @Param({"2"})
+   public int depth;
+
+   @Param({"10", "100"})
+   public int historyLength;
+
+   private BenchmarkRepository repository;
+   private String previousCommitHash;
+
+   @Setup
+   public void setUp() throws IOException, GitException {
+      repository = BenchmarkRepository.create(fileCount, depth, historyLength);
+      previousCommitHash = repository.getGit().getRelativeRevisionFromHead(1);
+   }
+
+   @TearDown
+   public void tearDown() throws IOException {
+      repository.close();
+   }
+
+   @State(Scope.Benchmark)
+   public static class StagedChange {
+      private int revision;
+
+      @Setup(Level.Invocation)
+      public void stage(CommandBenchmark benchmark) throws IOException, GitException {
+         revision++;
+         benchmark.repository.modifyAndAdd(revision, "benchmark revision " + revision);
+      }
+   }
+
+   @Benchmark
+   public String commit(StagedChange change) throws GitException {
+      return repository.getGit().commit("Benchmark commit " + change.revision);
+   }
+
+   /**
+    * Switches to the parent of the branch head and back, so every invocation performs two checkouts
+    */
+   @Benchmark
+   public String checkout() throws GitException {
+      repository.getGit().checkout(previousCommitHash);
+      return repository.getGit().checkout(GitConstants.MASTER);
+   }
+
+   @Benchmark
+   public String log() throws GitException {
+      return repository.getGit().log();
+   }
+}
@@ -0,0 +1,74 @@
+package ru.hse.mit.git.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.fs.CommitFile;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CommitBenchmark {
+   @Param({"100", "1000"})
+   public int historyLength;
+
+   private BenchmarkRepository repository;
+   private Path commitsDir;
+   private ObjectId head;
+
+   @Setup
+   public void setUp() throws IOException, GitException {
+      repository = BenchmarkRepository.create(16, 1, historyLength);
+      commitsDir = repository.getRepositoryPath(BenchmarkRepository.COMMITS_DIR);
+      head = ObjectId.fromHex(repository.getGit().getRelativeRevisionFromHead(0));
+   }
+
+   @TearDown
+   public void tearDown() throws IOException {
+      repository.close();
+   }
+
+   /**
+    * Loads every commit from HEAD to the first one, bypassing the commit cache, reading only the parents
+    */
+   @Benchmark
+   public int parentWalk() throws GitException {
+      int count = 0;
+      for (ObjectId current = head; current != null; ) {
+         current = CommitFile.load(commitsDir, current).getParentCommitHash();
+         count++;
+      }
+      return count;
+   }
+
+   /**
+    * The same walk reading every field, as {@code log} does
+    */
+   @Benchmark
+   public int fullWalk() throws GitException {
+      int length = 0;
+      for (ObjectId current = head; current != null; ) {
+         CommitFile commit = CommitFile.load(commitsDir, current);
+         length += commit.getInfo().length();
+         current = commit.getParentCommitHash();
+      }
+      return length;
+   }
+}
@@ -0,0 +1,68 @@
+package ru.hse.mit.git.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.utils.MiniGitUtils;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+/**
+ * Hashes a file read onto the heap, read through the reused direct buffer and mapped into memory.
+ * The size where {@code mapped} overtakes {@code directBuffer} is the one to use for
+ * {@link MiniGitUtils#MAPPED_HASHING_THRESHOLD}; run with {@code -prof gc} to see the heap traffic of each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FileHashingBenchmark {
+   @Param({"4096", "65536", "262144", "1048576", "4194304", "67108864"})
+   public int size;
+
+   private Path file;
+
+   @Setup
+   public void setUp() throws IOException {
+      byte[] bytes = new byte[size];
+      new Random(size).nextBytes(bytes);
+      file = Files.createTempFile("mini-git-hashing", ".bin");
+      Files.write(file, bytes);
+   }
+
+   @TearDown
+   public void tearDown() throws IOException {
+      Files.deleteIfExists(file);
+   }
+
+   @Benchmark
+   public ObjectId heap() throws IOException {
+      return MiniGitUtils.getHashFromBytes(Files.readAllBytes(file));
+   }
+
+   @Benchmark
+   public ObjectId directBuffer() throws GitException {
+      return MiniGitUtils.getHashFromFile(file, Long.MAX_VALUE);
+   }
+
+   @Benchmark
+   public ObjectId mapped() throws GitException {
+      return MiniGitUtils.getHashFromFile(file, 0);
+   }
+}
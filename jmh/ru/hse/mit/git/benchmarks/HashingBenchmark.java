@@ -0,0 +1,41 @@
+package ru.hse.mit.git.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.hse.mit.git.components.utils.MiniGitUtils;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class HashingBenchmark {
+   @Param({"64", "4096", "1048576"})
+   public int size;
+
+   private byte[] bytes;
+
+   @Setup
+   public void setUp() {
+      bytes = new byte[size];
+      new Random(size).nextBytes(bytes);
+   }
+
+   @Benchmark
+   public ObjectId getHashFromBytes() {
+      return MiniGitUtils.getHashFromBytes(bytes);
+   }
+}
@@ -0,0 +1,88 @@
+package ru.hse.mit.git.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.fs.IndexFile;
+import ru.hse.mit.git.components.fs.IndexFile.FileStatus;
+import ru.hse.mit.git.components.fs.SparseCheckout;
+import ru.hse.mit.git.components.fs.WorktreeScanner;
+import ru.hse.mit.git.components.ignore.IgnoreRules;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class IndexBenchmark {
+   @Param({"100", "1000", "10000"})
+   public int fileCount;
+
+   @Param({"1", "4"})
+   public int depth;
+
+   @Param({"false", "true"})
+   public boolean untrackedCache;
+
+   private BenchmarkRepository repository;
+   private IndexFile loadedIndex;
+   private WorktreeScanner scanner;
+
+   @Setup
+   public void setUp() throws IOException, GitException {
+      repository = BenchmarkRepository.create(fileCount, depth, 1);
+      loadedIndex = newIndexFile();
+      loadedIndex.load();
+      scanner = new WorktreeScanner(
+          repository.getWorkingDir(),
+          repository.getRepositoryPath(),
+          untrackedCache ? repository.getRepositoryPath("untracked-cache") : null
+      );
+   }
+
+   @TearDown
+   public void tearDown() throws IOException {
+      repository.close();
+   }
+
+   @Benchmark
+   public IndexFile load() throws GitException {
+      // a fresh instance, so nothing is served from the in-memory snapshot
+      IndexFile index = newIndexFile();
+      index.load();
+      return index;
+   }
+
+   @Benchmark
+   public void save() throws GitException {
+      loadedIndex.save();
+   }
+
+   @Benchmark
+   public Map<FileStatus, List<String>> getUntrackedFiles() throws GitException {
+      return loadedIndex.getUntrackedFiles(
+          scanner,
+          new IgnoreRules(repository.getWorkingDir()),
+          SparseCheckout.FULL
+      );
+   }
+
+   private IndexFile newIndexFile() {
+      return new IndexFile(BenchmarkRepository.INDEX_FILE, repository.getRepositoryPath(BenchmarkRepository.INDEX_FILE));
+   }
+}
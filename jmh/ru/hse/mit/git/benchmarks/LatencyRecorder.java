@@ -0,0 +1,94 @@
+package ru.hse.mit.git.benchmarks;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects per-operation latency samples and summarizes them as percentiles
+ */
+public class LatencyRecorder {
+   private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+   private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p99_9" };
+
+   private final Map<String, Samples> samples = new TreeMap<>();
+
+   public void record(String operation, long nanos) {
+      samples.computeIfAbsent(operation, name -> new Samples()).add(nanos);
+   }
+
+   public String toText() {
+      StringBuilder result = new StringBuilder();
+      result.append(String.format("%-12s %8s %10s %10s %10s %10s %10s %10s%n",
+          "operation", "count", "mean ms", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+
+      samples.forEach((operation, operationSamples) -> {
+         long[] sorted = operationSamples.sorted();
+         result.append(String.format("%-12s %8d %10.3f", operation, sorted.length, toMillis(mean(sorted))));
+         for (double percentile : PERCENTILES) {
+            result.append(String.format(" %10.3f", toMillis(percentile(sorted, percentile))));
+         }
+         result.append(String.format(" %10.3f%n", toMillis(sorted[sorted.length - 1])));
+      });
+
+      return result.toString();
+   }
+
+   public String toJson() {
+      StringBuilder result = new StringBuilder("{");
+
+      String separator = "";
+      for (var entry : samples.entrySet()) {
+         long[] sorted = entry.getValue().sorted();
+         result.append(separator)
+             .append('"').append(entry.getKey()).append("\":{")
+             .append("\"count\":").append(sorted.length)
+             .append(",\"meanNanos\":").append(mean(sorted))
+             .append(",\"minNanos\":").append(sorted[0]);
+         for (int i = 0; i < PERCENTILES.length; i++) {
+            result.append(",\"").append(PERCENTILE_NAMES[i]).append("Nanos\":")
+                .append(percentile(sorted, PERCENTILES[i]));
+         }
+         result.append(",\"maxNanos\":").append(sorted[sorted.length - 1]).append('}');
+         separator = ",";
+      }
+
+      return result.append('}').toString();
+   }
+
+   private static long mean(long[] sorted) {
+      long sum = 0;
+      for (long sample : sorted) {
+         sum += sample;
+      }
+      return sum / sorted.length;
+   }
+
+   private static long percentile(long[] sorted, double percentile) {
+      int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+      return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+   }
+
+   private static double toMillis(long nanos) {
+      return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+   }
+
+   private static class Samples {
+      private long[] values = new long[64];
+      private int size = 0;
+
+      void add(long value) {
+         if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+         }
+         values[size++] = value;
+      }
+
+      long[] sorted() {
+         long[] result = Arrays.copyOf(values, size);
+         Arrays.sort(result);
+         return result;
+      }
+   }
+}
@@ -0,0 +1,134 @@
+package ru.hse.mit.git.benchmarks;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.hse.mit.git.components.utils.MiniGitUtils;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+/**
+ * Compares {@link ObjectId} with the former representation of hashes as 40-char hex strings.
+ * <p>
+ * Run with {@code -prof gc} to see the allocation per operation: a hex {@code String} costs about 80 bytes
+ * of heap (object, backing array of 40 bytes and their headers), an {@code ObjectId} costs 32.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ObjectIdBenchmark {
+   @Param({"10000"})
+   public int entryCount;
+
+   private byte[] content;
+   private String[] hexHashes;
+   private Map<String, String> hexIndex;
+   private Map<String, ObjectId> objectIdIndex;
+   private String[] paths;
+
+   @Setup
+   public void setUp() throws NoSuchAlgorithmException {
+      Random random = new Random(entryCount);
+      content = new byte[64];
+      random.nextBytes(content);
+
+      hexHashes = new String[entryCount];
+      paths = new String[entryCount];
+      hexIndex = new HashMap<>();
+      objectIdIndex = new HashMap<>();
+      for (int i = 0; i < entryCount; i++) {
+         byte[] entryContent = new byte[16];
+         random.nextBytes(entryContent);
+         hexHashes[i] = legacyHash(entryContent);
+         paths[i] = "dir" + (i % 32) + "/file" + i + ".txt";
+         hexIndex.put(paths[i], hexHashes[i]);
+         objectIdIndex.put(paths[i], ObjectId.fromHex(hexHashes[i]));
+      }
+   }
+
+   @Benchmark
+   public String hashToHexString() throws NoSuchAlgorithmException {
+      return legacyHash(content);
+   }
+
+   @Benchmark
+   public ObjectId hashToObjectId() {
+      return MiniGitUtils.getHashFromBytes(content);
+   }
+
+   /**
+    * Parses hashes as the index does on load
+    */
+   @Benchmark
+   public Map<String, String> parseIndexAsStrings() {
+      Map<String, String> result = new HashMap<>();
+      for (int i = 0; i < entryCount; i++) {
+         result.put(paths[i], new String(hexHashes[i].toCharArray()));
+      }
+      return result;
+   }
+
+   @Benchmark
+   public Map<String, ObjectId> parseIndexAsObjectIds() {
+      Map<String, ObjectId> result = new HashMap<>();
+      for (int i = 0; i < entryCount; i++) {
+         result.put(paths[i], ObjectId.fromHex(hexHashes[i]));
+      }
+      return result;
+   }
+
+   /**
+    * Compares every index entry with itself, as status does for unchanged files
+    */
+   @Benchmark
+   public int compareStrings() {
+      int equal = 0;
+      for (String path : paths) {
+         if (hexIndex.get(path).equals(hexIndex.get(path))) {
+            equal++;
+         }
+      }
+      return equal;
+   }
+
+   @Benchmark
+   public int compareObjectIds() {
+      int equal = 0;
+      for (String path : paths) {
+         if (objectIdIndex.get(path).equals(objectIdIndex.get(path))) {
+            equal++;
+         }
+      }
+      return equal;
+   }
+
+   /**
+    * The hashing code ObjectId replaced: a digest lookup per call and a formatted string per byte
+    */
+   private static String legacyHash(byte[] bytes) throws NoSuchAlgorithmException {
+      MessageDigest md = MessageDigest.getInstance("SHA-1");
+      byte[] hashBytes = md.digest(bytes);
+
+      StringBuilder sb = new StringBuilder();
+      for (byte b : hashBytes) {
+         sb.append(String.format("%02x", b));
+      }
+      return sb.toString();
+   }
+}
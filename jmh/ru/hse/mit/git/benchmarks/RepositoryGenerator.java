@@ -0,0 +1,285 @@
+package ru.hse.mit.git.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import ru.hse.mit.git.GitConstants;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.MiniGit;
+
+/**
+ * Builds synthetic repositories for scale and soak testing by driving the {@link MiniGit} API
+ * with a seeded workload: file additions, modifications, deletions and renames over a wide and deep
+ * directory tree, occasional huge files, branch creation and checkouts.
+ * <p>
+ * Generation stops once both the object count and the history depth targets are reached.
+ * Latency of every MiniGit call is recorded per operation and reported at the end.
+ */
+public class RepositoryGenerator {
+   private static final String REPOSITORY_DIR = ".mini-git";
+   private static final String[] OBJECT_DIRS = { "blobs", "trees", "commits", "chunks", "manifests" };
+   private static final String BRANCH_PREFIX = "generated-";
+
+   // workload mix in percents: the rest of the operations are modifications
+   private static final int ADD_PERCENT = 40;
+   private static final int DELETE_PERCENT = 10;
+   private static final int RENAME_PERCENT = 15;
+
+   private static final int MIN_SMALL_FILE_SIZE = 16;
+   private static final int MAX_SMALL_FILE_SIZE = 4096;
+
+   private final Settings settings;
+   private final Random random;
+   private final MiniGit git;
+   private final Path workingDir;
+   private final LatencyRecorder latencies = new LatencyRecorder();
+
+   private final List<String> files = new ArrayList<>();
+   private final List<String> branches = new ArrayList<>(List.of(GitConstants.MASTER));
+   private int addedFiles = 0;
+
+   public record Settings(
+       Path workingDir,
+       long seed,
+       int targetObjects,
+       int historyDepth,
+       int directoryDepth,
+       int directoryWidth,
+       int hugeFileEvery,
+       int hugeFileSize,
+       int branchEvery,
+       int statusEvery
+   ) {}
+
+   public RepositoryGenerator(Settings settings) {
+      this.settings = settings;
+      this.random = new Random(settings.seed());
+      this.workingDir = settings.workingDir();
+      this.git = new MiniGit(workingDir.toString());
+   }
+
+   public LatencyRecorder getLatencies() {
+      return latencies;
+   }
+
+   /**
+    * @return number of objects in the generated repository
+    */
+   public long generate() throws IOException, GitException {
+      Files.createDirectories(workingDir);
+      timed("init", git::init);
+
+      int commits = 0;
+      long objects = 0;
+      while (commits < settings.historyDepth() || objects < settings.targetObjects()) {
+         int remainingCommits = Math.max(1, settings.historyDepth() - commits);
+         long remainingObjects = Math.max(1, settings.targetObjects() - objects);
+         // every commit also writes a commit object and at least the root tree
+         int changes = (int) Math.max(1, remainingObjects / remainingCommits - 2);
+
+         Set<String> staged = new LinkedHashSet<>();
+         Set<String> removed = new LinkedHashSet<>();
+         for (int i = 0; i < changes; i++) {
+            applyRandomChange(staged, removed);
+         }
+
+         if (!removed.isEmpty()) {
+            timed("rm", () -> git.rm(List.copyOf(removed)));
+         }
+         staged.removeIf(file -> !Files.exists(workingDir.resolve(file)));
+         if (!staged.isEmpty()) {
+            timed("add", () -> git.add(List.copyOf(staged)));
+         }
+         int commitNumber = commits;
+         timed("commit", () -> git.commit("Generated commit " + commitNumber));
+         commits++;
+
+         if (settings.statusEvery() > 0 && commits % settings.statusEvery() == 0) {
+            timed("status", git::status);
+         }
+         if (settings.branchEvery() > 0 && commits % settings.branchEvery() == 0) {
+            switchBranch(commits);
+         }
+
+         objects = countObjects();
+      }
+
+      timed("log", git::log);
+      return objects;
+   }
+
+   private void applyRandomChange(Set<String> staged, Set<String> removed) throws IOException {
+      int operation = random.nextInt(100);
+
+      if (files.isEmpty() || operation < ADD_PERCENT) {
+         String file = newFileName();
+         writeContent(file);
+         files.add(file);
+         staged.add(file);
+      } else if (operation < ADD_PERCENT + DELETE_PERCENT) {
+         String file = files.remove(random.nextInt(files.size()));
+         Files.deleteIfExists(workingDir.resolve(file));
+         staged.remove(file);
+         removed.add(file);
+      } else if (operation < ADD_PERCENT + DELETE_PERCENT + RENAME_PERCENT) {
+         int index = random.nextInt(files.size());
+         String file = files.get(index);
+         String renamed = newFileName();
+         Path target = workingDir.resolve(renamed);
+         Files.createDirectories(target.getParent());
+         Files.move(workingDir.resolve(file), target);
+         files.set(index, renamed);
+         staged.remove(file);
+         removed.add(file);
+         staged.add(renamed);
+      } else {
+         String file = files.get(random.nextInt(files.size()));
+         writeContent(file);
+         staged.add(file);
+      }
+   }
+
+   /**
+    * Either creates a new branch from the current commit or checks out one of the existing branches
+    */
+   private void switchBranch(int commits) throws IOException, GitException {
+      if (branches.size() == 1 || random.nextBoolean()) {
+         String branch = BRANCH_PREFIX + commits;
+         // branch creation also switches HEAD to the new branch
+         timed("branch", () -> git.createBranch(branch));
+         branches.add(branch);
+      } else {
+         String branch = branches.get(random.nextInt(branches.size()));
+         timed("checkout", () -> git.checkout(branch));
+         reloadFiles();
+      }
+   }
+
+   private String newFileName() {
+      StringBuilder name = new StringBuilder();
+      int depth = random.nextInt(settings.directoryDepth() + 1);
+      for (int level = 0; level < depth; level++) {
+         name.append("d").append(level).append('-').append(random.nextInt(settings.directoryWidth())).append('/');
+      }
+      return name.append("f").append(addedFiles++).append(".txt").toString();
+   }
+
+   private void writeContent(String file) throws IOException {
+      boolean huge = settings.hugeFileEvery() > 0 && random.nextInt(settings.hugeFileEvery()) == 0;
+      int size = huge
+          ? settings.hugeFileSize()
+          : MIN_SMALL_FILE_SIZE + random.nextInt(MAX_SMALL_FILE_SIZE - MIN_SMALL_FILE_SIZE);
+
+      byte[] content = new byte[size];
+      for (int i = 0; i < size; i++) {
+         // printable text with line breaks, so the files look like sources
+         content[i] = i % 64 == 63 ? (byte) '\n' : (byte) ('a' + random.nextInt(26));
+      }
+
+      Path path = workingDir.resolve(file);
+      Files.createDirectories(path.getParent());
+      Files.write(path, content);
+   }
+
+   private void reloadFiles() throws IOException {
+      Path repositoryDir = workingDir.resolve(REPOSITORY_DIR);
+      files.clear();
+      try (Stream<Path> walk = Files.walk(workingDir)) {
+         walk.filter(path -> !path.startsWith(repositoryDir))
+             .filter(Files::isRegularFile)
+             .map(path -> workingDir.relativize(path).toString().replace('\\', '/'))
+             .sorted()
+             .forEach(files::add);
+      }
+   }
+
+   private long countObjects() throws IOException {
+      long count = 0;
+      for (String dir : OBJECT_DIRS) {
+         try (Stream<Path> list = Files.list(workingDir.resolve(REPOSITORY_DIR).resolve(dir))) {
+            count += list.count();
+         }
+      }
+      return count;
+   }
+
+   private void timed(String operation, GitOperation action) throws GitException {
+      long start = System.nanoTime();
+      action.run();
+      latencies.record(operation, System.nanoTime() - start);
+   }
+
+   @FunctionalInterface
+   private interface GitOperation {
+      void run() throws GitException;
+   }
+
+   public static void main(String[] args) throws IOException, GitException {
+      Options options = new Options();
+      options.addOption(Option.builder("o").longOpt("output").hasArg().required()
+          .desc("directory to generate the repository in").build());
+      options.addOption(Option.builder().longOpt("seed").hasArg().desc("random seed (default 42)").build());
+      options.addOption(Option.builder().longOpt("objects").hasArg()
+          .desc("target object count (default 10000)").build());
+      options.addOption(Option.builder().longOpt("history").hasArg()
+          .desc("target number of commits (default 100)").build());
+      options.addOption(Option.builder().longOpt("depth").hasArg()
+          .desc("maximum directory depth (default 6)").build());
+      options.addOption(Option.builder().longOpt("width").hasArg()
+          .desc("directories per level (default 16)").build());
+      options.addOption(Option.builder().longOpt("huge-every").hasArg()
+          .desc("one of this many written files is huge, 0 disables huge files (default 1000)").build());
+      options.addOption(Option.builder().longOpt("huge-size").hasArg()
+          .desc("size of huge files in bytes (default 4194304)").build());
+      options.addOption(Option.builder().longOpt("branch-every").hasArg()
+          .desc("create or check out a branch every this many commits, 0 keeps history linear (default 10)").build());
+      options.addOption(Option.builder().longOpt("status-every").hasArg()
+          .desc("run status every this many commits, 0 disables it (default 10)").build());
+      options.addOption(Option.builder().longOpt("json").desc("print latencies as JSON").build());
+
+      CommandLine line;
+      try {
+         line = new DefaultParser().parse(options, args);
+      } catch (ParseException e) {
+         System.err.println(e.getMessage());
+         new HelpFormatter().printHelp("generateRepository", options);
+         System.exit(1);
+         return;
+      }
+
+      Settings settings = new Settings(
+          Path.of(line.getOptionValue("output")).toAbsolutePath(),
+          Long.parseLong(line.getOptionValue("seed", "42")),
+          Integer.parseInt(line.getOptionValue("objects", "10000")),
+          Integer.parseInt(line.getOptionValue("history", "100")),
+          Integer.parseInt(line.getOptionValue("depth", "6")),
+          Integer.parseInt(line.getOptionValue("width", "16")),
+          Integer.parseInt(line.getOptionValue("huge-every", "1000")),
+          Integer.parseInt(line.getOptionValue("huge-size", String.valueOf(4 * 1024 * 1024))),
+          Integer.parseInt(line.getOptionValue("branch-every", "10")),
+          Integer.parseInt(line.getOptionValue("status-every", "10"))
+      );
+
+      RepositoryGenerator generator = new RepositoryGenerator(settings);
+      long objects = generator.generate();
+
+      if (line.hasOption("json")) {
+         System.out.println(generator.getLatencies().toJson());
+      } else {
+         System.out.println("Generated " + objects + " objects in " + settings.workingDir());
+         System.out.print(generator.getLatencies().toText());
+      }
+   }
+}
@@ -0,0 +1,100 @@
+package ru.hse.mit.git.benchmarks;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.fs.IndexFile;
+import ru.hse.mit.git.components.graph.TreeNode;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TreeBenchmark {
+   @Param({"100", "1000", "10000"})
+   public int fileCount;
+
+   @Param({"1", "4"})
+   public int depth;
+
+   private BenchmarkRepository repository;
+   private ObjectId rootTreeHash;
+   private Map<String, ObjectId> blobs;
+   private TreeNode root;
+   private TreeNode changedRoot;
+
+   @Setup
+   public void setUp() throws IOException, GitException {
+      repository = BenchmarkRepository.create(fileCount, depth, 1);
+
+      IndexFile index = new IndexFile(
+          BenchmarkRepository.INDEX_FILE,
+          repository.getRepositoryPath(BenchmarkRepository.INDEX_FILE)
+      );
+      index.load();
+      blobs = new HashMap<>();
+      for (var entry : index.getEntries()) {
+         blobs.put(entry.getKey(), entry.getValue());
+      }
+
+      root = buildGraph();
+      rootTreeHash = root.getHash();
+
+      // the same tree with one file changed
+      String changedFile = blobs.keySet().iterator().next();
+      changedRoot = TreeNode.createRoot();
+      for (var entry : blobs.entrySet()) {
+         ObjectId hash = entry.getKey().equals(changedFile) ? rootTreeHash : entry.getValue();
+         changedRoot.addChildren(0, List.of(entry.getKey().split("/")), hash);
+      }
+      changedRoot.buildGraph();
+   }
+
+   @TearDown
+   public void tearDown() throws IOException {
+      repository.close();
+   }
+
+   @Benchmark
+   public TreeNode loadTree() throws GitException {
+      return TreeNode.loadTree(repository.getRepositoryPath(BenchmarkRepository.TREES_DIR), rootTreeHash);
+   }
+
+   /**
+    * Only the subtrees on the path to the changed file are visited
+    */
+   @Benchmark
+   public int diff() throws GitException {
+      int[] changes = new int[1];
+      TreeNode.diff(root, changedRoot, (path, oldHash, newHash) -> changes[0]++);
+      return changes[0];
+   }
+
+   @Benchmark
+   public TreeNode buildGraph() throws GitException {
+      TreeNode root = TreeNode.createRoot();
+      for (var entry : blobs.entrySet()) {
+         root.addChildren(0, List.of(entry.getKey().split("/")), entry.getValue());
+      }
+      root.buildGraph();
+      return root;
+   }
+}
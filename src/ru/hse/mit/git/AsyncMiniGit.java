@@ -0,0 +1,295 @@
+package ru.hse.mit.git;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.hse.mit.git.components.fs.CommitFile;
+import ru.hse.mit.git.components.fs.IndexFile;
+import ru.hse.mit.git.components.fs.IndexFile.FileStatus;
+import ru.hse.mit.git.components.utils.MiniGitUtils;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+/**
+ * Asynchronous API of a repository for applications that embed MiniGit: every operation runs on the executor
+ * and completes its future with a structured result instead of a formatted message, or exceptionally
+ * with a {@link CompletionException} caused by the {@link GitException}.
+ * <p>
+ * As in the server, operations that only read the repository run concurrently and the ones that modify it exclude
+ * them. Modifications run one at a time in the order they were submitted, and every operation starts only once
+ * the modifications submitted before it are done, whether they succeeded or not, so it sees their effects.
+ */
+public class AsyncMiniGit implements AutoCloseable {
+   private final MiniGit git;
+   private final Executor executor;
+   // shut down on close, null for an executor owned by the caller
+   private final ExecutorService ownedExecutor;
+   private final ReadWriteLock repositoryLock = new ReentrantReadWriteLock();
+   private final Set<CompletableFuture<?>> pending = ConcurrentHashMap.newKeySet();
+
+   // completes once every modification submitted so far is done
+   private CompletableFuture<Void> lastWrite = CompletableFuture.completedFuture(null);
+   private boolean closed = false;
+
+   /**
+    * Runs every operation on its own (virtual, when available) thread
+    */
+   public AsyncMiniGit(String workingDir) {
+      this(new MiniGit(workingDir), MiniGitUtils.newTaskPerThreadExecutor(), true);
+   }
+
+   /**
+    * @param executor runs the operations, it is not shut down by {@link #close()}
+    */
+   public AsyncMiniGit(MiniGit git, Executor executor) {
+      this(git, executor, false);
+   }
+
+   private AsyncMiniGit(MiniGit git, Executor executor, boolean ownsExecutor) {
+      this.git = git;
+      this.executor = executor;
+      this.ownedExecutor = ownsExecutor ? (ExecutorService) executor : null;
+   }
+
+   /**
+    * @param staged status of the index entry against HEAD, {@code null} if unchanged or untracked
+    * @param unstaged status of the working directory file against the index entry, {@code null} if unchanged;
+    *                 {@link FileStatus#NEW} for an untracked file
+    */
+   public record StatusEntry(
+       String path,
+       @Nullable FileStatus staged,
+       @Nullable FileStatus unstaged,
+       boolean tracked
+   ) {}
+
+   /**
+    * @param branch {@code null} if HEAD is detached
+    * @param entries in the order of {@link MiniGit#statusPorcelain}
+    */
+   public record Status(@Nullable String branch, List<StatusEntry> entries) {}
+
+   /**
+    * @param parents empty for the first commit of the history
+    */
+   public record CommitRecord(
+       ObjectId id,
+       ObjectId tree,
+       List<ObjectId> parents,
+       String author,
+       OffsetDateTime date,
+       String message
+   ) {
+      static CommitRecord of(CommitFile commit) throws GitException {
+         return new CommitRecord(
+             commit.getId(),
+             commit.getRootNodeHash(),
+             commit.getParentCommitHashes(),
+             commit.getAuthor(),
+             commit.getDate(),
+             commit.getMessage()
+         );
+      }
+   }
+
+   /**
+    * @param oldHash {@code null} if the file is added
+    * @param newHash {@code null} if the file is deleted
+    */
+   public record DiffEntry(String path, FileStatus status, @Nullable ObjectId oldHash, @Nullable ObjectId newHash) {}
+
+   public CompletableFuture<Status> status() {
+      return read(git -> {
+         List<StatusEntry> entries = new ArrayList<>();
+         git.visitStatus(new IndexFile.StatusVisitor() {
+            @Override
+            public void tracked(String path, FileStatus staged, FileStatus unstaged) {
+               entries.add(new StatusEntry(path, staged, unstaged, true));
+            }
+
+            @Override
+            public void untracked(String path) {
+               entries.add(new StatusEntry(path, null, FileStatus.NEW, false));
+            }
+         });
+         return new Status(git.getCurrentBranch(), entries);
+      });
+   }
+
+   public CompletableFuture<List<CommitRecord>> log() {
+      return log("HEAD", null, null);
+   }
+
+   /**
+    * @param revision {@code HEAD}, {@code HEAD~N}, branch name or commit hash the history starts at
+    * @param path file or directory the commits changed, {@code null} for any
+    * @param grep text the commit messages contain, {@code null} for any
+    */
+   public CompletableFuture<List<CommitRecord>> log(@NotNull String revision, String path, String grep) {
+      return read(git -> {
+         List<CommitRecord> result = new ArrayList<>();
+         for (CommitFile commit : git.logCommits(git.resolveRevision(revision), path, grep)) {
+            result.add(CommitRecord.of(commit));
+         }
+         return result;
+      });
+   }
+
+   /**
+    * Files that differ between the trees of two revisions, in path order
+    */
+   public CompletableFuture<List<DiffEntry>> diff(@NotNull String oldRevision, @NotNull String newRevision) {
+      return read(git -> {
+         List<DiffEntry> result = new ArrayList<>();
+         git.diff(git.resolveRevision(oldRevision), git.resolveRevision(newRevision), (path, oldHash, newHash) -> {
+            FileStatus status = oldHash == null
+                ? FileStatus.NEW
+                : newHash == null ? FileStatus.DELETED : FileStatus.MODIFIED;
+            result.add(new DiffEntry(path, status, oldHash, newHash));
+         });
+         return result;
+      });
+   }
+
+   public CompletableFuture<List<String>> branches() {
+      return read(MiniGit::getBranches);
+   }
+
+   public CompletableFuture<Void> add(@NotNull List<String> entryNames) {
+      return write(git -> {
+         git.add(entryNames);
+         return null;
+      });
+   }
+
+   public CompletableFuture<Void> rm(@NotNull List<String> entryNames) {
+      return write(git -> {
+         git.rm(entryNames);
+         return null;
+      });
+   }
+
+   /**
+    * @return the new commit
+    */
+   public CompletableFuture<CommitRecord> commit(@NotNull String message) {
+      return write(git -> {
+         git.commit(message);
+         return CommitRecord.of(git.getCommit(git.resolveRevision("HEAD")));
+      });
+   }
+
+   /**
+    * @param revision {@code HEAD~N}, branch name or commit hash
+    */
+   public CompletableFuture<Void> checkout(@NotNull String revision) {
+      return write(git -> {
+         git.checkout(toCheckpoint(git, revision));
+         return null;
+      });
+   }
+
+   /**
+    * @param revision {@code HEAD~N}, branch name or commit hash
+    */
+   public CompletableFuture<Void> reset(@NotNull String revision) {
+      return write(git -> {
+         git.reset(toCheckpoint(git, revision));
+         return null;
+      });
+   }
+
+   public CompletableFuture<Void> createBranch(@NotNull String branchName) {
+      return write(git -> {
+         git.createBranch(branchName);
+         return null;
+      });
+   }
+
+   public CompletableFuture<Void> removeBranch(@NotNull String branchName) {
+      return write(git -> {
+         git.removeBranch(branchName);
+         return null;
+      });
+   }
+
+   /**
+    * Waits for the operations submitted so far, later ones fail. The executor is shut down
+    * if it was created here
+    */
+   @Override
+   public void close() {
+      CompletableFuture<?>[] remaining;
+      synchronized (this) {
+         if (closed) {
+            return;
+         }
+         closed = true;
+         remaining = pending.toArray(new CompletableFuture<?>[0]);
+      }
+
+      CompletableFuture.allOf(remaining).handle((ignored, failure) -> null).join();
+      if (ownedExecutor != null) {
+         ownedExecutor.shutdown();
+      }
+   }
+
+   /**
+    * Branches are passed by name, so that HEAD follows them, other revisions by the hash they resolve to
+    */
+   private static String toCheckpoint(MiniGit git, String revision) throws GitException {
+      if (git.getBranches().contains(revision)) {
+         return revision;
+      }
+      ObjectId commitHash = git.resolveRevision(revision);
+      if (commitHash == null) {
+         throw new GitException("Nothing is committed yet");
+      }
+      return commitHash.toHex();
+   }
+
+   private synchronized <T> CompletableFuture<T> read(Operation<T> operation) {
+      return submit(lastWrite, repositoryLock.readLock(), operation);
+   }
+
+   private synchronized <T> CompletableFuture<T> write(Operation<T> operation) {
+      CompletableFuture<T> result = submit(lastWrite, repositoryLock.writeLock(), operation);
+      lastWrite = result.handle((ignored, failure) -> null);
+      return result;
+   }
+
+   private <T> CompletableFuture<T> submit(CompletableFuture<Void> after, Lock lock, Operation<T> operation) {
+      if (closed) {
+         return CompletableFuture.failedFuture(new GitException("Repository is closed"));
+      }
+
+      CompletableFuture<T> result = after.thenApplyAsync(ignored -> {
+         lock.lock();
+         try {
+            return operation.run(git);
+         } catch (GitException e) {
+            throw new CompletionException(e);
+         } finally {
+            lock.unlock();
+         }
+      }, executor);
+      pending.add(result);
+      result.whenComplete((ignored, failure) -> pending.remove(result));
+      return result;
+   }
+
+   @FunctionalInterface
+   private interface Operation<T> {
+      T run(MiniGit git) throws GitException;
+   }
+}
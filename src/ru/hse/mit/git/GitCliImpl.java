@@ -1,10 +1,22 @@
 package ru.hse.mit.git;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.List;
 import org.jetbrains.annotations.NotNull;
+import ru.hse.mit.git.components.fs.Durability;
+import ru.hse.mit.git.components.fs.FileSync;
+import ru.hse.mit.git.components.stats.GitStats;
+import ru.hse.mit.git.components.stats.StatsSnapshot;
 
 public class GitCliImpl implements GitCli {
+   private static final String STATS_FLAG = "--stats";
+   private static final String STATS_JSON_FLAG = "--stats=json";
+   private static final String GREP_FLAG = "--grep";
+   private static final String DURABILITY_FLAG = "--durability=";
+   private static final String PORCELAIN_FLAG = "--porcelain";
+   private static final String NUL_TERMINATED_FLAG = "-z";
+
    private PrintStream outputStream = System.out;
    private final MiniGit git;
 
@@ -12,16 +24,81 @@ public class GitCliImpl implements GitCli {
       git = new MiniGit(workingDir);
    }
 
+   /**
+    * Shares an already opened repository, so that its loaded state is reused between command runs
+    */
+   public GitCliImpl(MiniGit git) {
+      this.git = git;
+   }
+
+   /**
+    * Besides the command arguments accepts {@code --stats} (or {@code --stats=json}), which prints
+    * I/O counters and phase timings of the command after its output, and {@code --durability=none|batch|strict},
+    * which sets the {@link Durability} of the command
+    */
    @Override
    public void runCommand(@NotNull String command, @NotNull List<@NotNull String> arguments)
        throws GitException {
+      String durabilityArgument = arguments.stream().filter(argument -> argument.startsWith(DURABILITY_FLAG))
+          .reduce((first, second) -> second).orElse(null);
+      if (durabilityArgument == null) {
+         runCommandWithStats(command, arguments);
+         return;
+      }
+
+      Durability durability = Durability.parse(durabilityArgument.substring(DURABILITY_FLAG.length()));
+      List<String> commandArguments = new ArrayList<>(arguments);
+      commandArguments.removeIf(argument -> argument.startsWith(DURABILITY_FLAG));
+
+      // set for this command only, commands may run concurrently in the server
+      try (FileSync.Scope ignored = FileSync.withDurability(durability)) {
+         runCommandWithStats(command, commandArguments);
+      }
+   }
+
+   private void runCommandWithStats(String command, List<String> arguments) throws GitException {
+      boolean printStats = arguments.contains(STATS_FLAG);
+      boolean printStatsJson = arguments.contains(STATS_JSON_FLAG);
+      if (!printStats && !printStatsJson) {
+         runCommandImpl(command, arguments);
+         return;
+      }
+
+      List<String> commandArguments = new ArrayList<>(arguments);
+      commandArguments.removeAll(List.of(STATS_FLAG, STATS_JSON_FLAG));
+
+      // statistics of this command only, commands may run concurrently in the server
+      long start = System.nanoTime();
+      try (GitStats.Collector collector = GitStats.start()) {
+         try {
+            runCommandImpl(command, commandArguments);
+         } finally {
+            StatsSnapshot stats = collector.snapshot(System.nanoTime() - start);
+            if (printStatsJson) {
+               outputStream.println(stats.toJson(command));
+            } else {
+               outputStream.print(stats.toText());
+            }
+         }
+      }
+   }
+
+   private void runCommandImpl(String command, List<String> arguments) throws GitException {
       String gitOutput = "";
 
       switch (command) {
          case GitConstants.INIT -> gitOutput = git.init();
          case GitConstants.ADD -> gitOutput = git.add(arguments);
          case GitConstants.RM -> gitOutput = git.rm(arguments);
-         case GitConstants.STATUS -> gitOutput = git.status();
+         case GitConstants.STATUS -> {
+            if (arguments.isEmpty()) {
+               gitOutput = git.status();
+            } else if (arguments.size() == 2 && arguments.containsAll(List.of(PORCELAIN_FLAG, NUL_TERMINATED_FLAG))) {
+               git.statusPorcelain(outputStream);
+            } else {
+               throw new GitException("Command '" + command + "' expects arguments: [--porcelain -z]");
+            }
+         }
          case GitConstants.COMMIT -> {
             checkExactArguments(command, arguments, 1, List.of("message"));
             gitOutput = git.commit(arguments.get(0));
@@ -38,13 +115,47 @@ public class GitCliImpl implements GitCli {
             }
          }
          case GitConstants.LOG -> {
-            if (arguments.isEmpty()) {
+            List<String> logArguments = new ArrayList<>(arguments);
+            String grep = null;
+            int grepFlag = logArguments.indexOf(GREP_FLAG);
+            int pathsStart = logArguments.contains("--") ? logArguments.indexOf("--") : logArguments.size();
+            if (grepFlag >= 0 && grepFlag < pathsStart) {
+               if (grepFlag + 1 == logArguments.size()) {
+                  throw new GitException("Option '" + GREP_FLAG + "' expects the text to search for");
+               }
+               grep = logArguments.remove(grepFlag + 1);
+               logArguments.remove(grepFlag);
+            }
+
+            int separator = logArguments.indexOf("--");
+            if (logArguments.isEmpty() && grep == null) {
                gitOutput = git.log();
+            } else if (separator >= 0 || grep != null) {
+               String path = null;
+               if (separator >= 0) {
+                  if (separator > 1 || logArguments.size() != separator + 2) {
+                     throw new GitException("Command '" + command
+                         + "' expects arguments: [--grep text] [from_revision: HEAD~N | commit hash] [-- path]");
+                  }
+                  path = logArguments.get(separator + 1);
+               } else if (logArguments.size() > 1) {
+                  throw new GitException("Command '" + command
+                      + "' expects arguments: [--grep text] [from_revision: HEAD~N | commit hash] [-- path]");
+               }
+
+               if (separator == 0 || logArguments.isEmpty()) {
+                  gitOutput = git.logFiltered(path, grep);
+               } else if (logArguments.get(0).startsWith("HEAD~")) {
+                  checkHeadShiftArgumentCorrectness(command, logArguments.get(0));
+                  gitOutput = git.log(getHeadShiftArgumentValue(logArguments.get(0)), path, grep);
+               } else {
+                  gitOutput = git.log(logArguments.get(0), path, grep);
+               }
             } else {
-               checkExactArguments(command, arguments, 1,
+               checkExactArguments(command, logArguments, 1,
                    List.of("from_revision: HEAD~N | branch name | commit hash"));
 
-               String fromRevision = arguments.get(0);
+               String fromRevision = logArguments.get(0);
                if (fromRevision.startsWith("HEAD~")) {
                   checkHeadShiftArgumentCorrectness(command, fromRevision);
                   gitOutput = git.log(getHeadShiftArgumentValue(fromRevision));
@@ -88,6 +199,30 @@ public class GitCliImpl implements GitCli {
             String branchName = arguments.get(0);
             gitOutput = git.removeBranch(branchName);
          }
+         case GitConstants.PACK_REFS -> gitOutput = git.packRefs();
+         case GitConstants.BLAME -> {
+            checkExactArguments(command, arguments, 1, List.of("path"));
+            gitOutput = git.blame(arguments.get(0));
+         }
+         case GitConstants.WRITE_CHANGED_PATHS -> gitOutput = git.writeChangedPaths();
+         case GitConstants.CLONE -> {
+            checkExactArguments(command, arguments, 2, List.of("source directory", "destination directory"));
+            gitOutput = git.clone(arguments.get(0), arguments.get(1));
+         }
+         case GitConstants.SPARSE_CHECKOUT -> {
+            String subcommand = arguments.isEmpty() ? "list" : arguments.get(0);
+            switch (subcommand) {
+               case "list" -> gitOutput = git.showSparseCheckout();
+               case "set" -> {
+                  if (arguments.size() < 2) {
+                     throw new GitException("Command '" + command + " set' expects directories to check out");
+                  }
+                  gitOutput = git.setSparseCheckout(arguments.subList(1, arguments.size()));
+               }
+               case "disable" -> gitOutput = git.setSparseCheckout(List.of());
+               default -> throw new GitException("Unknown " + command + " subcommand: '" + subcommand + "'");
+            }
+         }
          case GitConstants.MERGE -> {
             checkExactArguments(command, arguments, 1, List.of("branch"));
             String branchName = arguments.get(0);
@@ -17,6 +17,12 @@ public final class GitConstants {
     public static final @NotNull String BRANCH_REMOVE = "branch-remove";
     public static final @NotNull String SHOW_BRANCHES = "show-branches";
     public static final @NotNull String MERGE = "merge";
+    public static final @NotNull String PACK_REFS = "pack-refs";
+    public static final @NotNull String SPARSE_CHECKOUT = "sparse-checkout";
+    public static final @NotNull String CLONE = "clone";
+    public static final @NotNull String BLAME = "blame";
+    public static final @NotNull String WRITE_CHANGED_PATHS = "write-changed-paths";
+    public static final @NotNull String SERVE = "serve";
 
     public static final @NotNull String MASTER = "master";
 }
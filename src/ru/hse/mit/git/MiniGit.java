@@ -1,30 +1,50 @@
 package ru.hse.mit.git;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.time.OffsetDateTime;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import org.apache.commons.io.FileUtils;
 import org.jetbrains.annotations.NotNull;
+import ru.hse.mit.git.components.fs.AbstractEditableFile;
 import ru.hse.mit.git.components.fs.BlobFile;
+import ru.hse.mit.git.components.fs.ChunkStore;
 import ru.hse.mit.git.components.fs.CommitFile;
+import ru.hse.mit.git.components.fs.FileSync;
 import ru.hse.mit.git.components.fs.HeadFile;
 import ru.hse.mit.git.components.fs.IndexFile;
 import ru.hse.mit.git.components.fs.IndexFile.FileStatus;
+import ru.hse.mit.git.components.fs.LockFile;
+import ru.hse.mit.git.components.fs.ObjectFilter;
+import ru.hse.mit.git.components.fs.RefDatabase;
+import ru.hse.mit.git.components.fs.SparseCheckout;
+import ru.hse.mit.git.components.fs.TreeWriter;
+import ru.hse.mit.git.components.fs.WorktreeScanner;
 import ru.hse.mit.git.components.graph.TreeNode;
+import ru.hse.mit.git.components.history.Blame;
+import ru.hse.mit.git.components.history.ChangedPathFilters;
+import ru.hse.mit.git.components.history.MessageIndex;
+import ru.hse.mit.git.components.ignore.IgnoreRules;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
+import ru.hse.mit.git.components.stats.GitStats.Timer;
+import ru.hse.mit.git.components.stats.Phase;
 import ru.hse.mit.git.components.utils.MiniGitUtils;
+import ru.hse.mit.git.components.utils.ObjectId;
 
 public class MiniGit {
    private final String workingDir;
@@ -35,25 +55,70 @@ public class MiniGit {
    private static final String TREES_DIR = "trees";
    private static final String COMMITS_DIR = "commits";
    private static final String BRANCHES_DIR = "branches";
+   private static final String CHUNKS_DIR = "chunks";
+   private static final String MANIFESTS_DIR = "manifests";
 
    private static final String HEAD_FILE = "HEAD";
    private static final String INDEX_FILE = "INDEX";
+   private static final String PACKED_REFS_FILE = "packed-refs";
+   private static final String UNTRACKED_CACHE_FILE = "untracked-cache";
+   private static final String SPARSE_CHECKOUT_FILE = "sparse-checkout";
+   private static final String BLAME_CACHE_DIR = "blame";
+   private static final String CHANGED_PATHS_DIR = "changed-paths";
+   private static final String MESSAGE_INDEX_DIR = "message-index";
+   private static final String SERVER_SOCKET_FILE = "serve.sock";
 
    private static final String MASTER_BRANCH = "master";
+   private static final int PORCELAIN_BUFFER_SIZE = 64 * 1024;
 
+   // objects never change once written, so clones may share their files
+   private static final List<String> OBJECT_DIRS = List.of(BLOBS_DIR, TREES_DIR, COMMITS_DIR, CHUNKS_DIR, MANIFESTS_DIR);
+
+   private final RefDatabase refs;
    private final HeadFile headFile;
    private final IndexFile indexFile;
+   private final ChunkStore chunkStore;
+   private final WorktreeScanner worktreeScanner;
+   private final Blame blame;
+   private final ChangedPathFilters changedPathFilters;
+   private final MessageIndex messageIndex;
+   private final ObjectFilter objectFilter;
 
    public MiniGit(String workingDir) {
       this.workingDir = workingDir;
+      this.refs = new RefDatabase(getFullPathFromRepository(BRANCHES_DIR), getFullPathFromRepository(PACKED_REFS_FILE));
+      this.objectFilter = ObjectFilter.of(getFullPathFromRepository());
       this.headFile = new HeadFile(
           HEAD_FILE,
           getFullPathFromRepository(HEAD_FILE),
-          getFullPathFromRepository(BRANCHES_DIR),
+          refs,
           getFullPathFromRepository(COMMITS_DIR),
-          getFullPathFromRepository(TREES_DIR)
+          getFullPathFromRepository(TREES_DIR),
+          objectFilter
       );
+      this.messageIndex = new MessageIndex(headFile, getFullPathFromRepository(MESSAGE_INDEX_DIR));
       this.indexFile = new IndexFile(INDEX_FILE, getFullPathFromRepository(INDEX_FILE));
+      this.chunkStore = new ChunkStore(
+          getFullPathFromRepository(CHUNKS_DIR),
+          getFullPathFromRepository(MANIFESTS_DIR),
+          objectFilter
+      );
+      this.worktreeScanner = new WorktreeScanner(
+          getFullPathFromWorkingDirectory(),
+          getFullPathFromRepository(),
+          getFullPathFromRepository(UNTRACKED_CACHE_FILE)
+      );
+      this.blame = new Blame(
+          headFile,
+          getFullPathFromRepository(TREES_DIR),
+          getFullPathFromRepository(BLOBS_DIR),
+          chunkStore,
+          getFullPathFromRepository(BLAME_CACHE_DIR)
+      );
+      this.changedPathFilters = new ChangedPathFilters(
+          getFullPathFromRepository(CHANGED_PATHS_DIR),
+          getFullPathFromRepository(TREES_DIR)
+      );
    }
 
    public String init() throws GitException {
@@ -63,6 +128,8 @@ public class MiniGit {
          Files.createDirectories(getFullPathFromRepository(TREES_DIR));
          Files.createDirectories(getFullPathFromRepository(COMMITS_DIR));
          Files.createDirectories(getFullPathFromRepository(BRANCHES_DIR));
+         Files.createDirectories(getFullPathFromRepository(CHUNKS_DIR));
+         Files.createDirectories(getFullPathFromRepository(MANIFESTS_DIR));
 
          // files
          Files.createFile(getFullPathFromRepository(HEAD_FILE));
@@ -82,24 +149,33 @@ public class MiniGit {
 
    public String add(@NotNull List<String> entryNames) throws GitException {
       checkInitialized();
+      try (LockFile ignored = indexFile.lock()) {
+         return addImpl(entryNames);
+      }
+   }
+
+   private String addImpl(List<String> entryNames) throws GitException {
       indexFile.load();
-      Map<String, File> pureFiles = getPureFiles(entryNames);
+      Map<String, File> pureFiles = getPureFiles(
+          entryNames,
+          new IgnoreRules(getFullPathFromWorkingDirectory()),
+          loadSparseCheckout()
+      );
 
       for (Map.Entry<String, File> fileEntry : pureFiles.entrySet()) {
-         byte[] fileBytes;
-
-         try {
-            fileBytes = FileUtils.readFileToByteArray(fileEntry.getValue());
-         } catch (IOException e) {
-            throw new GitException(e.getMessage(), e.getCause());
+         File file = fileEntry.getValue();
+
+         // contents of already stored files are hashed in place and never read onto the heap
+         ObjectId hash = MiniGitUtils.getHashFromFile(file.toPath());
+         boolean stored = objectFilter.mightContain(hash)
+             && (BlobFile.exists(getFullPathFromRepository(BLOBS_DIR), hash) || chunkStore.contains(hash));
+         if (!stored) {
+            // large files are streamed into deduplicated chunks instead of being read as a whole
+            hash = ChunkStore.shouldChunk(file.length()) ? chunkStore.add(file.toPath()) : saveBlob(file);
          }
 
-         // create blob
-         BlobFile blob = new BlobFile(getFullPathFromRepository(BLOBS_DIR), fileBytes);
-         blob.save();
-
          // add entry to index file
-         indexFile.addEntry(fileEntry.getKey(), /* hash */ blob.getFilename());
+         indexFile.addEntry(fileEntry.getKey(), hash);
       }
 
       indexFile.save();
@@ -109,16 +185,19 @@ public class MiniGit {
 
    public String rm(@NotNull List<String> entryNames) throws GitException {
       checkInitialized();
-      indexFile.load();
-      Map<String, File> pureFiles = getPureFiles(entryNames);
+      try (LockFile ignored = indexFile.lock()) {
+         indexFile.load();
+         // tracked files are removed whether they are ignored or not
+         Map<String, File> pureFiles = getPureFiles(entryNames, null, SparseCheckout.FULL);
+
+         for (Map.Entry<String, File> fileEntry : pureFiles.entrySet()) {
+            // remove entry from index file
+            indexFile.removeEntry(fileEntry.getKey());
+         }
 
-      for (Map.Entry<String, File> fileEntry : pureFiles.entrySet()) {
-         // remove entry from index file
-         indexFile.removeEntry(fileEntry.getKey());
+         indexFile.save();
       }
 
-      indexFile.save();
-
       return "Rm completed successful" + System.lineSeparator();
    }
 
@@ -131,14 +210,17 @@ public class MiniGit {
       }
 
       indexFile.load();
+      SparseCheckout sparseCheckout = loadSparseCheckout();
 
       Map<IndexFile.FileStatus, List<String>> untrackedFiles = indexFile.getUntrackedFiles(
-          getFullPathFromWorkingDirectory(),
-          getFullPathFromRepository()
+          worktreeScanner,
+          new IgnoreRules(getFullPathFromWorkingDirectory()),
+          sparseCheckout
       );
 
+      // directories outside of the sparse checkout are compared by the hashes of their trees
       Map<IndexFile.FileStatus, List<String>> readyToCommitFiles = indexFile.getReadyToCommitFiles(
-          headFile.loadTree().getBlobs()
+          headFile.loadTree(sparseCheckout).getEntries()
       );
 
       StringBuilder content = new StringBuilder();
@@ -154,33 +236,125 @@ public class MiniGit {
       return content.toString();
    }
 
-   public String commit(@NotNull String message) throws GitException {
+   /**
+    * Machine-readable {@link #status()}, written to the output while the working directory is walked, so that
+    * memory stays bounded by the index whatever the number of changed files. Every record ends with NUL,
+    * paths are written as they are, in UTF-8 and separated by {@code /}:
+    * <ul>
+    *    <li>{@code ## <branch>} comes first, {@code ## HEAD (no branch)} for a detached HEAD</li>
+    *    <li>{@code XY <path>} for a changed tracked path, where X is the state of the index entry against HEAD
+    *    and Y the state of the working directory file against the index entry: {@code A} added, {@code M} modified,
+    *    {@code D} deleted, a space if unchanged</li>
+    *    <li>{@code ?? <path>} for an untracked file</li>
+    * </ul>
+    * Records are in the order of their paths, a path removed from the index but kept in the working directory
+    * has its {@code ??} record right after the {@code D} one. Directories outside of the sparse checkout
+    * are reported by their path with a trailing {@code /}
+    */
+   public void statusPorcelain(OutputStream output) throws GitException {
       checkInitialized();
+      BufferedOutputStream records = new BufferedOutputStream(output, PORCELAIN_BUFFER_SIZE);
+      writeRecord(records, "## " + (headFile.isDetached() ? "HEAD (no branch)" : headFile.getCurrentBranch()));
+      visitStatusImpl(new IndexFile.StatusVisitor() {
+         @Override
+         public void tracked(String path, FileStatus staged, FileStatus unstaged) throws GitException {
+            writeRecord(records, "" + porcelainCode(staged) + porcelainCode(unstaged) + " " + path);
+         }
+
+         @Override
+         public void untracked(String path) throws GitException {
+            writeRecord(records, "?? " + path);
+         }
+      });
+      try {
+         records.flush();
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+   }
+
+   /**
+    * Structured counterpart of {@link #statusPorcelain}: the changed and untracked paths are passed
+    * to the visitor in the same order
+    */
+   public void visitStatus(IndexFile.StatusVisitor visitor) throws GitException {
+      checkInitialized();
+      visitStatusImpl(visitor);
+   }
+
+   private void visitStatusImpl(IndexFile.StatusVisitor visitor) throws GitException {
       indexFile.load();
-      TreeNode root = TreeNode.createRoot();
+      SparseCheckout sparseCheckout = loadSparseCheckout();
+      indexFile.visitStatus(
+          worktreeScanner,
+          new IgnoreRules(getFullPathFromWorkingDirectory()),
+          sparseCheckout,
+          headFile.loadTree(sparseCheckout).getEntries(),
+          visitor
+      );
+   }
 
-      for (var entry : indexFile.getEntries()) {
-         String path = entry.getKey();
-         String blobHash = entry.getValue();
+   /**
+    * @return name of the current branch, {@code null} if HEAD is detached
+    */
+   public String getCurrentBranch() throws GitException {
+      checkInitialized();
+      return headFile.isDetached() ? null : headFile.getCurrentBranch();
+   }
 
-         List<String> names = List.of(path.split("/"));
-         root.addChildren(0, names, blobHash);
+   /**
+    * @param revision {@code HEAD}, {@code HEAD~N}, branch name or commit hash
+    * @return {@code null} for {@code HEAD} of a repository without commits
+    */
+   public ObjectId resolveRevision(@NotNull String revision) throws GitException {
+      checkInitialized();
+      if (revision.equals("HEAD")) {
+         return headFile.getCurrentCommitHash();
+      }
+      if (revision.startsWith("HEAD~")) {
+         int shift;
+         try {
+            shift = Integer.parseInt(revision.substring(5));
+         } catch (NumberFormatException e) {
+            shift = -1;
+         }
+         if (shift < 0) {
+            throw new GitException("Revision '" + revision + "' is not in HEAD~N format with non-negative N");
+         }
+         return headFile.getShiftedCommitHash(shift);
+      }
+      if (refs.exists(revision)) {
+         return refs.resolve(revision);
       }
+      if (isCommitHash(revision)) {
+         return ObjectId.fromHex(revision);
+      }
+      throw new GitException("Neither commit, nor branch exists named '" + revision + "'");
+   }
 
-      root.buildGraph();
-      root.saveGraph(getFullPathFromRepository(TREES_DIR));
+   public String commit(@NotNull String message) throws GitException {
+      checkInitialized();
+      indexFile.load();
+      TreeNode root = buildIndexTree();
 
+      ObjectId parentCommitHash = headFile.getCurrentCommitHash();
       CommitFile commit = new CommitFile(
           getFullPathFromRepository(COMMITS_DIR),
-          root.getHash().get(),
-          headFile.getCurrentCommitHash(),
+          root.getHash(),
+          parentCommitHash,
           "Dimechik",
           OffsetDateTime.now(),
           message
       );
 
-      commit.save();
-      headFile.setCurrentCommit(commit.getFilename());
+      commit.save(objectFilter);
+      headFile.setCurrentCommit(commit.getId(), parentCommitHash);
+      // a filter lost by a crash right here is only a slower path-limited log, and the backfill restores it
+      changedPathFilters.write(
+          commit.getId(),
+          root.getHash(),
+          parentCommitHash == null ? null : headFile.loadCommit(parentCommitHash).getRootNodeHash()
+      );
 
       return "Files committed" + System.lineSeparator();
    }
@@ -191,68 +365,241 @@ public class MiniGit {
     */
    public String reset(@NotNull String checkpointName) throws GitException {
       checkInitialized();
-      return resetImpl(checkpointName);
+      try (LockFile ignored = indexFile.lock()) {
+         return resetImpl(checkpointName, headFile.getCurrentCommitHash());
+      }
    }
 
    public String reset(int stepsBackwardsFromHead) throws GitException {
       checkInitialized();
-      return resetImpl(headFile.getShiftedCommitHash(stepsBackwardsFromHead));
+      try (LockFile ignored = indexFile.lock()) {
+         ObjectId expectedHead = headFile.getCurrentCommitHash();
+         return resetImpl(headFile.getShiftedCommitHash(expectedHead, stepsBackwardsFromHead).toHex(), expectedHead);
+      }
    }
 
-   private String resetImpl(String checkpointName) throws GitException {
+   /**
+    * @param expectedHead HEAD read when the operation started, a concurrent commit moving it fails the reset
+    *                     instead of being discarded
+    */
+   private String resetImpl(String checkpointName, ObjectId expectedHead) throws GitException {
       // Update HEAD file
       // branch
-      if (Files.exists(getFullPathFromRepository(BRANCHES_DIR, checkpointName))) {
+      if (refs.exists(checkpointName)) {
          headFile.setCurrentBranch(checkpointName);
       }
       // commit
-      else if (Files.exists(getFullPathFromRepository(COMMITS_DIR, checkpointName))) {
-         headFile.setCurrentCommit(checkpointName);
+      else if (isCommitHash(checkpointName)) {
+         headFile.setCurrentCommit(ObjectId.fromHex(checkpointName), expectedHead);
       }
       else {
          throw new GitException("Neither commit, nor branch exists named '" + checkpointName + "'");
       }
 
       // Update index file
-      TreeNode root = headFile.loadTree();
-      indexFile.setEntries(root.getBlobs());
+      SparseCheckout sparseCheckout = loadSparseCheckout();
+      TreeNode root = headFile.loadTree(sparseCheckout);
+      indexFile.setEntries(root.getEntries());
       indexFile.save();
 
       // Update working directory
-      clearWorkingDirectory();
-      indexFile.saveTrackedFilesToWorkingDir(getFullPathFromWorkingDirectory(), getFullPathFromRepository(BLOBS_DIR));
+      clearWorkingDirectory(sparseCheckout);
+      indexFile.saveTrackedFilesToWorkingDir(
+          getFullPathFromWorkingDirectory(),
+          getFullPathFromRepository(BLOBS_DIR),
+          chunkStore
+      );
 
       return "Reset successful" + System.lineSeparator();
    }
 
    public String log() throws GitException {
       checkInitialized();
-      return logImpl(headFile.getCurrentCommitHash());
+      return logImpl(headFile.getCurrentCommitHash(), null, null);
    }
 
    public String log(String commitHash) throws GitException {
-      checkInitialized();
-      return logImpl(commitHash);
+      return log(commitHash, null, null);
    }
 
    public String log(int stepsBackwardsFromHead) throws GitException {
+      return log(stepsBackwardsFromHead, null, null);
+   }
+
+   /**
+    * Shows the commits starting at HEAD that match the filters
+    * @param path file or directory the commits changed, {@code null} for any
+    * @param grep text the commit messages contain, {@code null} for any
+    */
+   public String logFiltered(String path, String grep) throws GitException {
       checkInitialized();
-      return logImpl(headFile.getShiftedCommitHash(stepsBackwardsFromHead));
+      return logImpl(headFile.getCurrentCommitHash(), path == null ? null : normalizePath(path), grep);
    }
 
-   private String logImpl(String startingCommit) throws GitException {
-      StringBuilder result = new StringBuilder();
+   /**
+    * @param path file or directory the commits changed, {@code null} for any
+    * @param grep text the commit messages contain, {@code null} for any
+    */
+   public String log(String commitHash, String path, String grep) throws GitException {
+      checkInitialized();
+      if (!isCommitHash(commitHash)) {
+         throw new GitException("Commit '" + commitHash + "' does not exist");
+      }
+      return logImpl(ObjectId.fromHex(commitHash), path == null ? null : normalizePath(path), grep);
+   }
 
-      Path fullPathToCommitsDir = getFullPathFromRepository(COMMITS_DIR);
-      String currentCommitHash = startingCommit;
+   /**
+    * @param path file or directory the commits changed, {@code null} for any
+    * @param grep text the commit messages contain, {@code null} for any
+    */
+   public String log(int stepsBackwardsFromHead, String path, String grep) throws GitException {
+      checkInitialized();
+      return logImpl(
+          headFile.getShiftedCommitHash(stepsBackwardsFromHead),
+          path == null ? null : normalizePath(path),
+          grep
+      );
+   }
 
-      while (!currentCommitHash.equals("")) {
-         CommitFile commit = CommitFile.load(fullPathToCommitsDir, currentCommitHash);
+   /**
+    * Computes the changed-path filters of the commits made before they were introduced
+    */
+   public String writeChangedPaths() throws GitException {
+      checkInitialized();
+      List<ObjectId> tips = new ArrayList<>();
+      tips.add(headFile.getCurrentCommitHash());
+      for (String branch : refs.list()) {
+         tips.add(refs.resolve(branch));
+      }
+
+      int written = 0;
+      Set<ObjectId> visited = new HashSet<>();
+      for (ObjectId tip : tips) {
+         ObjectId currentCommitHash = tip;
+         while (currentCommitHash != null && visited.add(currentCommitHash)) {
+            CommitFile commit = headFile.loadCommit(currentCommitHash);
+            ObjectId parentCommitHash = commit.getParentCommitHash();
+            if (!changedPathFilters.exists(currentCommitHash)) {
+               changedPathFilters.write(
+                   currentCommitHash,
+                   commit.getRootNodeHash(),
+                   parentCommitHash == null ? null : headFile.loadCommit(parentCommitHash).getRootNodeHash()
+               );
+               written++;
+            }
+            currentCommitHash = parentCommitHash;
+         }
+      }
+
+      return "Changed-path filters written for " + written + " commits" + System.lineSeparator();
+   }
+
+   private String logImpl(ObjectId startingCommit, String path, String grep) throws GitException {
+      StringBuilder result = new StringBuilder();
+      for (CommitFile commit : logCommitsImpl(startingCommit, path, grep)) {
          result.append(commit.getInfo()).append(System.lineSeparator());
+      }
+      return result.toString();
+   }
+
+   /**
+    * Structured counterpart of {@link #log(String, String, String)}
+    * @param startingCommit {@code null} for none
+    * @param path file or directory the commits changed, {@code null} for any
+    * @param grep text the commit messages contain, {@code null} for any
+    */
+   public List<CommitFile> logCommits(ObjectId startingCommit, String path, String grep) throws GitException {
+      checkInitialized();
+      return logCommitsImpl(startingCommit, path == null ? null : normalizePath(path), grep);
+   }
+
+   private List<CommitFile> logCommitsImpl(ObjectId startingCommit, String path, String grep) throws GitException {
+      List<CommitFile> result = new ArrayList<>();
+
+      if (grep != null) {
+         for (CommitFile commit : messageIndex.search(startingCommit, grep)) {
+            if (path == null || hasChanged(commit, path)) {
+               result.add(commit);
+            }
+         }
+         return result;
+      }
+
+      ObjectId currentCommitHash = startingCommit;
+
+      while (currentCommitHash != null) {
+         CommitFile commit = headFile.loadCommit(currentCommitHash);
+         if (path == null || hasChanged(commit, path)) {
+            result.add(commit);
+         }
          currentCommitHash = commit.getParentCommitHash();
       }
 
-      return result.toString();
+      return result;
+   }
+
+   public CommitFile getCommit(@NotNull ObjectId commitHash) throws GitException {
+      checkInitialized();
+      return headFile.loadCommit(commitHash);
+   }
+
+   /**
+    * Passes the files that differ between the trees of two commits to the visitor, in path order
+    * @param oldCommit {@code null} for an empty tree
+    * @param newCommit {@code null} for an empty tree
+    */
+   public void diff(ObjectId oldCommit, ObjectId newCommit, TreeNode.DiffVisitor visitor) throws GitException {
+      checkInitialized();
+      TreeNode.diff(loadCommitTree(oldCommit), loadCommitTree(newCommit), visitor);
+   }
+
+   private TreeNode loadCommitTree(ObjectId commitHash) throws GitException {
+      if (commitHash == null) {
+         return null;
+      }
+      return TreeNode.loadTree(getFullPathFromRepository(TREES_DIR), headFile.loadCommit(commitHash).getRootNodeHash());
+   }
+
+   /**
+    * Most commits are rejected by their changed-path filter, the rest are checked against their trees
+    */
+   private boolean hasChanged(CommitFile commit, String path) throws GitException {
+      if (changedPathFilters.mayHaveChanged(commit.getId(), path) == ChangedPathFilters.Answer.NOT_CHANGED) {
+         return false;
+      }
+
+      ObjectId parentCommitHash = commit.getParentCommitHash();
+      return changedPathFilters.hasChanged(
+          commit.getRootNodeHash(),
+          parentCommitHash == null ? null : headFile.loadCommit(parentCommitHash).getRootNodeHash(),
+          path
+      );
+   }
+
+   /**
+    * Shows the commit that last changed every line of the file, as of HEAD
+    */
+   public String blame(String filename) throws GitException {
+      checkInitialized();
+      ObjectId currentCommitHash = headFile.getCurrentCommitHash();
+      if (currentCommitHash == null) {
+         throw new GitException("Nothing is committed yet");
+      }
+
+      String path = normalizePath(filename);
+
+      StringBuilder content = new StringBuilder();
+      List<Blame.Line> lines = blame.blame(currentCommitHash, path);
+      for (int i = 0; i < lines.size(); i++) {
+         Blame.Line line = lines.get(i);
+         CommitFile commit = headFile.loadCommit(line.commitHash());
+         content.append(line.commitHash().toHex(), 0, 8)
+             .append(" (").append(commit.getAuthor())
+             .append(' ').append(commit.getDate().toLocalDate())
+             .append(' ').append(i + 1).append(") ")
+             .append(line.content()).append(System.lineSeparator());
+      }
+      return content.toString();
    }
 
    /**
@@ -261,52 +608,57 @@ public class MiniGit {
     */
    public String checkout(String checkpointName) throws GitException {
       checkInitialized();
-      return checkoutImpl(checkpointName);
+      try (LockFile ignored = indexFile.lock()) {
+         return checkoutImpl(checkpointName);
+      }
    }
 
    public String checkout(int stepsBackwardsFromHead) throws GitException {
       checkInitialized();
-      return checkoutImpl(headFile.getShiftedCommitHash(stepsBackwardsFromHead));
+      try (LockFile ignored = indexFile.lock()) {
+         return checkoutImpl(headFile.getShiftedCommitHash(stepsBackwardsFromHead).toHex());
+      }
    }
 
    public String checkoutImpl(String checkpointName) throws GitException {
-      TreeNode prevRoot = headFile.loadTree();
+      SparseCheckout sparseCheckout = loadSparseCheckout();
+      TreeNode prevRoot = headFile.loadTree(sparseCheckout);
 
       // Update HEAD file
       // branch
-      if (Files.exists(getFullPathFromRepository(BRANCHES_DIR, checkpointName))) {
+      if (refs.exists(checkpointName)) {
          headFile.setCurrentBranch(checkpointName);
       }
       // commit
-      else if (Files.exists(getFullPathFromRepository(COMMITS_DIR, checkpointName))) {
-         headFile.setCurrentCommitAsDetached(checkpointName);
+      else if (isCommitHash(checkpointName)) {
+         headFile.setCurrentCommitAsDetached(ObjectId.fromHex(checkpointName));
       }
       else {
          throw new GitException("Neither commit, nor branch exists named '" + checkpointName + "'");
       }
 
       // Update index file
-      TreeNode root = headFile.loadTree();
-      Map<String, String> checkoutBlobs = root.getBlobs();
-      indexFile.setEntries(checkoutBlobs);
+      TreeNode root = headFile.loadTree(sparseCheckout);
+      indexFile.setEntries(root.getEntries());
       indexFile.save();
 
       // add new files from checkout commit/branch
-      indexFile.saveTrackedFilesToWorkingDir(getFullPathFromWorkingDirectory(), getFullPathFromRepository(BLOBS_DIR));
+      indexFile.saveTrackedFilesToWorkingDir(
+          getFullPathFromWorkingDirectory(),
+          getFullPathFromRepository(BLOBS_DIR),
+          chunkStore
+      );
 
       // remove all files from working directory, that are in `prevRoot` but not in `root`
-      Map<String, String> prevBlobs = prevRoot.getBlobs();
-      for (var entry : prevBlobs.entrySet()) {
-         String filename = entry.getKey();
-
-         if (!checkoutBlobs.containsKey(filename)) {
+      TreeNode.diff(prevRoot, root, (filename, oldHash, newHash) -> {
+         if (newHash == null && !IndexFile.isSparseDirectory(filename)) {
             try {
                Files.delete(getFullPathFromWorkingDirectory(filename));
             } catch (IOException e) {
                throw new GitException(e.getMessage(), e.getCause());
             }
          }
-      }
+      });
 
       removeEmptyWorkingDirectories(getFullPathFromWorkingDirectory());
 
@@ -317,22 +669,23 @@ public class MiniGit {
    public String checkout(List<String> filenames) throws GitException {
       checkInitialized();
 
-      TreeNode root = headFile.loadTree();
-      Map<String, String> blobs = root.getBlobs();
+      TreeNode root = headFile.loadTree(loadSparseCheckout());
 
       for (String filename : filenames) {
-         if (!blobs.containsKey(filename)) {
+         if (root.findBlob(filename) == null) {
             throw new GitException("Filename '" + filename + "' is not recognized by git");
          }
       }
 
       for (String filename : filenames) {
-         String hash = blobs.get(filename);
-         try {
-            byte[] fileBytes = Files.readAllBytes(getFullPathFromRepository(BLOBS_DIR, hash));
-            Files.write(
+         ObjectId hash = root.findBlob(filename);
+         try (Timer ignored = GitStats.time(Phase.WORKTREE_WRITE)) {
+            BlobFile.writeWorkingFile(
+                getFullPathFromRepository(BLOBS_DIR),
+                chunkStore,
+                hash,
                 getFullPathFromWorkingDirectory(filename),
-                fileBytes
+                filename
             );
          } catch (IOException e) {
             throw new GitException(e.getMessage(), e.getCause());
@@ -343,19 +696,10 @@ public class MiniGit {
    }
 
    public String createBranch(String branchName) throws GitException {
-      if (headFile.branchExists(branchName)) {
-         throw new GitException("Branch '" + branchName + "' already exists");
-      }
-
-      try {
-         Path branchFile = Files.createFile(getFullPathFromRepository(BRANCHES_DIR, branchName));
-         Files.write(branchFile, headFile.getCurrentCommitHash().getBytes());
-         // the return message of this command is pretty weird, considering that we checkout new branch by default
-         // according to the tests
-         headFile.setCurrentBranch(branchName);
-      } catch (IOException e) {
-         throw new GitException(e.getMessage(), e.getCause());
-      }
+      refs.create(branchName, headFile.getCurrentCommitHash());
+      // the return message of this command is pretty weird, considering that we checkout new branch by default
+      // according to the tests
+      headFile.setCurrentBranch(branchName);
 
       return
           "Branch new-feature created successfully" + System.lineSeparator() +
@@ -366,23 +710,19 @@ public class MiniGit {
       StringBuilder content = new StringBuilder();
       content.append("Available branches:").append(System.lineSeparator());
 
-      List<Path> result;
-      try (Stream<Path> walk = Files.walk(getFullPathFromRepository(BRANCHES_DIR))) {
-         result = walk.filter(Files::isRegularFile)
-             .collect(Collectors.toList());
-      } catch (IOException e) {
-         throw new GitException(e.getMessage(), e.getCause());
-      }
-
-      result.forEach(path -> {
-         content.append(path.getFileName().toString()).append(System.lineSeparator());
+      getBranches().forEach(branchName -> {
+         content.append(branchName).append(System.lineSeparator());
       });
 
       return content.toString();
    }
 
+   public List<String> getBranches() throws GitException {
+      return refs.list();
+   }
+
    public String removeBranch(String branchName) throws GitException {
-      if (!headFile.branchExists(branchName)) {
+      if (!refs.exists(branchName)) {
          throw new GitException("Branch '" + branchName + "' does not exist");
       }
 
@@ -390,13 +730,188 @@ public class MiniGit {
          throw new GitException("Cannot remove current branch");
       }
 
+      refs.delete(branchName);
+
+      return "Branch " + branchName + " removed successfully" + System.lineSeparator();
+   }
+
+   /**
+    * Moves branches into the packed-refs file, so that repositories with many branches do not keep
+    * a file per branch
+    */
+   public String packRefs() throws GitException {
+      checkInitialized();
+      int packed = refs.pack();
+      return "Packed " + packed + " branches" + System.lineSeparator();
+   }
+
+   /**
+    * Creates a repository in {@code destination} with the objects, branches and index of the repository
+    * in {@code source}, and checks out its HEAD. Paths are relative to the working directory of this repository
+    */
+   public String clone(String source, String destination) throws GitException {
+      Path sourceDir = getFullPathFromWorkingDirectory().resolve(source);
+      Path destinationDir = getFullPathFromWorkingDirectory().resolve(destination);
+      if (!Files.isDirectory(sourceDir.resolve(REPOSITORY_DIR))) {
+         throw new GitException("'" + source + "' is not a MiniGit repository");
+      }
+      if (Files.exists(destinationDir) && countEntries(destinationDir) != 0) {
+         throw new GitException("Destination '" + destination + "' already exists and is not empty");
+      }
+
+      return new MiniGit(destinationDir.toString()).cloneFrom(sourceDir.resolve(REPOSITORY_DIR), destination);
+   }
+
+   /**
+    * Objects are hard-linked, which shares their files instead of copying their contents, and copied only
+    * if the repositories are on different file systems. HEAD, branches and index are copied before the objects,
+    * so every object they refer to already exists in the source when the object directories are listed,
+    * even if the source is being committed to at the same time
+    */
+   private String cloneFrom(Path sourceRepository, String destination) throws GitException {
       try {
-         Files.delete(getFullPathFromRepository(BRANCHES_DIR, branchName));
+         for (String objectDir : OBJECT_DIRS) {
+            Files.createDirectories(getFullPathFromRepository(objectDir));
+         }
+         Files.createDirectories(getFullPathFromRepository(BRANCHES_DIR));
+
+         for (String file : List.of(HEAD_FILE, INDEX_FILE, PACKED_REFS_FILE)) {
+            if (!file.equals(PACKED_REFS_FILE) || Files.exists(sourceRepository.resolve(file))) {
+               Files.copy(sourceRepository.resolve(file), getFullPathFromRepository(file));
+               FileSync.fileWritten(getFullPathFromRepository(file));
+            }
+         }
+         copyObjectFiles(sourceRepository.resolve(BRANCHES_DIR), getFullPathFromRepository(BRANCHES_DIR), false);
+
+         int[] linkedAndCopied = new int[2];
+         for (String objectDir : OBJECT_DIRS) {
+            int[] counts = copyObjectFiles(sourceRepository.resolve(objectDir), getFullPathFromRepository(objectDir), true);
+            linkedAndCopied[0] += counts[0];
+            linkedAndCopied[1] += counts[1];
+         }
+         isInitialized = true;
+         // objects did not go through the filter, it is rebuilt from the object directories
+         objectFilter.invalidate();
+         // everything is synced at once, a clone interrupted by a crash is started over anyway
+         FileSync.syncPending();
+
+         // the index is kept when it matches HEAD, which is the usual case, so that nothing has to be rebuilt
+         indexFile.load();
+         Map<String, ObjectId> headEntries = headFile.loadTree().getEntries();
+         Map<String, ObjectId> indexEntries = new HashMap<>();
+         indexFile.getEntries().forEach(entry -> indexEntries.put(entry.getKey(), entry.getValue()));
+         if (!indexEntries.equals(headEntries)) {
+            indexFile.setEntries(headEntries);
+            indexFile.save();
+         }
+         indexFile.checkoutToEmptyWorkingDir(getFullPathFromWorkingDirectory(), getFullPathFromRepository(BLOBS_DIR), chunkStore);
+
+         return "Cloned into '" + destination + "': " + linkedAndCopied[0] + " objects linked, "
+             + linkedAndCopied[1] + " copied, " + headEntries.size() + " files checked out" + System.lineSeparator();
       } catch (IOException e) {
          throw new GitException(e.getMessage(), e.getCause());
       }
+   }
 
-      return "Branch " + branchName + " removed successfully" + System.lineSeparator();
+   /**
+    * Lock and temporary files of writes in progress are skipped
+    * @param link whether to hard-link the files, falling back to copying when the file system does not allow it
+    * @return number of files linked and copied
+    */
+   private static int[] copyObjectFiles(Path sourceDir, Path destinationDir, boolean link)
+       throws IOException, GitException {
+      int[] result = new int[2];
+      boolean canLink = link;
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(sourceDir)) {
+         for (Path source : stream) {
+            String name = source.getFileName().toString();
+            if (name.endsWith(LockFile.LOCK_SUFFIX) || name.endsWith(AbstractEditableFile.TEMP_SUFFIX)
+                || !Files.isRegularFile(source)) {
+               continue;
+            }
+
+            Path destination = destinationDir.resolve(name);
+            if (canLink) {
+               try {
+                  Files.createLink(destination, source);
+                  FileSync.fileLinked(destination);
+                  result[0]++;
+                  continue;
+               } catch (UnsupportedOperationException | FileSystemException e) {
+                  // another file system, or one without hard links: the rest is copied without trying again
+                  canLink = false;
+               }
+            }
+            Files.copy(source, destination);
+            FileSync.fileWritten(destination);
+            GitStats.count(Counter.BYTES_WRITTEN, Files.size(destination));
+            result[1]++;
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Changes the directories of the sparse checkout, with no directories the whole tree is checked out again.
+    * Staged changes are kept: the index is rebuilt from its own tree, so directories that become excluded are
+    * collapsed into the hashes of their trees and directories that become included are loaded. Files that leave
+    * the checkout are removed from the working directory unless they are modified
+    */
+   public String setSparseCheckout(List<String> directories) throws GitException {
+      checkInitialized();
+      try (LockFile ignored = indexFile.lock()) {
+         indexFile.load();
+         Map<String, ObjectId> prevEntries = new HashMap<>();
+         indexFile.getEntries().forEach(entry -> prevEntries.put(entry.getKey(), entry.getValue()));
+
+         SparseCheckout sparseCheckout = SparseCheckout.of(directories);
+         TreeNode indexTree = buildIndexTree();
+         TreeNode root = TreeNode.loadTree(getFullPathFromRepository(TREES_DIR), indexTree.getHash(), sparseCheckout);
+         Map<String, ObjectId> entries = root.getEntries();
+         indexFile.setEntries(entries);
+         indexFile.save();
+         sparseCheckout.save(getFullPathFromRepository(SPARSE_CHECKOUT_FILE));
+
+         try (Timer ignoredTimer = GitStats.time(Phase.WORKTREE_WRITE)) {
+            for (var entry : prevEntries.entrySet()) {
+               String filename = entry.getKey();
+               Path path = getFullPathFromWorkingDirectory(filename);
+               if (!IndexFile.isSparseDirectory(filename) && !entries.containsKey(filename) && Files.isRegularFile(path)
+                   && entry.getValue().equals(MiniGitUtils.getHashFromFile(path))) {
+                  Files.delete(path);
+               }
+            }
+
+            for (var entry : entries.entrySet()) {
+               String filename = entry.getKey();
+               if (!IndexFile.isSparseDirectory(filename) && !prevEntries.containsKey(filename)) {
+                  Path path = getFullPathFromWorkingDirectory(filename);
+                  Files.createDirectories(path.getParent());
+                  BlobFile.writeWorkingFile(getFullPathFromRepository(BLOBS_DIR), chunkStore, entry.getValue(), path, filename);
+               }
+            }
+         } catch (IOException e) {
+            throw new GitException(e.getMessage(), e.getCause());
+         }
+         removeEmptyWorkingDirectories(getFullPathFromWorkingDirectory());
+
+         return sparseCheckout.isEnabled()
+             ? "Sparse checkout set to " + sparseCheckout.getDirectories().size() + " directories" + System.lineSeparator()
+             : "Sparse checkout disabled" + System.lineSeparator();
+      }
+   }
+
+   public String showSparseCheckout() throws GitException {
+      checkInitialized();
+      SparseCheckout sparseCheckout = loadSparseCheckout();
+      if (!sparseCheckout.isEnabled()) {
+         return "Sparse checkout is disabled" + System.lineSeparator();
+      }
+
+      StringBuilder content = new StringBuilder();
+      content.append("Sparse checkout directories:").append(System.lineSeparator());
+      sparseCheckout.getDirectories().forEach(directory -> content.append(directory).append(System.lineSeparator()));
+      return content.toString();
    }
 
    public String merge(String otherBranchName) throws GitException {
@@ -406,7 +921,11 @@ public class MiniGit {
    }
 
    public String getRelativeRevisionFromHead(int n) throws GitException {
-      return headFile.getShiftedCommitHash(n);
+      return headFile.getShiftedCommitHash(n).toHex();
+   }
+
+   public Path getServerSocketPath() {
+      return getFullPathFromRepository(SERVER_SOCKET_FILE);
    }
 
 
@@ -420,45 +939,152 @@ public class MiniGit {
       return Path.of(workingDir, paths);
    }
 
+   /**
+    * @return path relative to the working directory separated by {@code /}, without leading {@code ./}
+    * and trailing slashes
+    */
+   private static String normalizePath(String path) {
+      String result = path.replace('\\', '/');
+      while (result.startsWith("./")) {
+         result = result.substring(2);
+      }
+      while (result.endsWith("/")) {
+         result = result.substring(0, result.length() - 1);
+      }
+      return result.equals(".") ? "" : result;
+   }
+
+   private SparseCheckout loadSparseCheckout() throws GitException {
+      return SparseCheckout.load(getFullPathFromRepository(SPARSE_CHECKOUT_FILE));
+   }
+
+   /**
+    * Builds and saves the tree of the index entries, directories outside of the sparse checkout are kept
+    * by the hashes of their trees
+    */
+   private TreeNode buildIndexTree() throws GitException {
+      TreeNode root = TreeNode.createRoot();
+
+      for (var entry : indexFile.getEntries()) {
+         String path = entry.getKey();
+         ObjectId hash = entry.getValue();
+
+         if (IndexFile.isSparseDirectory(path)) {
+            List<String> names = List.of(path.substring(0, path.length() - 1).split("/"));
+            root.addCollapsedTree(0, names, hash);
+         }
+         else {
+            List<String> names = List.of(path.split("/"));
+            root.addChildren(0, names, hash);
+         }
+      }
+
+      try (TreeWriter writer = new TreeWriter(getFullPathFromRepository(TREES_DIR), objectFilter)) {
+         root.buildGraph(writer);
+         // only the writes that did not overlap hashing are waited for here
+         try (Timer ignored = GitStats.time(Phase.TREE_SAVE)) {
+            writer.finish();
+         }
+      }
+      return root;
+   }
+
+   /**
+    * @return hash of the file contents as they were read, which may differ from a hash computed earlier
+    * if the file has been modified in between
+    */
+   private ObjectId saveBlob(File file) throws GitException {
+      byte[] fileBytes;
+
+      try (Timer ignored = GitStats.time(Phase.WORKTREE_READ)) {
+         fileBytes = FileUtils.readFileToByteArray(file);
+         GitStats.count(Counter.BYTES_READ, fileBytes.length);
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+
+      BlobFile blob = new BlobFile(getFullPathFromRepository(BLOBS_DIR), fileBytes);
+      blob.save(objectFilter);
+      return blob.getId();
+   }
+
+   private boolean isCommitHash(String revision) throws GitException {
+      return ObjectId.isValidHex(revision) && headFile.commitExists(ObjectId.fromHex(revision));
+   }
+
    private void checkInitialized() throws GitException {
-      if (!isInitialized) {
+      // repositories created by another process are recognized by their directory
+      if (!isInitialized && !Files.isDirectory(getFullPathFromRepository())) {
          throw new GitException("MiniGit repository not initialized");
       }
+      // objects written by other processes since the last command
+      objectFilter.refresh();
    }
 
    /**
     * Flattens the directories that {@code entryNames contain}, meaning goes inside of them while no directories left,
     * the file names are built respectively
+    * @param ignoreRules rules that filter the contents of directories, explicitly named files are always taken;
+    *                    {@code null} takes all files
     */
-   private Map<String, File> getPureFiles(List<String> entryNames) throws GitException {
+   private Map<String, File> getPureFiles(
+       List<String> entryNames,
+       IgnoreRules ignoreRules,
+       SparseCheckout sparseCheckout
+   ) throws GitException {
       Map<String, File> files = new HashMap<>();
       for (String name : entryNames) {
-         files.put(name, getFullPathFromWorkingDirectory(name).toFile());
+         File file = getFullPathFromWorkingDirectory(name).toFile();
+         String relativePath = getRelativePath(file);
+         boolean outside = file.isDirectory()
+             ? sparseCheckout.matchDirectory(relativePath) == SparseCheckout.Match.EXCLUDED
+             : !sparseCheckout.includes(relativePath);
+         if (outside) {
+            throw new GitException("Path '" + name + "' is outside of the sparse checkout");
+         }
+         files.put(name, file);
       }
 
       // TODO: Do I have to check for files existance?
       // MiniGitUtils.checkFilesExists(files.values().stream().toList());
-      return collectPureFiles("", files);
+      return collectPureFiles("", files, ignoreRules, sparseCheckout);
    }
 
    /**
     * For every {@code File} that is a directory goes inside of it recursively and collects pure files from it
     */
-   private Map<String, File> collectPureFiles(String prefix, Map<String, File> entryFiles) {
+   private Map<String, File> collectPureFiles(
+       String prefix,
+       Map<String, File> entryFiles,
+       IgnoreRules ignoreRules,
+       SparseCheckout sparseCheckout
+   ) throws GitException {
       Map<String, File> result = new HashMap<>();
-      entryFiles.forEach((name, file) -> {
+      for (Map.Entry<String, File> entry : entryFiles.entrySet()) {
+         String name = entry.getKey();
+         File file = entry.getValue();
+
          if (file.isDirectory()) {
             if (file.getName().equals(REPOSITORY_DIR)) {
-               return;
+               continue;
+            }
+            // contents of a directory were checked one by one, except for the directories named explicitly
+            if (prefix.isEmpty() && ignoreRules != null && ignoreRules.isExcluded(getRelativePath(file), true)) {
+               continue;
             }
 
-            result.putAll(collectPureFiles(
-                prefix + file.getName() + "/",
-                Arrays.stream(Objects.requireNonNull(file.listFiles())).collect(Collectors.toMap(
-                    File::getName,
-                    Function.identity()
-                ))
-            ));
+            Map<String, File> children = new HashMap<>();
+            for (File child : Objects.requireNonNull(file.listFiles())) {
+               String childPath = getRelativePath(child);
+               boolean directory = child.isDirectory();
+               if (directory && sparseCheckout.matchDirectory(childPath) == SparseCheckout.Match.EXCLUDED) {
+                  continue;
+               }
+               if (ignoreRules == null || !ignoreRules.isIgnored(childPath, directory)) {
+                  children.put(child.getName(), child);
+               }
+            }
+            result.putAll(collectPureFiles(prefix + file.getName() + "/", children, ignoreRules, sparseCheckout));
          }
          else {
             // replacing './' symbol in path, so that we will not have extra tree-nodes for '.' folders
@@ -469,11 +1095,15 @@ public class MiniGit {
                result.put((prefix + name).replace("./", ""), file);
             }
          }
-      });
+      }
 
       return result;
    }
 
+   private String getRelativePath(File file) {
+      return getFullPathFromWorkingDirectory().relativize(file.toPath()).toString().replace('\\', '/');
+   }
+
    /**
     *
     * @param content
@@ -513,6 +1143,26 @@ public class MiniGit {
       return filesAdded;
    }
 
+   private static char porcelainCode(FileStatus status) {
+      if (status == null) {
+         return ' ';
+      }
+      return switch (status) {
+         case NEW -> 'A';
+         case MODIFIED -> 'M';
+         case DELETED -> 'D';
+      };
+   }
+
+   private static void writeRecord(OutputStream output, String record) throws GitException {
+      try {
+         output.write(record.getBytes(StandardCharsets.UTF_8));
+         output.write(0);
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+   }
+
    private String collectFilesStatus(List<String> files) {
       StringBuilder result = new StringBuilder();
 
@@ -523,22 +1173,35 @@ public class MiniGit {
       return result.toString();
    }
 
-   private void clearWorkingDirectory() throws GitException {
-      try (DirectoryStream<Path> stream = Files.newDirectoryStream(getFullPathFromWorkingDirectory())) {
+   /**
+    * Directories outside of the sparse checkout are left as they are
+    */
+   private void clearWorkingDirectory(SparseCheckout sparseCheckout) throws GitException {
+      try {
+         clearDirectory(getFullPathFromWorkingDirectory(), sparseCheckout);
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+   }
+
+   private void clearDirectory(Path directory, SparseCheckout sparseCheckout) throws IOException {
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
          for (Path entry : stream) {
             if (entry.toString().contains(REPOSITORY_DIR)) {
                continue;
             }
 
             if (Files.isDirectory(entry)) {
-               deleteRecursively(entry);
+               switch (sparseCheckout.matchDirectory(getRelativePath(entry.toFile()))) {
+                  case INCLUDED -> deleteRecursively(entry);
+                  case PARTIAL -> clearDirectory(entry, sparseCheckout);
+                  case EXCLUDED -> {}
+               }
             }
             else {
                Files.delete(entry);
             }
          }
-      } catch (IOException e) {
-         throw new GitException(e.getMessage(), e.getCause());
       }
    }
 
@@ -0,0 +1,46 @@
+package ru.hse.mit.git;
+
+import java.util.Arrays;
+import java.util.List;
+import ru.hse.mit.git.server.MiniGitClient;
+import ru.hse.mit.git.server.MiniGitServer;
+
+/**
+ * Command line entry point: {@code mini-git <command> [arguments]}.
+ * <p>
+ * {@code mini-git serve} starts a {@link MiniGitServer} for the repository in the current directory.
+ * Other commands are forwarded to that server when it is running and executed in-process otherwise.
+ */
+public final class MiniGitMain {
+   private MiniGitMain() {}
+
+   public static void main(String[] args) {
+      if (args.length == 0) {
+         System.err.println("Usage: mini-git <command> [arguments]");
+         System.exit(1);
+      }
+
+      String workingDir = System.getProperty("user.dir");
+      List<String> arguments = Arrays.asList(args);
+
+      try {
+         if (args[0].equals(GitConstants.SERVE)) {
+            try (MiniGitServer server = new MiniGitServer(workingDir)) {
+               server.serve();
+            }
+            return;
+         }
+
+         MiniGitClient client = new MiniGitClient(new MiniGit(workingDir).getServerSocketPath());
+         if (client.isServerRunning()) {
+            System.exit(client.run(arguments, System.out, System.err));
+         }
+
+         GitCli cli = new GitCliImpl(workingDir);
+         cli.runCommand(args[0], arguments.subList(1, arguments.size()));
+      } catch (GitException e) {
+         System.err.println(e.getMessage());
+         System.exit(1);
+      }
+   }
+}
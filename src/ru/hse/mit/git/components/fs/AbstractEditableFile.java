@@ -1,59 +1,193 @@
 package ru.hse.mit.git.components.fs;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.List;
 import java.util.stream.Stream;
 import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.jfr.ObjectWriteEvent;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
+import ru.hse.mit.git.components.utils.ObjectId;
 
 public class AbstractEditableFile {
+   /**
+    * Files modified less than this interval before they were read are not trusted to be unchanged
+    * by their timestamp alone, because a following write may land in the same timestamp tick
+    */
+   private static final long RACY_INTERVAL_MILLIS = 2000;
+
+   /**
+    * Suffix of the temporary files new objects are written to before they are moved into place
+    */
+   public static final String TEMP_SUFFIX = ".tmp";
+
    protected String filename;
    protected Path fullPath;
 
+   private volatile FileSnapshot snapshot;
+   // lock taken for a load-modify-save sequence, the next write goes through it
+   private LockFile heldLock;
+
    public String getFilename() {
       return filename;
    }
 
+   /**
+    * @return kind of the repository object stored in this file, used in diagnostics
+    */
+   protected String getObjectType() {
+      return "file";
+   }
+
+   /**
+    * Lines are served from memory while the file keeps the same size and modification time,
+    * so long-living processes do not re-read unchanged HEAD and INDEX files on every command
+    */
    protected List<String> loadFileFromDisk() throws GitException {
-      try (Stream<String> stream = Files.lines(fullPath)) {
-         return stream.toList();
+      try {
+         BasicFileAttributes attributes = Files.readAttributes(fullPath, BasicFileAttributes.class);
+         GitStats.count(Counter.FILES_STATED);
+         FileSnapshot cached = snapshot;
+         if (cached != null && cached.isValidFor(attributes)) {
+            return cached.lines();
+         }
+
+         long loadedAt = System.currentTimeMillis();
+         try (Stream<String> stream = Files.lines(fullPath)) {
+            List<String> lines = stream.toList();
+            GitStats.count(Counter.BYTES_READ, attributes.size());
+            snapshot = new FileSnapshot(attributes.lastModifiedTime(), attributes.size(), loadedAt, lines);
+            return lines;
+         }
       } catch (IOException e) {
          throw new GitException(e.getMessage(), e.getCause());
       }
    }
 
    protected void saveFileOnDisk(List<String> lines) throws GitException {
-      try {
-         Files.write(fullPath, (Iterable<String>) lines.stream()::iterator);
-      } catch (IOException e) {
-         throw new GitException(e.getMessage(), e.getCause());
+      StringBuilder content = new StringBuilder();
+      for (String line : lines) {
+         content.append(line).append(System.lineSeparator());
       }
+
+      setContentImmediately(content.toString().getBytes(StandardCharsets.UTF_8));
    }
 
+   /**
+    * Locks the file against other processes until the returned lock is closed, so that changes made between
+    * loading and saving the file are not lost. The next save writes through this lock and releases it
+    */
+   public LockFile lock() throws GitException {
+      heldLock = LockFile.acquire(fullPath);
+      return heldLock;
+   }
+
+   /**
+    * Replaces the content atomically under the file lock
+    */
    protected void setContentImmediately(byte[] content) throws GitException {
-      try {
-         Files.write(fullPath, content);
-      } catch (IOException e) {
-         throw new GitException(e.getMessage(), e.getCause());
+      snapshot = null;
+      LockFile lock = heldLock != null && heldLock.isHeld() ? heldLock : LockFile.acquire(fullPath);
+      heldLock = null;
+      try (lock) {
+         lock.commit(content);
       }
    }
 
+   protected void invalidateSnapshot() {
+      snapshot = null;
+   }
+
    /**
     * If file did not exist, then it stores new file in the filesystem
+    * @param filter filter of the repository the object is stored in
     * @param fileBytes
     * @throws GitException
     */
-   protected void save(byte[] fileBytes) throws GitException {
-      if (!Files.exists(fullPath)) {
-         try {
-            Files.createFile(fullPath);
-            setContentImmediately(fileBytes);
-         } catch (IOException e) {
-            throw new GitException(e.getMessage(), e.getCause());
+   protected void save(ObjectFilter filter, byte[] fileBytes) throws GitException {
+      save(filter, ByteBuffer.wrap(fileBytes));
+   }
+
+   /**
+    * Same as {@link #save(ObjectFilter, byte[])} for content that is not on the heap, e.g. a slice of a memory-mapped file.
+    * The object is written to a temporary file next to it and moved into place, so that a file under the id
+    * of an object is always complete, unless a crash lost its unsynced content: a stored file of another size
+    * is written again
+    */
+   protected void save(ObjectFilter filter, ByteBuffer content) throws GitException {
+      ObjectWriteEvent event = new ObjectWriteEvent();
+      event.begin();
+
+      int size = content.remaining();
+      ObjectId id = ObjectId.fromHex(filename);
+      boolean existed = filter.mightContain(id) && isStored(size);
+      if (!existed) {
+         snapshot = null;
+         filter.add(id);
+         write(content);
+         GitStats.count(Counter.BYTES_WRITTEN, size);
+         GitStats.count(Counter.OBJECTS_WRITTEN);
+      }
+
+      if (event.shouldCommit()) {
+         event.type = getObjectType();
+         event.hash = filename;
+         event.size = size;
+         event.existed = existed;
+         event.commit();
+      }
+   }
+
+   private void write(ByteBuffer content) throws GitException {
+      Path tempPath = null;
+      try {
+         tempPath = Files.createTempFile(fullPath.getParent(), filename + "-", TEMP_SUFFIX);
+         try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+            while (content.hasRemaining()) {
+               channel.write(content);
+            }
+            FileSync.objectWritten(fullPath, channel);
+         }
+         // a concurrent command storing the same object writes the same content
+         Files.move(tempPath, fullPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+         tempPath = null;
+         FileSync.objectMoved(fullPath);
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      } finally {
+         if (tempPath != null) {
+            try {
+               Files.deleteIfExists(tempPath);
+            } catch (IOException e) {
+               // left behind like after a crash, temporary files are never read
+            }
          }
       }
    }
-}
 
+   private boolean isStored(long size) {
+      GitStats.count(Counter.FILES_STATED);
+      try {
+         return Files.size(fullPath) == size;
+      } catch (IOException e) {
+         return false;
+      }
+   }
 
+   private record FileSnapshot(FileTime modified, long size, long loadedAt, List<String> lines) {
+      boolean isValidFor(BasicFileAttributes attributes) {
+         return modified.equals(attributes.lastModifiedTime())
+             && size == attributes.size()
+             && modified.toMillis() < loadedAt - RACY_INTERVAL_MILLIS;
+      }
+   }
+}
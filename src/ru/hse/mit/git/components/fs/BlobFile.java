@@ -1,20 +1,137 @@
 package ru.hse.mit.git.components.fs;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import org.jetbrains.annotations.NotNull;
 import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.jfr.ObjectReadEvent;
+import ru.hse.mit.git.components.jfr.WorktreeWriteEvent;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
 import ru.hse.mit.git.components.utils.MiniGitUtils;
+import ru.hse.mit.git.components.utils.ObjectId;
 
 public class BlobFile extends AbstractEditableFile {
+   private final ObjectId id;
    private final byte[] fileBytes;
 
    public BlobFile(Path fullPathToDir, byte @NotNull [] fileBytes) {
-      this.filename = MiniGitUtils.getHashFromBytes(fileBytes);
+      this.id = MiniGitUtils.getHashFromBytes(fileBytes);
+      this.filename = id.toHex();
       this.fullPath = Path.of(fullPathToDir.toString(), filename);
       this.fileBytes = fileBytes;
    }
 
-   public void save() throws GitException {
-      save(fileBytes);
+   public static byte[] load(Path fullPathToDir, ObjectId hash) throws IOException {
+      ObjectReadEvent event = new ObjectReadEvent();
+      event.begin();
+
+      byte[] blobBytes = Files.readAllBytes(Path.of(fullPathToDir.toString(), hash.toHex()));
+      GitStats.count(Counter.OBJECTS_READ);
+      GitStats.count(Counter.BYTES_READ, blobBytes.length);
+
+      if (event.shouldCommit()) {
+         event.type = "blob";
+         event.hash = hash.toHex();
+         event.size = blobBytes.length;
+         event.commit();
+      }
+      return blobBytes;
+   }
+
+   /**
+    * Same as {@link #load}, for plain and chunked blobs
+    */
+   public static byte[] loadContent(Path blobsDir, ChunkStore chunkStore, ObjectId hash) throws GitException {
+      try {
+         return load(blobsDir, hash);
+      } catch (NoSuchFileException e) {
+         if (!chunkStore.contains(hash)) {
+            throw new GitException("Blob '" + hash + "' does not exist");
+         }
+         return chunkStore.load(hash);
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+   }
+
+   public static boolean exists(Path fullPathToDir, ObjectId hash) {
+      GitStats.count(Counter.FILES_STATED);
+      return Files.exists(Path.of(fullPathToDir.toString(), hash.toHex()));
+   }
+
+   /**
+    * Materializes the blob in the working directory, chunked blobs are reassembled chunk by chunk
+    * @param filename path relative to the working directory, used in diagnostics
+    */
+   public static void writeWorkingFile(
+       Path blobsDir,
+       ChunkStore chunkStore,
+       ObjectId hash,
+       Path fullPath,
+       String filename
+   ) throws IOException, GitException {
+      byte[] blobBytes;
+      try {
+         blobBytes = load(blobsDir, hash);
+      } catch (NoSuchFileException e) {
+         if (!chunkStore.contains(hash)) {
+            throw e;
+         }
+         chunkStore.writeWorkingFile(hash, fullPath, filename);
+         return;
+      }
+      MiniGitUtils.writeWorkingFile(fullPath, filename, blobBytes);
+   }
+
+   /**
+    * Same as {@link #writeWorkingFile}, with the stored blob copied file to file, so that the content does not pass
+    * through the heap and the file system may copy it without reading it, e.g. by cloning extents
+    */
+   public static void copyToWorkingFile(
+       Path blobsDir,
+       ChunkStore chunkStore,
+       ObjectId hash,
+       Path fullPath,
+       String filename
+   ) throws IOException, GitException {
+      WorktreeWriteEvent event = new WorktreeWriteEvent();
+      event.begin();
+
+      long size;
+      try {
+         Files.copy(Path.of(blobsDir.toString(), hash.toHex()), fullPath, StandardCopyOption.REPLACE_EXISTING);
+         size = Files.size(fullPath);
+      } catch (NoSuchFileException e) {
+         if (!chunkStore.contains(hash)) {
+            throw e;
+         }
+         chunkStore.writeWorkingFile(hash, fullPath, filename);
+         return;
+      }
+      GitStats.count(Counter.OBJECTS_READ);
+      GitStats.count(Counter.BYTES_WRITTEN, size);
+
+      if (event.shouldCommit()) {
+         event.path = filename;
+         event.size = size;
+         event.commit();
+      }
+   }
+
+   public ObjectId getId() {
+      return id;
+   }
+
+   @Override
+   protected String getObjectType() {
+      return "blob";
+   }
+
+   public void save(ObjectFilter filter) throws GitException {
+      save(filter, fileBytes);
    }
 }
@@ -0,0 +1,230 @@
+package ru.hse.mit.git.components.fs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.jfr.ObjectReadEvent;
+import ru.hse.mit.git.components.jfr.WorktreeWriteEvent;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
+import ru.hse.mit.git.components.stats.GitStats.Timer;
+import ru.hse.mit.git.components.stats.Phase;
+import ru.hse.mit.git.components.utils.GearChunker;
+import ru.hse.mit.git.components.utils.MiniGitUtils;
+import ru.hse.mit.git.components.utils.MiniGitUtils.StreamingHasher;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+/**
+ * Storage for large blobs, split into content-defined chunks.
+ * <p>
+ * A chunked blob keeps the hash of its whole content, so index, trees and status do not distinguish it
+ * from a plain blob. Instead of {@code blobs/<hash>} it is stored as a manifest {@code manifests/<hash>}:
+ * <pre>
+ * size &lt;total length&gt;
+ * &lt;chunk hash&gt; &lt;chunk length&gt;
+ * ...
+ * </pre>
+ * and every chunk is stored once in {@code chunks/<chunk hash>}, whichever files and versions share it.
+ */
+public class ChunkStore {
+   /**
+    * Files of this size and larger are chunked
+    */
+   public static final long CHUNKING_THRESHOLD = 1024 * 1024;
+
+   private static final String SIZE_PREFIX = "size ";
+
+   private final Path chunksDir;
+   private final Path manifestsDir;
+   private final ObjectFilter objectFilter;
+
+   public ChunkStore(Path chunksDir, Path manifestsDir, ObjectFilter objectFilter) {
+      this.chunksDir = chunksDir;
+      this.manifestsDir = manifestsDir;
+      this.objectFilter = objectFilter;
+   }
+
+   public static boolean shouldChunk(long fileSize) {
+      return fileSize >= CHUNKING_THRESHOLD;
+   }
+
+   public boolean contains(ObjectId hash) {
+      GitStats.count(Counter.FILES_STATED);
+      return Files.exists(manifestsDir.resolve(hash.toHex()));
+   }
+
+   /**
+    * Chunks the file in place through memory-mapped windows and writes only the chunks that are not stored yet,
+    * so the file contents never reach the heap
+    * @return hash of the whole file content
+    */
+   public ObjectId add(Path file) throws GitException {
+      StreamingHasher contentHasher = MiniGitUtils.newStreamingHasher();
+      StringBuilder manifest = new StringBuilder();
+      long size;
+
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+         Files.createDirectories(chunksDir);
+         Files.createDirectories(manifestsDir);
+         size = channel.size();
+         GitStats.count(Counter.BYTES_READ, size);
+
+         long windowStart = 0;
+         while (windowStart < size) {
+            int windowSize = (int) Math.min(MiniGitUtils.MAPPING_WINDOW_SIZE, size - windowStart);
+            boolean lastWindow = windowStart + windowSize == size;
+            MappedByteBuffer window;
+            try (Timer ignored = GitStats.time(Phase.WORKTREE_READ)) {
+               window = channel.map(MapMode.READ_ONLY, windowStart, windowSize);
+            }
+
+            // a chunk cut short by the window end would not be content-defined, so the tail is mapped again
+            int offset = 0;
+            while (offset < windowSize && (lastWindow || windowSize - offset >= GearChunker.MAX_CHUNK_SIZE)) {
+               int length = GearChunker.nextChunkLength(window, offset, windowSize - offset);
+               ByteBuffer chunk = window.slice(offset, length);
+               contentHasher.update(chunk.duplicate());
+               ObjectId chunkHash = MiniGitUtils.getHashFromBytes(chunk.duplicate());
+               saveChunk(chunkHash, chunk);
+
+               chunkHash.appendHex(manifest).append(' ').append(length).append(System.lineSeparator());
+               offset += length;
+            }
+            windowStart += offset;
+         }
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+
+      ObjectId hash = contentHasher.finish();
+      String content = SIZE_PREFIX + size + System.lineSeparator() + manifest;
+      new ChunkedObjectFile(manifestsDir, hash, "manifest").save(objectFilter, content.getBytes(StandardCharsets.UTF_8));
+      return hash;
+   }
+
+   /**
+    * Reassembles a chunked blob in the working directory, holding at most one chunk copy buffer in memory
+    * @param filename path relative to the working directory, used in diagnostics
+    */
+   public void writeWorkingFile(ObjectId hash, Path fullPath, String filename) throws GitException {
+      WorktreeWriteEvent event = new WorktreeWriteEvent();
+      event.begin();
+
+      List<String> manifest = loadManifest(hash);
+      long expectedSize = Long.parseLong(manifest.get(0).substring(SIZE_PREFIX.length()));
+      long written = 0;
+
+      try (OutputStream output = Files.newOutputStream(fullPath)) {
+         for (String line : manifest.subList(1, manifest.size())) {
+            String chunkHash = line.substring(0, ObjectId.HEX_LENGTH);
+            long chunkSize = Files.copy(chunksDir.resolve(chunkHash), output);
+            GitStats.count(Counter.OBJECTS_READ);
+            GitStats.count(Counter.BYTES_READ, chunkSize);
+            written += chunkSize;
+         }
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+      GitStats.count(Counter.BYTES_WRITTEN, written);
+
+      if (written != expectedSize) {
+         throw new GitException(
+             "Chunked blob '" + hash + "' is corrupted: expected " + expectedSize + " bytes, got " + written
+         );
+      }
+
+      if (event.shouldCommit()) {
+         event.path = filename;
+         event.size = written;
+         event.commit();
+      }
+   }
+
+   /**
+    * Reassembles the whole content on the heap, for the rare readers that need it at once
+    */
+   public byte[] load(ObjectId hash) throws GitException {
+      List<String> manifest = loadManifest(hash);
+      long size = Long.parseLong(manifest.get(0).substring(SIZE_PREFIX.length()));
+      if (size > Integer.MAX_VALUE - 8) {
+         throw new GitException("Chunked blob '" + hash + "' of " + size + " bytes does not fit in memory");
+      }
+
+      byte[] content = new byte[(int) size];
+      int position = 0;
+      try {
+         for (String line : manifest.subList(1, manifest.size())) {
+            byte[] chunk = Files.readAllBytes(chunksDir.resolve(line.substring(0, ObjectId.HEX_LENGTH)));
+            GitStats.count(Counter.OBJECTS_READ);
+            GitStats.count(Counter.BYTES_READ, chunk.length);
+            if (position + chunk.length > content.length) {
+               throw new GitException("Chunked blob '" + hash + "' is corrupted: more than " + size + " bytes");
+            }
+            System.arraycopy(chunk, 0, content, position, chunk.length);
+            position += chunk.length;
+         }
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+
+      if (position != size) {
+         throw new GitException("Chunked blob '" + hash + "' is corrupted: expected " + size + " bytes, got " + position);
+      }
+      return content;
+   }
+
+   private List<String> loadManifest(ObjectId hash) throws GitException {
+      ObjectReadEvent event = new ObjectReadEvent();
+      event.begin();
+
+      List<String> lines;
+      try {
+         Path path = manifestsDir.resolve(hash.toHex());
+         lines = Files.readAllLines(path);
+         GitStats.count(Counter.OBJECTS_READ);
+         GitStats.count(Counter.BYTES_READ, Files.size(path));
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+      if (lines.isEmpty() || !lines.get(0).startsWith(SIZE_PREFIX)) {
+         throw new GitException("Chunked blob '" + hash + "' has a malformed manifest");
+      }
+
+      if (event.shouldCommit()) {
+         event.type = "manifest";
+         event.hash = hash.toHex();
+         event.size = lines.size() - 1;
+         event.commit();
+      }
+      return lines;
+   }
+
+   private void saveChunk(ObjectId hash, ByteBuffer content) throws GitException {
+      // chunks shared with stored versions are not written again
+      new ChunkedObjectFile(chunksDir, hash, "chunk").save(objectFilter, content);
+   }
+
+   private static class ChunkedObjectFile extends AbstractEditableFile {
+      private final String type;
+
+      ChunkedObjectFile(Path fullPathToDir, ObjectId hash, String type) {
+         this.filename = hash.toHex();
+         this.fullPath = fullPathToDir.resolve(filename);
+         this.type = type;
+      }
+
+      @Override
+      protected String getObjectType() {
+         return type;
+      }
+   }
+}
@@ -2,104 +2,270 @@ package ru.hse.mit.git.components.fs;
 
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.jfr.ObjectReadEvent;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
+import ru.hse.mit.git.components.stats.GitStats.Timer;
+import ru.hse.mit.git.components.stats.Phase;
 import ru.hse.mit.git.components.utils.MiniGitUtils;
+import ru.hse.mit.git.components.utils.ObjectId;
 
+/**
+ * Commit object, text of the form:
+ * <pre>
+ *    tree &lt;hex hash&gt;
+ *    parent &lt;hex hash&gt;     one line per parent, a single empty one for the first commit of the history
+ *    author &lt;name&gt;
+ *    date &lt;ISO offset date time&gt;
+ *    message &lt;message&gt;    everything up to the end of the file, line breaks included
+ * </pre>
+ * A loaded commit keeps its bytes and parses a header only when it is asked for, by scanning the lines before
+ * {@code message}, so walking the parents of a long history neither splits whole files into lines nor parses dates.
+ * Parsed values are cached in plain fields: racing threads parse the same immutable value at worst.
+ */
 public class CommitFile extends AbstractEditableFile {
-   private final String author;
-   private final OffsetDateTime date;
-   private final String message;
-   private final String rootNodeHash;
-   private final String parentCommitHash;
+   private static final byte[] TREE = "tree ".getBytes(StandardCharsets.US_ASCII);
+   private static final byte[] PARENT = "parent ".getBytes(StandardCharsets.US_ASCII);
+   private static final byte[] AUTHOR = "author ".getBytes(StandardCharsets.US_ASCII);
+   private static final byte[] DATE = "date ".getBytes(StandardCharsets.US_ASCII);
+   private static final byte[] MESSAGE = "message ".getBytes(StandardCharsets.US_ASCII);
 
-   public CommitFile(Path fullPath, @NotNull String rootNodeHash, @NotNull String parentCommitHash, @NotNull String author, @NotNull OffsetDateTime date, @NotNull String message) {
-      String content = getCommitFileContent(rootNodeHash, parentCommitHash, author, date, message);
+   private final ObjectId id;
+   // null for commits created in this process, whose fields are all set
+   private final byte[] content;
 
-      this.filename = MiniGitUtils.getHashFromBytes(content.getBytes());
+   private ObjectId rootNodeHash;
+   // empty for the first commit of the history
+   private List<ObjectId> parentCommitHashes;
+   private String author;
+   private OffsetDateTime date;
+   private String message;
+
+   public CommitFile(Path fullPath, @NotNull ObjectId rootNodeHash, @Nullable ObjectId parentCommitHash, @NotNull String author, @NotNull OffsetDateTime date, @NotNull String message) {
+      this(fullPath, rootNodeHash, parentCommitHash == null ? List.of() : List.of(parentCommitHash), author, date, message);
+   }
+
+   public CommitFile(Path fullPath, @NotNull ObjectId rootNodeHash, @NotNull List<ObjectId> parentCommitHashes, @NotNull String author, @NotNull OffsetDateTime date, @NotNull String message) {
+      byte[] content = getCommitFileContent(rootNodeHash, parentCommitHashes, author, date, message);
+
+      this.id = MiniGitUtils.getHashFromBytes(content);
+      this.filename = id.toHex();
       this.fullPath = Path.of(fullPath.toString(), filename);
+      this.content = null;
       this.rootNodeHash = rootNodeHash;
-      this.parentCommitHash = parentCommitHash;
+      this.parentCommitHashes = List.copyOf(parentCommitHashes);
       this.date = date;
       this.message = message;
       this.author = author;
    }
 
-   public CommitFile(String hash, Path fullPath, @NotNull String rootNodeHash, @NotNull String parentCommitHash, @NotNull String author, @NotNull OffsetDateTime date, @NotNull String message) {
-      this.filename = hash;
+   private CommitFile(ObjectId hash, Path fullPath, byte[] content) {
+      this.id = hash;
+      this.filename = hash.toHex();
       this.fullPath = Path.of(fullPath.toString(), filename);
-      this.rootNodeHash = rootNodeHash;
-      this.parentCommitHash = parentCommitHash;
-      this.date = date;
-      this.message = message;
-      this.author = author;
+      this.content = content;
+   }
+
+   public ObjectId getId() {
+      return id;
    }
 
-   public String getParentCommitHash() {
-      return parentCommitHash;
+   /**
+    * @return first parent, {@code null} for the first commit of the history
+    */
+   public ObjectId getParentCommitHash() throws GitException {
+      List<ObjectId> parents = getParentCommitHashes();
+      return parents.isEmpty() ? null : parents.get(0);
+   }
+
+   /**
+    * @return empty for the first commit of the history
+    */
+   public List<ObjectId> getParentCommitHashes() throws GitException {
+      if (parentCommitHashes == null) {
+         List<ObjectId> parents = new ArrayList<>(1);
+         int end = headersEnd();
+         for (int start = 0; start < end; start = nextLine(start)) {
+            if (startsWith(start, PARENT)) {
+               String value = headerValue(start + PARENT.length);
+               if (!value.isEmpty()) {
+                  parents.add(parseHash(value));
+               }
+            }
+         }
+         parentCommitHashes = List.copyOf(parents);
+      }
+      return parentCommitHashes;
    }
 
-   public String getRootNodeHash() {
+   public ObjectId getRootNodeHash() throws GitException {
+      if (rootNodeHash == null) {
+         rootNodeHash = parseHash(requireHeader(TREE));
+      }
       return rootNodeHash;
    }
 
-   public static CommitFile load(Path fullPath, String hash) throws GitException {
-      try {
-         List<String> lines = Files.readAllLines(Path.of(fullPath.toString(), hash));
+   public String getAuthor() throws GitException {
+      if (author == null) {
+         author = requireHeader(AUTHOR);
+      }
+      return author;
+   }
 
-         // root tree hash
-         String rootNodeHash = lines.get(0).split(" ")[1];
+   public OffsetDateTime getDate() throws GitException {
+      if (date == null) {
+         try {
+            date = OffsetDateTime.parse(requireHeader(DATE), DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+         } catch (DateTimeParseException e) {
+            throw new GitException("Commit '" + id + "' is corrupt", e);
+         }
+      }
+      return date;
+   }
 
-         // parent commit hash
-         String parentCommitHash = "";
-         String[] parentCommitHashLine = lines.get(1).split(" ");
-         if (parentCommitHashLine.length > 1) {
-            parentCommitHash = parentCommitHashLine[1];
+   public String getMessage() throws GitException {
+      if (message == null) {
+         int start = headersEnd();
+         if (start == content.length) {
+            throw new GitException("Commit '" + id + "' is corrupt");
          }
+         start += MESSAGE.length;
+         message = new String(content, start, content.length - start, StandardCharsets.UTF_8);
+      }
+      return message;
+   }
 
-         // author
-         String author = lines.get(2).split(" ")[1];
+   public static CommitFile load(Path fullPath, ObjectId hash) throws GitException {
+      ObjectReadEvent event = new ObjectReadEvent();
+      event.begin();
 
-         // date
-         DateTimeFormatter formatter = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
-         OffsetDateTime date = OffsetDateTime.parse(lines.get(3).split(" ")[1], formatter);
+      try (Timer ignored = GitStats.time(Phase.COMMIT_LOAD)) {
+         byte[] bytes = Files.readAllBytes(Path.of(fullPath.toString(), hash.toHex()));
+         GitStats.count(Counter.OBJECTS_READ);
+         GitStats.count(Counter.BYTES_READ, bytes.length);
 
-         // message
-         String message = lines.get(4).replaceFirst("message ", "");
+         if (event.shouldCommit()) {
+            event.type = "commit";
+            event.hash = hash.toHex();
+            event.size = bytes.length;
+            event.commit();
+         }
 
-         return new CommitFile(hash, fullPath, rootNodeHash, parentCommitHash, author, date, message);
+         return new CommitFile(hash, fullPath, bytes);
       } catch (IOException e) {
          throw new GitException(e.getMessage(), e.getCause());
       }
    }
 
-   public void save() throws GitException {
-      save(getCommitFileContent(rootNodeHash, parentCommitHash, author, date, message).getBytes());
+   @Override
+   protected String getObjectType() {
+      return "commit";
+   }
+
+   public void save(ObjectFilter filter) throws GitException {
+      save(filter, content != null
+          ? content
+          : getCommitFileContent(rootNodeHash, parentCommitHashes, author, date, message));
    }
 
-   public String getInfo() {
+   public String getInfo() throws GitException {
       return "Commit " + filename + System.lineSeparator()
-          + "Author: " + author + System.lineSeparator()
-          + "Date: " + date.toString() + System.lineSeparator()
-          + System.lineSeparator() + message + System.lineSeparator();
+          + "Author: " + getAuthor() + System.lineSeparator()
+          + "Date: " + getDate().toString() + System.lineSeparator()
+          + System.lineSeparator() + getMessage() + System.lineSeparator();
    }
 
-   private String getCommitFileContent(String rootNodeHash, String parentCommitHash, String author, OffsetDateTime date, String message) {
+   /**
+    * UTF-8 with {@code \n} line breaks whatever the platform, so that a commit has the same hash everywhere
+    */
+   private static byte[] getCommitFileContent(ObjectId rootNodeHash, List<ObjectId> parentCommitHashes, String author, OffsetDateTime date, String message) {
       DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssXXX");
       String formattedDate = date.format(formatter);
 
-      return
-          "tree " + rootNodeHash + System.lineSeparator() +
-          "parent " + parentCommitHash + System.lineSeparator() +
-          "author " + author + System.lineSeparator() +
-          "date " + formattedDate + System.lineSeparator() +
+      StringBuilder parents = new StringBuilder();
+      if (parentCommitHashes.isEmpty()) {
+         parents.append("parent ").append('\n');
+      }
+      for (ObjectId parent : parentCommitHashes) {
+         parents.append("parent ").append(parent.toHex()).append('\n');
+      }
+
+      String content =
+          "tree " + rootNodeHash.toHex() + '\n' +
+          parents +
+          "author " + author + '\n' +
+          "date " + formattedDate + '\n' +
           "message " + message;
+      return content.getBytes(StandardCharsets.UTF_8);
+   }
+
+   /**
+    * @return value of the first header with the key, up to the end of its line
+    */
+   private String requireHeader(byte[] key) throws GitException {
+      int end = headersEnd();
+      for (int start = 0; start < end; start = nextLine(start)) {
+         if (startsWith(start, key)) {
+            return headerValue(start + key.length);
+         }
+      }
+      throw new GitException("Commit '" + id + "' is corrupt");
+   }
+
+   /**
+    * @return offset of the {@code message} line, the length of the content if there is none
+    */
+   private int headersEnd() {
+      for (int start = 0; start < content.length; start = nextLine(start)) {
+         if (startsWith(start, MESSAGE)) {
+            return start;
+         }
+      }
+      return content.length;
+   }
+
+   private int nextLine(int start) {
+      for (int i = start; i < content.length; i++) {
+         if (content[i] == '\n') {
+            return i + 1;
+         }
+      }
+      return content.length;
+   }
+
+   private boolean startsWith(int start, byte[] key) {
+      return content.length - start >= key.length
+          && Arrays.equals(content, start, start + key.length, key, 0, key.length);
+   }
+
+   private String headerValue(int start) {
+      int end = nextLine(start);
+      if (end > start && content[end - 1] == '\n') {
+         end--;
+      }
+      if (end > start && content[end - 1] == '\r') {
+         end--;
+      }
+      return new String(content, start, end - start, StandardCharsets.UTF_8);
+   }
+
+   private ObjectId parseHash(String hex) throws GitException {
+      try {
+         return ObjectId.fromHex(hex);
+      } catch (IllegalArgumentException e) {
+         throw new GitException("Commit '" + id + "' is corrupt", e);
+      }
    }
 }
@@ -0,0 +1,32 @@
+package ru.hse.mit.git.components.fs;
+
+import java.util.Locale;
+import ru.hse.mit.git.GitException;
+
+/**
+ * How much of the work of a command survives a crash of the machine, see {@link FileSync}
+ */
+public enum Durability {
+   /**
+    * Nothing is synced: a crash may lose the last commands, or leave a branch pointing at objects that never
+    * reached the disk
+    */
+   NONE,
+   /**
+    * New objects are synced all together, with their directories, before the first ref, HEAD or index update
+    * that follows them; the updated files are synced before they replace the old ones and their directories after
+    */
+   BATCH,
+   /**
+    * Like {@link #BATCH}, but every object is synced with its directory as soon as it is written
+    */
+   STRICT;
+
+   public static Durability parse(String name) throws GitException {
+      try {
+         return valueOf(name.toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+         throw new GitException("Unknown durability level: '" + name + "', expected none, batch or strict");
+      }
+   }
+}
@@ -0,0 +1,232 @@
+package ru.hse.mit.git.components.fs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
+import ru.hse.mit.git.components.stats.GitStats.Timer;
+import ru.hse.mit.git.components.stats.Phase;
+
+/**
+ * Syncs written files to disk according to the {@link Durability} level.
+ * <p>
+ * Objects never change once written, so it is enough that they reach the disk before anything refers to them.
+ * In batch mode new objects are only remembered, and {@link #syncPending()} syncs them at once: the files
+ * in parallel, which lets the file system commit them in a few journal transactions, then each of their
+ * directories once. Files replaced through {@link LockFile} (branches, HEAD, the index) call it before
+ * the replacement, so they never point at objects that are not on disk yet.
+ * <p>
+ * The level is set per command with {@link #withDurability(Durability)}, which also starts the set of objects
+ * pending for the command, so commands running concurrently in one process, as in the server, never sync
+ * each other's objects: a command that found its objects already drained by another one could otherwise
+ * replace its files while those objects are still being synced. Work that a command hands to other threads
+ * binds the command with {@link #bind(Command)}.
+ */
+public final class FileSync {
+   // command running on the thread, threads outside of any command have one of their own
+   private static final ThreadLocal<Command> command = ThreadLocal.withInitial(() -> new Command(Durability.BATCH));
+
+   private FileSync() {}
+
+   /**
+    * @return level of the current thread, {@link Durability#BATCH} unless set
+    */
+   public static Durability getDurability() {
+      return command.get().durability;
+   }
+
+   /**
+    * Starts a command with its own pending objects on the current thread until the scope is closed.
+    * Usage: {@code try (Scope ignored = FileSync.withDurability(level)) { ... }}
+    */
+   public static Scope withDurability(Durability value) {
+      return bind(new Command(value));
+   }
+
+   /**
+    * @return command of the current thread, to be bound by the work it hands to other threads
+    */
+   public static Command current() {
+      return command.get();
+   }
+
+   /**
+    * Accounts the objects written by the current thread to {@code value} until the scope is closed.
+    * Usage: {@code try (Scope ignored = FileSync.bind(command)) { ... }}
+    * @param value command taken by {@link #current()} on the thread that created the work
+    */
+   public static Scope bind(Command value) {
+      Command previous = command.get();
+      command.set(value);
+      return () -> command.set(previous);
+   }
+
+   /**
+    * Called once a new object is written through {@code channel} to a temporary file, before the channel is closed
+    * @param file where the object is moved to
+    */
+   static void objectWritten(Path file, FileChannel channel) throws IOException {
+      Command current = command.get();
+      switch (current.durability) {
+         case STRICT -> {
+            try (Timer ignored = GitStats.time(Phase.SYNC)) {
+               channel.force(true);
+               GitStats.count(Counter.FILES_SYNCED);
+            }
+         }
+         case BATCH -> current.pendingFiles.add(file);
+         case NONE -> {}
+      }
+   }
+
+   /**
+    * Called once the object is moved into place, in batch mode its directory is synced with the object
+    */
+   static void objectMoved(Path file) throws IOException {
+      if (command.get().durability == Durability.STRICT) {
+         try (Timer ignored = GitStats.time(Phase.SYNC)) {
+            syncDirectory(file.getParent());
+         }
+      }
+   }
+
+   /**
+    * Same as {@link #objectWritten(Path, FileChannel)} for objects written by other means, e.g. copied
+    */
+   public static void fileWritten(Path file) throws GitException {
+      Command current = command.get();
+      if (current.durability == Durability.NONE) {
+         return;
+      }
+
+      current.pendingFiles.add(file);
+      if (current.durability == Durability.STRICT) {
+         syncPending();
+      }
+   }
+
+   /**
+    * For hard links, whose content is already on disk: only the new directory entry is synced
+    */
+   public static void fileLinked(Path file) throws GitException {
+      Command current = command.get();
+      if (current.durability == Durability.NONE) {
+         return;
+      }
+
+      current.pendingDirectories.add(file.getParent());
+      if (current.durability == Durability.STRICT) {
+         syncPending();
+      }
+   }
+
+   /**
+    * Syncs the objects the command of the current thread has written so far and their directories
+    */
+   public static void syncPending() throws GitException {
+      Command current = command.get();
+      if (current.pendingFiles.isEmpty() && current.pendingDirectories.isEmpty()) {
+         return;
+      }
+
+      try (Timer ignored = GitStats.time(Phase.SYNC)) {
+         List<Path> files = drain(current.pendingFiles);
+         Set<Path> directories = new HashSet<>(drain(current.pendingDirectories));
+         files.forEach(file -> directories.add(file.getParent()));
+
+         GitStats.Collector stats = GitStats.current();
+         files.parallelStream().forEach(file -> {
+            try (GitStats.Scope ignoredScope = GitStats.bind(stats);
+                 FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+               channel.force(true);
+               GitStats.count(Counter.FILES_SYNCED);
+            } catch (IOException e) {
+               throw new UncheckedIOException(e);
+            }
+         });
+         for (Path directory : directories) {
+            syncDirectory(directory);
+         }
+      } catch (UncheckedIOException e) {
+         throw new GitException(e.getCause().getMessage(), e.getCause());
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+   }
+
+   /**
+    * Called by {@link LockFile} before the new content in {@code channel} replaces the target
+    */
+   static void beforeReplace(FileChannel channel) throws GitException, IOException {
+      if (command.get().durability == Durability.NONE) {
+         return;
+      }
+
+      syncPending();
+      try (Timer ignored = GitStats.time(Phase.SYNC)) {
+         channel.force(true);
+         GitStats.count(Counter.FILES_SYNCED);
+      }
+   }
+
+   /**
+    * Called by {@link LockFile} after the target is replaced, so that the rename itself is on disk
+    */
+   static void afterReplace(Path target) throws IOException {
+      if (command.get().durability == Durability.NONE) {
+         return;
+      }
+
+      try (Timer ignored = GitStats.time(Phase.SYNC)) {
+         syncDirectory(target.toAbsolutePath().getParent());
+      }
+   }
+
+   private static void syncDirectory(Path directory) throws IOException {
+      try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+         channel.force(true);
+         GitStats.count(Counter.DIRS_SYNCED);
+      } catch (AccessDeniedException e) {
+         // directories cannot be opened on Windows, where file metadata is written through anyway
+      }
+   }
+
+   private static List<Path> drain(Set<Path> paths) {
+      List<Path> result = new ArrayList<>();
+      for (Iterator<Path> iterator = paths.iterator(); iterator.hasNext(); ) {
+         result.add(iterator.next());
+         iterator.remove();
+      }
+      return result;
+   }
+
+   /**
+    * Durability level of a command and the objects it has written that are not synced yet
+    */
+   public static final class Command {
+      private final Durability durability;
+      private final Set<Path> pendingFiles = ConcurrentHashMap.newKeySet();
+      private final Set<Path> pendingDirectories = ConcurrentHashMap.newKeySet();
+
+      private Command(Durability durability) {
+         this.durability = durability;
+      }
+   }
+
+   @FunctionalInterface
+   public interface Scope extends AutoCloseable {
+      @Override
+      void close();
+   }
+}
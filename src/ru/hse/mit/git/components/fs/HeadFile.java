@@ -1,30 +1,49 @@
 package ru.hse.mit.git.components.fs;
 
-
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Objects;
 import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
 import ru.hse.mit.git.components.graph.TreeNode;
+import ru.hse.mit.git.components.utils.LruCache;
+import ru.hse.mit.git.components.utils.ObjectId;
 
 public class HeadFile extends AbstractEditableFile {
-   private final Path branchesDir;
+   private final RefDatabase refs;
    private final Path commitsDir;
    private final Path treesDir;
-
-   public HeadFile(String filename, Path fullPath, Path branchesPath, Path commitsPath, Path treesPath) {
+   private final ObjectFilter objectFilter;
+
+   private static final int COMMIT_CACHE_SIZE = 4096;
+   private static final int TREE_CACHE_SIZE = 16;
+
+   // commits and trees are immutable, so parsed objects can be reused for as long as this instance lives
+   private final LruCache<ObjectId, CommitFile> commitCache = new LruCache<>(COMMIT_CACHE_SIZE);
+   private final LruCache<TreeKey, TreeNode> treeCache = new LruCache<>(TREE_CACHE_SIZE);
+
+   public HeadFile(
+       String filename,
+       Path fullPath,
+       RefDatabase refs,
+       Path commitsPath,
+       Path treesPath,
+       ObjectFilter objectFilter
+   ) {
       this.filename = filename;
       this.fullPath = fullPath;
-      this.branchesDir = branchesPath;
+      this.refs = refs;
       this.commitsDir = commitsPath;
       this.treesDir = treesPath;
+      this.objectFilter = objectFilter;
    }
 
    public String getCurrentBranch() throws GitException {
       if (isDetached()) {
-         return getCurrentCommitHash();
+         return getCurrentCommitHash().toHex();
       }
       else {
          String line = loadFileFromDisk().get(0);
@@ -41,87 +60,131 @@ public class HeadFile extends AbstractEditableFile {
       setContentImmediately(content.getBytes());
    }
 
-   public String getCurrentCommitHash() throws GitException {
+   /**
+    * @return {@code null} if nothing was committed yet
+    */
+   public ObjectId getCurrentCommitHash() throws GitException {
       if (isDetached()) {
          try {
-            return Files.readString(fullPath);
+            return parseCommitHash(Files.readString(fullPath));
          } catch (IOException e) {
             throw new GitException(e);
          }
       }
       else {
-         try {
-            File branch = getBranchFile();
-            return Files.readString(branch.toPath());
-         } catch (IOException e) {
-            throw new GitException(e.getMessage(), e.getCause());
-         }
+         return refs.resolve(getBranchName());
       }
    }
 
-   public void setCurrentCommitAsDetached(String commitHash) throws GitException {
-      setContentImmediately(commitHash.getBytes());
+   public void setCurrentCommitAsDetached(ObjectId commitHash) throws GitException {
+      setContentImmediately(commitHash.toHex().getBytes());
    }
 
-   public void setCurrentCommit(String commitHash) throws GitException {
+   /**
+    * Moves the current branch, or the detached HEAD, to the commit, provided that it still points
+    * to {@code expectedHash}. Otherwise another process has moved it in the meantime and its update would be lost
+    * @param expectedHash commit read before the update was prepared, {@code null} if nothing was committed yet
+    */
+   public void setCurrentCommit(ObjectId commitHash, ObjectId expectedHash) throws GitException {
       if (!commitExists(commitHash)) {
          throw new GitException("Commit '" + commitHash + "' does not exist");
       }
 
-      if (isDetached()) {
-         setContentImmediately(commitHash.getBytes());
+      if (!isDetached()) {
+         refs.compareAndSet(getBranchName(), expectedHash, commitHash);
+         return;
       }
-      else {
-         try {
-            File branch = getBranchFile();
-            Files.write(branch.toPath(), commitHash.getBytes());
-         } catch (IOException e) {
-            throw new GitException(e);
+
+      try (LockFile lock = LockFile.acquire(fullPath)) {
+         ObjectId actualHash = parseCommitHash(Files.readString(fullPath));
+         if (!Objects.equals(actualHash, expectedHash)) {
+            throw new GitException(
+                "HEAD was updated by another process: expected " + expectedHash + ", found " + actualHash
+            );
          }
+         lock.commit(commitHash.toHex().getBytes());
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      } finally {
+         invalidateSnapshot();
       }
    }
 
-   public String getShiftedCommitHash(int shift) throws GitException {
-      String currentCommitHash = getCurrentCommitHash();
+   public ObjectId getShiftedCommitHash(int shift) throws GitException {
+      return getShiftedCommitHash(getCurrentCommitHash(), shift);
+   }
+
+   /**
+    * @param headHash HEAD as read by the caller, so that the result and the caller agree on it
+    */
+   public ObjectId getShiftedCommitHash(ObjectId headHash, int shift) throws GitException {
+      ObjectId currentCommitHash = headHash;
 
       int n = shift;
       while (n > 0) {
-         if (currentCommitHash.isEmpty()) {
+         if (currentCommitHash == null) {
             break;
          }
 
-         CommitFile commit = CommitFile.load(commitsDir, currentCommitHash);
+         CommitFile commit = loadCommit(currentCommitHash);
          currentCommitHash = commit.getParentCommitHash();
 
          n--;
       }
 
-      if (currentCommitHash.isEmpty()) {
+      if (currentCommitHash == null) {
          throw new GitException("No commit found associated with HEAD~" + shift);
       }
 
       return currentCommitHash;
    }
 
+   public CommitFile loadCommit(ObjectId commitHash) throws GitException {
+      CommitFile commit = commitCache.get(commitHash);
+      if (commit == null) {
+         commit = CommitFile.load(commitsDir, commitHash);
+         commitCache.put(commitHash, commit);
+      }
+
+      return commit;
+   }
+
+   /**
+    * The returned tree may be shared with other callers and must not be modified
+    */
    public TreeNode loadTree() throws GitException {
-      if (getCurrentCommitHash().isEmpty()) {
+      return loadTree(SparseCheckout.FULL);
+   }
+
+   /**
+    * Same as {@link #loadTree()}, with the subtrees outside of the sparse checkout collapsed
+    */
+   public TreeNode loadTree(SparseCheckout sparseCheckout) throws GitException {
+      ObjectId currentCommitHash = getCurrentCommitHash();
+      if (currentCommitHash == null) {
          return TreeNode.createRoot();
       }
 
-      CommitFile currentCommit = CommitFile.load(commitsDir, getCurrentCommitHash());
+      TreeKey key = new TreeKey(loadCommit(currentCommitHash).getRootNodeHash(), sparseCheckout);
+      TreeNode root = treeCache.get(key);
+      if (root == null) {
+         root = TreeNode.loadTree(treesDir, key.rootNodeHash(), sparseCheckout);
+         treeCache.put(key, root);
+      }
 
-      return TreeNode.loadTree(
-          treesDir,
-          currentCommit.getRootNodeHash()
-      );
+      return root;
    }
 
-   public boolean branchExists(String branchName) {
-      return Files.exists(Path.of(branchesDir.toString(), branchName));
+   public boolean branchExists(String branchName) throws GitException {
+      return refs.exists(branchName);
    }
 
-   public boolean commitExists(String commitHash) {
-      return Files.exists(Path.of(commitsDir.toString(), commitHash));
+   public boolean commitExists(ObjectId commitHash) throws GitException {
+      if (!objectFilter.mightContain(commitHash)) {
+         return false;
+      }
+      GitStats.count(Counter.FILES_STATED);
+      return Files.exists(Path.of(commitsDir.toString(), commitHash.toHex()));
    }
 
    public boolean isDetached() throws GitException {
@@ -135,7 +198,14 @@ public class HeadFile extends AbstractEditableFile {
       return false;
    }
 
-   private File getBranchFile() throws GitException {
+   private ObjectId parseCommitHash(String content) {
+      GitStats.count(Counter.BYTES_READ, content.length());
+      return content.isEmpty() ? null : ObjectId.fromHex(content);
+   }
+
+   private record TreeKey(ObjectId rootNodeHash, SparseCheckout sparseCheckout) {}
+
+   private String getBranchName() throws GitException {
       List<String> lines = loadFileFromDisk();
       List<String> data = List.of(lines.get(0).split(" "));
 
@@ -143,16 +213,6 @@ public class HeadFile extends AbstractEditableFile {
          throw new GitException("HEAD is not on branch: " + lines.get(0));
       }
 
-      String branchName = data.get(1);
-      File branchFile = Path.of(branchesDir.toString(), branchName).toFile();
-      if (!branchFile.exists()) {
-         try {
-            Files.createFile(branchFile.toPath());
-         } catch (IOException e) {
-            throw new GitException(e.getMessage(), e.getCause());
-         }
-      }
-
-      return branchFile;
+      return data.get(1);
    }
 }
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -11,76 +12,175 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.stream.Stream;
+import java.util.stream.Collectors;
 import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.ignore.IgnoreRules;
+import ru.hse.mit.git.components.jfr.IndexLoadEvent;
+import ru.hse.mit.git.components.jfr.IndexSaveEvent;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
+import ru.hse.mit.git.components.stats.GitStats.Timer;
+import ru.hse.mit.git.components.stats.Phase;
 import ru.hse.mit.git.components.utils.MiniGitUtils;
+import ru.hse.mit.git.components.utils.ObjectId;
 
 public class IndexFile extends AbstractEditableFile {
+   /**
+    * Marks an entry that stands for a whole directory outside of the sparse checkout, whose hash is
+    * the hash of its tree
+    */
+   public static final String SPARSE_DIRECTORY_SUFFIX = "/";
+
    public enum FileStatus {
       MODIFIED,
       NEW,
       DELETED
    }
-   private final Map<String, String> entries = new HashMap<>();
+   // entries loaded from disk are published as a new map and never modified, so a command reading them
+   // is not disturbed by a concurrent command loading the index again; edits are made on a private copy
+   private volatile Map<String, ObjectId> entries = new HashMap<>();
+   // lines the current entries were parsed from, {@code null} once entries are edited in memory
+   private List<String> parsedLines;
 
    public IndexFile(String filename, Path fullPath) {
       this.filename = filename;
       this.fullPath = fullPath;
    }
 
-   public Set<Entry<String, String>> getEntries() {
+   public Set<Entry<String, ObjectId>> getEntries() {
       return entries.entrySet();
    }
 
-   public void load() throws GitException {
-      entries.clear();
-      List<String> lines = loadFileFromDisk();
+   public synchronized void load() throws GitException {
+      IndexLoadEvent event = new IndexLoadEvent();
+      event.begin();
+
+      boolean cached;
+      try (Timer ignored = GitStats.time(Phase.INDEX_LOAD)) {
+         List<String> lines = loadFileFromDisk();
+         cached = lines == parsedLines;
+
+         if (!cached) {
+            Map<String, ObjectId> loaded = new HashMap<>();
+            for (String line : lines) {
+               String[] keyVal = line.split(" ");
+               loaded.put(keyVal[0], ObjectId.fromHex(keyVal[1]));
+            }
+            entries = loaded;
+            parsedLines = lines;
+         }
+      }
 
-      for (String line : lines) {
-         String[] keyVal = line.split(" ");
-         entries.put(keyVal[0], keyVal[1]);
+      if (event.shouldCommit()) {
+         event.entries = entries.size();
+         event.cached = cached;
+         event.commit();
       }
    }
 
    public void save() throws GitException {
-      List<String> lines = entries.entrySet().stream().map(entry -> entry.getKey() + " " + entry.getValue()).toList();
-      saveFileOnDisk(lines);
+      IndexSaveEvent event = new IndexSaveEvent();
+      event.begin();
+
+      try (Timer ignored = GitStats.time(Phase.INDEX_SAVE)) {
+         List<String> lines = entries.entrySet().stream().map(entry -> entry.getKey() + " " + entry.getValue().toHex()).toList();
+         saveFileOnDisk(lines);
+      }
+
+      if (event.shouldCommit()) {
+         event.entries = entries.size();
+         event.commit();
+      }
+   }
+
+   public synchronized void addEntry(String entryName, ObjectId entryHash) {
+      editableEntries().put(entryName, entryHash);
    }
 
-   public void addEntry(String entryName, String entryHash) {
-      entries.put(entryName, entryHash);
+   public synchronized void removeEntry(String entryName) {
+      editableEntries().remove(entryName);
    }
 
-   public void removeEntry(String entryName) {
-      entries.remove(entryName);
+   public synchronized void setEntries(Map<String, ObjectId> newEtries) {
+      parsedLines = null;
+      entries = new HashMap<>(newEtries);
    }
 
-   public void setEntries(Map<String, String> newEtries) {
-      entries.clear();
-      entries.putAll(newEtries);
+   /**
+    * Entries loaded from disk may be read by other commands, the first edit copies them
+    */
+   private Map<String, ObjectId> editableEntries() {
+      if (parsedLines != null) {
+         parsedLines = null;
+         entries = new HashMap<>(entries);
+      }
+      return entries;
+   }
+
+   public static boolean isSparseDirectory(String entryName) {
+      return entryName.endsWith(SPARSE_DIRECTORY_SUFFIX);
    }
 
-   public void saveTrackedFilesToWorkingDir(Path workingDir, Path blobsDir) throws GitException {
-      for (var entry : entries.entrySet()) {
-         String filename = entry.getKey();
-         String hash = entry.getValue();
+   public void saveTrackedFilesToWorkingDir(Path workingDir, Path blobsDir, ChunkStore chunkStore) throws GitException {
+      try (Timer ignored = GitStats.time(Phase.WORKTREE_WRITE)) {
+         for (var entry : entries.entrySet()) {
+            String filename = entry.getKey();
+            ObjectId hash = entry.getValue();
+            if (isSparseDirectory(filename)) {
+               continue;
+            }
 
-         try {
-            Path path = Path.of(workingDir.toString(), filename);
-            if (!Files.exists(path)) {
-               Files.createDirectories(path.getParent());
-               Files.createFile(path);
+            try {
+               Path path = Path.of(workingDir.toString(), filename);
+               GitStats.count(Counter.FILES_STATED);
+               if (!Files.exists(path)) {
+                  Files.createDirectories(path.getParent());
+                  Files.createFile(path);
+               }
+               BlobFile.writeWorkingFile(blobsDir, chunkStore, hash, path, filename);
+            } catch (IOException e) {
+               throw new GitException(e.getMessage(), e.getCause());
             }
-            Files.write(path, Files.readAllBytes(Path.of(blobsDir.toString(), hash)));
-         } catch (IOException e) {
-            throw new GitException(e.getMessage(), e.getCause());
          }
       }
    }
 
-   public Map<FileStatus, List<String>> getUntrackedFiles(Path workingDir, Path exclude) throws GitException {
-      Collection<String> indexFiles = entries.keySet();
-      Collection<String> workingDirFiles = getFilesFromWorkingDirectory(workingDir, exclude);
+   /**
+    * Writes the tracked files into a working directory that does not have them yet, like a fresh clone.
+    * Files are written in parallel and copied from the stored blobs without being read
+    */
+   public void checkoutToEmptyWorkingDir(Path workingDir, Path blobsDir, ChunkStore chunkStore) throws GitException {
+      GitStats.Collector stats = GitStats.current();
+      try (Timer ignored = GitStats.time(Phase.WORKTREE_WRITE)) {
+         entries.entrySet().parallelStream()
+             .filter(entry -> !isSparseDirectory(entry.getKey()))
+             .forEach(entry -> {
+                String filename = entry.getKey();
+                Path path = Path.of(workingDir.toString(), filename);
+                try (GitStats.Scope ignoredScope = GitStats.bind(stats)) {
+                   Files.createDirectories(path.getParent());
+                   BlobFile.copyToWorkingFile(blobsDir, chunkStore, entry.getValue(), path, filename);
+                } catch (IOException | GitException e) {
+                   throw new IllegalStateException(e.getMessage(), e);
+                }
+             });
+      } catch (IllegalStateException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+   }
+
+   public Map<FileStatus, List<String>> getUntrackedFiles(
+       WorktreeScanner scanner,
+       IgnoreRules ignoreRules,
+       SparseCheckout sparseCheckout
+   ) throws GitException {
+      Path workingDir = scanner.getWorkingDir();
+      Map<String, ObjectId> entries = this.entries;
+      // directories outside of the sparse checkout are neither listed nor compared
+      Collection<String> indexFiles = entries.keySet().stream()
+          .filter(filename -> !isSparseDirectory(filename))
+          .collect(Collectors.toSet());
+      Collection<String> workingDirFiles = scanner.scan(ignoreRules, sparseCheckout);
       Map<FileStatus, List<String>> result = Map.of(
           FileStatus.MODIFIED, new ArrayList<>(),
           FileStatus.NEW, new ArrayList<>(),
@@ -94,10 +194,14 @@ public class IndexFile extends AbstractEditableFile {
       for (String filename : allFiles) {
          boolean indexFileContains = indexFiles.contains(filename);
          boolean workingDirContains = workingDirFiles.contains(filename);
+         if (indexFileContains && !workingDirContains) {
+            // tracked files stay tracked in ignored directories, which the walk does not enter
+            GitStats.count(Counter.FILES_STATED);
+            workingDirContains = Files.isRegularFile(Path.of(workingDir.toString(), filename));
+         }
 
          if (indexFileContains && workingDirContains) {
-            byte[] workingDirFileBytes = MiniGitUtils.getFileBytes(Path.of(workingDir.toString(), filename));
-            String workingDirFileHash = MiniGitUtils.getHashFromBytes(workingDirFileBytes);
+            ObjectId workingDirFileHash = MiniGitUtils.getHashFromFile(Path.of(workingDir.toString(), filename));
 
             if (!entries.get(filename).equals(workingDirFileHash)) {
                result.get(FileStatus.MODIFIED).add(filename);
@@ -114,7 +218,8 @@ public class IndexFile extends AbstractEditableFile {
       return result;
    }
 
-   public Map<FileStatus, List<String>> getReadyToCommitFiles(Map<String, String> repoEntries) {
+   public Map<FileStatus, List<String>> getReadyToCommitFiles(Map<String, ObjectId> repoEntries) {
+      Map<String, ObjectId> entries = this.entries;
       Collection<String> indexFiles = entries.keySet();
       Collection<String> repoFiles = repoEntries.keySet();
 
@@ -133,8 +238,8 @@ public class IndexFile extends AbstractEditableFile {
          boolean repoContainsFile = repoFiles.contains(filename);
 
          if (indexContainsFile && repoContainsFile) {
-            String indexHash = entries.get(filename);
-            String repoHash = repoEntries.get(filename);
+            ObjectId indexHash = entries.get(filename);
+            ObjectId repoHash = repoEntries.get(filename);
 
             if (!indexHash.equals(repoHash)) {
                result.get(FileStatus.MODIFIED).add(filename);
@@ -151,27 +256,126 @@ public class IndexFile extends AbstractEditableFile {
       return result;
    }
 
-   public Set<String> getFilesFromWorkingDirectory(Path workingDir, Path exclude) throws GitException {
-      Set<String> result = new HashSet<>();
+   /**
+    * Receives the status of the paths, one at a time
+    */
+   public interface StatusVisitor {
+      /**
+       * @param staged status of the index entry against the commit, {@code null} if unchanged
+       * @param unstaged status of the working directory file against the index entry, {@code null} if unchanged
+       */
+      void tracked(String path, FileStatus staged, FileStatus unstaged) throws GitException;
 
-      try (Stream<Path> files = Files.walk(workingDir)) {
-         files.forEach(path -> {
-            if (path.toFile().isDirectory() || path.toString().startsWith(exclude.toString())) {
-               return;
-            }
+      void untracked(String path) throws GitException;
+   }
 
-            String trimmedPath = path.toString().replace(workingDir.toString(), "");
-            if (trimmedPath.isEmpty()) {
-               return;
+   /**
+    * Streaming counterpart of {@link #getUntrackedFiles} and {@link #getReadyToCommitFiles}: the working directory
+    * is walked in path order and merged with the sorted paths of the index and the commit, so every path is passed
+    * to the visitor as soon as it is classified, in path order, and the files of the working directory are never
+    * collected
+    * @param repoEntries entries of the commit, with directories outside of the sparse checkout collapsed
+    */
+   public void visitStatus(
+       WorktreeScanner scanner,
+       IgnoreRules ignoreRules,
+       SparseCheckout sparseCheckout,
+       Map<String, ObjectId> repoEntries,
+       StatusVisitor visitor
+   ) throws GitException {
+      Map<String, ObjectId> entries = this.entries;
+      Set<String> trackedFiles = new HashSet<>(entries.keySet());
+      trackedFiles.addAll(repoEntries.keySet());
+      String[] tracked = trackedFiles.toArray(String[]::new);
+      Arrays.sort(tracked);
+
+      StatusMerge merge = new StatusMerge(scanner.getWorkingDir(), tracked, entries, repoEntries, visitor);
+      scanner.walk(ignoreRules, sparseCheckout, merge);
+      merge.finish();
+   }
+
+   private static class StatusMerge implements WorktreeScanner.FileVisitor {
+      private final Path workingDir;
+      private final String[] tracked;
+      private final Map<String, ObjectId> indexEntries;
+      private final Map<String, ObjectId> repoEntries;
+      private final StatusVisitor visitor;
+      private int next = 0;
+
+      StatusMerge(
+          Path workingDir,
+          String[] tracked,
+          Map<String, ObjectId> indexEntries,
+          Map<String, ObjectId> repoEntries,
+          StatusVisitor visitor
+      ) {
+         this.workingDir = workingDir;
+         this.tracked = tracked;
+         this.indexEntries = indexEntries;
+         this.repoEntries = repoEntries;
+         this.visitor = visitor;
+      }
+
+      @Override
+      public void visit(String path) throws GitException {
+         while (next < tracked.length && tracked[next].compareTo(path) < 0) {
+            visitTracked(tracked[next++], false);
+         }
+         if (next < tracked.length && tracked[next].equals(path)) {
+            visitTracked(tracked[next++], true);
+         }
+         else {
+            visitor.untracked(path);
+         }
+      }
+
+      void finish() throws GitException {
+         while (next < tracked.length) {
+            visitTracked(tracked[next++], false);
+         }
+      }
+
+      /**
+       * @param walked whether the walk has found the file, tracked files are not found in ignored directories
+       */
+      private void visitTracked(String path, boolean walked) throws GitException {
+         ObjectId indexHash = indexEntries.get(path);
+         ObjectId repoHash = repoEntries.get(path);
+         FileStatus staged;
+         if (indexHash == null) {
+            staged = FileStatus.DELETED;
+         }
+         else if (repoHash == null) {
+            staged = FileStatus.NEW;
+         }
+         else {
+            staged = indexHash.equals(repoHash) ? null : FileStatus.MODIFIED;
+         }
+
+         FileStatus unstaged = null;
+         if (indexHash != null && !isSparseDirectory(path)) {
+            Path file = Path.of(workingDir.toString(), path);
+            boolean exists = walked;
+            if (!walked) {
+               GitStats.count(Counter.FILES_STATED);
+               exists = Files.isRegularFile(file);
             }
 
-            trimmedPath = trimmedPath.substring(1).replace("\\", "/");
-            result.add(trimmedPath);
-         });
+            if (!exists) {
+               unstaged = FileStatus.DELETED;
+            }
+            else if (!indexHash.equals(MiniGitUtils.getHashFromFile(file))) {
+               unstaged = FileStatus.MODIFIED;
+            }
+         }
 
-         return result;
-      } catch (IOException e) {
-         throw new GitException(e.getMessage(), e.getCause());
+         if (staged != null || unstaged != null) {
+            visitor.tracked(path, staged, unstaged);
+         }
+         // removed from the index, but still in the working directory
+         if (indexHash == null && walked) {
+            visitor.untracked(path);
+         }
       }
    }
-}
\ No newline at end of file
+}
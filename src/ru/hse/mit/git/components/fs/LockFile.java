@@ -0,0 +1,157 @@
+package ru.hse.mit.git.components.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
+
+/**
+ * Exclusive lock on a repository file, held as {@code <file>.lock} next to it.
+ * <p>
+ * New content is written into the lock file, synced and renamed over the target, so readers see
+ * either the old or the new content and never a partial write. Whoever fails to create the lock file
+ * retries with exponential backoff and gives up after {@link #TIMEOUT_MILLIS}, so concurrent processes wait
+ * for each other only as long as their writes take, and a lock left behind by a crashed process is reported
+ * instead of blocking forever.
+ */
+public class LockFile implements AutoCloseable {
+   public static final String LOCK_SUFFIX = ".lock";
+
+   private static final long TIMEOUT_MILLIS = 10_000;
+   private static final long INITIAL_BACKOFF_MILLIS = 2;
+   private static final long MAX_BACKOFF_MILLIS = 100;
+
+   private final Path target;
+   private final Path lockPath;
+   private final FileChannel channel;
+   private boolean released = false;
+
+   private LockFile(Path target, Path lockPath, FileChannel channel) {
+      this.target = target;
+      this.lockPath = lockPath;
+      this.channel = channel;
+   }
+
+   public static LockFile acquire(Path target) throws GitException {
+      return acquire(target, TIMEOUT_MILLIS);
+   }
+
+   static LockFile acquire(Path target, long timeoutMillis) throws GitException {
+      long backoff = INITIAL_BACKOFF_MILLIS;
+      long deadline = System.currentTimeMillis() + timeoutMillis;
+
+      while (true) {
+         LockFile lock = tryAcquire(target);
+         if (lock != null) {
+            return lock;
+         }
+         if (System.currentTimeMillis() >= deadline) {
+            throw new GitException(
+                "Unable to lock '" + target.getFileName() + "': another MiniGit process holds '"
+                    + getLockPath(target) + "'. If no other process is running, remove the lock file"
+            );
+         }
+
+         try {
+            // jitter keeps processes that collided once from colliding on every retry
+            Thread.sleep(backoff + (long) (Math.random() * backoff));
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GitException("Interrupted while waiting for lock on '" + target.getFileName() + "'", e);
+         }
+         backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+      }
+   }
+
+   /**
+    * Locks the target unless it is locked already, for writes that may as well be skipped
+    * @return {@code null} if another process holds the lock
+    */
+   public static LockFile tryAcquire(Path target) throws GitException {
+      Path lockPath = getLockPath(target);
+      try {
+         FileChannel channel = FileChannel.open(lockPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+         return new LockFile(target, lockPath, channel);
+      } catch (FileAlreadyExistsException e) {
+         return null;
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+   }
+
+   public boolean isHeld() {
+      return !released;
+   }
+
+   /**
+    * Writes the new content of the target and atomically replaces the target with it, syncing objects written
+    * before, the content and the rename as {@link FileSync} is configured. The lock is released afterwards
+    */
+   public void commit(byte[] content) throws GitException {
+      commit(content, true);
+   }
+
+   /**
+    * Same as {@link #commit(byte[])} without syncing anything, for caches that are rebuilt when they are lost:
+    * after a crash the target may be missing, have its old content or be partially written
+    */
+   public void commitUnsynced(byte[] content) throws GitException {
+      commit(content, false);
+   }
+
+   private void commit(byte[] content, boolean durable) throws GitException {
+      if (released) {
+         throw new IllegalStateException("Lock on '" + target + "' is already released");
+      }
+
+      try {
+         ByteBuffer buffer = ByteBuffer.wrap(content);
+         while (buffer.hasRemaining()) {
+            channel.write(buffer);
+         }
+         if (durable) {
+            // whatever the new content refers to is in the object filter log by the time it is visible
+            ObjectFilter.flushAll();
+            FileSync.beforeReplace(channel);
+         }
+         channel.close();
+         Files.move(lockPath, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+         released = true;
+         if (durable) {
+            FileSync.afterReplace(target);
+         }
+         GitStats.count(Counter.BYTES_WRITTEN, content.length);
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+   }
+
+   /**
+    * Releases the lock leaving the target untouched, unless it has already been committed
+    */
+   @Override
+   public void close() throws GitException {
+      if (released) {
+         return;
+      }
+
+      released = true;
+      try {
+         channel.close();
+         Files.deleteIfExists(lockPath);
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+   }
+
+   private static Path getLockPath(Path target) {
+      return target.resolveSibling(target.getFileName() + LOCK_SUFFIX);
+   }
+}
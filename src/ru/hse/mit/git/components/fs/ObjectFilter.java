@@ -0,0 +1,378 @@
+package ru.hse.mit.git.components.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32C;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+/**
+ * Bloom filter of the ids of the stored objects, so that checks for objects that do not exist, which is most
+ * of the checks when new content is added, are answered from memory. A positive answer is always confirmed
+ * on disk.
+ * <p>
+ * Ids of new objects are appended to {@code object-filter.log}, in batches that are flushed before any ref, HEAD
+ * or index update (see {@link LockFile#commit(byte[])}), so the log covers every object that something refers to.
+ * An object of a command that crashed before the flush is referred to by nothing, and writing it again checks
+ * the file in place and rewrites it if the crash left it incomplete. The {@code object-filter} file is a snapshot of the bits with the length of the log they cover,
+ * rewritten once enough log has accumulated after it. It is written without syncing and checksummed, a snapshot
+ * damaged by a crash is dropped like a missing one; a repository without one gets it from a listing
+ * of its directories and the whole log. The filter is rebuilt twice as large whenever it fills up.
+ * <p>
+ * Ids are never removed: objects that are deleted or moved to another store only make the filter less selective,
+ * never wrong. {@link #invalidate()} drops the snapshot, for changes made to the object directories by other means.
+ */
+public class ObjectFilter {
+   private static final String SNAPSHOT_FILE = "object-filter";
+   private static final String LOG_FILE = "object-filter.log";
+   private static final int MAGIC = 0x4d474f46;
+   private static final int VERSION = 2;
+   private static final int HEADER_LENGTH = 2 * Integer.BYTES + 3 * Long.BYTES;
+   private static final int CHECKSUM_LENGTH = Integer.BYTES;
+   private static final int HASH_COUNT = 7;
+   private static final int BITS_PER_OBJECT = 10;
+   private static final long MIN_CAPACITY = 1 << 14;
+   // log records replayed on load after which the snapshot is rewritten
+   private static final long SNAPSHOT_INTERVAL = 1 << 12;
+
+   private static final Map<Path, ObjectFilter> filters = new ConcurrentHashMap<>();
+
+   private final Path snapshotPath;
+   private final Path logPath;
+   private final Path repositoryDir;
+
+   private long[] bits;
+   private long capacity;
+   private long count;
+   // length of the log replayed into the bits
+   private long logOffset;
+   private boolean loaded = false;
+
+   // ids added since the last flush, guarded by their own lock so that flushing never waits for a load
+   private final Queue<ObjectId> unlogged = new ConcurrentLinkedQueue<>();
+   private final Object logLock = new Object();
+
+   // package-private so that tests can load the filter as another process would
+   ObjectFilter(Path repositoryDir) {
+      this.repositoryDir = repositoryDir;
+      this.snapshotPath = repositoryDir.resolve(SNAPSHOT_FILE);
+      this.logPath = repositoryDir.resolve(LOG_FILE);
+   }
+
+   /**
+    * @return the filter of the repository, shared by everything that writes to it in this process
+    */
+   public static ObjectFilter of(Path repositoryDir) {
+      return filters.computeIfAbsent(repositoryDir.toAbsolutePath().normalize(), ObjectFilter::new);
+   }
+
+   /**
+    * Appends the ids added since the last call to the logs of all filters
+    */
+   public static void flushAll() throws GitException {
+      for (ObjectFilter filter : filters.values()) {
+         filter.flush();
+      }
+   }
+
+   /**
+    * @return {@code false} if no object with the id is stored, {@code true} if it may be
+    */
+   public synchronized boolean mightContain(ObjectId id) throws GitException {
+      load();
+      if (!probe(id, false)) {
+         GitStats.count(Counter.OBJECT_CHECKS_FILTERED);
+         return false;
+      }
+      return true;
+   }
+
+   /**
+    * Called before an object is created
+    */
+   public synchronized void add(ObjectId id) throws GitException {
+      load();
+      probe(id, true);
+      unlogged.add(id);
+   }
+
+   /**
+    * Takes in the objects that other processes have added since the filter was loaded
+    */
+   public synchronized void refresh() throws GitException {
+      if (loaded) {
+         catchUp(false);
+      }
+   }
+
+   /**
+    * Drops the snapshot, the filter is rebuilt from a listing of the object directories on its next use
+    */
+   public synchronized void invalidate() throws GitException {
+      loaded = false;
+      bits = null;
+      try {
+         Files.deleteIfExists(snapshotPath);
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+   }
+
+   private void flush() throws GitException {
+      synchronized (logLock) {
+         if (unlogged.isEmpty()) {
+            return;
+         }
+
+         List<ObjectId> ids = new ArrayList<>();
+         for (ObjectId id = unlogged.poll(); id != null; id = unlogged.poll()) {
+            ids.add(id);
+         }
+         ByteBuffer records = ByteBuffer.allocate(ids.size() * ObjectId.RAW_LENGTH);
+         for (ObjectId id : ids) {
+            id.copyRawTo(records.array(), records.position());
+            records.position(records.position() + ObjectId.RAW_LENGTH);
+         }
+         records.flip();
+
+         try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+              FileLock ignored = channel.lock()) {
+            // a write torn by a crash is padded, so that the records after it are read whole
+            long size = channel.size();
+            long padding = (ObjectId.RAW_LENGTH - size % ObjectId.RAW_LENGTH) % ObjectId.RAW_LENGTH;
+            channel.position(size);
+            channel.write(ByteBuffer.allocate((int) padding));
+            while (records.hasRemaining()) {
+               channel.write(records);
+            }
+            GitStats.count(Counter.BYTES_WRITTEN, padding + records.limit());
+         } catch (IOException e) {
+            throw new GitException(e.getMessage(), e.getCause());
+         }
+      }
+      FileSync.fileWritten(logPath);
+   }
+
+   private void load() throws GitException {
+      if (loaded) {
+         return;
+      }
+
+      boolean fromSnapshot = readSnapshot();
+      if (!fromSnapshot) {
+         rebuild(MIN_CAPACITY);
+      }
+      loaded = true;
+      catchUp(!fromSnapshot);
+   }
+
+   /**
+    * Replays the log added since the last time, and saves a snapshot if it has grown enough since the last one
+    */
+   private void catchUp(boolean saveSnapshot) throws GitException {
+      long replayed = replayLog();
+      if (replayed < 0) {
+         // the log is shorter than what was replayed: the repository was created again
+         rebuild(capacity);
+         replayLog();
+         saveSnapshot();
+      }
+      else if (count > capacity) {
+         rebuild(2 * count);
+         replayLog();
+         saveSnapshot();
+      }
+      else if (saveSnapshot || replayed >= SNAPSHOT_INTERVAL) {
+         saveSnapshot();
+      }
+   }
+
+   private boolean readSnapshot() throws GitException {
+      byte[] content;
+      try {
+         content = Files.readAllBytes(snapshotPath);
+         GitStats.count(Counter.BYTES_READ, content.length);
+      } catch (NoSuchFileException e) {
+         return false;
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+
+      int length = content.length - CHECKSUM_LENGTH;
+      if (length < HEADER_LENGTH) {
+         return false;
+      }
+      ByteBuffer buffer = ByteBuffer.wrap(content, 0, length);
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+         // written by another version
+         return false;
+      }
+      if (checksum(content, length) != ByteBuffer.wrap(content).getInt(length)) {
+         // damaged by a crash
+         return false;
+      }
+      capacity = buffer.getLong();
+      count = buffer.getLong();
+      logOffset = buffer.getLong();
+      if (buffer.remaining() != bitWords(capacity) * Long.BYTES) {
+         return false;
+      }
+      bits = new long[bitWords(capacity)];
+      buffer.asLongBuffer().get(bits);
+      return true;
+   }
+
+   /**
+    * Fills a new filter from a listing of the repository directories and the whole log. Every 40-digit name
+    * is taken, which covers the objects of all directories and costs some selectivity for other such files
+    */
+   private void rebuild(long newCapacity) throws GitException {
+      capacity = newCapacity;
+      bits = new long[bitWords(capacity)];
+      count = 0;
+      logOffset = 0;
+
+      try (DirectoryStream<Path> directories = Files.newDirectoryStream(repositoryDir, Files::isDirectory)) {
+         for (Path directory : directories) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+               GitStats.count(Counter.DIRS_LISTED);
+               for (Path file : files) {
+                  String name = file.getFileName().toString();
+                  if (ObjectId.isValidHex(name)) {
+                     probe(ObjectId.fromHex(name), true);
+                     count++;
+                  }
+               }
+            }
+         }
+      } catch (NoSuchFileException e) {
+         // not initialized yet
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+
+      if (count > capacity) {
+         rebuild(2 * count);
+         return;
+      }
+      // objects added here and not logged yet are not necessarily in the listing
+      unlogged.forEach(id -> probe(id, true));
+   }
+
+   /**
+    * @return number of records replayed, -1 if the log no longer has the records replayed before
+    */
+   private long replayLog() throws GitException {
+      long replayed = 0;
+      try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.READ)) {
+         // a record being appended right now is read next time
+         long end = channel.size() - channel.size() % ObjectId.RAW_LENGTH;
+         if (end < logOffset) {
+            return -1;
+         }
+         ByteBuffer buffer = ByteBuffer.allocate(ObjectId.RAW_LENGTH * 4096);
+         long position = logOffset;
+         while (position < end) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+               break;
+            }
+            int records = read / ObjectId.RAW_LENGTH;
+            for (int i = 0; i < records; i++) {
+               probe(ObjectId.fromRaw(buffer.array(), i * ObjectId.RAW_LENGTH), true);
+            }
+            position += (long) records * ObjectId.RAW_LENGTH;
+            replayed += records;
+         }
+         GitStats.count(Counter.BYTES_READ, position - logOffset);
+         logOffset = position;
+      } catch (NoSuchFileException e) {
+         // nothing has been added since the repository was created
+         return logOffset == 0 ? 0 : -1;
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+
+      count += replayed;
+      return replayed;
+   }
+
+   private void saveSnapshot() throws GitException {
+      int length = HEADER_LENGTH + bits.length * Long.BYTES;
+      ByteBuffer buffer = ByteBuffer.allocate(length + CHECKSUM_LENGTH);
+      buffer.putInt(MAGIC).putInt(VERSION).putLong(capacity).putLong(count).putLong(logOffset);
+      buffer.asLongBuffer().put(bits);
+      buffer.putInt(length, checksum(buffer.array(), length));
+
+      // only a shortcut for the next load, another process may be writing an equally good one
+      LockFile lock = LockFile.tryAcquire(snapshotPath);
+      if (lock != null) {
+         try (lock) {
+            // loading without a snapshot only takes longer, not worth a sync
+            lock.commitUnsynced(buffer.array());
+         }
+      }
+   }
+
+   private static int checksum(byte[] content, int length) {
+      CRC32C crc = new CRC32C();
+      crc.update(content, 0, length);
+      return (int) crc.getValue();
+   }
+
+   /**
+    * @param set whether to set the bits of the id rather than test them
+    * @return whether all bits of the id were set
+    */
+   private boolean probe(ObjectId id, boolean set) {
+      byte[] raw = new byte[ObjectId.RAW_LENGTH];
+      id.copyRawTo(raw, 0);
+      long hash1 = readLong(raw, 0);
+      long hash2 = readLong(raw, Long.BYTES) | 1;
+      long bitCount = (long) bits.length * Long.SIZE;
+      boolean result = true;
+      for (int i = 0; i < HASH_COUNT; i++) {
+         long bit = Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+         long mask = 1L << bit;
+         if ((bits[(int) (bit >>> 6)] & mask) == 0) {
+            if (!set) {
+               return false;
+            }
+            result = false;
+            bits[(int) (bit >>> 6)] |= mask;
+         }
+      }
+      return result;
+   }
+
+   private static int bitWords(long capacity) {
+      return (int) ((capacity * BITS_PER_OBJECT + Long.SIZE - 1) / Long.SIZE);
+   }
+
+   /**
+    * Object ids are SHA-1 hashes, so their bytes serve as the hashes of the filter
+    */
+   private static long readLong(byte[] bytes, int offset) {
+      long result = 0;
+      for (int i = 0; i < Long.BYTES; i++) {
+         result = result << 8 | (bytes[offset + i] & 0xFF);
+      }
+      return result;
+   }
+}
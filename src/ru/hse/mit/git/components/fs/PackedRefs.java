@@ -0,0 +1,182 @@
+package ru.hse.mit.git.components.fs;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+/**
+ * Read side of the {@code packed-refs} file: a header line followed by {@code <name> <hash>} records
+ * sorted by the UTF-8 bytes of the name.
+ * <p>
+ * The file is memory-mapped and looked up with a binary search over byte offsets, so resolving one branch
+ * among tens of thousands touches a few pages and allocates nothing but the result. The mapping is kept while
+ * the same file stays in place; writers replace the file by renaming, which leaves
+ * the old mapping intact for lookups already in progress.
+ */
+class PackedRefs {
+   static final String HEADER = "# mini-git packed-refs, sorted";
+
+   private static final int RECORD_SUFFIX_LENGTH = 1 + ObjectId.HEX_LENGTH + 1;
+
+   private final Path path;
+   private volatile Mapping mapping;
+
+   PackedRefs(Path path) {
+      this.path = path;
+   }
+
+   Path getPath() {
+      return path;
+   }
+
+   /**
+    * @return {@code null} if the branch is not packed
+    */
+   ObjectId lookup(String name) throws GitException {
+      Mapping current = load();
+      if (current == null) {
+         return null;
+      }
+
+      byte[] key = name.getBytes(StandardCharsets.UTF_8);
+      MappedByteBuffer buffer = current.buffer();
+      // both bounds always stay at record starts
+      int low = current.dataStart();
+      int high = buffer.limit();
+      while (low < high) {
+         int start = (low + high) >>> 1;
+         while (start > low && buffer.get(start - 1) != '\n') {
+            start--;
+         }
+
+         int nameEnd = indexOf(buffer, start, (byte) ' ');
+         int comparison = compare(buffer, start, nameEnd, key);
+         if (comparison == 0) {
+            return ObjectId.fromHex(StandardCharsets.US_ASCII.decode(
+                buffer.slice(nameEnd + 1, ObjectId.HEX_LENGTH)
+            ));
+         }
+         if (comparison < 0) {
+            low = nameEnd + RECORD_SUFFIX_LENGTH;
+         }
+         else {
+            high = start;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * @return all packed branches sorted by name
+    */
+   SortedMap<String, ObjectId> readAll() throws GitException {
+      SortedMap<String, ObjectId> result = new TreeMap<>();
+      Mapping current = load();
+      if (current == null) {
+         return result;
+      }
+
+      MappedByteBuffer buffer = current.buffer();
+      int position = current.dataStart();
+      while (position < buffer.limit()) {
+         int nameEnd = indexOf(buffer, position, (byte) ' ');
+         String name = StandardCharsets.UTF_8.decode(buffer.slice(position, nameEnd - position)).toString();
+         CharSequence hash = StandardCharsets.US_ASCII.decode(buffer.slice(nameEnd + 1, ObjectId.HEX_LENGTH));
+         result.put(name, ObjectId.fromHex(hash));
+         position = nameEnd + RECORD_SUFFIX_LENGTH;
+      }
+      return result;
+   }
+
+   /**
+    * Serializes records in the UTF-8 byte order lookups rely on
+    */
+   static byte[] serialize(Map<String, ObjectId> refs) {
+      List<Map.Entry<String, ObjectId>> sorted = refs.entrySet().stream()
+          .sorted(Comparator.comparing(ref -> ref.getKey().getBytes(StandardCharsets.UTF_8), Arrays::compareUnsigned))
+          .toList();
+
+      StringBuilder content = new StringBuilder(HEADER).append('\n');
+      for (Map.Entry<String, ObjectId> ref : sorted) {
+         content.append(ref.getKey()).append(' ');
+         ref.getValue().appendHex(content).append('\n');
+      }
+      return content.toString().getBytes(StandardCharsets.UTF_8);
+   }
+
+   private Mapping load() throws GitException {
+      try {
+         BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+         GitStats.count(Counter.FILES_STATED);
+         Mapping cached = mapping;
+         if (cached != null && cached.isValidFor(attributes)) {
+            return cached;
+         }
+
+         try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            GitStats.count(Counter.BYTES_READ, buffer.limit());
+            int dataStart = buffer.limit() > 0 && buffer.get(0) == '#' ? indexOf(buffer, 0, (byte) '\n') + 1 : 0;
+            mapping = new Mapping(
+                attributes.fileKey(),
+                attributes.lastModifiedTime(),
+                attributes.size(),
+                buffer,
+                dataStart
+            );
+            return mapping;
+         }
+      } catch (NoSuchFileException e) {
+         mapping = null;
+         return null;
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+   }
+
+   private static int indexOf(MappedByteBuffer buffer, int from, byte value) {
+      int position = from;
+      while (buffer.get(position) != value) {
+         position++;
+      }
+      return position;
+   }
+
+   private static int compare(MappedByteBuffer buffer, int start, int end, byte[] key) {
+      int length = Math.min(end - start, key.length);
+      for (int i = 0; i < length; i++) {
+         int comparison = Integer.compare(buffer.get(start + i) & 0xFF, key[i] & 0xFF);
+         if (comparison != 0) {
+            return comparison;
+         }
+      }
+      return Integer.compare(end - start, key.length);
+   }
+
+   private record Mapping(Object fileKey, FileTime modified, long size, MappedByteBuffer buffer, int dataStart) {
+      boolean isValidFor(BasicFileAttributes attributes) {
+         return Objects.equals(fileKey, attributes.fileKey())
+             && modified.equals(attributes.lastModifiedTime())
+             && size == attributes.size();
+      }
+   }
+}
@@ -0,0 +1,208 @@
+package ru.hse.mit.git.components.fs;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+/**
+ * Branches of the repository.
+ * <p>
+ * A branch is either loose, a file {@code branches/<name>} holding the commit hash, or packed, a record
+ * in {@link PackedRefs}. A loose branch overrides a packed one of the same name: updates always write
+ * the loose file, and {@link #pack()} moves loose branches into the packed file. An empty loose file stands
+ * for a branch without commits; such branches are never packed.
+ * <p>
+ * Every change is made under the lock of the loose file, so it is atomic and concurrent updates of one branch
+ * are detected by compare-and-swap. Changes that also rewrite the packed file lock it before the loose file,
+ * so that they cannot deadlock each other.
+ * <p>
+ * Branch names follow the rules of {@code git check-ref-format} for a single path component, so a name never
+ * refers to a file outside {@code branches/}.
+ */
+public class RefDatabase {
+   private final Path branchesDir;
+   private final PackedRefs packedRefs;
+
+   public RefDatabase(Path branchesDir, Path packedRefsPath) {
+      this.branchesDir = branchesDir;
+      this.packedRefs = new PackedRefs(packedRefsPath);
+   }
+
+   public boolean exists(String name) throws GitException {
+      if (!isValidName(name)) {
+         return false;
+      }
+      GitStats.count(Counter.FILES_STATED);
+      return Files.exists(getLoosePath(name)) || packedRefs.lookup(name) != null;
+   }
+
+   /**
+    * @return {@code null} if the branch has no commits or does not exist
+    */
+   public ObjectId resolve(String name) throws GitException {
+      try {
+         String content = Files.readString(getLoosePath(name));
+         GitStats.count(Counter.BYTES_READ, content.length());
+         return content.isEmpty() ? null : ObjectId.fromHex(content);
+      } catch (NoSuchFileException e) {
+         return packedRefs.lookup(name);
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+   }
+
+   /**
+    * Loose branches come first, in the order of the directory listing, followed by the packed ones sorted by name
+    */
+   public List<String> list() throws GitException {
+      List<String> result = new ArrayList<>(listLoose());
+      Set<String> loose = new HashSet<>(result);
+      for (String name : packedRefs.readAll().keySet()) {
+         if (!loose.contains(name)) {
+            result.add(name);
+         }
+      }
+      return result;
+   }
+
+   /**
+    * @param commitHash commit the branch starts at, {@code null} if nothing was committed yet
+    */
+   public void create(String name, ObjectId commitHash) throws GitException {
+      checkName(name);
+      try (LockFile lock = LockFile.acquire(getLoosePath(name))) {
+         // checked under the lock, so two processes cannot both create the branch
+         if (exists(name)) {
+            throw new GitException("Branch '" + name + "' already exists");
+         }
+         lock.commit(commitHash == null ? new byte[0] : commitHash.toHex().getBytes());
+      }
+   }
+
+   /**
+    * Moves the branch to the commit, provided that it still points to {@code expectedHash}.
+    * Otherwise another process has moved it in the meantime and its update would be lost
+    * @param expectedHash commit read before the update was prepared, {@code null} if nothing was committed yet
+    */
+   public void compareAndSet(String name, ObjectId expectedHash, ObjectId commitHash) throws GitException {
+      try (LockFile lock = LockFile.acquire(getLoosePath(name))) {
+         ObjectId actualHash = resolve(name);
+         if (!Objects.equals(actualHash, expectedHash)) {
+            throw new GitException(
+                "Branch '" + name + "' was updated by another process: expected "
+                    + Objects.requireNonNullElse(expectedHash, "no commit") + ", found " + actualHash
+            );
+         }
+         lock.commit(commitHash.toHex().getBytes());
+      }
+   }
+
+   public void delete(String name) throws GitException {
+      checkName(name);
+      try (
+          LockFile packedLock = LockFile.acquire(packedRefs.getPath());
+          LockFile ignored = LockFile.acquire(getLoosePath(name))
+      ) {
+         // the packed record goes first, so that readers never see it uncovered by the loose file
+         if (packedRefs.lookup(name) != null) {
+            SortedMap<String, ObjectId> packed = packedRefs.readAll();
+            packed.remove(name);
+            packedLock.commit(PackedRefs.serialize(packed));
+         }
+         Files.deleteIfExists(getLoosePath(name));
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+   }
+
+   /**
+    * Moves all loose branches with commits into the packed file
+    * @return number of branches packed
+    */
+   public int pack() throws GitException {
+      try (LockFile packedLock = LockFile.acquire(packedRefs.getPath())) {
+         SortedMap<String, ObjectId> packed = packedRefs.readAll();
+         Map<String, ObjectId> packedLoose = new HashMap<>();
+         for (String name : listLoose()) {
+            ObjectId hash = resolve(name);
+            if (hash != null) {
+               packed.put(name, hash);
+               packedLoose.put(name, hash);
+            }
+         }
+         packedLock.commit(PackedRefs.serialize(packed));
+
+         // a branch updated since it was read keeps its loose file, which overrides the packed value
+         for (Map.Entry<String, ObjectId> branch : packedLoose.entrySet()) {
+            try (LockFile ignored = LockFile.acquire(getLoosePath(branch.getKey()))) {
+               if (branch.getValue().equals(resolve(branch.getKey()))) {
+                  Files.delete(getLoosePath(branch.getKey()));
+               }
+            }
+         }
+         return packedLoose.size();
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+   }
+
+   private List<String> listLoose() throws GitException {
+      List<String> result = new ArrayList<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(branchesDir)) {
+         for (Path path : stream) {
+            String name = path.getFileName().toString();
+            // lock files of branches being updated are not branches
+            if (!name.endsWith(LockFile.LOCK_SUFFIX) && Files.isRegularFile(path)) {
+               result.add(name);
+            }
+         }
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+      return result;
+   }
+
+   /**
+    * A name is rejected if it is empty, contains {@code /}, {@code ..}, <code>@{</code>, whitespace, control
+    * characters or any of {@code ~^:?*[\}, starts with {@code .} or {@code -}, ends with {@code .}
+    * or {@code .lock}, or is {@code @}
+    */
+   static boolean isValidName(String name) {
+      if (name.isEmpty() || name.equals("@") || name.startsWith(".") || name.startsWith("-")
+          || name.endsWith(".") || name.endsWith(LockFile.LOCK_SUFFIX)
+          || name.contains("..") || name.contains("@{")) {
+         return false;
+      }
+      for (int i = 0; i < name.length(); i++) {
+         char c = name.charAt(i);
+         if (c < 0x20 || c == 0x7F || Character.isWhitespace(c) || "/\\~^:?*[".indexOf(c) >= 0) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private static void checkName(String name) throws GitException {
+      if (!isValidName(name)) {
+         throw new GitException("Invalid branch name '" + name + "'");
+      }
+   }
+
+   private Path getLoosePath(String name) {
+      return Path.of(branchesDir.toString(), name);
+   }
+}
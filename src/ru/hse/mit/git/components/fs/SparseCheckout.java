@@ -0,0 +1,144 @@
+package ru.hse.mit.git.components.fs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
+
+/**
+ * Directories of the sparse checkout, one per line of the {@code sparse-checkout} file.
+ * <p>
+ * Patterns select whole directories, like the cone mode of git: a listed directory is included with everything
+ * below it, and the directories above it are included with their own files but not with their other
+ * subdirectories. Files at the top level are always included. Every other directory is excluded as a whole,
+ * so the decision is made once per directory and an excluded subtree is never read.
+ * Without the file, or with no directories in it, everything is included.
+ */
+public class SparseCheckout {
+   public static final SparseCheckout FULL = new SparseCheckout(List.of());
+
+   public enum Match {
+      INCLUDED,
+      // the directory is on the way to an included one: its files are included, its subdirectories are matched
+      PARTIAL,
+      EXCLUDED
+   }
+
+   private final List<String> directories;
+   private final Set<String> included;
+   private final Set<String> ancestors = new HashSet<>();
+
+   private SparseCheckout(List<String> directories) {
+      this.directories = directories;
+      this.included = new HashSet<>(directories);
+      for (String directory : directories) {
+         for (int slash = directory.indexOf('/'); slash >= 0; slash = directory.indexOf('/', slash + 1)) {
+            ancestors.add(directory.substring(0, slash));
+         }
+      }
+   }
+
+   /**
+    * Blank lines and {@code #} comments are skipped, slashes around the directories are optional
+    */
+   public static SparseCheckout of(List<String> lines) {
+      Set<String> directories = new TreeSet<>();
+      for (String line : lines) {
+         String directory = line.strip().replace('\\', '/');
+         if (directory.isEmpty() || directory.startsWith("#")) {
+            continue;
+         }
+         while (directory.startsWith("/") || directory.startsWith("./")) {
+            directory = directory.substring(directory.indexOf('/') + 1);
+         }
+         while (directory.endsWith("/")) {
+            directory = directory.substring(0, directory.length() - 1);
+         }
+         if (!directory.isEmpty()) {
+            directories.add(directory);
+         }
+      }
+      return directories.isEmpty() ? FULL : new SparseCheckout(new ArrayList<>(directories));
+   }
+
+   public static SparseCheckout load(Path path) throws GitException {
+      try {
+         List<String> lines = Files.readAllLines(path);
+         GitStats.count(Counter.BYTES_READ, Files.size(path));
+         return of(lines);
+      } catch (NoSuchFileException e) {
+         return FULL;
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+   }
+
+   /**
+    * Writes the directories to the file, or removes it if the checkout is full
+    */
+   public void save(Path path) throws GitException {
+      try (LockFile lock = LockFile.acquire(path)) {
+         if (isEnabled()) {
+            lock.commit((String.join("\n", directories) + "\n").getBytes(StandardCharsets.UTF_8));
+         }
+         else {
+            Files.deleteIfExists(path);
+         }
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+   }
+
+   public boolean isEnabled() {
+      return !directories.isEmpty();
+   }
+
+   public List<String> getDirectories() {
+      return directories;
+   }
+
+   /**
+    * @param relativeDir directory relative to the working directory, separated by {@code /}, empty for the root
+    */
+   public Match matchDirectory(String relativeDir) {
+      if (!isEnabled() || included.contains(relativeDir)) {
+         return Match.INCLUDED;
+      }
+      if (relativeDir.isEmpty() || ancestors.contains(relativeDir)) {
+         return Match.PARTIAL;
+      }
+      for (int slash = relativeDir.indexOf('/'); slash >= 0; slash = relativeDir.indexOf('/', slash + 1)) {
+         if (included.contains(relativeDir.substring(0, slash))) {
+            return Match.INCLUDED;
+         }
+      }
+      return Match.EXCLUDED;
+   }
+
+   /**
+    * @param relativePath file relative to the working directory, separated by {@code /}
+    */
+   public boolean includes(String relativePath) {
+      int slash = relativePath.lastIndexOf('/');
+      return slash < 0 || matchDirectory(relativePath.substring(0, slash)) != Match.EXCLUDED;
+   }
+
+   @Override
+   public boolean equals(Object other) {
+      return other instanceof SparseCheckout sparseCheckout && directories.equals(sparseCheckout.directories);
+   }
+
+   @Override
+   public int hashCode() {
+      return directories.hashCode();
+   }
+}
@@ -1,21 +1,283 @@
 package ru.hse.mit.git.components.fs;
 
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
 import org.jetbrains.annotations.NotNull;
 import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.jfr.ObjectReadEvent;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
 import ru.hse.mit.git.components.utils.MiniGitUtils;
+import ru.hse.mit.git.components.utils.ObjectId;
 
+/**
+ * Tree object, one directory level.
+ * <p>
+ * Trees are stored in a versioned binary format:
+ * <pre>
+ *    magic    4 bytes   00 'M' 'G' 'T'
+ *    version  1 byte    2
+ *    count    varint
+ *    entries  count times: mode varint, name length varint, name in UTF-8, raw 20-byte hash
+ * </pre>
+ * Modes are the git ones, {@link #MODE_TREE} for subdirectories and {@link #MODE_FILE} for files. Entries are
+ * sorted by the UTF-8 bytes of their names, a subdirectory being compared as its name followed by {@code /}
+ * (see {@link #compareEntries}), so a directory has exactly one serialization and one hash, lookups are binary
+ * searches and two trees are diffed by merging their entries.
+ * <p>
+ * Trees written by earlier versions are text, one {@code <tree|blob> <hex hash> <name>} line per entry in no
+ * particular order. They are still read, and sorted when they are.
+ */
 public class TreeFile extends AbstractEditableFile {
+   public static final int MODE_TREE = 0040000;
+   public static final int MODE_FILE = 0100644;
+
+   private static final byte[] MAGIC = {0, 'M', 'G', 'T'};
+   private static final byte VERSION = 2;
+   private static final int MODE_TYPE_MASK = 0170000;
+
+   private final ObjectId id;
    private final byte[] fileBytes;
 
    public TreeFile(Path fullPathToDir, byte @NotNull [] fileBytes) {
-      this.filename = MiniGitUtils.getHashFromBytes(fileBytes);
+      this(fullPathToDir, MiniGitUtils.getHashFromBytes(fileBytes), fileBytes);
+   }
+
+   /**
+    * @param id hash of {@code fileBytes}, when it is already known
+    */
+   public TreeFile(Path fullPathToDir, @NotNull ObjectId id, byte @NotNull [] fileBytes) {
+      this.id = id;
+      this.filename = id.toHex();
       this.fullPath = Path.of(fullPathToDir.toString(), filename);
       this.fileBytes = fileBytes;
    }
 
-   public void save() throws GitException {
-      save(fileBytes);
+   public ObjectId getId() {
+      return id;
+   }
+
+   @Override
+   protected String getObjectType() {
+      return "tree";
+   }
+
+   public void save(ObjectFilter filter) throws GitException {
+      save(filter, fileBytes);
+   }
+
+   /**
+    * Entries of a tree in the canonical order, hashes packed {@link ObjectId#RAW_LENGTH} bytes each
+    */
+   public record Entries(String[] names, byte[] hashes, boolean[] trees) {
+      public static final Entries EMPTY = new Entries(new String[0], new byte[0], new boolean[0]);
+
+      public int size() {
+         return names.length;
+      }
+
+      public ObjectId getHash(int position) {
+         return ObjectId.fromRaw(hashes, position * ObjectId.RAW_LENGTH);
+      }
+
+      /**
+       * @return position of the entry, or a negative number if there is none
+       */
+      public int find(String name, boolean tree) {
+         int low = 0;
+         int high = names.length - 1;
+         while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int order = compareEntries(names[middle], trees[middle], name, tree);
+            if (order < 0) {
+               low = middle + 1;
+            }
+            else if (order > 0) {
+               high = middle - 1;
+            }
+            else {
+               return middle;
+            }
+         }
+         return -low - 1;
+      }
+
+      /**
+       * @return whether the entries at the positions have equal hashes
+       */
+      public boolean sameHash(int position, Entries other, int otherPosition) {
+         return Arrays.equals(
+             hashes, position * ObjectId.RAW_LENGTH, (position + 1) * ObjectId.RAW_LENGTH,
+             other.hashes, otherPosition * ObjectId.RAW_LENGTH, (otherPosition + 1) * ObjectId.RAW_LENGTH
+         );
+      }
+   }
+
+   public static Entries read(Path treesDir, ObjectId hash) throws GitException {
+      ObjectReadEvent event = new ObjectReadEvent();
+      event.begin();
+
+      byte[] bytes;
+      try {
+         bytes = Files.readAllBytes(Path.of(treesDir.toString(), hash.toHex()));
+         GitStats.count(Counter.OBJECTS_READ);
+         GitStats.count(Counter.BYTES_READ, bytes.length);
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+
+      if (event.shouldCommit()) {
+         event.type = "tree";
+         event.hash = hash.toHex();
+         event.size = bytes.length;
+         event.commit();
+      }
+
+      try {
+         return isBinary(bytes) ? parseBinary(bytes) : parseText(bytes);
+      } catch (RuntimeException e) {
+         throw new GitException("Tree '" + hash + "' is corrupt", e);
+      }
+   }
+
+   /**
+    * @param size number of entries, which must be in the canonical order
+    * @param hashes packed hashes of the entries
+    * @param tree whether the entry at a position is a subdirectory
+    */
+   public static byte[] serialize(int size, String[] names, byte[] hashes, IntPredicate tree) {
+      ByteArrayOutputStream content = new ByteArrayOutputStream(MAGIC.length + 1 + size * (ObjectId.RAW_LENGTH + 16));
+      content.writeBytes(MAGIC);
+      content.write(VERSION);
+      writeVarint(content, size);
+      for (int i = 0; i < size; i++) {
+         byte[] name = names[i].getBytes(StandardCharsets.UTF_8);
+         writeVarint(content, tree.test(i) ? MODE_TREE : MODE_FILE);
+         writeVarint(content, name.length);
+         content.writeBytes(name);
+         content.write(hashes, i * ObjectId.RAW_LENGTH, ObjectId.RAW_LENGTH);
+      }
+      return content.toByteArray();
+   }
+
+   /**
+    * Canonical order of tree entries: by the UTF-8 bytes of the names, that is by code points,
+    * a subdirectory being compared as if its name ended with {@code /}
+    */
+   public static int compareEntries(String name1, boolean tree1, String name2, boolean tree2) {
+      int length = Math.min(name1.length(), name2.length());
+      for (int i = 0; i < length; i++) {
+         char c1 = name1.charAt(i);
+         char c2 = name2.charAt(i);
+         if (c1 != c2) {
+            // surrogates encode code points above every other char
+            if (Character.isSurrogate(c1) != Character.isSurrogate(c2)) {
+               return Character.isSurrogate(c1) ? 1 : -1;
+            }
+            return c1 - c2;
+         }
+      }
+
+      int next1 = name1.length() > length ? name1.charAt(length) : tree1 ? '/' : -1;
+      int next2 = name2.length() > length ? name2.charAt(length) : tree2 ? '/' : -1;
+      return next1 - next2;
+   }
+
+   private static boolean isBinary(byte[] bytes) {
+      return bytes.length > MAGIC.length && Arrays.equals(bytes, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+   }
+
+   private static Entries parseBinary(byte[] bytes) throws GitException {
+      if (bytes[MAGIC.length] != VERSION) {
+         throw new GitException("Unsupported tree format version " + bytes[MAGIC.length]);
+      }
+
+      int[] position = {MAGIC.length + 1};
+      int size = readVarint(bytes, position);
+      String[] names = new String[size];
+      byte[] hashes = new byte[size * ObjectId.RAW_LENGTH];
+      boolean[] trees = new boolean[size];
+      for (int i = 0; i < size; i++) {
+         trees[i] = (readVarint(bytes, position) & MODE_TYPE_MASK) == MODE_TREE;
+         int nameLength = readVarint(bytes, position);
+         names[i] = new String(bytes, position[0], nameLength, StandardCharsets.UTF_8).intern();
+         position[0] += nameLength;
+         System.arraycopy(bytes, position[0], hashes, i * ObjectId.RAW_LENGTH, ObjectId.RAW_LENGTH);
+         position[0] += ObjectId.RAW_LENGTH;
+      }
+      return new Entries(names, hashes, trees);
+   }
+
+   private static Entries parseText(byte[] bytes) {
+      String content = new String(bytes, StandardCharsets.UTF_8);
+      int size = content.isEmpty() || content.endsWith("\n") ? 0 : 1;
+      for (int i = content.indexOf('\n'); i >= 0; i = content.indexOf('\n', i + 1)) {
+         size++;
+      }
+      String[] names = new String[size];
+      byte[] hashes = new byte[size * ObjectId.RAW_LENGTH];
+      boolean[] trees = new boolean[size];
+
+      int count = 0;
+      for (int start = 0; start < content.length(); ) {
+         int end = content.indexOf('\n', start);
+         if (end < 0) {
+            end = content.length();
+         }
+         int lineEnd = end > start && content.charAt(end - 1) == '\r' ? end - 1 : end;
+         if (lineEnd > start) {
+            int hashStart = content.indexOf(' ', start) + 1;
+            trees[count] = content.startsWith("tree ", start);
+            // the name is the rest of the line, spaces included
+            names[count] = content.substring(hashStart + ObjectId.HEX_LENGTH + 1, lineEnd).intern();
+            ObjectId.hexToRaw(content, hashStart, hashes, count * ObjectId.RAW_LENGTH);
+            count++;
+         }
+         start = end + 1;
+      }
+      return sort(count, names, hashes, trees);
+   }
+
+   private static Entries sort(int size, String[] names, byte[] hashes, boolean[] trees) {
+      Integer[] order = new Integer[size];
+      for (int i = 0; i < size; i++) {
+         order[i] = i;
+      }
+      Arrays.sort(order, (first, second) -> compareEntries(names[first], trees[first], names[second], trees[second]));
+
+      String[] sortedNames = new String[size];
+      byte[] sortedHashes = new byte[size * ObjectId.RAW_LENGTH];
+      boolean[] sortedTrees = new boolean[size];
+      for (int i = 0; i < size; i++) {
+         sortedNames[i] = names[order[i]];
+         System.arraycopy(hashes, order[i] * ObjectId.RAW_LENGTH, sortedHashes, i * ObjectId.RAW_LENGTH, ObjectId.RAW_LENGTH);
+         sortedTrees[i] = trees[order[i]];
+      }
+      return new Entries(sortedNames, sortedHashes, sortedTrees);
+   }
+
+   private static void writeVarint(ByteArrayOutputStream out, int value) {
+      while ((value & ~0x7F) != 0) {
+         out.write(value & 0x7F | 0x80);
+         value >>>= 7;
+      }
+      out.write(value);
+   }
+
+   private static int readVarint(byte[] bytes, int[] position) {
+      int value = 0;
+      for (int shift = 0; ; shift += 7) {
+         byte b = bytes[position[0]++];
+         value |= (b & 0x7F) << shift;
+         if (b >= 0) {
+            return value;
+         }
+      }
    }
 }
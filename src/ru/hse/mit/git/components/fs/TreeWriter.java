@@ -0,0 +1,162 @@
+package ru.hse.mit.git.components.fs;
+
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.stats.GitStats;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+/**
+ * Writer stage of the commit pipeline: trees hashed on the fork-join pool are written by one thread, so hashing
+ * of the parent trees overlaps the writes of their children. The queue is bounded, a slow disk holds the hashing
+ * threads back instead of letting serialized trees pile up in memory.
+ * <p>
+ * {@link #finish()} returns once every submitted tree is written, objects that refer to them (the commit and
+ * the branch pointing to it) are written only after that.
+ */
+public class TreeWriter implements AutoCloseable {
+   private static final int QUEUE_CAPACITY = 256;
+   private static final Write END = new Write(null, null);
+
+   private final Path treesDir;
+   private final ObjectFilter objectFilter;
+   private final BlockingQueue<Write> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+   private final Thread thread;
+   // statistics and durability of the command that writes the trees
+   private final GitStats.Collector stats = GitStats.current();
+   private final FileSync.Command command = FileSync.current();
+
+   private volatile Throwable failure;
+   private boolean finished = false;
+
+   public TreeWriter(Path treesDir, ObjectFilter objectFilter) {
+      this.treesDir = treesDir;
+      this.objectFilter = objectFilter;
+      this.thread = new Thread(this::run, "mini-git-tree-writer");
+      this.thread.setDaemon(true);
+      this.thread.start();
+   }
+
+   /**
+    * Blocks while the queue is full. A fork-join worker blocked here is compensated for by the pool,
+    * so that the hashing of other trees goes on
+    * @throws GitException if an earlier write failed
+    */
+   public void submit(ObjectId hash, byte[] content) throws GitException {
+      checkFailure();
+      try {
+         ForkJoinPool.managedBlock(new QueuePut(queue, new Write(hash, content)));
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new GitException("Interrupted while writing trees", e);
+      }
+   }
+
+   /**
+    * Waits until every submitted tree is written
+    * @throws GitException if any of the writes failed
+    */
+   public void finish() throws GitException {
+      try {
+         stop();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new GitException("Interrupted while writing trees", e);
+      }
+      checkFailure();
+   }
+
+   /**
+    * Stops the writer if the pipeline failed before {@link #finish()}, trees already queued are still written.
+    * Failures of the writes are reported by {@link #finish()} only
+    */
+   @Override
+   public void close() {
+      try {
+         stop();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   private void stop() throws InterruptedException {
+      if (!finished) {
+         finished = true;
+         queue.put(END);
+      }
+      thread.join();
+   }
+
+   private void run() {
+      try (GitStats.Scope ignored = GitStats.bind(stats);
+           FileSync.Scope ignoredCommand = FileSync.bind(command)) {
+         writeQueued();
+      }
+   }
+
+   private void writeQueued() {
+      while (true) {
+         Write write;
+         try {
+            write = queue.take();
+         } catch (InterruptedException e) {
+            failure = e;
+            return;
+         }
+         if (write == END) {
+            return;
+         }
+         // after a failure the queue is still drained, so that producers never block on it
+         if (failure == null) {
+            try {
+               new TreeFile(treesDir, write.hash(), write.content()).save(objectFilter);
+            } catch (GitException | RuntimeException e) {
+               failure = e;
+            }
+         }
+      }
+   }
+
+   private void checkFailure() throws GitException {
+      Throwable cause = failure;
+      if (cause instanceof GitException gitException) {
+         throw gitException;
+      }
+      if (cause != null) {
+         throw new GitException(cause.getMessage(), cause);
+      }
+   }
+
+   private record Write(ObjectId hash, byte[] content) {}
+
+   private static class QueuePut implements ForkJoinPool.ManagedBlocker {
+      private final BlockingQueue<Write> queue;
+      private final Write write;
+      private boolean done = false;
+
+      QueuePut(BlockingQueue<Write> queue, Write write) {
+         this.queue = queue;
+         this.write = write;
+      }
+
+      @Override
+      public boolean block() throws InterruptedException {
+         if (!done) {
+            queue.put(write);
+            done = true;
+         }
+         return true;
+      }
+
+      @Override
+      public boolean isReleasable() {
+         // the pool does not add a thread while there is room in the queue
+         if (!done) {
+            done = queue.offer(write);
+         }
+         return done;
+      }
+   }
+}
@@ -0,0 +1,393 @@
+package ru.hse.mit.git.components.fs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.ignore.IgnoreRules;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
+import ru.hse.mit.git.components.stats.GitStats.Timer;
+import ru.hse.mit.git.components.stats.Phase;
+
+/**
+ * Lists the files of the working directory.
+ * <p>
+ * Directories are listed in parallel, one fork-join task per directory, and the type of every entry comes from
+ * a single attribute read that does not follow symbolic links. Listings are kept in the untracked cache file
+ * together with the modification time of their directory: a directory whose time is unchanged is not listed again,
+ * only its subdirectories are stat'ed. Adding, removing or renaming an entry updates the time of its directory,
+ * and file contents do not matter here, since tracked files are hashed anyway.
+ * <p>
+ * Listings are cached before ignore rules are applied, so editing an ignore file does not invalidate them.
+ * A directory modified in the same second the scan started is not cached: a change later in that second
+ * could leave its time unchanged on file systems with coarse timestamps.
+ */
+public class WorktreeScanner {
+   private static final String CACHE_HEADER = "# mini-git untracked cache";
+   // the cache is written without syncing, a file cut short by a crash lacks the last line
+   private static final String CACHE_END = "# end";
+   private static final String DIRECTORY_PREFIX = "dir ";
+   private static final String FILE_PREFIX = "f ";
+   private static final String SUBDIRECTORY_PREFIX = "d ";
+
+   private final Path workingDir;
+   private final Path exclude;
+   private final Path cachePath;
+
+   /**
+    * @param exclude directory that is never listed, the repository itself
+    * @param cachePath untracked cache file, {@code null} to list every directory
+    */
+   public WorktreeScanner(Path workingDir, Path exclude, Path cachePath) {
+      this.workingDir = workingDir;
+      this.exclude = exclude;
+      this.cachePath = cachePath;
+   }
+
+   public Path getWorkingDir() {
+      return workingDir;
+   }
+
+   @FunctionalInterface
+   public interface FileVisitor {
+      void visit(String path) throws GitException;
+   }
+
+   /**
+    * Sequential counterpart of {@link #scan(IgnoreRules, SparseCheckout)} for consumers that stream their results:
+    * files are visited in the order of their paths compared as strings, with one sorted listing per directory level
+    * in memory. The untracked cache is neither read nor written, since it holds every listing at once
+    */
+   public void walk(IgnoreRules ignoreRules, SparseCheckout sparseCheckout, FileVisitor visitor) throws GitException {
+      walkDirectory(workingDir, "", ignoreRules, sparseCheckout, visitor);
+   }
+
+   private void walkDirectory(
+       Path dir,
+       String relativeDir,
+       IgnoreRules ignoreRules,
+       SparseCheckout sparseCheckout,
+       FileVisitor visitor
+   ) throws GitException {
+      // a directory is ordered by its name with a trailing separator, which is where its files are in path order
+      TreeMap<String, Boolean> children = new TreeMap<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+         GitStats.count(Counter.DIRS_LISTED);
+         for (Path child : stream) {
+            String name = child.getFileName().toString();
+            BasicFileAttributes attributes;
+            try {
+               attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+               GitStats.count(Counter.FILES_STATED);
+            } catch (NoSuchFileException e) {
+               // removed while the directory was listed
+               continue;
+            }
+
+            if (attributes.isDirectory()) {
+               children.put(name + "/", true);
+            }
+            else if (!attributes.isSymbolicLink() || !Files.isDirectory(child)) {
+               children.put(name, false);
+            }
+         }
+      } catch (NoSuchFileException e) {
+         // removed after its parent was listed
+         return;
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+
+      for (var child : children.entrySet()) {
+         String name = child.getValue() ? child.getKey().substring(0, child.getKey().length() - 1) : child.getKey();
+         String path = relativeDir.isEmpty() ? name : relativeDir + "/" + name;
+         if (child.getValue()) {
+            if (!isSkipped(dir.resolve(name), path, ignoreRules, sparseCheckout)) {
+               walkDirectory(dir.resolve(name), path, ignoreRules, sparseCheckout, visitor);
+            }
+         }
+         else if (!ignoreRules.isIgnored(path, false)) {
+            visitor.visit(path);
+         }
+      }
+   }
+
+   private boolean isSkipped(Path dir, String path, IgnoreRules ignoreRules, SparseCheckout sparseCheckout)
+       throws GitException {
+      return dir.startsWith(exclude)
+          || sparseCheckout.matchDirectory(path) == SparseCheckout.Match.EXCLUDED
+          || ignoreRules.isIgnored(path, true);
+   }
+
+   /**
+    * Ignored directories and directories outside of the sparse checkout are skipped without being listed
+    * @return paths of the files relative to the working directory, separated by {@code /}
+    */
+   public Set<String> scan(IgnoreRules ignoreRules, SparseCheckout sparseCheckout) throws GitException {
+      try (Timer ignored = GitStats.time(Phase.WORKTREE_SCAN)) {
+         Scan scan = new Scan(ignoreRules, sparseCheckout, cachePath == null ? Map.of() : loadCache());
+
+         BasicFileAttributes attributes;
+         try {
+            attributes = Files.readAttributes(workingDir, BasicFileAttributes.class);
+            GitStats.count(Counter.FILES_STATED);
+         } catch (IOException e) {
+            throw new GitException(e.getMessage(), e.getCause());
+         }
+
+         try {
+            ForkJoinPool.commonPool().invoke(new DirectoryTask(scan, workingDir, "", modifiedNanos(attributes)));
+         } catch (RuntimeException e) {
+            throw unwrap(e);
+         }
+
+         // directories that are gone or ignored now are dropped from the cache as well
+         if (cachePath != null && (scan.cacheChanged || scan.listings.size() != scan.cache.size())) {
+            saveCache(scan.listings);
+         }
+         return scan.files;
+      }
+   }
+
+   private Map<String, Listing> loadCache() throws GitException {
+      List<String> lines;
+      try {
+         lines = Files.readAllLines(cachePath);
+         GitStats.count(Counter.BYTES_READ, Files.size(cachePath));
+      } catch (NoSuchFileException e) {
+         return Map.of();
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+
+      if (lines.isEmpty() || !lines.get(0).equals(CACHE_HEADER) || !lines.get(lines.size() - 1).equals(CACHE_END)) {
+         // written by another version or incomplete, listing everything again rebuilds it
+         return Map.of();
+      }
+
+      Map<String, Listing> result = new HashMap<>();
+      Listing current = null;
+      for (String line : lines.subList(1, lines.size() - 1)) {
+         if (line.startsWith(DIRECTORY_PREFIX)) {
+            int separator = line.indexOf(' ', DIRECTORY_PREFIX.length());
+            current = new Listing(
+                Long.parseLong(line.substring(DIRECTORY_PREFIX.length(), separator)),
+                new ArrayList<>(),
+                new ArrayList<>()
+            );
+            result.put(line.substring(separator + 1), current);
+         }
+         else if (line.startsWith(FILE_PREFIX) && current != null) {
+            current.files().add(line.substring(FILE_PREFIX.length()));
+         }
+         else if (line.startsWith(SUBDIRECTORY_PREFIX) && current != null) {
+            current.directories().add(line.substring(SUBDIRECTORY_PREFIX.length()));
+         }
+      }
+      return result;
+   }
+
+   private void saveCache(Map<String, Listing> listings) throws GitException {
+      StringBuilder content = new StringBuilder(CACHE_HEADER).append('\n');
+      for (var entry : new TreeMap<>(listings).entrySet()) {
+         Listing listing = entry.getValue();
+         content.append(DIRECTORY_PREFIX).append(listing.modified()).append(' ').append(entry.getKey()).append('\n');
+         for (String file : listing.files()) {
+            content.append(FILE_PREFIX).append(file).append('\n');
+         }
+         for (String directory : listing.directories()) {
+            content.append(SUBDIRECTORY_PREFIX).append(directory).append('\n');
+         }
+      }
+      content.append(CACHE_END).append('\n');
+
+      // the cache is only an optimization, a concurrent scan writing it as well makes this one unnecessary
+      LockFile lock = LockFile.tryAcquire(cachePath);
+      if (lock != null) {
+         try (lock) {
+            // rebuilt by listing everything again, not worth a sync on every status
+            lock.commitUnsynced(content.toString().getBytes(StandardCharsets.UTF_8));
+         }
+      }
+   }
+
+   private static long modifiedNanos(BasicFileAttributes attributes) {
+      return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+   }
+
+   private static GitException unwrap(RuntimeException e) {
+      for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+         if (cause instanceof GitException gitException) {
+            return gitException;
+         }
+      }
+      throw e;
+   }
+
+   private record Listing(long modified, List<String> files, List<String> directories) {
+      boolean isCacheable(long scanStartSeconds) {
+         return TimeUnit.NANOSECONDS.toSeconds(modified) < scanStartSeconds
+             && files.stream().noneMatch(name -> name.indexOf('\n') >= 0)
+             && directories.stream().noneMatch(name -> name.indexOf('\n') >= 0);
+      }
+   }
+
+   /**
+    * State shared by the tasks of one scan
+    */
+   private static class Scan {
+      final IgnoreRules ignoreRules;
+      final SparseCheckout sparseCheckout;
+      final Map<String, Listing> cache;
+      final long startSeconds = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+
+      final Set<String> files = ConcurrentHashMap.newKeySet();
+      final Map<String, Listing> listings = new ConcurrentHashMap<>();
+      volatile boolean cacheChanged = false;
+      // statistics of the command that scans
+      final GitStats.Collector stats = GitStats.current();
+
+      Scan(IgnoreRules ignoreRules, SparseCheckout sparseCheckout, Map<String, Listing> cache) {
+         this.ignoreRules = ignoreRules;
+         this.sparseCheckout = sparseCheckout;
+         this.cache = cache;
+      }
+   }
+
+   private class DirectoryTask extends RecursiveAction {
+      private final Scan scan;
+      private final Path dir;
+      private final String relativeDir;
+      private final long modified;
+
+      DirectoryTask(Scan scan, Path dir, String relativeDir, long modified) {
+         this.scan = scan;
+         this.dir = dir;
+         this.relativeDir = relativeDir;
+         this.modified = modified;
+      }
+
+      @Override
+      protected void compute() {
+         try (GitStats.Scope ignored = GitStats.bind(scan.stats)) {
+            List<DirectoryTask> subtasks = new ArrayList<>();
+            Listing cached = scan.cache.get(relativeDir);
+            if (cached != null && cached.modified() == modified) {
+               GitStats.count(Counter.DIRS_SKIPPED);
+               keep(cached);
+               addFiles(cached.files());
+               for (String name : cached.directories()) {
+                  forkIfNotIgnored(name, subtasks);
+               }
+            }
+            else {
+               GitStats.count(Counter.DIRS_LISTED);
+               listDirectory(subtasks);
+            }
+            invokeAll(subtasks);
+         } catch (GitException e) {
+            throw new IllegalStateException(e);
+         }
+      }
+
+      private void listDirectory(List<DirectoryTask> subtasks) throws GitException {
+         Listing listing = new Listing(modified, new ArrayList<>(), new ArrayList<>());
+         try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path child : stream) {
+               String name = child.getFileName().toString();
+               BasicFileAttributes attributes;
+               try {
+                  attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                  GitStats.count(Counter.FILES_STATED);
+               } catch (NoSuchFileException e) {
+                  // removed while the directory was listed
+                  continue;
+               }
+
+               if (attributes.isDirectory()) {
+                  listing.directories().add(name);
+                  if (!isSkipped(name)) {
+                     subtasks.add(new DirectoryTask(scan, child, childPath(name), modifiedNanos(attributes)));
+                  }
+               }
+               // symbolic links to directories are not followed, like the directories themselves are not listed
+               else if (!attributes.isSymbolicLink() || !Files.isDirectory(child)) {
+                  listing.files().add(name);
+               }
+            }
+         } catch (NoSuchFileException e) {
+            // removed after its parent was listed
+            return;
+         } catch (IOException e) {
+            throw new GitException(e.getMessage(), e.getCause());
+         }
+
+         keep(listing);
+         addFiles(listing.files());
+      }
+
+      private void forkIfNotIgnored(String name, List<DirectoryTask> subtasks) throws GitException {
+         if (isSkipped(name)) {
+            return;
+         }
+
+         Path child = dir.resolve(name);
+         try {
+            BasicFileAttributes attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            GitStats.count(Counter.FILES_STATED);
+            if (attributes.isDirectory()) {
+               subtasks.add(new DirectoryTask(scan, child, childPath(name), modifiedNanos(attributes)));
+            }
+         } catch (NoSuchFileException e) {
+            // removed after the cached listing was taken, in the same second
+         } catch (IOException e) {
+            throw new GitException(e.getMessage(), e.getCause());
+         }
+      }
+
+      private boolean isSkipped(String name) throws GitException {
+         return WorktreeScanner.this.isSkipped(dir.resolve(name), childPath(name), scan.ignoreRules, scan.sparseCheckout);
+      }
+
+      private void addFiles(List<String> names) throws GitException {
+         for (String name : names) {
+            String path = childPath(name);
+            if (!scan.ignoreRules.isIgnored(path, false)) {
+               scan.files.add(path);
+            }
+         }
+      }
+
+      private void keep(Listing listing) {
+         if (listing.isCacheable(scan.startSeconds)) {
+            scan.listings.put(relativeDir, listing);
+            if (listing != scan.cache.get(relativeDir)) {
+               scan.cacheChanged = true;
+            }
+         }
+         else if (scan.cache.containsKey(relativeDir)) {
+            scan.cacheChanged = true;
+         }
+      }
+
+      private String childPath(String name) {
+         return relativeDir.isEmpty() ? name : relativeDir + "/" + name;
+      }
+   }
+}
@@ -1,11 +0,0 @@
-package ru.hse.mit.git.components.graph;
-
-import java.util.Optional;
-
-public class BlobNode extends Node {
-
-   public BlobNode(String nodeName, String hash) {
-      super(nodeName, NodeType.BLOB_NODE);
-      this.hash = Optional.of(hash);
-   }
-}
\ No newline at end of file
@@ -1,164 +1,459 @@
 package ru.hse.mit.git.components.graph;
 
-import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.fs.IndexFile;
+import ru.hse.mit.git.components.fs.SparseCheckout;
 import ru.hse.mit.git.components.fs.TreeFile;
+import ru.hse.mit.git.components.fs.TreeWriter;
+import ru.hse.mit.git.components.jfr.TreeBuildEvent;
+import ru.hse.mit.git.components.jfr.TreeLoadEvent;
+import ru.hse.mit.git.components.stats.GitStats;
+import ru.hse.mit.git.components.stats.GitStats.Timer;
+import ru.hse.mit.git.components.stats.Phase;
 import ru.hse.mit.git.components.utils.MiniGitUtils;
-
-public class TreeNode extends Node {
-   private final Map<String, Node> children = new HashMap<>();
-   private String content = "";
+import ru.hse.mit.git.components.utils.ObjectId;
+
+/**
+ * Directory of a tree, kept compact because the tree of a large repository has millions of entries.
+ * <p>
+ * Entries are sorted parallel arrays: interned names, hashes packed into one byte array and, only for
+ * directories that have subdirectories, the nodes of the subdirectories. Entries are in the canonical order
+ * of {@link TreeFile}, which is the order of the full paths too, so a tree built from sorted paths only ever
+ * appends. A tree is serialized only when it is hashed and the content is dropped right after, so equal
+ * directories get equal hashes whatever order their entries were added in.
+ */
+public class TreeNode {
+   private static final int HASH_LENGTH = ObjectId.RAW_LENGTH;
+   private static final String[] NO_NAMES = new String[0];
+   private static final byte[] NO_HASHES = new byte[0];
+
+   private String[] names = NO_NAMES;
+   // hashes of subdirectories are filled in once they are built
+   private byte[] hashes = NO_HASHES;
+   // null while there are no subdirectories, otherwise the node of every subdirectory and null for files
+   private TreeNode[] subtrees;
+   private int size = 0;
+
+   // null until the tree is built or loaded
+   private ObjectId hash;
+   // subtree outside of the sparse checkout: its entries are not loaded and its hash is kept as it is
+   private boolean collapsed = false;
 
    public static TreeNode createRoot() {
-      return new TreeNode("");
+      return new TreeNode();
    }
 
-   public TreeNode(String nodeName) {
-      super(nodeName, NodeType.TREE_NODE);
+   public ObjectId getHash() {
+      return hash;
    }
 
    /**
     *
     * @return blobs entries: { filename in working directory, hash }
     */
-   public Map<String, String> getBlobs() {
-      return getBlobs("");
+   public Map<String, ObjectId> getBlobs() {
+      Map<String, ObjectId> result = new HashMap<>();
+      collectEntries("", result, false);
+      return result;
    }
 
+   /**
+    * @return blobs entries like {@link #getBlobs()}, and collapsed subtrees: { directory with a trailing
+    * {@link IndexFile#SPARSE_DIRECTORY_SUFFIX}, hash }, in the form the index keeps them
+    */
+   public Map<String, ObjectId> getEntries() {
+      Map<String, ObjectId> result = new HashMap<>();
+      collectEntries("", result, true);
+      return result;
+   }
 
-   private Map<String, String> getBlobs(String namePrefix) {
-      Map<String, String> result = new HashMap<>();
-
-      for (var childEntry : children.entrySet()) {
-         String childName = childEntry.getKey();
-         Node childNode = childEntry.getValue();
+   private void collectEntries(String namePrefix, Map<String, ObjectId> result, boolean withCollapsed) {
+      for (int i = 0; i < size; i++) {
+         TreeNode subtree = getSubtree(i);
+         if (subtree == null) {
+            result.put(namePrefix + names[i], getEntryHash(i));
+         }
+         else if (!subtree.collapsed) {
+            subtree.collectEntries(namePrefix + names[i] + "/", result, withCollapsed);
+         }
+         else if (withCollapsed) {
+            result.put(namePrefix + names[i] + IndexFile.SPARSE_DIRECTORY_SUFFIX, subtree.hash);
+         }
+      }
+   }
 
-         switch (childNode.getType()) {
-            case TREE_NODE -> result.putAll(((TreeNode)childNode).getBlobs(namePrefix + childName + "/"));
-            case BLOB_NODE -> result.put(namePrefix + childName, childNode.getHash().get());
+   /**
+    * Looks the file up by binary search on every level, without collecting the entries
+    * @param path file path separated by {@code /}
+    * @return {@code null} if there is no such file, or it is in a collapsed subtree
+    */
+   public ObjectId findBlob(String path) {
+      TreeNode node = this;
+      int start = 0;
+      for (int end = path.indexOf('/'); end >= 0; end = path.indexOf('/', start)) {
+         int position = node.find(path.substring(start, end), true);
+         if (position < 0 || node.subtrees[position].collapsed) {
+            return null;
          }
+         node = node.subtrees[position];
+         start = end + 1;
       }
 
-      return result;
+      int position = node.find(path.substring(start), false);
+      return position < 0 ? null : node.getEntryHash(position);
    }
 
-   public static TreeNode loadTree(Path pathToTreesDir, String hash) throws GitException {
-      return loadTree(pathToTreesDir, hash, "");
+   /**
+    * Receives the differences between two trees
+    */
+   @FunctionalInterface
+   public interface DiffVisitor {
+      /**
+       * @param path file path, or a collapsed subtree in the form of {@link #getEntries()}
+       * @param oldHash {@code null} if the path is added
+       * @param newHash {@code null} if the path is removed
+       */
+      void changed(String path, ObjectId oldHash, ObjectId newHash) throws GitException;
    }
 
-   private static TreeNode loadTree(Path pathToTreesDir, String hash, String name) throws GitException {
-      TreeNode node = new TreeNode(name);
-      node.hash = Optional.of(hash);
+   /**
+    * Merge-joins the sorted entries of two built or loaded trees level by level, subtrees with equal hashes
+    * are skipped without being visited
+    */
+   public static void diff(TreeNode oldTree, TreeNode newTree, DiffVisitor visitor) throws GitException {
+      diff("", oldTree, newTree, visitor);
+   }
+
+   private static void diff(String prefix, TreeNode oldTree, TreeNode newTree, DiffVisitor visitor)
+       throws GitException {
+      int oldSize = oldTree == null ? 0 : oldTree.size;
+      int newSize = newTree == null ? 0 : newTree.size;
+      int i = 0;
+      int j = 0;
+      while (i < oldSize || j < newSize) {
+         int order;
+         if (i == oldSize) {
+            order = 1;
+         }
+         else if (j == newSize) {
+            order = -1;
+         }
+         else {
+            order = TreeFile.compareEntries(
+                oldTree.names[i], oldTree.getSubtree(i) != null,
+                newTree.names[j], newTree.getSubtree(j) != null
+            );
+         }
+
+         if (order < 0) {
+            diffEntry(prefix, oldTree, i++, null, -1, visitor);
+         }
+         else if (order > 0) {
+            diffEntry(prefix, null, -1, newTree, j++, visitor);
+         }
+         else {
+            if (!Arrays.equals(
+                oldTree.hashes, i * HASH_LENGTH, (i + 1) * HASH_LENGTH,
+                newTree.hashes, j * HASH_LENGTH, (j + 1) * HASH_LENGTH
+            )) {
+               diffEntry(prefix, oldTree, i, newTree, j, visitor);
+            }
+            i++;
+            j++;
+         }
+      }
+   }
 
-      try(Stream<String> stream = Files.lines(Path.of(pathToTreesDir.toString(), hash))) {
-         List<String> lines = stream.toList();
+   /**
+    * Entries of the same name and kind, or one of them on its own with the other tree {@code null}
+    */
+   private static void diffEntry(String prefix, TreeNode oldTree, int i, TreeNode newTree, int j, DiffVisitor visitor)
+       throws GitException {
+      String path = prefix + (oldTree != null ? oldTree.names[i] : newTree.names[j]);
+      TreeNode oldSubtree = oldTree == null ? null : oldTree.getSubtree(i);
+      TreeNode newSubtree = newTree == null ? null : newTree.getSubtree(j);
+      if (oldSubtree == null && newSubtree == null) {
+         visitor.changed(
+             path,
+             oldTree == null ? null : oldTree.getEntryHash(i),
+             newTree == null ? null : newTree.getEntryHash(j)
+         );
+      }
+      else if ((oldSubtree != null && oldSubtree.collapsed) || (newSubtree != null && newSubtree.collapsed)) {
+         visitor.changed(
+             path + IndexFile.SPARSE_DIRECTORY_SUFFIX,
+             oldSubtree == null ? null : oldSubtree.hash,
+             newSubtree == null ? null : newSubtree.hash
+         );
+      }
+      else {
+         diff(path + "/", oldSubtree, newSubtree, visitor);
+      }
+   }
 
-         for (String line : lines) {
-            String[] data = line.split(" ");
-            String childType = data[0];
-            String childHash = data[1];
-            String childName = data[2];
+   public static TreeNode loadTree(Path pathToTreesDir, ObjectId hash) throws GitException {
+      return loadTree(pathToTreesDir, hash, SparseCheckout.FULL);
+   }
 
-            Node child;
+   /**
+    * Subtrees excluded from the sparse checkout are collapsed and never read
+    */
+   public static TreeNode loadTree(Path pathToTreesDir, ObjectId hash, SparseCheckout sparseCheckout) throws GitException {
+      TreeLoadEvent event = new TreeLoadEvent();
+      event.begin();
 
-            if (childType.equals("tree")) {
-               child = loadTree(pathToTreesDir, childHash, childName);
-            }
-            else {
-               child = new BlobNode(childName, childHash);
-            }
+      TreeNode root;
+      try (Timer ignored = GitStats.time(Phase.TREE_LOAD)) {
+         root = loadTree(pathToTreesDir, hash, "", sparseCheckout);
+      }
 
-            node.children.put(childName, child);
-         }
+      if (event.shouldCommit()) {
+         event.rootHash = hash.toHex();
+         event.commit();
+      }
+      return root;
+   }
 
-      } catch (IOException e) {
-         throw new GitException(e.getMessage(), e.getCause());
+   private static TreeNode loadTree(
+       Path pathToTreesDir,
+       ObjectId hash,
+       String path,
+       SparseCheckout sparseCheckout
+   ) throws GitException {
+      TreeNode node = new TreeNode();
+      node.hash = hash;
+      if (sparseCheckout.matchDirectory(path) == SparseCheckout.Match.EXCLUDED) {
+         node.collapsed = true;
+         return node;
       }
 
+      TreeFile.Entries entries = TreeFile.read(pathToTreesDir, hash);
+      node.names = entries.names();
+      node.hashes = entries.hashes();
+      node.size = entries.size();
+      for (int i = 0; i < node.size; i++) {
+         if (entries.trees()[i]) {
+            String childPath = path.isEmpty() ? node.names[i] : path + "/" + node.names[i];
+            node.setSubtree(i, loadTree(pathToTreesDir, entries.getHash(i), childPath, sparseCheckout));
+         }
+      }
       return node;
    }
 
-   public void addChildren(int index, List<String> names, String blobHash) {
-      if (index == names.size() - 1) {
-         addBlob(names.get(index), blobHash);
+   public void addChildren(int index, List<String> pathNames, ObjectId blobHash) {
+      if (index == pathNames.size() - 1) {
+         addBlob(pathNames.get(index), blobHash);
          return;
       }
 
-      String treeNodeName = names.get(index);
-      if (!children.containsKey(treeNodeName)) {
-         children.put(treeNodeName, new TreeNode(treeNodeName));
+      getOrAddSubtree(pathNames.get(index)).addChildren(index + 1, pathNames, blobHash);
+   }
+
+   /**
+    * Adds a subtree that is kept by its hash, without loading its children
+    */
+   public void addCollapsedTree(int index, List<String> pathNames, ObjectId treeHash) {
+      String treeNodeName = pathNames.get(index);
+      if (index == pathNames.size() - 1) {
+         int position = find(treeNodeName, true);
+         if (position < 0) {
+            TreeNode treeNode = new TreeNode();
+            treeNode.hash = treeHash;
+            treeNode.collapsed = true;
+            insert(-position - 1, treeNodeName, treeHash, treeNode);
+         }
+         return;
       }
 
-      ((TreeNode)children.get(treeNodeName)).addChildren(index + 1, names, blobHash);
+      getOrAddSubtree(treeNodeName).addCollapsedTree(index + 1, pathNames, treeHash);
    }
 
-   public void addBlob(String name, String hash) {
-      if (!children.containsKey(name)) {
-         children.put(name, new BlobNode(name, hash));
+   public void addBlob(String name, ObjectId hash) {
+      int position = find(name, false);
+      if (position < 0) {
+         insert(-position - 1, name, hash, null);
       }
    }
 
-   public void buildGraph() {
-      StringBuilder content = new StringBuilder();
+   private TreeNode getOrAddSubtree(String name) {
+      int position = find(name, true);
+      if (position >= 0) {
+         return subtrees[position];
+      }
 
-      for (var childEntry : children.entrySet()) {
-         String childName = childEntry.getKey();
-         Node childNode = childEntry.getValue();
+      TreeNode subtree = new TreeNode();
+      insert(-position - 1, name, null, subtree);
+      return subtree;
+   }
 
-         switch (childNode.type) {
-            case TREE_NODE -> {
-               TreeNode treeNode = (TreeNode) childNode;
-               treeNode.buildGraph();
-               String hash = treeNode.getHash().get();
+   /**
+    * @return position of the entry, or {@code -(insertion point) - 1} like {@link Arrays#binarySearch}
+    */
+   private int find(String name, boolean tree) {
+      // entries added in path order always go last
+      if (size > 0 && TreeFile.compareEntries(names[size - 1], getSubtree(size - 1) != null, name, tree) < 0) {
+         return -size - 1;
+      }
 
-               content
-                   .append("tree ")
-                   .append(hash).append(" ")
-                   .append(childName)
-                   .append(System.lineSeparator());
-            }
-            case BLOB_NODE -> {
-               content
-                   .append("blob ")
-                   .append(childNode.getHash().get()).append(" ")
-                   .append(childName)
-                   .append(System.lineSeparator());
-            }
+      int low = 0;
+      int high = size - 1;
+      while (low <= high) {
+         int middle = (low + high) >>> 1;
+         int order = TreeFile.compareEntries(names[middle], getSubtree(middle) != null, name, tree);
+         if (order < 0) {
+            low = middle + 1;
+         }
+         else if (order > 0) {
+            high = middle - 1;
+         }
+         else {
+            return middle;
+         }
+      }
+      return -low - 1;
+   }
+
+   /**
+    * @param hash {@code null} for a subtree that is not built yet
+    * @param subtree {@code null} for a file
+    */
+   private void insert(int position, String name, ObjectId hash, TreeNode subtree) {
+      if (size == names.length) {
+         int capacity = Math.max(4, size * 2);
+         names = Arrays.copyOf(names, capacity);
+         hashes = Arrays.copyOf(hashes, capacity * HASH_LENGTH);
+         if (subtrees != null) {
+            subtrees = Arrays.copyOf(subtrees, capacity);
          }
       }
+      if (subtree != null && subtrees == null) {
+         subtrees = new TreeNode[names.length];
+      }
+
+      System.arraycopy(names, position, names, position + 1, size - position);
+      System.arraycopy(hashes, position * HASH_LENGTH, hashes, (position + 1) * HASH_LENGTH, (size - position) * HASH_LENGTH);
+      if (subtrees != null) {
+         System.arraycopy(subtrees, position, subtrees, position + 1, size - position);
+         subtrees[position] = subtree;
+      }
+      size++;
 
-      String currentNodeHash = MiniGitUtils.getHashFromBytes(content.toString().getBytes());
-      this.hash = Optional.of(currentNodeHash);
-      this.content = content.toString();
+      names[position] = name.intern();
+      if (hash != null) {
+         hash.copyRawTo(hashes, position * HASH_LENGTH);
+      }
+      else {
+         Arrays.fill(hashes, position * HASH_LENGTH, (position + 1) * HASH_LENGTH, (byte) 0);
+      }
    }
 
-   public void saveGraph(Path fullPath) throws GitException {
-      for (var childEntry : children.entrySet()) {
-         Node childNode = childEntry.getValue();
+   private void setSubtree(int position, TreeNode subtree) {
+      if (subtrees == null) {
+         subtrees = new TreeNode[names.length];
+      }
+      subtrees[position] = subtree;
+   }
 
-         // only save tree-nodes, because blob-nodes are already saved
-         if (childNode.type == NodeType.TREE_NODE) {
-            TreeNode treeNode = (TreeNode)childNode;
-            treeNode.saveGraph(fullPath);
-         }
+   private TreeNode getSubtree(int position) {
+      return subtrees == null ? null : subtrees[position];
+   }
+
+   private ObjectId getEntryHash(int position) {
+      return ObjectId.fromRaw(hashes, position * HASH_LENGTH);
+   }
+
+   public void buildGraph() throws GitException {
+      buildGraph(null);
+   }
+
+   /**
+    * Serializes and hashes the trees bottom-up, one fork-join task per tree: a task forks the tasks of its subtrees,
+    * joins them and then hashes its own tree on its own thread. While it waits, the thread runs other tasks
+    * @param writer stage that every tree is handed to once hashed, {@code null} to only compute the hashes
+    */
+   public void buildGraph(TreeWriter writer) throws GitException {
+      TreeBuildEvent event = new TreeBuildEvent();
+      event.begin();
+
+      try (Timer ignored = GitStats.time(Phase.TREE_BUILD)) {
+         ForkJoinPool.commonPool().invoke(new BuildTask(this, writer));
+      } catch (RuntimeException e) {
+         throw unwrap(e);
       }
 
-      TreeFile treeFile = new TreeFile(fullPath, content.getBytes());
-      treeFile.save();
+      if (event.shouldCommit()) {
+         event.rootHash = hash.toHex();
+         event.commit();
+      }
+   }
+
+   private static GitException unwrap(RuntimeException e) {
+      for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+         if (cause instanceof GitException gitException) {
+            return gitException;
+         }
+      }
+      throw e;
    }
-}
 
+   /**
+    * Children are hashed by the time this runs
+    */
+   private void buildContent(TreeWriter writer) throws GitException {
+      for (int i = 0; i < size; i++) {
+         TreeNode subtree = getSubtree(i);
+         if (subtree != null) {
+            subtree.hash.copyRawTo(hashes, i * HASH_LENGTH);
+         }
+      }
 
+      byte[] bytes = TreeFile.serialize(size, names, hashes, i -> getSubtree(i) != null);
+      this.hash = MiniGitUtils.getHashFromBytes(bytes);
+      // blobs are saved when they are added, and collapsed subtrees were saved by an earlier commit
+      if (writer != null) {
+         writer.submit(hash, bytes);
+      }
+   }
 
+   private static class BuildTask extends RecursiveAction {
+      private final TreeNode node;
+      private final TreeWriter writer;
+      // statistics of the command that builds the tree
+      private final GitStats.Collector stats = GitStats.current();
 
+      BuildTask(TreeNode node, TreeWriter writer) {
+         this.node = node;
+         this.writer = writer;
+      }
 
+      @Override
+      protected void compute() {
+         if (node.collapsed) {
+            return;
+         }
 
+         try (GitStats.Scope ignored = GitStats.bind(stats)) {
+            List<BuildTask> subtasks = new ArrayList<>();
+            for (int i = 0; i < node.size; i++) {
+               TreeNode subtree = node.getSubtree(i);
+               if (subtree != null) {
+                  subtasks.add(new BuildTask(subtree, writer));
+               }
+            }
+            invokeAll(subtasks);
 
+            node.buildContent(writer);
+         } catch (GitException e) {
+            throw new IllegalStateException(e);
+         }
+      }
+   }
+}
@@ -0,0 +1,230 @@
+package ru.hse.mit.git.components.history;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.fs.BlobFile;
+import ru.hse.mit.git.components.fs.ChunkStore;
+import ru.hse.mit.git.components.fs.HeadFile;
+import ru.hse.mit.git.components.fs.LockFile;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
+import ru.hse.mit.git.components.utils.LruCache;
+import ru.hse.mit.git.components.utils.MiniGitUtils;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+/**
+ * Finds the commit that last changed every line of a file.
+ * <p>
+ * History is walked newest-first while some lines are not attributed yet. At every commit only the trees
+ * on the path to the file are read, and commits that keep the blob hash of the file are passed without
+ * reading the file at all. Otherwise the lines that the parent version also has are handed over to the parent
+ * and the rest are attributed to the commit.
+ * <p>
+ * Results are cached by (commit, path), in memory and in the {@code blame} directory of the repository.
+ * A walk that reaches a commit with a cached result takes the attribution of the remaining lines from it,
+ * so blaming a revision close to an already blamed one costs only the commits in between.
+ */
+public class Blame {
+   private static final String CACHE_HEADER = "# mini-git blame ";
+   private static final int RESULT_CACHE_SIZE = 256;
+
+   private final HeadFile headFile;
+   private final TreeReader treeReader;
+   private final Path blobsDir;
+   private final ChunkStore chunkStore;
+   private final Path cacheDir;
+
+   private final LruCache<Key, ObjectId[]> resultCache = new LruCache<>(RESULT_CACHE_SIZE);
+
+   public Blame(HeadFile headFile, Path treesDir, Path blobsDir, ChunkStore chunkStore, Path cacheDir) {
+      this.headFile = headFile;
+      this.treeReader = new TreeReader(treesDir);
+      this.blobsDir = blobsDir;
+      this.chunkStore = chunkStore;
+      this.cacheDir = cacheDir;
+   }
+
+   public record Line(ObjectId commitHash, String content) {}
+
+   /**
+    * @param path file path relative to the working directory, separated by {@code /}
+    */
+   public List<Line> blame(ObjectId commitHash, String path) throws GitException {
+      ObjectId blobHash = findBlob(headFile.loadCommit(commitHash).getRootNodeHash(), path);
+      if (blobHash == null) {
+         throw new GitException("File '" + path + "' does not exist in commit " + commitHash);
+      }
+
+      List<String> lines = loadLines(blobHash);
+      ObjectId[] attribution = loadCached(commitHash, path);
+      if (attribution == null || attribution.length != lines.size()) {
+         attribution = attribute(commitHash, path, blobHash, lines);
+         saveCached(commitHash, path, attribution);
+      }
+
+      List<Line> result = new ArrayList<>(lines.size());
+      for (int i = 0; i < lines.size(); i++) {
+         result.add(new Line(attribution[i], lines.get(i)));
+      }
+      return result;
+   }
+
+   private ObjectId[] attribute(ObjectId commitHash, String path, ObjectId blobHash, List<String> lines)
+       throws GitException {
+      ObjectId[] result = new ObjectId[lines.size()];
+      // lines not attributed yet: their index in the blamed version and in the version of the current commit
+      int[] pending = new int[lines.size()];
+      int[] positions = new int[lines.size()];
+      for (int i = 0; i < pending.length; i++) {
+         pending[i] = i;
+         positions[i] = i;
+      }
+      int pendingCount = pending.length;
+
+      ObjectId current = commitHash;
+      List<String> currentLines = lines;
+      while (pendingCount > 0) {
+         if (!current.equals(commitHash)) {
+            ObjectId[] cached = loadCached(current, path);
+            if (cached != null && cached.length == currentLines.size()) {
+               for (int i = 0; i < pendingCount; i++) {
+                  result[pending[i]] = cached[positions[i]];
+               }
+               break;
+            }
+         }
+
+         ObjectId parent = headFile.loadCommit(current).getParentCommitHash();
+         ObjectId parentBlobHash = parent == null ? null : findBlob(headFile.loadCommit(parent).getRootNodeHash(), path);
+         if (parentBlobHash == null) {
+            // the file was created here
+            for (int i = 0; i < pendingCount; i++) {
+               result[pending[i]] = current;
+            }
+            break;
+         }
+
+         if (!parentBlobHash.equals(blobHash)) {
+            List<String> parentLines = loadLines(parentBlobHash);
+            int[] matches = LineDiff.matchLines(parentLines, currentLines);
+
+            int kept = 0;
+            for (int i = 0; i < pendingCount; i++) {
+               int parentPosition = matches[positions[i]];
+               if (parentPosition < 0) {
+                  result[pending[i]] = current;
+               }
+               else {
+                  pending[kept] = pending[i];
+                  positions[kept] = parentPosition;
+                  kept++;
+               }
+            }
+            pendingCount = kept;
+            currentLines = parentLines;
+            blobHash = parentBlobHash;
+         }
+         current = parent;
+      }
+
+      return result;
+   }
+
+   /**
+    * @return {@code null} if there is no such file in the tree
+    */
+   private ObjectId findBlob(ObjectId rootHash, String path) throws GitException {
+      TreeReader.Entry entry = treeReader.find(rootHash, path);
+      return entry == null || entry.tree() ? null : entry.hash();
+   }
+
+   private List<String> loadLines(ObjectId blobHash) throws GitException {
+      String content = new String(BlobFile.loadContent(blobsDir, chunkStore, blobHash), StandardCharsets.UTF_8);
+      List<String> lines = new ArrayList<>(Arrays.asList(content.split("\n", -1)));
+      // a trailing line break does not start another line
+      if (lines.get(lines.size() - 1).isEmpty()) {
+         lines.remove(lines.size() - 1);
+      }
+      return lines;
+   }
+
+   /**
+    * @return {@code null} if nothing is cached
+    */
+   private ObjectId[] loadCached(ObjectId commitHash, String path) throws GitException {
+      Key key = new Key(commitHash, path);
+      ObjectId[] cached = resultCache.get(key);
+      if (cached != null) {
+         return cached;
+      }
+
+      Path cachePath = getCachePath(key);
+      List<String> lines;
+      try {
+         lines = Files.readAllLines(cachePath);
+         GitStats.count(Counter.BYTES_READ, Files.size(cachePath));
+      } catch (NoSuchFileException e) {
+         return null;
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      } finally {
+         GitStats.count(Counter.FILES_STATED);
+      }
+      // the file name is a hash of the key, the header tells the keys apart
+      if (lines.isEmpty() || !lines.get(0).equals(getCacheHeader(key))) {
+         return null;
+      }
+
+      cached = new ObjectId[lines.size() - 1];
+      for (int i = 0; i < cached.length; i++) {
+         String line = lines.get(i + 1);
+         // the cache is written without syncing, so a crash may leave it partially written
+         if (!ObjectId.isValidHex(line)) {
+            return null;
+         }
+         cached[i] = ObjectId.fromHex(line);
+      }
+      resultCache.put(key, cached);
+      return cached;
+   }
+
+   private void saveCached(ObjectId commitHash, String path, ObjectId[] attribution) throws GitException {
+      Key key = new Key(commitHash, path);
+      resultCache.put(key, attribution);
+
+      StringBuilder content = new StringBuilder(getCacheHeader(key)).append('\n');
+      for (ObjectId hash : attribution) {
+         hash.appendHex(content).append('\n');
+      }
+
+      try {
+         Files.createDirectories(cacheDir);
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+      // results never change, whoever writes one first writes the same content
+      LockFile lock = LockFile.tryAcquire(getCachePath(key));
+      if (lock != null) {
+         try (lock) {
+            lock.commitUnsynced(content.toString().getBytes(StandardCharsets.UTF_8));
+         }
+      }
+   }
+
+   private Path getCachePath(Key key) {
+      return cacheDir.resolve(MiniGitUtils.getHashFromBytes(getCacheHeader(key).getBytes(StandardCharsets.UTF_8)).toHex());
+   }
+
+   private static String getCacheHeader(Key key) {
+      return CACHE_HEADER + key.commitHash().toHex() + " " + key.path();
+   }
+
+   private record Key(ObjectId commitHash, String path) {}
+}
@@ -0,0 +1,263 @@
+package ru.hse.mit.git.components.history;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.fs.LockFile;
+import ru.hse.mit.git.components.fs.TreeFile;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+/**
+ * Per-commit Bloom filters of the paths a commit changed compared to its parent, so that path-limited history
+ * rejects most commits without reading any tree.
+ * <p>
+ * A changed path is every file added, removed or modified and every directory above it, so a query for
+ * a directory is answered by the same filter. Filters are computed when a commit is made, or by a backfill
+ * for older history, by comparing the two trees level by level and descending only into subtrees whose hashes
+ * differ. A commit without a filter, or with a positive answer, is checked against its trees.
+ * <p>
+ * A filter is stored as {@code changed-paths/<commit hash>}: a version byte, the number of hash functions and
+ * the bit array, with about 10 bits and 7 hash functions per path (under 1% false positives). Commits that
+ * change more than {@link #MAX_CHANGED_PATHS} paths get an empty filter with no hash functions, which answers
+ * "maybe" for every path.
+ */
+public class ChangedPathFilters {
+   private static final byte VERSION = 1;
+   private static final int HASH_COUNT = 7;
+   private static final int BITS_PER_PATH = 10;
+   private static final int MIN_BITS = 64;
+   private static final int MAX_CHANGED_PATHS = 512;
+   private static final int HEADER_LENGTH = 2;
+
+   // seeds of the two hashes combined by double hashing
+   private static final int SEED_1 = 0x293ae76f;
+   private static final int SEED_2 = 0x7e646e2c;
+
+   public enum Answer {
+      NOT_CHANGED,
+      MAYBE_CHANGED,
+      // no filter for the commit
+      UNKNOWN
+   }
+
+   private final Path filtersDir;
+   private final TreeReader treeReader;
+
+   public ChangedPathFilters(Path filtersDir, Path treesDir) {
+      this.filtersDir = filtersDir;
+      this.treeReader = new TreeReader(treesDir);
+   }
+
+   public boolean exists(ObjectId commitHash) {
+      GitStats.count(Counter.FILES_STATED);
+      return Files.exists(getPath(commitHash));
+   }
+
+   /**
+    * @param path file or directory separated by {@code /}, empty for the root
+    */
+   public Answer mayHaveChanged(ObjectId commitHash, String path) throws GitException {
+      if (path.isEmpty()) {
+         // the root is not a key of the filters, it changed whenever the root trees differ
+         return Answer.MAYBE_CHANGED;
+      }
+
+      byte[] filter;
+      try {
+         filter = Files.readAllBytes(getPath(commitHash));
+         GitStats.count(Counter.BYTES_READ, filter.length);
+      } catch (NoSuchFileException e) {
+         return Answer.UNKNOWN;
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+
+      if (filter.length < HEADER_LENGTH || filter[0] != VERSION) {
+         return Answer.UNKNOWN;
+      }
+      int hashCount = filter[1];
+      if (hashCount == 0) {
+         return Answer.MAYBE_CHANGED;
+      }
+
+      long bitCount = (long) (filter.length - HEADER_LENGTH) * 8;
+      byte[] key = path.getBytes(StandardCharsets.UTF_8);
+      int hash1 = murmur3(key, SEED_1);
+      int hash2 = murmur3(key, SEED_2);
+      for (int i = 0; i < hashCount; i++) {
+         int bit = bitIndex(hash1, hash2, i, bitCount);
+         if ((filter[HEADER_LENGTH + (bit >>> 3)] & (1 << (bit & 7))) == 0) {
+            return Answer.NOT_CHANGED;
+         }
+      }
+      return Answer.MAYBE_CHANGED;
+   }
+
+   /**
+    * Exact check, which reads only the trees on the path
+    * @param parentTreeHash {@code null} for the first commit
+    */
+   public boolean hasChanged(ObjectId treeHash, ObjectId parentTreeHash, String path) throws GitException {
+      TreeReader.Entry entry = treeReader.find(treeHash, path);
+      TreeReader.Entry parentEntry = parentTreeHash == null ? null : treeReader.find(parentTreeHash, path);
+      return !Objects.equals(entry, parentEntry);
+   }
+
+   /**
+    * @param parentTreeHash {@code null} for the first commit
+    */
+   public void write(ObjectId commitHash, ObjectId treeHash, ObjectId parentTreeHash) throws GitException {
+      Set<String> changedPaths = new HashSet<>();
+      boolean complete = collectChanges(treeHash, parentTreeHash, "", changedPaths);
+
+      byte[] filter;
+      if (!complete) {
+         filter = new byte[] {VERSION, 0};
+      }
+      else {
+         int bitCount = Math.max(MIN_BITS, changedPaths.size() * BITS_PER_PATH + 7) & ~7;
+         filter = new byte[HEADER_LENGTH + bitCount / 8];
+         filter[0] = VERSION;
+         filter[1] = HASH_COUNT;
+         for (String path : changedPaths) {
+            byte[] key = path.getBytes(StandardCharsets.UTF_8);
+            int hash1 = murmur3(key, SEED_1);
+            int hash2 = murmur3(key, SEED_2);
+            for (int i = 0; i < HASH_COUNT; i++) {
+               int bit = bitIndex(hash1, hash2, i, bitCount);
+               filter[HEADER_LENGTH + (bit >>> 3)] |= (byte) (1 << (bit & 7));
+            }
+         }
+      }
+
+      try {
+         Files.createDirectories(filtersDir);
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+      // filters of a commit never change, whoever writes one first writes the same content,
+      // and a filter lost in a crash is written again by the backfill, so it is not synced
+      LockFile lock = LockFile.tryAcquire(getPath(commitHash));
+      if (lock != null) {
+         try (lock) {
+            lock.commitUnsynced(filter);
+         }
+      }
+   }
+
+   /**
+    * @return {@code false} if there are more than {@link #MAX_CHANGED_PATHS} changes
+    */
+   private boolean collectChanges(ObjectId treeHash, ObjectId parentTreeHash, String prefix, Set<String> result)
+       throws GitException {
+      TreeFile.Entries entries = treeHash == null ? TreeFile.Entries.EMPTY : treeReader.read(treeHash);
+      TreeFile.Entries parentEntries = parentTreeHash == null ? TreeFile.Entries.EMPTY : treeReader.read(parentTreeHash);
+
+      // both levels are sorted, so they are merged in one pass
+      int i = 0;
+      int j = 0;
+      while (i < entries.size() || j < parentEntries.size()) {
+         int order;
+         if (i == entries.size()) {
+            order = 1;
+         }
+         else if (j == parentEntries.size()) {
+            order = -1;
+         }
+         else {
+            order = TreeFile.compareEntries(
+                entries.names()[i], entries.trees()[i],
+                parentEntries.names()[j], parentEntries.trees()[j]
+            );
+         }
+
+         String name;
+         ObjectId subtree = null;
+         ObjectId parentSubtree = null;
+         if (order <= 0) {
+            name = entries.names()[i];
+            subtree = entries.trees()[i] ? entries.getHash(i) : null;
+         }
+         else {
+            name = parentEntries.names()[j];
+         }
+         if (order >= 0) {
+            parentSubtree = parentEntries.trees()[j] ? parentEntries.getHash(j) : null;
+         }
+
+         boolean unchanged = order == 0 && entries.sameHash(i, parentEntries, j);
+         i += order <= 0 ? 1 : 0;
+         j += order >= 0 ? 1 : 0;
+         if (unchanged) {
+            continue;
+         }
+
+         String path = prefix + name;
+         result.add(path);
+         if (result.size() > MAX_CHANGED_PATHS) {
+            return false;
+         }
+
+         if ((subtree != null || parentSubtree != null) && !collectChanges(subtree, parentSubtree, path + "/", result)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private Path getPath(ObjectId commitHash) {
+      return Path.of(filtersDir.toString(), commitHash.toHex());
+   }
+
+   private static int bitIndex(int hash1, int hash2, int i, long bitCount) {
+      return (int) (Integer.toUnsignedLong(hash1 + i * hash2) % bitCount);
+   }
+
+   /**
+    * 32-bit MurmurHash3 (x86 variant)
+    */
+   private static int murmur3(byte[] data, int seed) {
+      int hash = seed;
+      int blocks = data.length / 4;
+      for (int i = 0; i < blocks; i++) {
+         int k = (data[4 * i] & 0xFF) | (data[4 * i + 1] & 0xFF) << 8
+             | (data[4 * i + 2] & 0xFF) << 16 | (data[4 * i + 3] & 0xFF) << 24;
+         hash ^= mixKey(k);
+         hash = Integer.rotateLeft(hash, 13) * 5 + 0xe6546b64;
+      }
+
+      int k = 0;
+      int tail = blocks * 4;
+      int remaining = data.length & 3;
+      if (remaining == 3) {
+         k ^= (data[tail + 2] & 0xFF) << 16;
+      }
+      if (remaining >= 2) {
+         k ^= (data[tail + 1] & 0xFF) << 8;
+      }
+      if (remaining >= 1) {
+         k ^= data[tail] & 0xFF;
+         hash ^= mixKey(k);
+      }
+
+      hash ^= data.length;
+      hash ^= hash >>> 16;
+      hash *= 0x85ebca6b;
+      hash ^= hash >>> 13;
+      hash *= 0xc2b2ae35;
+      hash ^= hash >>> 16;
+      return hash;
+   }
+
+   private static int mixKey(int k) {
+      return Integer.rotateLeft(k * 0xcc9e2d51, 15) * 0x1b873593;
+   }
+}
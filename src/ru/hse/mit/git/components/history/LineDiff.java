@@ -0,0 +1,116 @@
+package ru.hse.mit.git.components.history;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Line matching of two file versions by Myers' O(ND) difference algorithm.
+ * <p>
+ * Lines are interned into integers once, and the common prefix and suffix are matched before the algorithm runs,
+ * so a typical edit costs a pass over the lines and a search over the changed region only. Regions that differ
+ * in more than {@link #MAX_EDIT_COST} lines are treated as rewritten as a whole, which bounds the memory
+ * of the search.
+ */
+final class LineDiff {
+   private static final int MAX_EDIT_COST = 2048;
+
+   private LineDiff() {}
+
+   /**
+    * @return for every line of {@code newer}, the index of the same line in {@code older}, {@code -1} for the lines
+    * {@code newer} added
+    */
+   static int[] matchLines(List<String> older, List<String> newer) {
+      Map<String, Integer> ids = new HashMap<>();
+      int[] a = intern(older, ids);
+      int[] b = intern(newer, ids);
+      int[] result = new int[b.length];
+      Arrays.fill(result, -1);
+
+      int prefix = 0;
+      while (prefix < a.length && prefix < b.length && a[prefix] == b[prefix]) {
+         result[prefix] = prefix;
+         prefix++;
+      }
+      int suffix = 0;
+      while (suffix < a.length - prefix && suffix < b.length - prefix
+          && a[a.length - 1 - suffix] == b[b.length - 1 - suffix]) {
+         result[b.length - 1 - suffix] = a.length - 1 - suffix;
+         suffix++;
+      }
+
+      matchMiddle(a, prefix, a.length - suffix, b, prefix, b.length - suffix, result);
+      return result;
+   }
+
+   private static void matchMiddle(int[] a, int aStart, int aEnd, int[] b, int bStart, int bEnd, int[] result) {
+      int n = aEnd - aStart;
+      int m = bEnd - bStart;
+      if (n == 0 || m == 0) {
+         return;
+      }
+
+      int max = Math.min(n + m, MAX_EDIT_COST);
+      int offset = max + 1;
+      int[] v = new int[2 * max + 3];
+      // trace.get(d) holds the furthest x of diagonals -d..d before step d
+      List<int[]> trace = new ArrayList<>();
+      int cost = -1;
+
+      search:
+      for (int d = 0; d <= max; d++) {
+         trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+         for (int k = -d; k <= d; k += 2) {
+            int x = k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])
+                ? v[offset + k + 1]
+                : v[offset + k - 1] + 1;
+            int y = x - k;
+            while (x < n && y < m && a[aStart + x] == b[bStart + y]) {
+               x++;
+               y++;
+            }
+            v[offset + k] = x;
+            if (x >= n && y >= m) {
+               cost = d;
+               break search;
+            }
+         }
+      }
+      if (cost < 0) {
+         return;
+      }
+
+      int x = n;
+      int y = m;
+      for (int d = cost; d > 0; d--) {
+         int[] previous = trace.get(d);
+         int k = x - y;
+         int previousK = k == -d || (k != d && previous[k - 1 + d] < previous[k + 1 + d]) ? k + 1 : k - 1;
+         int previousX = previous[previousK + d];
+         int previousY = previousX - previousK;
+         while (x > previousX && y > previousY) {
+            x--;
+            y--;
+            result[bStart + y] = aStart + x;
+         }
+         x = previousX;
+         y = previousY;
+      }
+      while (x > 0 && y > 0) {
+         x--;
+         y--;
+         result[bStart + y] = aStart + x;
+      }
+   }
+
+   private static int[] intern(List<String> lines, Map<String, Integer> ids) {
+      int[] result = new int[lines.size()];
+      for (int i = 0; i < result.length; i++) {
+         result[i] = ids.computeIfAbsent(lines.get(i), ignored -> ids.size());
+      }
+      return result;
+   }
+}
@@ -0,0 +1,593 @@
+package ru.hse.mit.git.components.history;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.fs.CommitFile;
+import ru.hse.mit.git.components.fs.HeadFile;
+import ru.hse.mit.git.components.fs.LockFile;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
+import ru.hse.mit.git.components.utils.MiniGitUtils;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+/**
+ * Trigram inverted index over commit messages, for {@code log --grep}.
+ * <p>
+ * Commits are numbered in the order they are indexed, parents first. A segment file holds a range of these
+ * numbers: the commit hashes, the number of every parent, the hashes in sorted order for lookups and, for every
+ * trigram of UTF-8 bytes, the sorted numbers of the commits whose message contains it, as varint deltas.
+ * A search intersects the lists of the trigrams of the text, shortest first, follows parents from the start commit
+ * over the numbers alone and reads only the candidate commits to verify the match.
+ * <p>
+ * Searches keep the index up to date: the commits between the start and its first indexed ancestor are written
+ * to a new segment. Segments are immutable and memory-mapped, and a segment is merged with the previous one
+ * once it is at least as large, which keeps their number logarithmic. The {@code segments} file lists
+ * the current ones and is replaced under its lock.
+ * <p>
+ * The index is a cache of the commits, so nothing of it is synced: a segment that a crash left missing
+ * or shorter than its header says makes the next search index the history again.
+ */
+public class MessageIndex {
+   private static final String MANIFEST = "segments";
+   private static final String MANIFEST_HEADER = "# mini-git message index";
+   private static final int MAGIC = 0x4d474d49;
+   private static final int VERSION = 1;
+   private static final int HEADER_LENGTH = 5 * Integer.BYTES;
+   private static final int DICTIONARY_ENTRY_LENGTH = 3 * Integer.BYTES;
+   private static final int MAX_LOAD_ATTEMPTS = 3;
+   // commits indexed at once, bounds the memory of a first search over a long history
+   private static final int BATCH_SIZE = 1 << 16;
+
+   private final HeadFile headFile;
+   private final Path indexDir;
+   private final Path manifestPath;
+   private final Map<String, Segment> mapped = new ConcurrentHashMap<>();
+
+   public MessageIndex(HeadFile headFile, Path indexDir) {
+      this.headFile = headFile;
+      this.indexDir = indexDir;
+      this.manifestPath = indexDir.resolve(MANIFEST);
+   }
+
+   /**
+    * @param start {@code null} for an empty history
+    * @return commits reachable from {@code start} whose message contains {@code text}, newest first
+    */
+   public List<CommitFile> search(ObjectId start, String text) throws GitException {
+      if (start == null) {
+         return List.of();
+      }
+
+      State state = update(start);
+      BitSet candidates = findCandidates(state, text.getBytes(StandardCharsets.UTF_8));
+
+      List<CommitFile> result = new ArrayList<>();
+      for (int document = state.find(start); document >= 0; document = state.parent(document)) {
+         if (candidates == null || candidates.get(document)) {
+            CommitFile commit = headFile.loadCommit(state.hash(document));
+            if (commit.getMessage().contains(text)) {
+               result.add(commit);
+            }
+         }
+      }
+      return result;
+   }
+
+   /**
+    * @return {@code null} if the text is too short to be looked up and every commit is a candidate
+    */
+   private BitSet findCandidates(State state, byte[] text) {
+      Set<Integer> trigrams = trigrams(text);
+      if (trigrams.isEmpty()) {
+         return null;
+      }
+
+      BitSet result = new BitSet();
+      for (Segment segment : state.segments()) {
+         List<Integer> entries = new ArrayList<>();
+         for (int trigram : trigrams) {
+            int entry = segment.findTrigram(trigram);
+            if (entry < 0) {
+               entries = null;
+               break;
+            }
+            entries.add(entry);
+         }
+         if (entries == null) {
+            continue;
+         }
+
+         entries.sort(Comparator.comparingInt(segment::postingLength));
+         int[] documents = segment.decodePostings(entries.get(0));
+         for (int i = 1; i < entries.size() && documents.length > 0; i++) {
+            documents = intersect(documents, segment.decodePostings(entries.get(i)));
+         }
+         for (int document : documents) {
+            result.set(segment.base() + document);
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Indexes the commits from {@code start} back to the first indexed one
+    */
+   private State update(ObjectId start) throws GitException {
+      State state = load();
+      if (state.find(start) >= 0) {
+         return state;
+      }
+
+      try {
+         Files.createDirectories(indexDir);
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+      try (LockFile lock = LockFile.acquire(manifestPath)) {
+         state = load();
+         if (state.find(start) >= 0) {
+            return state;
+         }
+
+         List<ObjectId> commits = new ArrayList<>();
+         ObjectId current = start;
+         while (current != null && state.find(current) < 0) {
+            commits.add(current);
+            current = headFile.loadCommit(current).getParentCommitHash();
+         }
+         int parentDocument = current == null ? -1 : state.find(current);
+         Collections.reverse(commits);
+
+         List<Segment> segments = new ArrayList<>(state.segments());
+         Set<String> written = new HashSet<>();
+         int base = state.size();
+         for (int from = 0; from < commits.size(); from += BATCH_SIZE) {
+            List<ObjectId> batch = commits.subList(from, Math.min(commits.size(), from + BATCH_SIZE));
+            segments.add(save(buildSegment(batch, base + from, from == 0 ? parentDocument : base + from - 1), written));
+            while (segments.size() >= 2
+                && segments.get(segments.size() - 1).count() >= segments.get(segments.size() - 2).count()) {
+               Segment last = segments.remove(segments.size() - 1);
+               Segment previous = segments.remove(segments.size() - 1);
+               segments.add(save(merge(previous, last), written));
+            }
+         }
+
+         List<String> names = segments.stream().map(Segment::name).toList();
+         StringBuilder content = new StringBuilder(MANIFEST_HEADER).append('\n');
+         names.forEach(name -> content.append(name).append('\n'));
+         lock.commitUnsynced(content.toString().getBytes(StandardCharsets.UTF_8));
+
+         Set<String> obsolete = new HashSet<>(state.names());
+         obsolete.addAll(written);
+         names.forEach(obsolete::remove);
+         for (String name : obsolete) {
+            mapped.remove(name);
+            try {
+               Files.deleteIfExists(indexDir.resolve(name));
+            } catch (IOException e) {
+               // a segment that is still mapped cannot be deleted on some platforms, it is only unused space
+            }
+         }
+         return new State(segments, names);
+      }
+   }
+
+   private byte[] buildSegment(List<ObjectId> commits, int base, int firstParent) throws GitException {
+      int[] parents = new int[commits.size()];
+      TreeMap<Integer, PostingsWriter> postings = new TreeMap<>();
+      for (int i = 0; i < commits.size(); i++) {
+         parents[i] = i == 0 ? firstParent : base + i - 1;
+         byte[] message = headFile.loadCommit(commits.get(i)).getMessage().getBytes(StandardCharsets.UTF_8);
+         for (int trigram : trigrams(message)) {
+            postings.computeIfAbsent(trigram, ignored -> new PostingsWriter()).add(i);
+         }
+      }
+
+      TreeMap<Integer, byte[]> encoded = new TreeMap<>();
+      postings.forEach((trigram, writer) -> encoded.put(trigram, writer.toByteArray()));
+      return encode(base, commits.toArray(ObjectId[]::new), parents, encoded);
+   }
+
+   private static byte[] merge(Segment first, Segment second) {
+      ObjectId[] hashes = new ObjectId[first.count() + second.count()];
+      int[] parents = new int[hashes.length];
+      for (int i = 0; i < first.count(); i++) {
+         hashes[i] = first.hash(i);
+         parents[i] = first.parent(i);
+      }
+      for (int i = 0; i < second.count(); i++) {
+         hashes[first.count() + i] = second.hash(i);
+         parents[first.count() + i] = second.parent(i);
+      }
+
+      TreeMap<Integer, byte[]> postings = new TreeMap<>();
+      for (int entry = 0; entry < first.trigramCount(); entry++) {
+         postings.put(first.trigram(entry), first.postingBytes(entry));
+      }
+      for (int entry = 0; entry < second.trigramCount(); entry++) {
+         // the lists of the second segment continue the ones of the first, so only their first delta changes
+         byte[] head = postings.get(second.trigram(entry));
+         int last = head == null ? 0 : lastPosting(head);
+         ByteArrayOutputStream merged = new ByteArrayOutputStream();
+         if (head != null) {
+            merged.writeBytes(head);
+         }
+         byte[] tail = second.postingBytes(entry);
+         int[] position = {0};
+         writeVarint(merged, first.count() + readVarint(tail, position) - last);
+         merged.write(tail, position[0], tail.length - position[0]);
+         postings.put(second.trigram(entry), merged.toByteArray());
+      }
+      return encode(first.base(), hashes, parents, postings);
+   }
+
+   private static byte[] encode(int base, ObjectId[] hashes, int[] parents, TreeMap<Integer, byte[]> postings) {
+      int postingsLength = postings.values().stream().mapToInt(bytes -> bytes.length).sum();
+      ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH
+          + hashes.length * (ObjectId.RAW_LENGTH + 2 * Integer.BYTES)
+          + postings.size() * DICTIONARY_ENTRY_LENGTH
+          + postingsLength);
+      buffer.putInt(MAGIC).putInt(VERSION).putInt(base).putInt(hashes.length).putInt(postings.size());
+
+      byte[] raw = new byte[ObjectId.RAW_LENGTH];
+      for (ObjectId hash : hashes) {
+         hash.copyRawTo(raw, 0);
+         buffer.put(raw);
+      }
+      for (int parent : parents) {
+         buffer.putInt(parent);
+      }
+      Integer[] byHash = new Integer[hashes.length];
+      Arrays.setAll(byHash, i -> i);
+      Arrays.sort(byHash, Comparator.comparing(i -> hashes[i]));
+      for (int document : byHash) {
+         buffer.putInt(document);
+      }
+
+      int offset = 0;
+      for (var entry : postings.entrySet()) {
+         buffer.putInt(entry.getKey()).putInt(offset).putInt(entry.getValue().length);
+         offset += entry.getValue().length;
+      }
+      postings.values().forEach(buffer::put);
+      return buffer.array();
+   }
+
+   private Segment save(byte[] content, Set<String> written) throws GitException {
+      String name = MiniGitUtils.getHashFromBytes(content).toHex();
+      try (LockFile lock = LockFile.acquire(indexDir.resolve(name))) {
+         lock.commitUnsynced(content);
+      }
+      written.add(name);
+      try {
+         return map(name);
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+   }
+
+   private State load() throws GitException {
+      for (int attempt = 1; ; attempt++) {
+         List<String> lines;
+         try {
+            lines = Files.readAllLines(manifestPath);
+            GitStats.count(Counter.BYTES_READ, Files.size(manifestPath));
+         } catch (NoSuchFileException e) {
+            return new State(List.of(), List.of());
+         } catch (IOException e) {
+            throw new GitException(e.getMessage(), e.getCause());
+         }
+
+         // only names of segments are ever deleted
+         List<String> names = lines.stream().filter(ObjectId::isValidHex).toList();
+         if (lines.isEmpty() || !lines.get(0).equals(MANIFEST_HEADER)) {
+            // written by another version, the next update indexes everything again
+            return new State(List.of(), names);
+         }
+
+         try {
+            List<Segment> segments = new ArrayList<>();
+            for (String name : names) {
+               Segment segment = mapped.get(name);
+               segments.add(segment != null ? segment : map(name));
+            }
+            if (segments.stream().anyMatch(segment -> segment == Segment.UNREADABLE)) {
+               return new State(List.of(), names);
+            }
+            return new State(segments, names);
+         } catch (NoSuchFileException e) {
+            // replaced by a concurrent update after the list was read, or lost in a crash
+            if (attempt == MAX_LOAD_ATTEMPTS) {
+               return new State(List.of(), names);
+            }
+         } catch (IOException e) {
+            throw new GitException(e.getMessage(), e.getCause());
+         }
+      }
+   }
+
+   private Segment map(String name) throws IOException {
+      try (FileChannel channel = FileChannel.open(indexDir.resolve(name), StandardOpenOption.READ)) {
+         MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+         if (buffer.limit() < HEADER_LENGTH || buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != VERSION) {
+            return Segment.UNREADABLE;
+         }
+
+         Segment segment = new Segment(
+             name,
+             buffer,
+             buffer.getInt(2 * Integer.BYTES),
+             buffer.getInt(3 * Integer.BYTES),
+             buffer.getInt(4 * Integer.BYTES)
+         );
+         if (!segment.isComplete()) {
+            return Segment.UNREADABLE;
+         }
+         mapped.put(name, segment);
+         return segment;
+      }
+   }
+
+   private static Set<Integer> trigrams(byte[] text) {
+      Set<Integer> result = new TreeSet<>();
+      for (int i = 0; i + 2 < text.length; i++) {
+         result.add((text[i] & 0xFF) << 16 | (text[i + 1] & 0xFF) << 8 | text[i + 2] & 0xFF);
+      }
+      return result;
+   }
+
+   private static int[] intersect(int[] first, int[] second) {
+      int[] result = new int[Math.min(first.length, second.length)];
+      int count = 0;
+      int j = 0;
+      for (int i = 0; i < first.length && j < second.length; i++) {
+         while (j < second.length && second[j] < first[i]) {
+            j++;
+         }
+         if (j < second.length && second[j] == first[i]) {
+            result[count++] = first[i];
+         }
+      }
+      return Arrays.copyOf(result, count);
+   }
+
+   private static int lastPosting(byte[] postings) {
+      int[] position = {0};
+      int value = 0;
+      while (position[0] < postings.length) {
+         value += readVarint(postings, position);
+      }
+      return value;
+   }
+
+   private static void writeVarint(ByteArrayOutputStream out, int value) {
+      while ((value & ~0x7F) != 0) {
+         out.write(value & 0x7F | 0x80);
+         value >>>= 7;
+      }
+      out.write(value);
+   }
+
+   private static int readVarint(byte[] bytes, int[] position) {
+      int value = 0;
+      for (int shift = 0; ; shift += 7) {
+         byte b = bytes[position[0]++];
+         value |= (b & 0x7F) << shift;
+         if (b >= 0) {
+            return value;
+         }
+      }
+   }
+
+   /**
+    * Segments listed by one version of the {@code segments} file, in the order of their commit numbers
+    */
+   private record State(List<Segment> segments, List<String> names) {
+      int size() {
+         if (segments.isEmpty()) {
+            return 0;
+         }
+         Segment last = segments.get(segments.size() - 1);
+         return last.base() + last.count();
+      }
+
+      /**
+       * @return {@code -1} if the commit is not indexed
+       */
+      int find(ObjectId hash) {
+         for (Segment segment : segments) {
+            int document = segment.find(hash);
+            if (document >= 0) {
+               return segment.base() + document;
+            }
+         }
+         return -1;
+      }
+
+      ObjectId hash(int document) {
+         Segment segment = segmentOf(document);
+         return segment.hash(document - segment.base());
+      }
+
+      int parent(int document) {
+         Segment segment = segmentOf(document);
+         return segment.parent(document - segment.base());
+      }
+
+      private Segment segmentOf(int document) {
+         int low = 0;
+         int high = segments.size() - 1;
+         while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (segments.get(middle).base() <= document) {
+               low = middle;
+            }
+            else {
+               high = middle - 1;
+            }
+         }
+         return segments.get(low);
+      }
+   }
+
+   /**
+    * Read side of a segment file: a header ({@code magic, version, base, count, trigramCount}), the raw hashes,
+    * the parents, the commits sorted by hash, the dictionary ({@code trigram, offset, length}) and the postings
+    */
+   private record Segment(String name, ByteBuffer buffer, int base, int count, int trigramCount) {
+      static final Segment UNREADABLE = new Segment("", ByteBuffer.allocate(0), 0, 0, 0);
+
+      /**
+       * @return whether the file is as long as its header and dictionary say
+       */
+      boolean isComplete() {
+         long postingsStart = HEADER_LENGTH + (long) count * (ObjectId.RAW_LENGTH + 2 * Integer.BYTES)
+             + (long) trigramCount * DICTIONARY_ENTRY_LENGTH;
+         if (count < 0 || trigramCount < 0 || postingsStart > buffer.limit()) {
+            return false;
+         }
+         if (trigramCount == 0) {
+            return postingsStart == buffer.limit();
+         }
+         int last = dictionaryStart() + (trigramCount - 1) * DICTIONARY_ENTRY_LENGTH;
+         return postingsStart + buffer.getInt(last + Integer.BYTES) + buffer.getInt(last + 2 * Integer.BYTES)
+             == buffer.limit();
+      }
+
+      ObjectId hash(int document) {
+         byte[] raw = new byte[ObjectId.RAW_LENGTH];
+         buffer.get(HEADER_LENGTH + document * ObjectId.RAW_LENGTH, raw);
+         return ObjectId.fromRaw(raw, 0);
+      }
+
+      int parent(int document) {
+         return buffer.getInt(parentsStart() + document * Integer.BYTES);
+      }
+
+      /**
+       * @return {@code -1} if there is no such commit in the segment
+       */
+      int find(ObjectId hash) {
+         int low = 0;
+         int high = count - 1;
+         while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int document = buffer.getInt(byHashStart() + middle * Integer.BYTES);
+            int comparison = hash(document).compareTo(hash);
+            if (comparison == 0) {
+               return document;
+            }
+            if (comparison < 0) {
+               low = middle + 1;
+            }
+            else {
+               high = middle - 1;
+            }
+         }
+         return -1;
+      }
+
+      int trigram(int entry) {
+         return buffer.getInt(dictionaryStart() + entry * DICTIONARY_ENTRY_LENGTH);
+      }
+
+      /**
+       * @return dictionary entry of the trigram, {@code -1} if no message of the segment contains it
+       */
+      int findTrigram(int trigram) {
+         int low = 0;
+         int high = trigramCount - 1;
+         while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = Integer.compare(trigram(middle), trigram);
+            if (comparison == 0) {
+               return middle;
+            }
+            if (comparison < 0) {
+               low = middle + 1;
+            }
+            else {
+               high = middle - 1;
+            }
+         }
+         return -1;
+      }
+
+      int postingLength(int entry) {
+         return buffer.getInt(dictionaryStart() + entry * DICTIONARY_ENTRY_LENGTH + 2 * Integer.BYTES);
+      }
+
+      byte[] postingBytes(int entry) {
+         int offset = buffer.getInt(dictionaryStart() + entry * DICTIONARY_ENTRY_LENGTH + Integer.BYTES);
+         byte[] result = new byte[postingLength(entry)];
+         buffer.get(dictionaryStart() + trigramCount * DICTIONARY_ENTRY_LENGTH + offset, result);
+         GitStats.count(Counter.BYTES_READ, result.length);
+         return result;
+      }
+
+      int[] decodePostings(int entry) {
+         byte[] bytes = postingBytes(entry);
+         // every posting takes at least a byte
+         int[] result = new int[bytes.length];
+         int count = 0;
+         int[] position = {0};
+         int value = 0;
+         while (position[0] < bytes.length) {
+            value += readVarint(bytes, position);
+            result[count++] = value;
+         }
+         return Arrays.copyOf(result, count);
+      }
+
+      private int parentsStart() {
+         return HEADER_LENGTH + count * ObjectId.RAW_LENGTH;
+      }
+
+      private int byHashStart() {
+         return parentsStart() + count * Integer.BYTES;
+      }
+
+      private int dictionaryStart() {
+         return byHashStart() + count * Integer.BYTES;
+      }
+   }
+
+   /**
+    * Sorted list of commit numbers encoded as it grows
+    */
+   private static class PostingsWriter {
+      private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      private int last = 0;
+
+      void add(int document) {
+         writeVarint(bytes, document - last);
+         last = document;
+      }
+
+      byte[] toByteArray() {
+         return bytes.toByteArray();
+      }
+   }
+}
@@ -0,0 +1,66 @@
+package ru.hse.mit.git.components.history;
+
+import java.nio.file.Path;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.fs.TreeFile;
+import ru.hse.mit.git.components.utils.LruCache;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+/**
+ * Reads tree objects one level at a time, for history queries that need a few paths of many trees rather than
+ * whole trees. Parsed levels are cached, since neighbouring commits share most of their subtrees.
+ */
+class TreeReader {
+   private static final int CACHE_SIZE = 4096;
+
+   private final Path treesDir;
+   private final LruCache<ObjectId, TreeFile.Entries> cache = new LruCache<>(CACHE_SIZE);
+
+   TreeReader(Path treesDir) {
+      this.treesDir = treesDir;
+   }
+
+   record Entry(boolean tree, ObjectId hash) {}
+
+   /**
+    * @return entries of the tree in the canonical order
+    */
+   TreeFile.Entries read(ObjectId hash) throws GitException {
+      TreeFile.Entries entries = cache.get(hash);
+      if (entries == null) {
+         entries = TreeFile.read(treesDir, hash);
+         cache.put(hash, entries);
+      }
+      return entries;
+   }
+
+   /**
+    * Reads only the trees on the path, looking every name up by binary search
+    * @param path file or directory separated by {@code /}, empty for the root
+    * @return {@code null} if there is no such path in the tree
+    */
+   Entry find(ObjectId rootHash, String path) throws GitException {
+      Entry entry = new Entry(true, rootHash);
+      if (path.isEmpty()) {
+         return entry;
+      }
+
+      String[] names = path.split("/");
+      for (int i = 0; i < names.length; i++) {
+         if (!entry.tree()) {
+            return null;
+         }
+         TreeFile.Entries entries = read(entry.hash());
+         // only the last name may be a file
+         int position = i == names.length - 1 ? entries.find(names[i], false) : -1;
+         if (position < 0) {
+            position = entries.find(names[i], true);
+         }
+         if (position < 0) {
+            return null;
+         }
+         entry = new Entry(entries.trees()[position], entries.getHash(position));
+      }
+      return entry;
+   }
+}
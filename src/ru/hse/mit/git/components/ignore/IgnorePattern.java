@@ -0,0 +1,135 @@
+package ru.hse.mit.git.components.ignore;
+
+import java.util.regex.Pattern;
+
+/**
+ * One compiled line of an ignore file.
+ * <p>
+ * Patterns without wildcards are compared as strings; the rest are translated into a regular expression once,
+ * when the ignore file is loaded.
+ */
+class IgnorePattern {
+   private static final String WILDCARDS = "*?[\\";
+
+   final int index;
+   final boolean negated;
+   final boolean directoryOnly;
+   // patterns with a slash are matched against the path below the ignore file, the rest against the name only
+   final boolean anchored;
+   // pattern text without wildcards, {@code null} if the pattern is matched by {@link #regex}
+   final String literal;
+   private final Pattern regex;
+
+   private IgnorePattern(int index, boolean negated, boolean directoryOnly, boolean anchored, String glob) {
+      this.index = index;
+      this.negated = negated;
+      this.directoryOnly = directoryOnly;
+      this.anchored = anchored;
+
+      boolean hasWildcards = glob.chars().anyMatch(c -> WILDCARDS.indexOf(c) >= 0);
+      this.literal = hasWildcards ? null : glob;
+      this.regex = hasWildcards ? Pattern.compile(toRegex(glob)) : null;
+   }
+
+   /**
+    * @return {@code null} for blank lines and comments
+    */
+   static IgnorePattern parse(String line, int index) {
+      String pattern = stripTrailingSpaces(line);
+      if (pattern.isEmpty() || pattern.startsWith("#")) {
+         return null;
+      }
+
+      boolean negated = pattern.startsWith("!");
+      if (negated) {
+         pattern = pattern.substring(1);
+      }
+      else if (pattern.startsWith("\\#") || pattern.startsWith("\\!")) {
+         pattern = pattern.substring(1);
+      }
+
+      boolean directoryOnly = pattern.endsWith("/");
+      if (directoryOnly) {
+         pattern = pattern.substring(0, pattern.length() - 1);
+      }
+
+      boolean anchored = pattern.contains("/");
+      if (pattern.startsWith("/")) {
+         pattern = pattern.substring(1);
+      }
+      if (pattern.isEmpty()) {
+         return null;
+      }
+
+      return new IgnorePattern(index, negated, directoryOnly, anchored, pattern);
+   }
+
+   boolean matches(String pathInLevel, String name, boolean directory) {
+      if (directoryOnly && !directory) {
+         return false;
+      }
+
+      String target = anchored ? pathInLevel : name;
+      return literal != null ? literal.equals(target) : regex.matcher(target).matches();
+   }
+
+   private static String stripTrailingSpaces(String line) {
+      int end = line.length();
+      while (end > 0 && line.charAt(end - 1) == ' ' && (end < 2 || line.charAt(end - 2) != '\\')) {
+         end--;
+      }
+      return line.substring(0, end);
+   }
+
+   /**
+    * {@code *} and {@code ?} do not cross directories, {@code **} as a whole segment matches any number
+    * of directories, {@code [...]} is a character class
+    */
+   private static String toRegex(String glob) {
+      StringBuilder regex = new StringBuilder();
+      int i = 0;
+      while (i < glob.length()) {
+         char c = glob.charAt(i);
+         if (c == '*' && glob.startsWith("**", i) && (i == 0 || glob.charAt(i - 1) == '/')) {
+            if (i + 2 == glob.length()) {
+               regex.append(".*");
+               i += 2;
+               continue;
+            }
+            if (glob.charAt(i + 2) == '/') {
+               regex.append("(?:.*/)?");
+               i += 3;
+               continue;
+            }
+         }
+
+         switch (c) {
+            case '*' -> regex.append("[^/]*");
+            case '?' -> regex.append("[^/]");
+            case '[' -> {
+               int end = glob.indexOf(']', i + 2);
+               if (end < 0) {
+                  regex.append("\\[");
+               }
+               else {
+                  String body = glob.substring(i + 1, end);
+                  if (body.startsWith("!")) {
+                     body = "^" + body.substring(1);
+                  }
+                  regex.append('[').append(body.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                  i = end;
+               }
+            }
+            case '\\' -> {
+               if (i + 1 < glob.length()) {
+                  i++;
+               }
+               regex.append(Pattern.quote(String.valueOf(glob.charAt(i))));
+            }
+            default -> regex.append(Pattern.quote(String.valueOf(c)));
+         }
+         i++;
+      }
+      return regex.toString();
+   }
+}
@@ -0,0 +1,179 @@
+package ru.hse.mit.git.components.ignore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
+
+/**
+ * Rules of the {@code .minigitignore} files of a working directory, with gitignore semantics: blank lines
+ * and {@code #} comments are skipped, {@code !} re-includes, a trailing {@code /} matches directories only,
+ * a pattern with a slash is relative to the directory of its ignore file and the one without matches names
+ * at any depth, {@code *}, {@code ?}, {@code [...]} and {@code **} are globs. The last matching line wins,
+ * and rules of a deeper ignore file win over the ones above it.
+ * <p>
+ * The rules form a prefix trie of directories, where every node holds the compiled rules of the ignore file
+ * in that directory. Ignore files are loaded lazily as paths below them are matched, so a walk reads each
+ * of them once. Within a node, literal patterns are looked up by name and path in hash maps and only
+ * the glob patterns are evaluated one by one.
+ */
+public class IgnoreRules {
+   public static final String IGNORE_FILE = ".minigitignore";
+
+   private final Path workingDir;
+   private final Node root = new Node();
+
+   public IgnoreRules(Path workingDir) {
+      this.workingDir = workingDir;
+   }
+
+   /**
+    * Directories above the path are not checked: a walk skips ignored directories before it reaches
+    * their contents, see {@link #isExcluded(String, boolean)} for a path looked up on its own
+    * @param relativePath path relative to the working directory, separated by {@code /}
+    */
+   public boolean isIgnored(String relativePath, boolean directory) throws GitException {
+      // levels[i] holds the rules of the directory made of the first i segments of the path
+      List<Node> levels = new ArrayList<>();
+      List<Integer> levelStarts = new ArrayList<>();
+      Node node = root;
+      int start = 0;
+      while (true) {
+         node.ensureLoaded(workingDir, relativePath.substring(0, Math.max(0, start - 1)));
+         levels.add(node);
+         levelStarts.add(start);
+
+         int slash = relativePath.indexOf('/', start);
+         if (slash < 0) {
+            break;
+         }
+         node = node.child(relativePath.substring(start, slash));
+         start = slash + 1;
+      }
+
+      String name = relativePath.substring(start);
+      for (int level = levels.size() - 1; level >= 0; level--) {
+         IgnorePattern match = levels.get(level).match(relativePath.substring(levelStarts.get(level)), name, directory);
+         if (match != null) {
+            return !match.negated;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * @return whether the path or any directory above it is ignored
+    */
+   public boolean isExcluded(String relativePath, boolean directory) throws GitException {
+      for (int slash = relativePath.indexOf('/'); slash >= 0; slash = relativePath.indexOf('/', slash + 1)) {
+         if (isIgnored(relativePath.substring(0, slash), true)) {
+            return true;
+         }
+      }
+      return isIgnored(relativePath, directory);
+   }
+
+   private static class Node {
+      // the walk may match paths from several threads
+      private final Map<String, Node> children = new ConcurrentHashMap<>();
+      private volatile boolean loaded = false;
+
+      private final Map<String, List<IgnorePattern>> literalNames = new HashMap<>();
+      private final Map<String, List<IgnorePattern>> literalPaths = new HashMap<>();
+      private final List<IgnorePattern> globs = new ArrayList<>();
+
+      Node child(String name) {
+         return children.computeIfAbsent(name, ignored -> new Node());
+      }
+
+      void ensureLoaded(Path workingDir, String relativeDir) throws GitException {
+         if (loaded) {
+            return;
+         }
+
+         synchronized (this) {
+            if (loaded) {
+               return;
+            }
+
+            Path ignoreFile = workingDir.resolve(relativeDir).resolve(IGNORE_FILE);
+            try {
+               List<String> lines = Files.readAllLines(ignoreFile);
+               GitStats.count(Counter.BYTES_READ, Files.size(ignoreFile));
+               for (int i = 0; i < lines.size(); i++) {
+                  IgnorePattern pattern = IgnorePattern.parse(lines.get(i), i);
+                  if (pattern != null) {
+                     add(pattern);
+                  }
+               }
+            } catch (NoSuchFileException e) {
+               // no ignore file in this directory
+            } catch (IOException e) {
+               throw new GitException(e.getMessage(), e.getCause());
+            } finally {
+               GitStats.count(Counter.FILES_STATED);
+            }
+            loaded = true;
+         }
+      }
+
+      /**
+       * @return the last matching pattern, {@code null} if none matches
+       */
+      IgnorePattern match(String pathInLevel, String name, boolean directory) {
+         IgnorePattern best = lastMatching(literalPaths.get(pathInLevel), null, pathInLevel, name, directory);
+         best = lastMatching(literalNames.get(name), best, pathInLevel, name, directory);
+
+         for (int i = globs.size() - 1; i >= 0; i--) {
+            IgnorePattern glob = globs.get(i);
+            if (best != null && glob.index < best.index) {
+               break;
+            }
+            if (glob.matches(pathInLevel, name, directory)) {
+               return glob;
+            }
+         }
+         return best;
+      }
+
+      private void add(IgnorePattern pattern) {
+         if (pattern.literal == null) {
+            globs.add(pattern);
+         }
+         else {
+            Map<String, List<IgnorePattern>> literals = pattern.anchored ? literalPaths : literalNames;
+            literals.computeIfAbsent(pattern.literal, ignored -> new ArrayList<>()).add(pattern);
+         }
+      }
+
+      private static IgnorePattern lastMatching(
+          List<IgnorePattern> candidates,
+          IgnorePattern best,
+          String pathInLevel,
+          String name,
+          boolean directory
+      ) {
+         if (candidates == null) {
+            return best;
+         }
+         for (int i = candidates.size() - 1; i >= 0; i--) {
+            IgnorePattern candidate = candidates.get(i);
+            if (best != null && candidate.index < best.index) {
+               break;
+            }
+            if (candidate.matches(pathInLevel, name, directory)) {
+               return candidate;
+            }
+         }
+         return best;
+      }
+   }
+}
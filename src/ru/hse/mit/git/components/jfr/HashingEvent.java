@@ -0,0 +1,18 @@
+package ru.hse.mit.git.components.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("ru.hse.mit.git.Hashing")
+@Label("Hashing")
+@Category({"MiniGit", "Hashing"})
+@Description("Hash computed over a byte sequence")
+public class HashingEvent extends Event {
+   @Label("Bytes")
+   @DataAmount
+   public long bytes;
+}
@@ -0,0 +1,20 @@
+package ru.hse.mit.git.components.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("ru.hse.mit.git.IndexLoad")
+@Label("Index Load")
+@Category({"MiniGit", "Index"})
+@Description("INDEX file read and parsed")
+public class IndexLoadEvent extends Event {
+   @Label("Entries")
+   public int entries;
+
+   @Label("Cached")
+   @Description("Entries were already in memory and the file was not parsed again")
+   public boolean cached;
+}
@@ -0,0 +1,16 @@
+package ru.hse.mit.git.components.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("ru.hse.mit.git.IndexSave")
+@Label("Index Save")
+@Category({"MiniGit", "Index"})
+@Description("INDEX file written")
+public class IndexSaveEvent extends Event {
+   @Label("Entries")
+   public int entries;
+}
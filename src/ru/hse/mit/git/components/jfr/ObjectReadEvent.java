@@ -0,0 +1,24 @@
+package ru.hse.mit.git.components.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("ru.hse.mit.git.ObjectRead")
+@Label("Object Read")
+@Category({"MiniGit", "Objects"})
+@Description("Blob, tree or commit object read from the object store")
+public class ObjectReadEvent extends Event {
+   @Label("Type")
+   public String type;
+
+   @Label("Hash")
+   public String hash;
+
+   @Label("Size")
+   @DataAmount
+   public long size;
+}
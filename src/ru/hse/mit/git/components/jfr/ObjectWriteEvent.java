@@ -0,0 +1,28 @@
+package ru.hse.mit.git.components.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("ru.hse.mit.git.ObjectWrite")
+@Label("Object Write")
+@Category({"MiniGit", "Objects"})
+@Description("Blob, tree or commit object stored in the object store")
+public class ObjectWriteEvent extends Event {
+   @Label("Type")
+   public String type;
+
+   @Label("Hash")
+   public String hash;
+
+   @Label("Size")
+   @DataAmount
+   public long size;
+
+   @Label("Already Existed")
+   @Description("The object was present in the store, so nothing was written")
+   public boolean existed;
+}
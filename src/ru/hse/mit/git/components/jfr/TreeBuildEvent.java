@@ -0,0 +1,16 @@
+package ru.hse.mit.git.components.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("ru.hse.mit.git.TreeBuild")
+@Label("Tree Build")
+@Category({"MiniGit", "Trees"})
+@Description("Tree objects serialized and hashed for a commit")
+public class TreeBuildEvent extends Event {
+   @Label("Root Hash")
+   public String rootHash;
+}
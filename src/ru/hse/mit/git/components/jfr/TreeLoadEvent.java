@@ -0,0 +1,16 @@
+package ru.hse.mit.git.components.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("ru.hse.mit.git.TreeLoad")
+@Label("Tree Load")
+@Category({"MiniGit", "Trees"})
+@Description("Tree graph loaded recursively from the object store")
+public class TreeLoadEvent extends Event {
+   @Label("Root Hash")
+   public String rootHash;
+}
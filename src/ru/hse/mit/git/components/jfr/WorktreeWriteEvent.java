@@ -0,0 +1,21 @@
+package ru.hse.mit.git.components.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("ru.hse.mit.git.WorktreeWrite")
+@Label("Worktree Write")
+@Category({"MiniGit", "Worktree"})
+@Description("File materialized in the working directory")
+public class WorktreeWriteEvent extends Event {
+   @Label("Path")
+   public String path;
+
+   @Label("Size")
+   @DataAmount
+   public long size;
+}
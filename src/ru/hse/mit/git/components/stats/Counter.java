@@ -0,0 +1,31 @@
+package ru.hse.mit.git.components.stats;
+
+public enum Counter {
+   FILES_STATED("filesStated", "files stat'ed"),
+   OBJECTS_READ("objectsRead", "objects read"),
+   OBJECTS_WRITTEN("objectsWritten", "objects written"),
+   BYTES_HASHED("bytesHashed", "bytes hashed"),
+   BYTES_READ("bytesRead", "bytes read"),
+   BYTES_WRITTEN("bytesWritten", "bytes written"),
+   DIRS_LISTED("dirsListed", "directories listed"),
+   DIRS_SKIPPED("dirsSkipped", "directories taken from the untracked cache"),
+   OBJECT_CHECKS_FILTERED("objectChecksFiltered", "object existence checks answered by the object filter"),
+   FILES_SYNCED("filesSynced", "files synced"),
+   DIRS_SYNCED("dirsSynced", "directories synced");
+
+   private final String key;
+   private final String description;
+
+   Counter(String key, String description) {
+      this.key = key;
+      this.description = description;
+   }
+
+   public String getKey() {
+      return key;
+   }
+
+   public String getDescription() {
+      return description;
+   }
+}
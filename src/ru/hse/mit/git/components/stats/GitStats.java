@@ -0,0 +1,150 @@
+package ru.hse.mit.git.components.stats;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and per-phase timers of the repository work, collected per command.
+ * <p>
+ * A command that wants its statistics starts a {@link Collector}, which is bound to its thread, and work
+ * that the command hands to other threads (fork-join tasks, parallel streams, the tree writer) binds
+ * the collector of the thread it was created on with {@link #bind(Collector)}. So commands running
+ * concurrently in one process, as in the server, are accounted separately. While no collector is open
+ * every call is a single volatile read. Phases may be nested (e.g. hashing inside a worktree scan),
+ * so their times overlap.
+ */
+public final class GitStats {
+   private static final Timer NO_OP_TIMER = () -> {};
+   private static final Scope NO_OP_SCOPE = () -> {};
+
+   private static final ThreadLocal<Collector> current = new ThreadLocal<>();
+   // collectors started and not closed yet, in any thread
+   private static final AtomicInteger openCollectors = new AtomicInteger();
+
+   private GitStats() {}
+
+   /**
+    * Starts collecting the statistics of the current thread and the work it hands to other threads,
+    * until the collector is closed
+    */
+   public static Collector start() {
+      Collector collector = new Collector(current.get());
+      openCollectors.incrementAndGet();
+      current.set(collector);
+      return collector;
+   }
+
+   /**
+    * @return collector of the current thread, {@code null} if there is none
+    */
+   public static Collector current() {
+      return openCollectors.get() == 0 ? null : current.get();
+   }
+
+   /**
+    * Accounts the work of the current thread to {@code collector} until the scope is closed.
+    * Usage: {@code try (Scope ignored = GitStats.bind(collector)) { ... }}
+    * @param collector collector taken by {@link #current()} on the thread that created the work, may be {@code null}
+    */
+   public static Scope bind(Collector collector) {
+      Collector previous = current.get();
+      if (collector == previous) {
+         return NO_OP_SCOPE;
+      }
+      current.set(collector);
+      return () -> current.set(previous);
+   }
+
+   public static void count(Counter counter) {
+      count(counter, 1);
+   }
+
+   public static void count(Counter counter, long amount) {
+      Collector collector = current();
+      if (collector != null) {
+         collector.counters.get(counter).add(amount);
+      }
+   }
+
+   /**
+    * Usage: {@code try (Timer ignored = GitStats.time(Phase.TREE_LOAD)) { ... }}
+    */
+   public static Timer time(Phase phase) {
+      Collector collector = current();
+      if (collector == null) {
+         return NO_OP_TIMER;
+      }
+
+      long start = System.nanoTime();
+      return () -> {
+         collector.phaseCalls.get(phase).increment();
+         collector.phaseNanos.get(phase).add(System.nanoTime() - start);
+      };
+   }
+
+   /**
+    * Statistics of one command
+    */
+   public static final class Collector implements AutoCloseable {
+      private final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+      private final Map<Phase, LongAdder> phaseCalls = new EnumMap<>(Phase.class);
+      private final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+      // collector of the thread before this one was started
+      private final Collector previous;
+      private boolean closed = false;
+
+      private Collector(Collector previous) {
+         this.previous = previous;
+         for (Counter counter : Counter.values()) {
+            counters.put(counter, new LongAdder());
+         }
+         for (Phase phase : Phase.values()) {
+            phaseCalls.put(phase, new LongAdder());
+            phaseNanos.put(phase, new LongAdder());
+         }
+      }
+
+      public StatsSnapshot snapshot(long totalNanos) {
+         Map<Counter, Long> counterValues = new EnumMap<>(Counter.class);
+         counters.forEach((counter, value) -> counterValues.put(counter, value.sum()));
+
+         Map<Phase, Long> calls = new EnumMap<>(Phase.class);
+         Map<Phase, Long> nanos = new EnumMap<>(Phase.class);
+         for (Phase phase : Phase.values()) {
+            long phaseCallCount = phaseCalls.get(phase).sum();
+            if (phaseCallCount != 0) {
+               calls.put(phase, phaseCallCount);
+               nanos.put(phase, phaseNanos.get(phase).sum());
+            }
+         }
+
+         return new StatsSnapshot(totalNanos, counterValues, calls, nanos);
+      }
+
+      /**
+       * Stops collecting, must be called on the thread that started the collector
+       */
+      @Override
+      public void close() {
+         if (!closed) {
+            closed = true;
+            current.set(previous);
+            openCollectors.decrementAndGet();
+         }
+      }
+   }
+
+   @FunctionalInterface
+   public interface Timer extends AutoCloseable {
+      @Override
+      void close();
+   }
+
+   @FunctionalInterface
+   public interface Scope extends AutoCloseable {
+      @Override
+      void close();
+   }
+}
@@ -0,0 +1,25 @@
+package ru.hse.mit.git.components.stats;
+
+public enum Phase {
+   HASHING("hashing"),
+   INDEX_LOAD("indexLoad"),
+   INDEX_SAVE("indexSave"),
+   TREE_LOAD("treeLoad"),
+   TREE_BUILD("treeBuild"),
+   TREE_SAVE("treeSave"),
+   COMMIT_LOAD("commitLoad"),
+   WORKTREE_SCAN("worktreeScan"),
+   WORKTREE_READ("worktreeRead"),
+   WORKTREE_WRITE("worktreeWrite"),
+   SYNC("sync");
+
+   private final String key;
+
+   Phase(String key) {
+      this.key = key;
+   }
+
+   public String getKey() {
+      return key;
+   }
+}
@@ -0,0 +1,105 @@
+package ru.hse.mit.git.components.stats;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Statistics collected while running one command
+ */
+public class StatsSnapshot {
+   private final long totalNanos;
+   private final Map<Counter, Long> counters;
+   private final Map<Phase, Long> phaseCalls;
+   private final Map<Phase, Long> phaseNanos;
+
+   public StatsSnapshot(long totalNanos, Map<Counter, Long> counters, Map<Phase, Long> phaseCalls, Map<Phase, Long> phaseNanos) {
+      this.totalNanos = totalNanos;
+      this.counters = counters;
+      this.phaseCalls = phaseCalls;
+      this.phaseNanos = phaseNanos;
+   }
+
+   public long getTotalNanos() {
+      return totalNanos;
+   }
+
+   public long get(Counter counter) {
+      return counters.getOrDefault(counter, 0L);
+   }
+
+   public String toText() {
+      StringBuilder result = new StringBuilder();
+      result.append("Statistics:").append(System.lineSeparator());
+      result.append("\ttotal time: ").append(formatMillis(totalNanos)).append(System.lineSeparator());
+
+      for (var entry : counters.entrySet()) {
+         result.append("\t").append(entry.getKey().getDescription()).append(": ")
+             .append(entry.getValue()).append(System.lineSeparator());
+      }
+
+      for (var entry : phaseCalls.entrySet()) {
+         Phase phase = entry.getKey();
+         result.append("\tphase ").append(phase.getKey()).append(": ")
+             .append(entry.getValue()).append(" call(s), ")
+             .append(formatMillis(phaseNanos.get(phase))).append(System.lineSeparator());
+      }
+
+      return result.toString();
+   }
+
+   public String toJson(String command) {
+      StringBuilder result = new StringBuilder();
+      result.append("{\"command\":");
+      appendJsonString(result, command);
+      result.append(",\"totalNanos\":").append(totalNanos).append(",\"counters\":{");
+
+      String separator = "";
+      for (var entry : counters.entrySet()) {
+         result.append(separator).append('"').append(entry.getKey().getKey()).append("\":").append(entry.getValue());
+         separator = ",";
+      }
+
+      result.append("},\"phases\":{");
+      separator = "";
+      for (var entry : phaseCalls.entrySet()) {
+         Phase phase = entry.getKey();
+         result.append(separator).append('"').append(phase.getKey()).append("\":{")
+             .append("\"calls\":").append(entry.getValue())
+             .append(",\"nanos\":").append(phaseNanos.get(phase))
+             .append('}');
+         separator = ",";
+      }
+
+      return result.append("}}").toString();
+   }
+
+   /**
+    * The command is whatever the user typed, so it is escaped
+    */
+   private static void appendJsonString(StringBuilder result, String value) {
+      result.append('"');
+      for (int i = 0; i < value.length(); i++) {
+         char c = value.charAt(i);
+         switch (c) {
+            case '"' -> result.append("\\\"");
+            case '\\' -> result.append("\\\\");
+            case '\n' -> result.append("\\n");
+            case '\r' -> result.append("\\r");
+            case '\t' -> result.append("\\t");
+            default -> {
+               if (c < 0x20) {
+                  result.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+               }
+               else {
+                  result.append(c);
+               }
+            }
+         }
+      }
+      result.append('"');
+   }
+
+   private static String formatMillis(long nanos) {
+      return String.format(Locale.ROOT, "%.3f ms", nanos / 1_000_000.0);
+   }
+}
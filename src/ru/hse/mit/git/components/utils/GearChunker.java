@@ -0,0 +1,77 @@
+package ru.hse.mit.git.components.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Content-defined chunking with a Gear rolling hash and FastCDC normalization.
+ * <p>
+ * Chunk boundaries depend only on the bytes around them, so an edit in a large file shifts
+ * at most the chunks it touches and the rest keep their hashes. Below the average size a stricter mask
+ * is used and above it a looser one, which keeps chunk sizes close to the average.
+ */
+public class GearChunker {
+   public static final int MIN_CHUNK_SIZE = 16 * 1024;
+   public static final int AVERAGE_CHUNK_SIZE = 64 * 1024;
+   public static final int MAX_CHUNK_SIZE = 256 * 1024;
+
+   // log2(AVERAGE_CHUNK_SIZE) = 16 bits, plus and minus two bits of normalization
+   private static final long STRICT_MASK = highBits(18);
+   private static final long LOOSE_MASK = highBits(14);
+
+   private static final long[] GEAR = createGearTable();
+
+   /**
+    * Chunks must not straddle the end of the buffer unless the input is over: callers provide at least
+    * {@link #MAX_CHUNK_SIZE} bytes while more input is available
+    * @param data buffer read with absolute gets, so a memory-mapped file is scanned in place
+    * @return length of the chunk starting at {@code offset}
+    */
+   public static int nextChunkLength(ByteBuffer data, int offset, int available) {
+      if (available <= MIN_CHUNK_SIZE) {
+         return available;
+      }
+
+      int limit = Math.min(available, MAX_CHUNK_SIZE);
+      int normal = Math.min(limit, AVERAGE_CHUNK_SIZE);
+      long hash = 0;
+
+      int i = MIN_CHUNK_SIZE;
+      for (; i < normal; i++) {
+         hash = (hash << 1) + GEAR[data.get(offset + i) & 0xFF];
+         if ((hash & STRICT_MASK) == 0) {
+            return i + 1;
+         }
+      }
+      for (; i < limit; i++) {
+         hash = (hash << 1) + GEAR[data.get(offset + i) & 0xFF];
+         if ((hash & LOOSE_MASK) == 0) {
+            return i + 1;
+         }
+      }
+      return limit;
+   }
+
+   /**
+    * The Gear hash shifts left, so its high bits depend on the most recent 64 bytes
+    */
+   private static long highBits(int count) {
+      return -1L << (Long.SIZE - count);
+   }
+
+   /**
+    * The table is part of the storage format: changing it changes every chunk boundary
+    * and loses deduplication against existing chunks. It is generated with SplitMix64 from a fixed seed
+    */
+   private static long[] createGearTable() {
+      long[] table = new long[256];
+      long state = 0x6D696E692D676974L;
+      for (int i = 0; i < table.length; i++) {
+         state += 0x9E3779B97F4A7C15L;
+         long value = state;
+         value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+         value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+         table[i] = value ^ (value >>> 31);
+      }
+      return table;
+   }
+}
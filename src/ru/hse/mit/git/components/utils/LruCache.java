@@ -0,0 +1,33 @@
+package ru.hse.mit.git.components.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Small thread-safe LRU cache for immutable repository objects (commits, trees), which are addressed by hash
+ * and therefore never go stale
+ */
+public class LruCache<K, V> {
+   private final Map<K, V> entries;
+
+   public LruCache(int capacity) {
+      this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > capacity;
+         }
+      };
+   }
+
+   public synchronized V get(K key) {
+      return entries.get(key);
+   }
+
+   public synchronized void put(K key, V value) {
+      entries.put(key, value);
+   }
+
+   public synchronized void clear() {
+      entries.clear();
+   }
+}
@@ -2,32 +2,175 @@ package ru.hse.mit.git.components.utils;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.apache.commons.io.FileUtils;
 import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.jfr.HashingEvent;
+import ru.hse.mit.git.components.jfr.WorktreeWriteEvent;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
+import ru.hse.mit.git.components.stats.GitStats.Timer;
+import ru.hse.mit.git.components.stats.Phase;
 
 public class MiniGitUtils {
-   public static String getHashFromBytes(byte[] bytes) {
-      // set encryption algorithm
-      MessageDigest md = null;
-      try {
-         md = MessageDigest.getInstance("SHA-1");
-      } catch (NoSuchAlgorithmException e) {
-         throw new RuntimeException(e);
+   /**
+    * Files of this size and larger are hashed through a memory mapping instead of reads into a buffer
+    */
+   public static final long MAPPED_HASHING_THRESHOLD = 1024 * 1024;
+
+   /**
+    * Large files are mapped window by window, which bounds the address space held by one file
+    */
+   public static final long MAPPING_WINDOW_SIZE = 64 * 1024 * 1024;
+
+   private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+   // MessageDigest instances are costly to look up and not thread-safe, so every thread reuses its own
+   private static final ThreadLocal<Digester> DIGESTER = ThreadLocal.withInitial(Digester::new);
+
+   // direct, so channel reads land in it without an intermediate native copy
+   private static final ThreadLocal<ByteBuffer> READ_BUFFER =
+       ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER_SIZE));
+
+   public static ObjectId getHashFromBytes(byte[] bytes) {
+      return getHashFromBytes(bytes, 0, bytes.length);
+   }
+
+   public static ObjectId getHashFromBytes(byte[] bytes, int offset, int length) {
+      HashingEvent event = new HashingEvent();
+      event.begin();
+
+      ObjectId hash;
+      try (Timer ignored = GitStats.time(Phase.HASHING)) {
+         GitStats.count(Counter.BYTES_HASHED, length);
+         hash = computeHash(bytes, offset, length);
+      }
+
+      if (event.shouldCommit()) {
+         event.bytes = length;
+         event.commit();
       }
+      return hash;
+   }
 
-      byte[] hashBytes = md.digest(bytes);
+   /**
+    * Hashes the remaining bytes of the buffer, consuming them
+    */
+   public static ObjectId getHashFromBytes(ByteBuffer bytes) {
+      HashingEvent event = new HashingEvent();
+      event.begin();
 
-      // Convert the hash bytes to a hexadecimal string
-      StringBuilder sb = new StringBuilder();
-      for (byte b : hashBytes) {
-         sb.append(String.format("%02x", b));
+      int length = bytes.remaining();
+      ObjectId hash;
+      try (Timer ignored = GitStats.time(Phase.HASHING)) {
+         GitStats.count(Counter.BYTES_HASHED, length);
+         Digester digester = startDigest();
+         digester.digest.update(bytes);
+         hash = digester.finish();
       }
 
-      return sb.toString();
+      if (event.shouldCommit()) {
+         event.bytes = length;
+         event.commit();
+      }
+      return hash;
+   }
+
+   /**
+    * Hashes file contents without reading them onto the heap.
+    * The result equals {@link #getHashFromBytes(byte[])} of the file bytes
+    */
+   public static ObjectId getHashFromFile(Path fullPath) throws GitException {
+      return getHashFromFile(fullPath, MAPPED_HASHING_THRESHOLD);
+   }
+
+   /**
+    * Time spent reading the file is accounted to hashing, since with a mapping the two cannot be told apart
+    * @param mappingThreshold files of this size and larger are mapped
+    */
+   public static ObjectId getHashFromFile(Path fullPath, long mappingThreshold) throws GitException {
+      HashingEvent event = new HashingEvent();
+      event.begin();
+
+      ObjectId hash;
+      long size;
+      try (Timer ignored = GitStats.time(Phase.HASHING);
+           FileChannel channel = FileChannel.open(fullPath, StandardOpenOption.READ)) {
+         size = channel.size();
+         GitStats.count(Counter.FILES_STATED);
+
+         Digester digester = startDigest();
+         if (size >= mappingThreshold) {
+            for (long position = 0; position < size; position += MAPPING_WINDOW_SIZE) {
+               long windowSize = Math.min(MAPPING_WINDOW_SIZE, size - position);
+               try {
+                  digester.digest.update(channel.map(MapMode.READ_ONLY, position, windowSize));
+               } catch (InternalError e) {
+                  // the mapped pages are gone: the file was truncated while it was hashed, e.g. by an editor
+                  throw new GitException("File '" + fullPath.getFileName() + "' changed while it was read", e);
+               }
+            }
+         }
+         else {
+            ByteBuffer buffer = READ_BUFFER.get();
+            buffer.clear();
+            size = 0;
+            while (channel.read(buffer) >= 0) {
+               buffer.flip();
+               size += buffer.remaining();
+               digester.digest.update(buffer);
+               buffer.clear();
+            }
+         }
+         hash = digester.finish();
+
+         GitStats.count(Counter.BYTES_READ, size);
+         GitStats.count(Counter.BYTES_HASHED, size);
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+
+      if (event.shouldCommit()) {
+         event.bytes = size;
+         event.commit();
+      }
+      return hash;
+   }
+
+   private static ObjectId computeHash(byte[] bytes, int offset, int length) {
+      Digester digester = startDigest();
+      digester.digest.update(bytes, offset, length);
+      return digester.finish();
+   }
+
+   /**
+    * A hash interrupted by an exception leaves its input in the digester of the thread, and the threads
+    * of the pools and the server are reused, so every hash starts from a reset digester
+    */
+   private static Digester startDigest() {
+      Digester digester = DIGESTER.get();
+      digester.digest.reset();
+      return digester;
+   }
+
+   /**
+    * Creates a hasher for content that is read in parts, so it never has to be held in memory as a whole.
+    * The result equals {@link #getHashFromBytes(byte[])} of the concatenated parts
+    */
+   public static StreamingHasher newStreamingHasher() {
+      return new StreamingHasher();
    }
 
    public static void checkFileExists(File file) throws GitException {
@@ -47,11 +190,107 @@ public class MiniGitUtils {
    public static byte[] getFileBytes(Path fullPath) throws GitException {
       File file = new File(fullPath.toString());
       checkFileExists(file);
+      GitStats.count(Counter.FILES_STATED);
 
       try {
-         return FileUtils.readFileToByteArray(file);
+         byte[] bytes = FileUtils.readFileToByteArray(file);
+         GitStats.count(Counter.BYTES_READ, bytes.length);
+         return bytes;
       } catch (IOException e) {
          throw new GitException(e.getMessage(), e.getCause());
       }
    }
+
+   /**
+    * Materializes file contents in the working directory
+    * @param filename path relative to the working directory, used in diagnostics
+    */
+   public static void writeWorkingFile(Path fullPath, String filename, byte[] content) throws IOException {
+      WorktreeWriteEvent event = new WorktreeWriteEvent();
+      event.begin();
+
+      Files.write(fullPath, content);
+      GitStats.count(Counter.BYTES_WRITTEN, content.length);
+
+      if (event.shouldCommit()) {
+         event.path = filename;
+         event.size = content.length;
+         event.commit();
+      }
+   }
+
+   /**
+    * Creates an executor that runs every task on its own virtual thread when the runtime supports them,
+    * otherwise falls back to a cached pool of platform threads
+    */
+   public static ExecutorService newTaskPerThreadExecutor() {
+      try {
+         Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+         return (ExecutorService) factory.invoke(null);
+      } catch (ReflectiveOperationException e) {
+         return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+         });
+      }
+   }
+
+   public static class StreamingHasher {
+      // the thread-local digester may be used for other objects while this content is still being read
+      private final Digester digester = new Digester();
+      private final HashingEvent event = new HashingEvent();
+      private long bytes = 0;
+
+      private StreamingHasher() {
+         event.begin();
+      }
+
+      /**
+       * Consumes the remaining bytes of the buffer
+       */
+      public void update(ByteBuffer part) {
+         try (Timer ignored = GitStats.time(Phase.HASHING)) {
+            int length = part.remaining();
+            GitStats.count(Counter.BYTES_HASHED, length);
+            digester.digest.update(part);
+            bytes += length;
+         }
+      }
+
+      public ObjectId finish() {
+         ObjectId hash = digester.finish();
+
+         if (event.shouldCommit()) {
+            event.bytes = bytes;
+            event.commit();
+         }
+         return hash;
+      }
+   }
+
+   private static class Digester {
+      private final MessageDigest digest;
+      private final byte[] result = new byte[ObjectId.RAW_LENGTH];
+
+      Digester() {
+         try {
+            digest = MessageDigest.getInstance("SHA-1");
+         } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+         }
+      }
+
+      /**
+       * Completes the digest into the reused buffer and resets it for the next input
+       */
+      ObjectId finish() {
+         try {
+            digest.digest(result, 0, result.length);
+         } catch (DigestException e) {
+            throw new IllegalStateException(e);
+         }
+         return ObjectId.fromRaw(result, 0);
+      }
+   }
 }
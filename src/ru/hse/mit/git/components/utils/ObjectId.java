@@ -0,0 +1,195 @@
+package ru.hse.mit.git.components.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * SHA-1 identifier of a repository object.
+ * <p>
+ * The 20 bytes are packed into primitive fields, so an id costs one small object instead of a 40-char
+ * {@code String} with its backing array. Equality compares three words, and since SHA-1 output is uniformly
+ * distributed, the hash code is simply its first four bytes.
+ */
+public final class ObjectId implements Comparable<ObjectId> {
+   public static final int RAW_LENGTH = 20;
+   public static final int HEX_LENGTH = 40;
+
+   private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+   private final long w1;
+   private final long w2;
+   private final int w3;
+
+   private ObjectId(long w1, long w2, int w3) {
+      this.w1 = w1;
+      this.w2 = w2;
+      this.w3 = w3;
+   }
+
+   public static ObjectId fromRaw(byte[] raw, int offset) {
+      return new ObjectId(
+          readLong(raw, offset),
+          readLong(raw, offset + 8),
+          (int) readBits(raw, offset + 16, 4)
+      );
+   }
+
+   /**
+    * @throws IllegalArgumentException if {@code hex} is not a 40-digit hexadecimal string
+    */
+   public static ObjectId fromHex(@NotNull CharSequence hex) {
+      if (hex.length() != HEX_LENGTH) {
+         throw new IllegalArgumentException("Invalid object id: '" + hex + "'");
+      }
+
+      return new ObjectId(
+          parseHex(hex, 0, 16),
+          parseHex(hex, 16, 16),
+          (int) parseHex(hex, 32, 8)
+      );
+   }
+
+   public static boolean isValidHex(@NotNull CharSequence hex) {
+      if (hex.length() != HEX_LENGTH) {
+         return false;
+      }
+
+      for (int i = 0; i < HEX_LENGTH; i++) {
+         if (digit(hex.charAt(i)) < 0) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Parses the 40 hex digits at {@code offset} straight into raw bytes, for ids kept packed in arrays
+    * @throws IllegalArgumentException if they are not hex digits
+    */
+   public static void hexToRaw(@NotNull CharSequence hex, int offset, byte[] destination, int destinationOffset) {
+      if (offset + HEX_LENGTH > hex.length()) {
+         throw new IllegalArgumentException("Invalid object id: '" + hex.subSequence(offset, hex.length()) + "'");
+      }
+      for (int i = 0; i < RAW_LENGTH; i++) {
+         int high = digit(hex.charAt(offset + 2 * i));
+         int low = digit(hex.charAt(offset + 2 * i + 1));
+         if (high < 0 || low < 0) {
+            throw new IllegalArgumentException("Invalid object id: '" + hex.subSequence(offset, offset + HEX_LENGTH) + "'");
+         }
+         destination[destinationOffset + i] = (byte) (high << 4 | low);
+      }
+   }
+
+   public void copyRawTo(byte[] destination, int offset) {
+      writeBits(destination, offset, w1, 8);
+      writeBits(destination, offset + 8, w2, 8);
+      writeBits(destination, offset + 16, w3, 4);
+   }
+
+   /**
+    * Appends 40 lower-case hex digits without intermediate allocations
+    */
+   public StringBuilder appendHex(StringBuilder builder) {
+      appendHex(builder, w1, 16);
+      appendHex(builder, w2, 16);
+      appendHex(builder, w3, 8);
+      return builder;
+   }
+
+   public String toHex() {
+      char[] chars = new char[HEX_LENGTH];
+      fillHex(chars, 0, w1, 16);
+      fillHex(chars, 16, w2, 16);
+      fillHex(chars, 32, w3, 8);
+      return new String(chars);
+   }
+
+   @Override
+   public boolean equals(Object other) {
+      if (this == other) {
+         return true;
+      }
+      if (!(other instanceof ObjectId id)) {
+         return false;
+      }
+      return w1 == id.w1 && w2 == id.w2 && w3 == id.w3;
+   }
+
+   @Override
+   public int hashCode() {
+      return (int) (w1 >>> 32);
+   }
+
+   @Override
+   public int compareTo(@NotNull ObjectId other) {
+      int result = Long.compareUnsigned(w1, other.w1);
+      if (result == 0) {
+         result = Long.compareUnsigned(w2, other.w2);
+      }
+      if (result == 0) {
+         result = Integer.compareUnsigned(w3, other.w3);
+      }
+      return result;
+   }
+
+   @Override
+   public String toString() {
+      return toHex();
+   }
+
+   private static long readLong(byte[] raw, int offset) {
+      return readBits(raw, offset, 8);
+   }
+
+   private static long readBits(byte[] raw, int offset, int bytes) {
+      long result = 0;
+      for (int i = 0; i < bytes; i++) {
+         result = (result << 8) | (raw[offset + i] & 0xFF);
+      }
+      return result;
+   }
+
+   private static void writeBits(byte[] destination, int offset, long value, int bytes) {
+      for (int i = bytes - 1; i >= 0; i--) {
+         destination[offset + i] = (byte) value;
+         value >>>= 8;
+      }
+   }
+
+   private static long parseHex(CharSequence hex, int offset, int digits) {
+      long result = 0;
+      for (int i = offset; i < offset + digits; i++) {
+         int digit = digit(hex.charAt(i));
+         if (digit < 0) {
+            throw new IllegalArgumentException("Invalid object id: '" + hex + "'");
+         }
+         result = (result << 4) | digit;
+      }
+      return result;
+   }
+
+   private static int digit(char c) {
+      if (c >= '0' && c <= '9') {
+         return c - '0';
+      }
+      if (c >= 'a' && c <= 'f') {
+         return c - 'a' + 10;
+      }
+      if (c >= 'A' && c <= 'F') {
+         return c - 'A' + 10;
+      }
+      return -1;
+   }
+
+   private static void appendHex(StringBuilder builder, long value, int digits) {
+      for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+         builder.append(HEX_DIGITS[(int) (value >>> shift) & 0xF]);
+      }
+   }
+
+   private static void fillHex(char[] chars, int offset, long value, int digits) {
+      for (int i = digits - 1; i >= 0; i--) {
+         chars[offset + i] = HEX_DIGITS[(int) value & 0xF];
+         value >>>= 4;
+      }
+   }
+}
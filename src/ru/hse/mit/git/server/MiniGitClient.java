@@ -0,0 +1,85 @@
+package ru.hse.mit.git.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import ru.hse.mit.git.GitException;
+
+/**
+ * Forwards command line arguments to a running {@link MiniGitServer} and streams its output back
+ */
+public class MiniGitClient {
+   private final Path socketPath;
+
+   public MiniGitClient(Path socketPath) {
+      this.socketPath = socketPath;
+   }
+
+   public boolean isServerRunning() {
+      if (!Files.exists(socketPath)) {
+         return false;
+      }
+
+      try (SocketChannel ignored = connect()) {
+         return true;
+      } catch (IOException e) {
+         return false;
+      }
+   }
+
+   /**
+    * @return exit code of the command
+    */
+   public int run(List<String> arguments, OutputStream output, PrintStream errors) throws GitException {
+      try (SocketChannel channel = connect()) {
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+         DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+
+         ServerProtocol.writeRequest(out, arguments);
+
+         while (true) {
+            byte kind = in.readByte();
+            if (kind == ServerProtocol.EXIT_FRAME) {
+               output.flush();
+               return in.readInt();
+            }
+
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            if (kind == ServerProtocol.OUTPUT_FRAME) {
+               output.write(bytes);
+            } else {
+               errors.println(new String(bytes, StandardCharsets.UTF_8));
+            }
+         }
+      } catch (EOFException e) {
+         throw new GitException("Server closed the connection unexpectedly", e);
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+   }
+
+   private SocketChannel connect() throws IOException {
+      SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+      try {
+         channel.connect(UnixDomainSocketAddress.of(socketPath));
+      } catch (IOException e) {
+         channel.close();
+         throw e;
+      }
+      return channel;
+   }
+}
@@ -0,0 +1,165 @@
+package ru.hse.mit.git.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import ru.hse.mit.git.GitCliImpl;
+import ru.hse.mit.git.GitConstants;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.MiniGit;
+import ru.hse.mit.git.components.utils.MiniGitUtils;
+
+/**
+ * Long-living process serving commands for a single repository over a Unix domain socket.
+ * <p>
+ * One {@link MiniGit} instance is shared between all requests, so parsed index, refs and objects stay in memory.
+ * Every request runs on its own (virtual, when available) thread: read-only commands run concurrently,
+ * commands that modify the repository are serialized and exclude readers.
+ */
+public class MiniGitServer implements AutoCloseable {
+   private static final Set<String> READ_ONLY_COMMANDS = Set.of(
+       GitConstants.STATUS,
+       GitConstants.LOG,
+       GitConstants.SHOW_BRANCHES
+   );
+
+   private final MiniGit git;
+   private final Path socketPath;
+   private final ReadWriteLock repositoryLock = new ReentrantReadWriteLock();
+   private final ExecutorService executor = MiniGitUtils.newTaskPerThreadExecutor();
+   private ServerSocketChannel serverChannel;
+
+   public MiniGitServer(String workingDir) {
+      this.git = new MiniGit(workingDir);
+      this.socketPath = git.getServerSocketPath();
+   }
+
+   /**
+    * Accepts clients until the server is closed
+    */
+   public void serve() throws GitException {
+      bind();
+      Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+
+      while (serverChannel.isOpen()) {
+         SocketChannel client;
+         try {
+            client = serverChannel.accept();
+         } catch (ClosedChannelException e) {
+            break;
+         } catch (IOException e) {
+            throw new GitException(e.getMessage(), e.getCause());
+         }
+
+         try {
+            executor.submit(() -> handle(client));
+         } catch (RejectedExecutionException e) {
+            // accepted while the server was being closed
+            handle(client);
+         }
+      }
+   }
+
+   @Override
+   public synchronized void close() {
+      try {
+         if (serverChannel != null) {
+            serverChannel.close();
+         }
+         Files.deleteIfExists(socketPath);
+      } catch (IOException ignored) {
+         // nothing left to clean up
+      }
+      executor.shutdown();
+   }
+
+   private synchronized void bind() throws GitException {
+      if (!Files.isDirectory(socketPath.getParent())) {
+         throw new GitException("MiniGit repository not initialized");
+      }
+
+      try {
+         if (Files.exists(socketPath)) {
+            if (new MiniGitClient(socketPath).isServerRunning()) {
+               throw new GitException("Server is already running on '" + socketPath + "'");
+            }
+            // left by a server that was killed
+            Files.delete(socketPath);
+         }
+
+         serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+         serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+      } catch (IOException e) {
+         throw new GitException(e.getMessage(), e.getCause());
+      }
+   }
+
+   private void handle(SocketChannel client) {
+      try (SocketChannel channel = client) {
+         DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+
+         List<String> arguments = ServerProtocol.readRequest(in);
+         int exitCode = execute(arguments, out);
+         ServerProtocol.writeExit(out, exitCode);
+      } catch (IOException ignored) {
+         // client has gone away, there is nobody to report to
+      }
+   }
+
+   private int execute(List<String> arguments, DataOutputStream out) throws IOException {
+      if (arguments.isEmpty()) {
+         return fail(out, "No command given");
+      }
+
+      String command = arguments.get(0);
+      if (command.equals(GitConstants.SERVE)) {
+         return fail(out, "Server is already running");
+      }
+
+      PrintStream output = new PrintStream(ServerProtocol.outputFrames(out), false, StandardCharsets.UTF_8);
+      GitCliImpl cli = new GitCliImpl(git);
+      cli.setOutputStream(output);
+
+      Lock lock = READ_ONLY_COMMANDS.contains(command)
+          ? repositoryLock.readLock()
+          : repositoryLock.writeLock();
+
+      lock.lock();
+      try {
+         cli.runCommand(command, arguments.subList(1, arguments.size()));
+         output.flush();
+         return 0;
+      } catch (GitException | RuntimeException e) {
+         output.flush();
+         return fail(out, String.valueOf(e.getMessage()));
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   private int fail(DataOutputStream out, String message) throws IOException {
+      byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+      ServerProtocol.writeFrame(out, ServerProtocol.ERROR_FRAME, bytes, 0, bytes.length);
+      return 1;
+   }
+}
@@ -0,0 +1,80 @@
+package ru.hse.mit.git.server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wire format between {@link MiniGitClient} and {@link MiniGitServer}.
+ * <p>
+ * The client sends the argument count followed by every argument in modified UTF-8.
+ * The server answers with a sequence of frames, each starting with a one-byte kind:
+ * <ul>
+ *    <li>{@code 'O'}, length, bytes: a chunk of command output</li>
+ *    <li>{@code 'E'}, length, bytes: error message of a failed command</li>
+ *    <li>{@code 'X'}, exit code: the last frame of a response</li>
+ * </ul>
+ */
+final class ServerProtocol {
+   static final byte OUTPUT_FRAME = 'O';
+   static final byte ERROR_FRAME = 'E';
+   static final byte EXIT_FRAME = 'X';
+
+   private ServerProtocol() {}
+
+   static void writeRequest(DataOutputStream out, List<String> arguments) throws IOException {
+      out.writeInt(arguments.size());
+      for (String argument : arguments) {
+         out.writeUTF(argument);
+      }
+      out.flush();
+   }
+
+   static List<String> readRequest(DataInputStream in) throws IOException {
+      int count = in.readInt();
+      List<String> arguments = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+         arguments.add(in.readUTF());
+      }
+      return arguments;
+   }
+
+   static void writeFrame(DataOutputStream out, byte kind, byte[] bytes, int offset, int length) throws IOException {
+      out.writeByte(kind);
+      out.writeInt(length);
+      out.write(bytes, offset, length);
+   }
+
+   static void writeExit(DataOutputStream out, int exitCode) throws IOException {
+      out.writeByte(EXIT_FRAME);
+      out.writeInt(exitCode);
+      out.flush();
+   }
+
+   /**
+    * Wraps everything written into output frames, so that command output reaches the client while it is produced
+    */
+   static OutputStream outputFrames(DataOutputStream out) {
+      return new OutputStream() {
+         @Override
+         public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+         }
+
+         @Override
+         public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length > 0) {
+               writeFrame(out, OUTPUT_FRAME, bytes, offset, length);
+            }
+         }
+
+         @Override
+         public void flush() throws IOException {
+            out.flush();
+         }
+      };
+   }
+}
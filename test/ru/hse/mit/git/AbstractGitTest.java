@@ -164,6 +164,49 @@ public abstract class AbstractGitTest {
         runCommand(GitConstants.LOG);
     }
 
+    // git log -- path
+    protected void logPath(@NotNull String path) throws GitException {
+        runCommand(GitConstants.LOG, "--", path);
+    }
+
+    // git log --grep text
+    protected void logGrep(@NotNull String text) throws GitException {
+        runCommand(GitConstants.LOG, "--grep", text);
+    }
+
+    // git write-changed-paths
+    protected void writeChangedPaths() throws GitException {
+        runCommand(GitConstants.WRITE_CHANGED_PATHS);
+    }
+
+    // git blame fileName
+    protected void blame(@NotNull String fileName) throws GitException {
+        runCommand(GitConstants.BLAME, fileName);
+    }
+
+    // git clone source destination
+    protected void cloneRepository(@NotNull String source, @NotNull String destination) throws GitException {
+        runCommand(GitConstants.CLONE, source, destination);
+    }
+
+    // git sparse-checkout set directories
+    protected void sparseCheckoutSet(String... directories) throws GitException {
+        String[] args = new String[directories.length + 1];
+        args[0] = "set";
+        System.arraycopy(directories, 0, args, 1, directories.length);
+        runCommand(GitConstants.SPARSE_CHECKOUT, args);
+    }
+
+    // git sparse-checkout list
+    protected void sparseCheckoutList() throws GitException {
+        runCommand(GitConstants.SPARSE_CHECKOUT, "list");
+    }
+
+    // git sparse-checkout disable
+    protected void sparseCheckoutDisable() throws GitException {
+        runCommand(GitConstants.SPARSE_CHECKOUT, "disable");
+    }
+
     // git branch-create branch
     protected void createBranch(@NotNull String branch) throws GitException {
         runCommand(GitConstants.BRANCH_CREATE, branch);
@@ -0,0 +1,153 @@
+package ru.hse.mit.git;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.hse.mit.git.AsyncMiniGit.CommitRecord;
+import ru.hse.mit.git.components.fs.IndexFile.FileStatus;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AsyncMiniGitTest {
+    @TempDir
+    Path workingDir;
+
+    private MiniGit git;
+
+    @BeforeEach
+    public void setUp() throws GitException {
+        git = new MiniGit(workingDir.toString());
+        git.init();
+    }
+
+    @Test
+    public void testWritesRunInSubmissionOrder() throws Exception {
+        List<String> messages = new ArrayList<>();
+        try (AsyncMiniGit async = new AsyncMiniGit(workingDir.toString())) {
+            CompletableFuture<CommitRecord> last = null;
+            for (int i = 0; i < 10; i++) {
+                Files.writeString(workingDir.resolve("file" + i + ".txt"), "content " + i);
+                async.add(List.of("file" + i + ".txt"));
+                last = async.commit("commit " + i);
+                messages.add(0, "commit " + i);
+            }
+
+            assertEquals("commit 9", last.join().message());
+            List<CommitRecord> log = async.log().join();
+            assertEquals(messages, log.stream().map(CommitRecord::message).toList());
+            // every commit has the file added right before it and no other new one
+            for (int i = 0; i < 9; i++) {
+                String parent = log.get(i + 1).id().toHex();
+                List<AsyncMiniGit.DiffEntry> diff = async.diff(parent, log.get(i).id().toHex()).join();
+                assertEquals(
+                    List.of("file" + (9 - i) + ".txt"),
+                    diff.stream().map(AsyncMiniGit.DiffEntry::path).toList()
+                );
+            }
+        }
+    }
+
+    @Test
+    public void testReadsStartAfterEarlierWrites() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean first = new AtomicBoolean(true);
+        // holds back the first task, the write
+        Executor executor = task -> new Thread(() -> {
+            if (first.getAndSet(false)) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            task.run();
+        }).start();
+
+        try (AsyncMiniGit async = new AsyncMiniGit(git, executor)) {
+            CompletableFuture<Void> write = async.createBranch("feature");
+            CompletableFuture<List<String>> read = async.branches();
+
+            assertThrows(TimeoutException.class, () -> read.get(200, TimeUnit.MILLISECONDS));
+            assertFalse(write.isDone());
+
+            release.countDown();
+            assertTrue(read.join().contains("feature"));
+        }
+    }
+
+    @Test
+    public void testFailedWriteDoesNotBlockLaterOperations() throws Exception {
+        try (AsyncMiniGit async = new AsyncMiniGit(git, Runnable::run)) {
+            CompletableFuture<Void> failed = async.checkout("missing");
+            CompletableFuture<AsyncMiniGit.Status> status = async.status();
+
+            CompletionException e = assertThrows(CompletionException.class, failed::join);
+            assertTrue(e.getCause() instanceof GitException);
+            assertEquals("master", status.join().branch());
+        }
+    }
+
+    @Test
+    public void testOperationsAfterCloseFail() throws Exception {
+        Files.writeString(workingDir.resolve("file.txt"), "content");
+        AsyncMiniGit async = new AsyncMiniGit(workingDir.toString());
+        CompletableFuture<Void> add = async.add(List.of("file.txt"));
+        CompletableFuture<CommitRecord> commit = async.commit("message");
+        async.close();
+
+        // the operations submitted before are waited for
+        assertTrue(add.isDone());
+        assertEquals("message", commit.join().message());
+
+        CompletionException e = assertThrows(CompletionException.class, () -> async.status().join());
+        assertTrue(e.getCause() instanceof GitException);
+        assertThrows(CompletionException.class, () -> async.commit("after close").join());
+        async.close();
+    }
+
+    @Test
+    public void testStatusAndDiff() throws Exception {
+        Files.writeString(workingDir.resolve("kept.txt"), "kept");
+        Files.writeString(workingDir.resolve("changed.txt"), "old");
+        Files.writeString(workingDir.resolve("removed.txt"), "removed");
+        git.add(List.of("kept.txt", "changed.txt", "removed.txt"));
+        git.commit("first");
+        Files.writeString(workingDir.resolve("changed.txt"), "new");
+        Files.createDirectories(workingDir.resolve("dir"));
+        Files.writeString(workingDir.resolve("dir").resolve("added.txt"), "added");
+        git.add(List.of("changed.txt", "dir"));
+        git.rm(List.of("removed.txt"));
+        Files.deleteIfExists(workingDir.resolve("removed.txt"));
+        git.commit("second");
+
+        try (AsyncMiniGit async = new AsyncMiniGit(git, Runnable::run)) {
+            List<AsyncMiniGit.DiffEntry> diff = async.diff("HEAD~1", "HEAD").join();
+
+            assertEquals(List.of("changed.txt", "dir/added.txt", "removed.txt"),
+                diff.stream().map(AsyncMiniGit.DiffEntry::path).toList());
+            assertEquals(List.of(FileStatus.MODIFIED, FileStatus.NEW, FileStatus.DELETED),
+                diff.stream().map(AsyncMiniGit.DiffEntry::status).toList());
+            assertNull(diff.get(1).oldHash());
+            assertNull(diff.get(2).newHash());
+
+            AsyncMiniGit.Status status = async.status().join();
+            assertEquals("master", status.branch());
+            assertEquals(List.of(), status.entries());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ru.hse.mit.git;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.hse.mit.git.components.utils.MiniGitUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class CloneTest {
+    @TempDir
+    Path workingDir;
+
+    private Path sourceDir;
+    private MiniGit source;
+
+    @BeforeEach
+    public void setUp() throws IOException, GitException {
+        sourceDir = workingDir.resolve("source");
+        Files.createDirectories(sourceDir);
+        source = new MiniGit(sourceDir.toString());
+        source.init();
+        commit("file.txt", "first");
+        commit("dir/file.txt", "second");
+        source.createBranch("feature");
+        commit("file.txt", "third");
+    }
+
+    @Test
+    public void testObjectsAreHardLinked() throws Exception {
+        String output = new MiniGit(workingDir.toString()).clone("source", "clone");
+
+        Path cloneDir = workingDir.resolve("clone");
+        assertTrue(output.contains(" 0 copied, 2 files checked out"), output);
+        assertEquals("third", Files.readString(cloneDir.resolve("file.txt")));
+        assertEquals("second", Files.readString(cloneDir.resolve("dir").resolve("file.txt")));
+
+        String blob = MiniGitUtils.getHashFromBytes("third".getBytes(StandardCharsets.UTF_8)).toHex();
+        Path sourceBlob = sourceDir.resolve(".mini-git").resolve("blobs").resolve(blob);
+        Path cloneBlob = cloneDir.resolve(".mini-git").resolve("blobs").resolve(blob);
+        assertTrue(Files.isSameFile(sourceBlob, cloneBlob));
+        assertEquals(2, Files.getAttribute(cloneBlob, "unix:nlink"));
+
+        // the index matched HEAD, so it is the copied one
+        Path sourceIndex = sourceDir.resolve(".mini-git").resolve("INDEX");
+        assertEquals(-1, Files.mismatch(sourceIndex, cloneDir.resolve(".mini-git").resolve("INDEX")));
+        assertFalse(Files.isSameFile(sourceIndex, cloneDir.resolve(".mini-git").resolve("INDEX")));
+
+        MiniGit clone = new MiniGit(cloneDir.toString());
+        assertEquals(source.resolveRevision("HEAD"), clone.resolveRevision("HEAD"));
+        assertEquals(source.resolveRevision("master"), clone.resolveRevision("master"));
+        assertEquals("feature", clone.getCurrentBranch());
+        // the clone is a repository of its own, its commits leave the source untouched
+        Files.writeString(cloneDir.resolve("file.txt"), "fourth");
+        clone.add(List.of("file.txt"));
+        clone.commit("fourth");
+        assertEquals(clone.resolveRevision("HEAD~1"), source.resolveRevision("HEAD"));
+        assertEquals("third", Files.readString(sourceBlob));
+    }
+
+    @Test
+    public void testObjectsAreCopiedToAnotherFileSystem() throws Exception {
+        Path otherFileSystem = Path.of("/dev/shm");
+        assumeTrue(Files.isDirectory(otherFileSystem)
+            && !Files.getFileStore(otherFileSystem).equals(Files.getFileStore(workingDir)));
+
+        Path cloneDir = Files.createTempDirectory(otherFileSystem, "clone");
+        try {
+            Files.delete(cloneDir);
+            String output = new MiniGit(workingDir.toString()).clone("source", cloneDir.toString());
+
+            assertTrue(output.contains(": 0 objects linked, "), output);
+            assertEquals("third", Files.readString(cloneDir.resolve("file.txt")));
+            MiniGit clone = new MiniGit(cloneDir.toString());
+            assertEquals(source.resolveRevision("HEAD"), clone.resolveRevision("HEAD"));
+            assertEquals(3, clone.logCommits(clone.resolveRevision("HEAD"), null, null).size());
+        } finally {
+            FileUtils.deleteDirectory(cloneDir.toFile());
+        }
+    }
+
+    @Test
+    public void testIndexDifferentFromHeadIsRebuilt() throws Exception {
+        Files.writeString(sourceDir.resolve("staged.txt"), "staged");
+        source.add(List.of("staged.txt"));
+
+        new MiniGit(workingDir.toString()).clone("source", "clone");
+
+        Path cloneDir = workingDir.resolve("clone");
+        assertFalse(Files.exists(cloneDir.resolve("staged.txt")));
+        assertEquals("third", Files.readString(cloneDir.resolve("file.txt")));
+        String status = new MiniGit(cloneDir.toString()).status();
+        assertFalse(status.contains("staged.txt"), status);
+        assertTrue(source.status().contains("staged.txt"));
+    }
+
+    @Test
+    public void testInvalidSourceAndDestination() throws Exception {
+        MiniGit git = new MiniGit(workingDir.toString());
+        Files.createDirectories(workingDir.resolve("empty"));
+        Files.createDirectories(workingDir.resolve("taken"));
+        Files.writeString(workingDir.resolve("taken").resolve("file.txt"), "content");
+
+        assertThrows(GitException.class, () -> git.clone("empty", "clone"));
+        assertThrows(GitException.class, () -> git.clone("missing", "clone"));
+        assertThrows(GitException.class, () -> git.clone("source", "taken"));
+        assertFalse(Files.exists(workingDir.resolve("clone")));
+    }
+
+    private void commit(String filename, String content) throws IOException, GitException {
+        Path file = sourceDir.resolve(filename);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+        source.add(List.of(filename));
+        source.commit(filename);
+    }
+}
@@ -162,4 +162,96 @@ public class GitTest extends AbstractGitTest {
 
         check("branchRemove.txt");
     }
+
+    @Test
+    public void testLogPath() throws Exception {
+        createFile("file.txt", "aaa");
+        createFile("dir/file.txt", "bbb");
+        add("file.txt", "dir");
+        commit("Add files");
+        createFileAndCommit("dir/file.txt", "ccc");
+        createFileAndCommit("file.txt", "ddd");
+
+        logPath("dir");
+        logPath(".");
+        logPath("missing.txt");
+
+        // history made before the changed-path filters is checked against its trees until they are written
+        deleteFile(".mini-git/changed-paths");
+        logPath("dir");
+        logPath(".");
+        writeChangedPaths();
+        logPath("dir");
+        logPath(".");
+
+        check("logPath.txt");
+    }
+
+    @Test
+    public void testBlame() throws Exception {
+        createFileAndCommit("file.txt", "first\nsecond\n");
+        createFileAndCommit("other.txt", "other");
+        createFileAndCommit("file.txt", "first\nchanged\nthird\n");
+        blame("file.txt");
+        blame("./other.txt");
+
+        check("blame.txt");
+    }
+
+    @Test
+    public void testLogGrep() throws Exception {
+        createFileAndCommit("lexer.txt", "a");
+        createFile("parser.txt", "b");
+        add("parser.txt");
+        commit("Fix parser crash");
+        createFileAndCommit("lexer.txt", "c");
+        createFile("parser.txt", "d");
+        add("parser.txt");
+        commit("Fix parser again");
+
+        logGrep("Fix parser");
+        logGrep("txt");
+        logGrep("missing");
+
+        check("logGrep.txt");
+    }
+
+    @Test
+    public void testClone() throws Exception {
+        createFileAndCommit("file.txt", "aaa");
+        createFileAndCommit("dir/file.txt", "bbb");
+        createFile("staged.txt", "ccc");
+        add("staged.txt");
+
+        cloneRepository(".", "copy");
+        fileContent("copy/file.txt");
+        fileContent("copy/dir/file.txt");
+        fileContent("copy/staged.txt");
+
+        check("clone.txt");
+    }
+
+    @Test
+    public void testSparseCheckout() throws Exception {
+        createFile("file.txt", "aaa");
+        createFile("docs/readme.txt", "bbb");
+        createFile("src/main.txt", "ccc");
+        add("file.txt", "docs", "src");
+        commit("Add files");
+
+        sparseCheckoutSet("src");
+        sparseCheckoutList();
+        fileContent("docs/readme.txt");
+        fileContent("src/main.txt");
+        status();
+
+        createFileAndCommit("src/main.txt", "ddd");
+        sparseCheckoutDisable();
+        sparseCheckoutList();
+        fileContent("docs/readme.txt");
+        fileContent("src/main.txt");
+        status();
+
+        check("sparseCheckout.txt");
+    }
 }
@@ -0,0 +1,156 @@
+package ru.hse.mit.git;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.hse.mit.git.components.fs.CommitFile;
+import ru.hse.mit.git.components.utils.MiniGitUtils;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The structured API the command line and {@link AsyncMiniGit} are built on
+ */
+public class MiniGitTest {
+    @TempDir
+    Path workingDir;
+
+    private MiniGit git;
+
+    @BeforeEach
+    public void setUp() throws GitException {
+        git = new MiniGit(workingDir.toString());
+        git.init();
+    }
+
+    @Test
+    public void testResolveRevision() throws Exception {
+        assertNull(git.resolveRevision("HEAD"));
+
+        ObjectId first = commit("file.txt", "1");
+        ObjectId second = commit("file.txt", "2");
+        git.createBranch("feature");
+        ObjectId third = commit("file.txt", "3");
+
+        assertEquals(third, git.resolveRevision("HEAD"));
+        assertEquals(third, git.resolveRevision("HEAD~0"));
+        assertEquals(second, git.resolveRevision("HEAD~1"));
+        assertEquals(first, git.resolveRevision("HEAD~2"));
+        assertEquals(second, git.resolveRevision("master"));
+        assertEquals(third, git.resolveRevision("feature"));
+        assertEquals(first, git.resolveRevision(first.toHex()));
+    }
+
+    @Test
+    public void testResolveInvalidRevision() throws Exception {
+        commit("file.txt", "1");
+
+        assertThrows(GitException.class, () -> git.resolveRevision("HEAD~x"));
+        assertThrows(GitException.class, () -> git.resolveRevision("HEAD~-1"));
+        assertThrows(GitException.class, () -> git.resolveRevision("HEAD~5"));
+        assertThrows(GitException.class, () -> git.resolveRevision("missing"));
+    }
+
+    @Test
+    public void testDiff() throws Exception {
+        commit("kept.txt", "kept");
+        commit("changed.txt", "old");
+        ObjectId first = commit("dir/removed.txt", "removed");
+        Files.delete(workingDir.resolve("dir").resolve("removed.txt"));
+        git.rm(List.of("dir/removed.txt"));
+        commit("changed.txt", "new");
+        ObjectId second = commit("added.txt", "added");
+
+        assertEquals(
+            List.of(
+                "added.txt: null -> " + hash("added"),
+                "changed.txt: " + hash("old") + " -> " + hash("new"),
+                "dir/removed.txt: " + hash("removed") + " -> null"
+            ),
+            diff(first, second)
+        );
+        assertEquals(List.of(), diff(second, second));
+    }
+
+    @Test
+    public void testDiffWithEmptyTree() throws Exception {
+        ObjectId first = commit("file.txt", "content");
+
+        assertEquals(List.of("file.txt: null -> " + hash("content")), diff(null, first));
+        assertEquals(List.of("file.txt: " + hash("content") + " -> null"), diff(first, null));
+        assertEquals(List.of(), diff(null, null));
+    }
+
+    @Test
+    public void testLogCommits() throws Exception {
+        commit("a.txt", "fix a");
+        commit("dir/b.txt", "add b");
+        commit("a.txt", "fix a again");
+        ObjectId head = git.resolveRevision("HEAD");
+
+        assertEquals(List.of("a.txt", "dir/b.txt", "a.txt"), messages(git.logCommits(head, null, null)));
+        assertEquals(List.of("a.txt", "a.txt"), messages(git.logCommits(head, "a.txt", null)));
+        assertEquals(List.of("dir/b.txt"), messages(git.logCommits(head, "dir", null)));
+        assertEquals(List.of("a.txt"), messages(git.logCommits(git.resolveRevision("HEAD~1"), "a.txt", null)));
+        assertEquals(List.of(), messages(git.logCommits(null, null, null)));
+    }
+
+    @Test
+    public void testLogCommitsWithGrep() throws Exception {
+        commit("a.txt", "1", "fix lexer");
+        commit("b.txt", "2", "fix parser");
+        commit("a.txt", "3", "cleanup");
+        ObjectId head = git.resolveRevision("HEAD");
+
+        assertEquals(List.of("fix parser", "fix lexer"), messages(git.logCommits(head, null, "fix")));
+        assertEquals(List.of("fix lexer"), messages(git.logCommits(head, "a.txt", "fix")));
+        assertEquals(List.of(), messages(git.logCommits(head, null, "missing")));
+        assertEquals(List.of(), messages(git.logCommits(null, null, "fix")));
+    }
+
+    private ObjectId commit(String filename, String content) throws IOException, GitException {
+        return commit(filename, content, filename);
+    }
+
+    private ObjectId commit(String filename, String content, String message) throws IOException, GitException {
+        Path file = workingDir.resolve(filename);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+        git.add(List.of(filename));
+        git.commit(message);
+        return git.resolveRevision("HEAD");
+    }
+
+    private List<String> diff(ObjectId oldCommit, ObjectId newCommit) throws GitException {
+        List<String> result = new ArrayList<>();
+        git.diff(oldCommit, newCommit, (path, oldHash, newHash) ->
+            result.add(path + ": " + format(oldHash) + " -> " + format(newHash))
+        );
+        return result;
+    }
+
+    private static String format(ObjectId hash) {
+        return hash == null ? "null" : hash.toHex();
+    }
+
+    private static String hash(String content) {
+        return MiniGitUtils.getHashFromBytes(content.getBytes(StandardCharsets.UTF_8)).toHex();
+    }
+
+    private static List<String> messages(List<CommitFile> commits) throws GitException {
+        List<String> result = new ArrayList<>();
+        for (CommitFile commit : commits) {
+            result.add(commit.getMessage());
+        }
+        return result;
+    }
+}
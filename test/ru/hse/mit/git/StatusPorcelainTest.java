@@ -0,0 +1,133 @@
+package ru.hse.mit.git;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class StatusPorcelainTest {
+    @TempDir
+    Path workingDir;
+
+    private GitCli cli;
+    private ByteArrayOutputStream output;
+
+    @BeforeEach
+    public void setUp() {
+        cli = new GitCliImpl(new MiniGit(workingDir.toString()));
+        output = new ByteArrayOutputStream();
+        cli.setOutputStream(new PrintStream(output, true, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testEmptyRepository() throws GitException {
+        run("init");
+        assertEquals(List.of("## master"), porcelain());
+    }
+
+    @Test
+    public void testRecordsInPathOrder() throws IOException, GitException {
+        run("init");
+        write("committed.txt", "1");
+        write("dir/modified.txt", "1");
+        write("dir/deleted.txt", "1");
+        write("removed.txt", "1");
+        run("add", "committed.txt", "dir", "removed.txt");
+        run("commit", "initial");
+
+        write("dir/modified.txt", "2");
+        Files.delete(workingDir.resolve("dir/deleted.txt"));
+        run("rm", "removed.txt");
+        write("added.txt", "1");
+        write("staged-then-modified.txt", "1");
+        run("add", "added.txt", "staged-then-modified.txt");
+        write("staged-then-modified.txt", "2");
+        write("untracked.txt", "1");
+
+        assertEquals(
+            List.of(
+                "## master",
+                "A  added.txt",
+                " D dir/deleted.txt",
+                " M dir/modified.txt",
+                "D  removed.txt",
+                "?? removed.txt",
+                "AM staged-then-modified.txt",
+                "?? untracked.txt"
+            ),
+            porcelain()
+        );
+    }
+
+    @Test
+    public void testPathsAreUtf8() throws IOException, GitException {
+        assumeTrue(canEncodePaths("файл.txt"), "file names are not encoded in Unicode here");
+        run("init");
+        write("файл.txt", "1");
+        write("naïve.txt", "1");
+
+        assertEquals(List.of("## master", "?? naïve.txt", "?? файл.txt"), porcelain());
+    }
+
+    @Test
+    public void testDetachedHead() throws IOException, GitException {
+        run("init");
+        write("a.txt", "1");
+        run("add", "a.txt");
+        run("commit", "first");
+        write("a.txt", "2");
+        run("add", "a.txt");
+        run("commit", "second");
+        run("checkout", "HEAD~1");
+
+        assertEquals(List.of("## HEAD (no branch)"), porcelain());
+    }
+
+    @Test
+    public void testInvalidArguments() throws GitException {
+        run("init");
+        assertThrows(GitException.class, () -> run("status", "--porcelain"));
+        assertThrows(GitException.class, () -> run("status", "-z"));
+    }
+
+    /**
+     * @return records without their terminating NUL, which every record has
+     */
+    private List<String> porcelain() throws GitException {
+        output.reset();
+        run("status", "--porcelain", "-z");
+        String records = output.toString(StandardCharsets.UTF_8);
+        assertEquals('\0', records.charAt(records.length() - 1));
+        return List.of(records.substring(0, records.length() - 1).split("\0", -1));
+    }
+
+    private boolean canEncodePaths(String name) {
+        try {
+            workingDir.resolve(name);
+            return true;
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    private void run(String command, String... arguments) throws GitException {
+        cli.runCommand(command, List.of(arguments));
+    }
+
+    private void write(String path, String content) throws IOException {
+        Path file = workingDir.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+}
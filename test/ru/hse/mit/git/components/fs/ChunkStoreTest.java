@@ -0,0 +1,112 @@
+package ru.hse.mit.git.components.fs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.utils.MiniGitUtils;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChunkStoreTest {
+    @TempDir
+    Path tempDir;
+
+    private Path chunksDir;
+    private ChunkStore store;
+
+    @BeforeEach
+    public void setUp() {
+        Path repositoryDir = tempDir.resolve(".mini-git");
+        chunksDir = repositoryDir.resolve("chunks");
+        store = new ChunkStore(chunksDir, repositoryDir.resolve("manifests"), ObjectFilter.of(repositoryDir));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException, GitException {
+        byte[] content = randomBytes(3 * 1024 * 1024 + 17, 1);
+        Path file = write("large.bin", content);
+
+        ObjectId hash = store.add(file);
+        assertEquals(MiniGitUtils.getHashFromFile(file), hash);
+        assertTrue(store.contains(hash));
+        assertArrayEquals(content, store.load(hash));
+
+        Path restored = tempDir.resolve("restored.bin");
+        store.writeWorkingFile(hash, restored, "restored.bin");
+        assertArrayEquals(content, Files.readAllBytes(restored));
+    }
+
+    @Test
+    public void testUnknownBlob() throws IOException, GitException {
+        ObjectId hash = MiniGitUtils.getHashFromBytes(new byte[] {1, 2, 3});
+        assertFalse(store.contains(hash));
+        assertThrows(GitException.class, () -> store.load(hash));
+    }
+
+    @Test
+    public void testEditedVersionSharesChunks() throws IOException, GitException {
+        byte[] content = randomBytes(4 * 1024 * 1024, 2);
+        store.add(write("v1.bin", content));
+        long chunksAfterFirst = countChunks();
+
+        content[content.length / 2] ^= 1;
+        ObjectId hash = store.add(write("v2.bin", content));
+        assertArrayEquals(content, store.load(hash));
+        // only the chunk with the changed byte is new
+        assertEquals(chunksAfterFirst + 1, countChunks());
+    }
+
+    @Test
+    public void testMissingChunkIsDetected() throws IOException, GitException {
+        ObjectId hash = store.add(write("large.bin", randomBytes(2 * 1024 * 1024, 3)));
+        try (var chunks = Files.list(chunksDir)) {
+            Files.write(chunks.findFirst().orElseThrow(), new byte[0]);
+        }
+
+        assertThrows(GitException.class, () -> store.load(hash));
+        assertThrows(GitException.class, () -> store.writeWorkingFile(hash, tempDir.resolve("out.bin"), "out.bin"));
+    }
+
+    @Test
+    public void testTruncatedChunkIsWrittenAgain() throws IOException, GitException {
+        byte[] content = randomBytes(2 * 1024 * 1024, 4);
+        Path file = write("large.bin", content);
+        store.add(file);
+        // what a crash leaves of an object that was not synced
+        try (var chunks = Files.list(chunksDir)) {
+            Files.write(chunks.findFirst().orElseThrow(), new byte[0]);
+        }
+
+        ObjectId hash = store.add(file);
+        assertArrayEquals(content, store.load(hash));
+        try (var files = Files.list(chunksDir)) {
+            assertTrue(files.noneMatch(path -> path.toString().endsWith(AbstractEditableFile.TEMP_SUFFIX)));
+        }
+    }
+
+    private long countChunks() throws IOException {
+        try (var chunks = Files.list(chunksDir)) {
+            return chunks.count();
+        }
+    }
+
+    private Path write(String name, byte[] content) throws IOException {
+        return Files.write(tempDir.resolve(name), content);
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
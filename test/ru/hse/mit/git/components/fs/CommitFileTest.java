@@ -0,0 +1,146 @@
+package ru.hse.mit.git.components.fs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.utils.MiniGitUtils;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CommitFileTest {
+    private static final ObjectId TREE = hash("tree");
+    private static final ObjectId FIRST_PARENT = hash("first");
+    private static final ObjectId SECOND_PARENT = hash("second");
+    private static final OffsetDateTime DATE = OffsetDateTime.of(2024, 3, 1, 12, 30, 15, 0, ZoneOffset.ofHours(3));
+
+    @TempDir
+    Path tempDir;
+
+    private Path commitsDir;
+    private ObjectFilter filter;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        commitsDir = Files.createDirectories(tempDir.resolve(".mini-git").resolve("commits"));
+        filter = ObjectFilter.of(commitsDir.getParent());
+    }
+
+    @Test
+    public void testRoundTripWithMultipleParents() throws GitException {
+        String message = "Merge branch 'feature'\n\nparent " + hash("not a header").toHex() + "\nlast line\n";
+        CommitFile commit = new CommitFile(commitsDir, TREE, List.of(FIRST_PARENT, SECOND_PARENT), "Author", DATE, message);
+        commit.save(filter);
+
+        CommitFile loaded = CommitFile.load(commitsDir, commit.getId());
+
+        assertEquals(TREE, loaded.getRootNodeHash());
+        // the lines of the message are not headers, even when they look like ones
+        assertEquals(List.of(FIRST_PARENT, SECOND_PARENT), loaded.getParentCommitHashes());
+        assertEquals(FIRST_PARENT, loaded.getParentCommitHash());
+        assertEquals("Author", loaded.getAuthor());
+        assertEquals(DATE, loaded.getDate());
+        assertEquals(message, loaded.getMessage());
+    }
+
+    @Test
+    public void testRootCommit() throws GitException {
+        CommitFile commit = new CommitFile(commitsDir, TREE, (ObjectId) null, "Author", DATE, "initial");
+        commit.save(filter);
+
+        CommitFile loaded = CommitFile.load(commitsDir, commit.getId());
+
+        assertEquals(List.of(), loaded.getParentCommitHashes());
+        assertNull(loaded.getParentCommitHash());
+        assertEquals("initial", loaded.getMessage());
+        assertEquals(commit.getId(), new CommitFile(commitsDir, TREE, List.of(), "Author", DATE, "initial").getId());
+    }
+
+    @Test
+    public void testContentIsUtf8WithLineFeeds() throws IOException, GitException {
+        CommitFile commit = new CommitFile(commitsDir, TREE, FIRST_PARENT, "Дмитрий", DATE, "Исправление ✓");
+        commit.save(filter);
+
+        byte[] expected = ("tree " + TREE.toHex() + "\n"
+            + "parent " + FIRST_PARENT.toHex() + "\n"
+            + "author Дмитрий\n"
+            + "date 2024-03-01T12:30:15+03:00\n"
+            + "message Исправление ✓").getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(expected, Files.readAllBytes(commitsDir.resolve(commit.getId().toHex())));
+        assertEquals(MiniGitUtils.getHashFromBytes(expected), commit.getId());
+
+        CommitFile loaded = CommitFile.load(commitsDir, commit.getId());
+        assertEquals("Дмитрий", loaded.getAuthor());
+        assertEquals("Исправление ✓", loaded.getMessage());
+    }
+
+    @Test
+    public void testCrlfCommit() throws IOException, GitException {
+        String message = "first line\r\nsecond line\r\n";
+        ObjectId id = write("tree " + TREE.toHex() + "\r\n"
+            + "parent " + FIRST_PARENT.toHex() + "\r\n"
+            + "parent " + SECOND_PARENT.toHex() + "\r\n"
+            + "author Author\r\n"
+            + "date 2024-03-01T12:30:15+03:00\r\n"
+            + "message " + message);
+
+        CommitFile loaded = CommitFile.load(commitsDir, id);
+
+        assertEquals(TREE, loaded.getRootNodeHash());
+        assertEquals(List.of(FIRST_PARENT, SECOND_PARENT), loaded.getParentCommitHashes());
+        assertEquals("Author", loaded.getAuthor());
+        assertEquals(DATE, loaded.getDate());
+        assertEquals(message, loaded.getMessage());
+    }
+
+    @Test
+    public void testHeadersAreParsedOnDemand() throws IOException, GitException {
+        ObjectId id = write("tree " + TREE.toHex() + "\n"
+            + "parent " + FIRST_PARENT.toHex() + "\n"
+            + "author Author\n"
+            + "date yesterday\n"
+            + "message walk past me");
+
+        CommitFile loaded = CommitFile.load(commitsDir, id);
+
+        // a parent walk does not touch the broken date
+        assertEquals(FIRST_PARENT, loaded.getParentCommitHash());
+        assertEquals("walk past me", loaded.getMessage());
+        assertThrows(GitException.class, loaded::getDate);
+    }
+
+    @Test
+    public void testCorruptCommit() throws IOException, GitException {
+        ObjectId id = write("tree not-a-hash\nparent \nauthor Author\n");
+
+        CommitFile loaded = CommitFile.load(commitsDir, id);
+
+        assertEquals(List.of(), loaded.getParentCommitHashes());
+        assertThrows(GitException.class, loaded::getRootNodeHash);
+        assertThrows(GitException.class, loaded::getDate);
+        assertThrows(GitException.class, loaded::getMessage);
+        assertThrows(GitException.class, () -> CommitFile.load(commitsDir, hash("missing")));
+    }
+
+    private ObjectId write(String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        ObjectId id = MiniGitUtils.getHashFromBytes(bytes);
+        Files.write(commitsDir.resolve(id.toHex()), bytes);
+        return id;
+    }
+
+    private static ObjectId hash(String content) {
+        return MiniGitUtils.getHashFromBytes(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,63 @@
+package ru.hse.mit.git.components.fs;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FileSyncTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testCommandsSyncOnlyTheirObjects() throws Exception {
+        Path first = Files.writeString(tempDir.resolve("first"), "first");
+        Path second = Files.writeString(tempDir.resolve("second"), "second");
+
+        try (FileSync.Scope ignored = FileSync.withDurability(Durability.BATCH)) {
+            FileSync.fileWritten(first);
+            FileSync.Command firstCommand = FileSync.current();
+
+            try (FileSync.Scope ignoredSecond = FileSync.withDurability(Durability.BATCH)) {
+                FileSync.fileWritten(second);
+                assertEquals(1, syncPending());
+            }
+
+            // work handed to another thread belongs to the command it was created by
+            Thread worker = new Thread(() -> {
+                try (FileSync.Scope ignoredBind = FileSync.bind(firstCommand)) {
+                    FileSync.fileWritten(second);
+                } catch (GitException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            worker.start();
+            worker.join();
+
+            assertEquals(2, syncPending());
+            assertEquals(0, syncPending());
+        }
+    }
+
+    @Test
+    public void testNothingIsPendingWithoutDurability() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("file"), "content");
+
+        try (FileSync.Scope ignored = FileSync.withDurability(Durability.NONE)) {
+            FileSync.fileWritten(file);
+            assertEquals(0, syncPending());
+        }
+    }
+
+    private static long syncPending() throws GitException {
+        try (GitStats.Collector collector = GitStats.start()) {
+            FileSync.syncPending();
+            return collector.snapshot(0).get(Counter.FILES_SYNCED);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package ru.hse.mit.git.components.fs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.hse.mit.git.GitException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LockFileTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testCommitReplacesTarget() throws IOException, GitException {
+        Path target = Files.writeString(tempDir.resolve("HEAD"), "old");
+
+        LockFile lock = LockFile.acquire(target);
+        assertTrue(Files.exists(lockPath(target)));
+        lock.commit("new".getBytes());
+
+        assertEquals("new", Files.readString(target));
+        assertFalse(lock.isHeld());
+        assertFalse(Files.exists(lockPath(target)));
+        assertThrows(IllegalStateException.class, () -> lock.commit("newer".getBytes()));
+    }
+
+    @Test
+    public void testCloseKeepsTarget() throws IOException, GitException {
+        Path target = Files.writeString(tempDir.resolve("HEAD"), "old");
+
+        try (LockFile lock = LockFile.acquire(target)) {
+            assertTrue(lock.isHeld());
+        }
+
+        assertEquals("old", Files.readString(target));
+        assertFalse(Files.exists(lockPath(target)));
+    }
+
+    @Test
+    public void testTryAcquireWhileHeld() throws GitException {
+        Path target = tempDir.resolve("INDEX");
+
+        try (LockFile ignored = LockFile.acquire(target)) {
+            assertNull(LockFile.tryAcquire(target));
+        }
+        try (LockFile lock = LockFile.tryAcquire(target)) {
+            assertNotNull(lock);
+        }
+    }
+
+    @Test
+    public void testAcquireTimesOut() throws IOException, GitException {
+        Path target = tempDir.resolve("INDEX");
+
+        try (LockFile ignored = LockFile.acquire(target)) {
+            long start = System.currentTimeMillis();
+            GitException e = assertThrows(GitException.class, () -> LockFile.acquire(target, 200));
+            assertTrue(System.currentTimeMillis() - start >= 200);
+            assertTrue(e.getMessage().contains(lockPath(target).toString()), e.getMessage());
+            // the waiter that timed out leaves the lock of its holder in place
+            assertTrue(Files.exists(lockPath(target)));
+        }
+    }
+
+    @Test
+    public void testAcquireWaitsForRelease() throws Exception {
+        Path target = Files.writeString(tempDir.resolve("HEAD"), "old");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<String> waiter;
+            try (LockFile lock = LockFile.acquire(target)) {
+                waiter = executor.submit(() -> {
+                    try (LockFile ignored = LockFile.acquire(target)) {
+                        return Files.readString(target);
+                    }
+                });
+                Thread.sleep(100);
+                assertFalse(waiter.isDone());
+                lock.commit("new".getBytes());
+            }
+            assertEquals("new", waiter.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testContendedUpdatesAreNotLost() throws Exception {
+        Path target = Files.writeString(tempDir.resolve("counter"), "0");
+        int threads = 8;
+        int updates = 25;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < updates; j++) {
+                        LockFile lock = LockFile.acquire(target);
+                        int value = Integer.parseInt(Files.readString(target));
+                        lock.commit(String.valueOf(value + 1).getBytes());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(String.valueOf(threads * updates), Files.readString(target));
+    }
+
+    private static Path lockPath(Path target) {
+        return target.resolveSibling(target.getFileName() + LockFile.LOCK_SUFFIX);
+    }
+}
@@ -0,0 +1,134 @@
+package ru.hse.mit.git.components.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.utils.MiniGitUtils;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Filters created with the constructor stand for other processes sharing the repository with
+ * the one of {@link ObjectFilter#of(Path)}
+ */
+public class ObjectFilterTest {
+    @TempDir
+    Path repositoryDir;
+
+    @Test
+    public void testAddedIdsAreFound() throws GitException {
+        ObjectFilter filter = new ObjectFilter(repositoryDir);
+        List<ObjectId> ids = ids(0, 20_000);
+        for (ObjectId id : ids) {
+            filter.add(id);
+        }
+
+        assertContainsAll(filter, ids);
+        int falsePositives = 0;
+        for (ObjectId id : ids(20_000, 10_000)) {
+            if (filter.mightContain(id)) {
+                falsePositives++;
+            }
+        }
+        // the filter has to stay useful, not only correct
+        assertTrue(falsePositives < 1000, falsePositives + " false positives");
+    }
+
+    @Test
+    public void testFlushedIdsReachOtherProcesses() throws GitException {
+        ObjectFilter writer = ObjectFilter.of(repositoryDir);
+        List<ObjectId> first = add(writer, ids(0, 1000));
+        ObjectFilter.flushAll();
+
+        ObjectFilter reader = new ObjectFilter(repositoryDir);
+        assertContainsAll(reader, first);
+
+        List<ObjectId> second = add(writer, ids(1000, 1000));
+        ObjectFilter.flushAll();
+        reader.refresh();
+        assertContainsAll(reader, second);
+    }
+
+    @Test
+    public void testReloadFromSnapshotAfterGrowth() throws GitException {
+        ObjectFilter writer = ObjectFilter.of(repositoryDir);
+        List<ObjectId> ids = add(writer, ids(0, 5000));
+        ObjectFilter.flushAll();
+        // loading without a snapshot writes one
+        assertContainsAll(new ObjectFilter(repositoryDir), ids);
+        assertTrue(Files.exists(repositoryDir.resolve("object-filter")));
+        assertContainsAll(new ObjectFilter(repositoryDir), ids);
+
+        // more ids than the filter was sized for make the next load rebuild it larger
+        ids.addAll(add(writer, ids(5000, 30_000)));
+        ObjectFilter.flushAll();
+        assertContainsAll(new ObjectFilter(repositoryDir), ids);
+        assertContainsAll(new ObjectFilter(repositoryDir), ids);
+    }
+
+    @Test
+    public void testRebuildFindsStoredObjects() throws IOException, GitException {
+        Path blobsDir = Files.createDirectories(repositoryDir.resolve("blobs"));
+        List<ObjectId> ids = ids(0, 100);
+        for (ObjectId id : ids) {
+            Files.createFile(blobsDir.resolve(id.toHex()));
+        }
+
+        ObjectFilter filter = ObjectFilter.of(repositoryDir);
+        assertContainsAll(filter, ids);
+
+        List<ObjectId> added = add(filter, ids(100, 100));
+        ObjectFilter.flushAll();
+        filter.invalidate();
+        assertFalse(Files.exists(repositoryDir.resolve("object-filter")));
+        assertContainsAll(filter, ids);
+        assertContainsAll(filter, added);
+    }
+
+    @Test
+    public void testDamagedSnapshotIsDropped() throws IOException, GitException {
+        ObjectFilter writer = ObjectFilter.of(repositoryDir);
+        List<ObjectId> ids = add(writer, ids(0, 2000));
+        ObjectFilter.flushAll();
+        new ObjectFilter(repositoryDir).mightContain(ids.get(0));
+        Path snapshot = repositoryDir.resolve("object-filter");
+
+        // a crash may leave zeroes in the place of the unsynced bits
+        byte[] content = Files.readAllBytes(snapshot);
+        ByteBuffer.wrap(content).putLong(content.length / 2, 0);
+        Files.write(snapshot, content);
+        assertContainsAll(new ObjectFilter(repositoryDir), ids);
+
+        Files.write(snapshot, new byte[10]);
+        assertContainsAll(new ObjectFilter(repositoryDir), ids);
+    }
+
+    private static void assertContainsAll(ObjectFilter filter, List<ObjectId> ids) throws GitException {
+        for (ObjectId id : ids) {
+            assertTrue(filter.mightContain(id), id + " is missing");
+        }
+    }
+
+    private static List<ObjectId> add(ObjectFilter filter, List<ObjectId> ids) throws GitException {
+        for (ObjectId id : ids) {
+            filter.add(id);
+        }
+        return ids;
+    }
+
+    private static List<ObjectId> ids(int from, int count) {
+        List<ObjectId> result = new ArrayList<>();
+        for (int i = from; i < from + count; i++) {
+            result.add(MiniGitUtils.getHashFromBytes(Integer.toString(i).getBytes()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,156 @@
+package ru.hse.mit.git.components.fs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.utils.MiniGitUtils;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RefDatabaseTest {
+    private static final ObjectId FIRST = hash("first");
+    private static final ObjectId SECOND = hash("second");
+
+    @TempDir
+    Path tempDir;
+
+    private Path branchesDir;
+    private RefDatabase refs;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        branchesDir = Files.createDirectories(tempDir.resolve("branches"));
+        refs = new RefDatabase(branchesDir, tempDir.resolve("packed-refs"));
+    }
+
+    @Test
+    public void testPackMovesLooseBranches() throws GitException {
+        refs.create("master", FIRST);
+        refs.create("feature", SECOND);
+        refs.create("empty", null);
+
+        assertEquals(2, refs.pack());
+
+        assertFalse(Files.exists(branchesDir.resolve("master")));
+        assertFalse(Files.exists(branchesDir.resolve("feature")));
+        // a branch without commits stays loose
+        assertTrue(Files.exists(branchesDir.resolve("empty")));
+        assertEquals(FIRST, refs.resolve("master"));
+        assertEquals(SECOND, refs.resolve("feature"));
+        assertNull(refs.resolve("empty"));
+        assertEquals(List.of("empty", "feature", "master"), refs.list());
+    }
+
+    @Test
+    public void testLooseOverridesPacked() throws GitException {
+        refs.create("master", FIRST);
+        refs.pack();
+
+        refs.compareAndSet("master", FIRST, SECOND);
+
+        assertEquals(SECOND, refs.resolve("master"));
+        assertEquals(List.of("master"), refs.list());
+        assertThrows(GitException.class, () -> refs.compareAndSet("master", FIRST, FIRST));
+        assertThrows(GitException.class, () -> refs.create("master", FIRST));
+    }
+
+    @Test
+    public void testDeletePackedBranch() throws GitException {
+        refs.create("master", FIRST);
+        refs.create("feature", SECOND);
+        refs.pack();
+
+        refs.delete("feature");
+
+        assertFalse(refs.exists("feature"));
+        assertNull(refs.resolve("feature"));
+        assertEquals(FIRST, refs.resolve("master"));
+        assertEquals(List.of("master"), refs.list());
+    }
+
+    @Test
+    public void testDeleteRemovesLooseAndPacked() throws GitException {
+        refs.create("feature", FIRST);
+        refs.pack();
+        refs.compareAndSet("feature", FIRST, SECOND);
+
+        refs.delete("feature");
+
+        // the packed value must not show up once the loose file is gone
+        assertFalse(refs.exists("feature"));
+        assertNull(refs.resolve("feature"));
+        assertEquals(List.of(), refs.list());
+    }
+
+    @Test
+    public void testInvalidNamesAreRejected() throws IOException, GitException {
+        Files.writeString(tempDir.resolve("HEAD"), "master");
+        List<String> names = List.of(
+            "", "../HEAD", "../../x", "a/b", "a\\b", ".hidden", "-f", "a..b", "end.", "x.lock",
+            "a b", "tab\tname", "a~1", "a^", "a:b", "a?", "a*", "a[b", "@", "a@{1}", "bell\u0007"
+        );
+
+        for (String name : names) {
+            assertThrows(GitException.class, () -> refs.create(name, FIRST), "'" + name + "' was accepted");
+            assertFalse(refs.exists(name), "'" + name + "' exists");
+        }
+        assertThrows(GitException.class, () -> refs.delete("../HEAD"));
+        assertTrue(Files.exists(tempDir.resolve("HEAD")));
+        assertEquals(List.of(), refs.list());
+
+        refs.create("feature-1.x_y@z", FIRST);
+        assertEquals(FIRST, refs.resolve("feature-1.x_y@z"));
+    }
+
+    @Test
+    public void testDeleteConcurrentWithPack() throws Exception {
+        int count = 40;
+        for (int i = 0; i < count; i++) {
+            refs.create("branch" + i, FIRST);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> packing = executor.submit(() -> {
+                for (int i = 0; i < count; i++) {
+                    refs.pack();
+                    refs.create("new" + i, SECOND);
+                }
+                return null;
+            });
+            Future<?> deleting = executor.submit(() -> {
+                for (int i = 0; i < count; i++) {
+                    refs.delete("branch" + i);
+                }
+                return null;
+            });
+            packing.get();
+            deleting.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        refs.pack();
+        for (int i = 0; i < count; i++) {
+            assertFalse(refs.exists("branch" + i));
+            assertEquals(SECOND, refs.resolve("new" + i));
+        }
+    }
+
+    private static ObjectId hash(String content) {
+        return MiniGitUtils.getHashFromBytes(content.getBytes());
+    }
+}
@@ -0,0 +1,146 @@
+package ru.hse.mit.git.components.fs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.MiniGit;
+import ru.hse.mit.git.components.fs.SparseCheckout.Match;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SparseCheckoutTest {
+    @TempDir
+    Path workingDir;
+
+    @Test
+    public void testParsing() {
+        SparseCheckout sparseCheckout = SparseCheckout.of(List.of(" /src/main/ ", "# comment", "", "./docs\\api", "src/main"));
+
+        assertEquals(List.of("docs/api", "src/main"), sparseCheckout.getDirectories());
+        assertSame(SparseCheckout.FULL, SparseCheckout.of(List.of("# nothing", "/", "")));
+        assertFalse(SparseCheckout.FULL.isEnabled());
+    }
+
+    @Test
+    public void testMatchDirectory() {
+        SparseCheckout sparseCheckout = SparseCheckout.of(List.of("a/b"));
+
+        assertEquals(Match.PARTIAL, sparseCheckout.matchDirectory(""));
+        assertEquals(Match.PARTIAL, sparseCheckout.matchDirectory("a"));
+        assertEquals(Match.INCLUDED, sparseCheckout.matchDirectory("a/b"));
+        assertEquals(Match.INCLUDED, sparseCheckout.matchDirectory("a/b/c"));
+        assertEquals(Match.EXCLUDED, sparseCheckout.matchDirectory("a/c"));
+        assertEquals(Match.EXCLUDED, sparseCheckout.matchDirectory("a/bc"));
+        assertEquals(Match.EXCLUDED, sparseCheckout.matchDirectory("ab"));
+
+        assertTrue(sparseCheckout.includes("top.txt"));
+        assertTrue(sparseCheckout.includes("a/file.txt"));
+        assertTrue(sparseCheckout.includes("a/b/c/file.txt"));
+        assertFalse(sparseCheckout.includes("a/c/file.txt"));
+        assertEquals(Match.INCLUDED, SparseCheckout.FULL.matchDirectory("anything"));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws GitException {
+        Path path = workingDir.resolve("sparse-checkout");
+        SparseCheckout sparseCheckout = SparseCheckout.of(List.of("b", "a/c"));
+
+        sparseCheckout.save(path);
+        assertEquals(sparseCheckout, SparseCheckout.load(path));
+
+        SparseCheckout.FULL.save(path);
+        assertFalse(Files.exists(path));
+        assertSame(SparseCheckout.FULL, SparseCheckout.load(path));
+    }
+
+    @Test
+    public void testCollapseAndExpand() throws IOException, GitException {
+        write("top.txt", "top");
+        write("a/b/1.txt", "one");
+        write("a/c/2.txt", "two");
+        write("d/e/3.txt", "three");
+        MiniGit git = new MiniGit(workingDir.toString());
+        git.init();
+        git.add(List.of("top.txt", "a", "d"));
+        git.commit("initial");
+
+        git.setSparseCheckout(List.of("a/b"));
+
+        assertEquals(Set.of("top.txt", "a/b/1.txt"), workingFiles());
+        Map<String, ObjectId> collapsed = indexEntries();
+        assertEquals(Set.of("top.txt", "a/b/1.txt", "a/c/", "d/"), collapsed.keySet());
+        assertEquals("## master\0", porcelain(git));
+
+        // a commit made in the sparse checkout keeps the collapsed subtrees as they are
+        write("a/b/1.txt", "one more");
+        git.add(List.of("a/b/1.txt"));
+        git.commit("sparse");
+        assertEquals(collapsed.get("d/"), indexEntries().get("d/"));
+
+        git.setSparseCheckout(List.of());
+
+        assertEquals(Set.of("top.txt", "a/b/1.txt", "a/c/2.txt", "d/e/3.txt"), workingFiles());
+        assertEquals(workingFiles(), indexEntries().keySet());
+        assertEquals("one more", Files.readString(workingDir.resolve("a/b/1.txt")));
+        assertEquals("two", Files.readString(workingDir.resolve("a/c/2.txt")));
+        assertEquals("three", Files.readString(workingDir.resolve("d/e/3.txt")));
+        assertEquals("## master\0", porcelain(git));
+    }
+
+    @Test
+    public void testModifiedFileStaysWhenExcluded() throws IOException, GitException {
+        write("a/1.txt", "one");
+        write("b/2.txt", "two");
+        MiniGit git = new MiniGit(workingDir.toString());
+        git.init();
+        git.add(List.of("a", "b"));
+        git.commit("initial");
+
+        write("b/2.txt", "changed");
+        git.setSparseCheckout(List.of("a"));
+
+        assertEquals(Set.of("a/1.txt", "b/2.txt"), workingFiles());
+        assertEquals("changed", Files.readString(workingDir.resolve("b/2.txt")));
+    }
+
+    private Map<String, ObjectId> indexEntries() throws GitException {
+        IndexFile index = new IndexFile("INDEX", workingDir.resolve(".mini-git").resolve("INDEX"));
+        index.load();
+        return index.getEntries().stream().collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    private Set<String> workingFiles() throws IOException {
+        try (var paths = Files.walk(workingDir)) {
+            return paths
+                .filter(Files::isRegularFile)
+                .map(path -> workingDir.relativize(path).toString().replace('\\', '/'))
+                .filter(path -> !path.startsWith(".mini-git/"))
+                .collect(Collectors.toCollection(TreeSet::new));
+        }
+    }
+
+    private static String porcelain(MiniGit git) throws GitException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        git.statusPorcelain(output);
+        return output.toString();
+    }
+
+    private void write(String path, String content) throws IOException {
+        Path file = workingDir.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+}
@@ -0,0 +1,192 @@
+package ru.hse.mit.git.components.fs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.components.utils.MiniGitUtils;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TreeFileTest {
+    @TempDir
+    Path tempDir;
+
+    private Path treesDir;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        // objects are stored in the repository directory, which keeps their filter
+        treesDir = Files.createDirectories(tempDir.resolve(".mini-git").resolve("trees"));
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws GitException {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            entries.add(new Entry("file" + i + ".txt", false, hash("file" + i)));
+        }
+        entries.add(new Entry("src", true, hash("src")));
+        entries.add(new Entry("документы", true, hash("docs")));
+        entries.add(new Entry("x".repeat(200), false, hash("long")));
+        entries.add(new Entry("with space", false, hash("space")));
+        entries.sort(TreeFileTest::compare);
+
+        byte[] content = serialize(entries);
+        assertArrayEquals(new byte[] {0, 'M', 'G', 'T', 2}, Arrays.copyOf(content, 5));
+        TreeFile.Entries read = save(content);
+
+        assertEntries(entries, read);
+        assertEquals(entries.indexOf(new Entry("src", true, hash("src"))), read.find("src", true));
+        assertTrue(read.find("src", false) < 0);
+        assertTrue(read.find("missing", false) < 0);
+    }
+
+    @Test
+    public void testLegacyTextTree() throws IOException, GitException {
+        String content = "blob " + hash("b").toHex() + " b.txt\n"
+            + "tree " + hash("dir").toHex() + " a\r\n"
+            + "blob " + hash("space").toHex() + " name with spaces.txt\n"
+            + "blob " + hash("a.txt").toHex() + " a.txt";
+        ObjectId id = MiniGitUtils.getHashFromBytes(content.getBytes(StandardCharsets.UTF_8));
+        Files.writeString(treesDir.resolve(id.toHex()), content);
+
+        TreeFile.Entries read = TreeFile.read(treesDir, id);
+
+        assertEntries(
+            List.of(
+                new Entry("a.txt", false, hash("a.txt")),
+                new Entry("a", true, hash("dir")),
+                new Entry("b.txt", false, hash("b")),
+                new Entry("name with spaces.txt", false, hash("space"))
+            ),
+            read
+        );
+    }
+
+    @Test
+    public void testLegacyAndBinaryTreesAreEquivalent() throws IOException, GitException {
+        String text = "tree " + hash("lib").toHex() + " lib\n" + "blob " + hash("readme").toHex() + " README\n";
+        ObjectId textId = MiniGitUtils.getHashFromBytes(text.getBytes(StandardCharsets.UTF_8));
+        Files.writeString(treesDir.resolve(textId.toHex()), text);
+        TreeFile.Entries legacy = TreeFile.read(treesDir, textId);
+
+        TreeFile.Entries binary = save(TreeFile.serialize(
+            legacy.size(), legacy.names(), legacy.hashes(), position -> legacy.trees()[position]
+        ));
+
+        assertArrayEquals(legacy.names(), binary.names());
+        assertArrayEquals(legacy.hashes(), binary.hashes());
+        assertTrue(Arrays.equals(legacy.trees(), binary.trees()));
+        for (int i = 0; i < legacy.size(); i++) {
+            assertTrue(legacy.sameHash(i, binary, i));
+        }
+        assertFalse(legacy.sameHash(0, binary, 1));
+    }
+
+    @Test
+    public void testCanonicalOrder() {
+        // a directory is compared as its name followed by '/'
+        assertTrue(TreeFile.compareEntries("a.txt", false, "a", true) < 0);
+        assertTrue(TreeFile.compareEntries("a-b", false, "a", true) < 0);
+        assertTrue(TreeFile.compareEntries("a", true, "a0", false) < 0);
+        assertTrue(TreeFile.compareEntries("a", false, "a.txt", false) < 0);
+        assertTrue(TreeFile.compareEntries("a", false, "a", true) < 0);
+        assertEquals(0, TreeFile.compareEntries("a", true, "a", true));
+        // code point order, not UTF-16 order
+        assertTrue(TreeFile.compareEntries("\uFFFD", false, "\uD83D\uDE00", false) < 0);
+        assertTrue(TreeFile.compareEntries("Z", false, "a", false) < 0);
+    }
+
+    @Test
+    public void testCanonicalOrderMatchesUtf8Bytes() {
+        Random random = new Random(1);
+        int[] alphabet = {'-', '.', '/' - 1, '0', 'A', '_', 'a', 0xE9, 0x416, 0xFFFD, 0x1F600, 0x10FFFF};
+        for (int i = 0; i < 10_000; i++) {
+            String name1 = randomName(random, alphabet);
+            String name2 = randomName(random, alphabet);
+            boolean tree1 = random.nextBoolean();
+            boolean tree2 = random.nextBoolean();
+
+            int expected = Integer.signum(Arrays.compareUnsigned(
+                (name1 + (tree1 ? "/" : "")).getBytes(StandardCharsets.UTF_8),
+                (name2 + (tree2 ? "/" : "")).getBytes(StandardCharsets.UTF_8)
+            ));
+            assertEquals(expected, Integer.signum(TreeFile.compareEntries(name1, tree1, name2, tree2)),
+                name1 + (tree1 ? "/" : "") + " vs " + name2 + (tree2 ? "/" : ""));
+        }
+    }
+
+    @Test
+    public void testCorruptTrees() throws IOException {
+        byte[] unsupported = {0, 'M', 'G', 'T', 3, 0};
+        ObjectId unsupportedId = MiniGitUtils.getHashFromBytes(unsupported);
+        Files.write(treesDir.resolve(unsupportedId.toHex()), unsupported);
+        assertThrows(GitException.class, () -> TreeFile.read(treesDir, unsupportedId));
+
+        byte[] content = serialize(List.of(new Entry("a.txt", false, hash("a"))));
+        byte[] truncated = Arrays.copyOf(content, content.length - 5);
+        ObjectId truncatedId = MiniGitUtils.getHashFromBytes(truncated);
+        Files.write(treesDir.resolve(truncatedId.toHex()), truncated);
+        assertThrows(GitException.class, () -> TreeFile.read(treesDir, truncatedId));
+    }
+
+    private TreeFile.Entries save(byte[] content) throws GitException {
+        TreeFile file = new TreeFile(treesDir, content);
+        file.save(ObjectFilter.of(treesDir.getParent()));
+        return TreeFile.read(treesDir, file.getId());
+    }
+
+    private static void assertEntries(List<Entry> expected, TreeFile.Entries actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Entry entry = expected.get(i);
+            assertEquals(entry.name(), actual.names()[i]);
+            assertEquals(entry.tree(), actual.trees()[i]);
+            assertEquals(entry.hash(), actual.getHash(i));
+            assertEquals(i, actual.find(entry.name(), entry.tree()));
+        }
+    }
+
+    private static byte[] serialize(List<Entry> entries) {
+        String[] names = new String[entries.size()];
+        byte[] hashes = new byte[entries.size() * ObjectId.RAW_LENGTH];
+        for (int i = 0; i < entries.size(); i++) {
+            names[i] = entries.get(i).name();
+            entries.get(i).hash().copyRawTo(hashes, i * ObjectId.RAW_LENGTH);
+        }
+        return TreeFile.serialize(entries.size(), names, hashes, position -> entries.get(position).tree());
+    }
+
+    private static int compare(Entry first, Entry second) {
+        return TreeFile.compareEntries(first.name(), first.tree(), second.name(), second.tree());
+    }
+
+    private static String randomName(Random random, int[] alphabet) {
+        StringBuilder name = new StringBuilder();
+        int length = 1 + random.nextInt(4);
+        for (int i = 0; i < length; i++) {
+            name.appendCodePoint(alphabet[random.nextInt(alphabet.length)]);
+        }
+        return name.toString();
+    }
+
+    private static ObjectId hash(String content) {
+        return MiniGitUtils.getHashFromBytes(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private record Entry(String name, boolean tree, ObjectId hash) {}
+}
@@ -0,0 +1,156 @@
+package ru.hse.mit.git.components.history;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.MiniGit;
+import ru.hse.mit.git.components.fs.ChunkStore;
+import ru.hse.mit.git.components.fs.HeadFile;
+import ru.hse.mit.git.components.fs.ObjectFilter;
+import ru.hse.mit.git.components.fs.RefDatabase;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
+import ru.hse.mit.git.components.utils.MiniGitUtils;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BlameTest {
+    @TempDir
+    Path workingDir;
+
+    private Path repositoryDir;
+    private MiniGit git;
+
+    @BeforeEach
+    public void setUp() throws GitException {
+        repositoryDir = workingDir.resolve(".mini-git");
+        git = new MiniGit(workingDir.toString());
+        git.init();
+    }
+
+    @Test
+    public void testLinesAreAttributedToTheCommitsThatChangedThem() throws Exception {
+        ObjectId first = commit("file.txt", "a\nb\nc\n");
+        ObjectId second = commit("file.txt", "a\nB\nc\nd\n");
+        ObjectId third = commit("file.txt", "new\na\nB\nc\nd");
+
+        assertAttribution(List.of(first, second, first, second), newBlame().blame(second, "file.txt"));
+        assertAttribution(List.of(third, first, second, first, second), newBlame().blame(third, "file.txt"));
+        assertEquals("d", newBlame().blame(third, "file.txt").get(4).content());
+    }
+
+    @Test
+    public void testCommitsKeepingTheBlobAreSkipped() throws Exception {
+        String large = "line\n".repeat(20_000);
+        ObjectId first = commit("dir/file.txt", large);
+        ObjectId second = commit("dir/file.txt", large + "last\n");
+        commit("other.txt", "1");
+        commit("dir/other.txt", "2");
+        ObjectId last = commit("other.txt", "3");
+
+        List<Blame.Line> lines;
+        long bytesRead;
+        try (GitStats.Collector collector = GitStats.start()) {
+            lines = newBlame().blame(last, "dir/file.txt");
+            bytesRead = collector.snapshot(0).get(Counter.BYTES_READ);
+        }
+
+        assertEquals(20_001, lines.size());
+        assertEquals(first, lines.get(0).commitHash());
+        assertEquals(second, lines.get(20_000).commitHash());
+        // the blamed version and its parent only, commits that keep the blob never read it
+        assertTrue(bytesRead < 3L * large.length(), "bytes read: " + bytesRead);
+    }
+
+    @Test
+    public void testAttributionIsReusedFromNearbyCommit() throws Exception {
+        ObjectId first = commit("file.txt", "a\nb\n");
+        ObjectId second = commit("file.txt", "a\nB\n");
+        newBlame().blame(second, "file.txt");
+        ObjectId third = commit("file.txt", "a\nB\nc\n");
+
+        // the walk stops at the cached result of the second commit and never needs the first version
+        ObjectId firstVersion = MiniGitUtils.getHashFromBytes("a\nb\n".getBytes(StandardCharsets.UTF_8));
+        Files.delete(repositoryDir.resolve("blobs").resolve(firstVersion.toHex()));
+
+        assertAttribution(List.of(first, second, third), newBlame().blame(third, "file.txt"));
+    }
+
+    @Test
+    public void testDamagedCacheIsIgnored() throws Exception {
+        ObjectId first = commit("file.txt", "a\n");
+        ObjectId second = commit("file.txt", "a\nb\n");
+        newBlame().blame(second, "file.txt");
+
+        List<Path> cached;
+        try (var files = Files.list(repositoryDir.resolve("blame"))) {
+            cached = files.toList();
+        }
+        assertEquals(1, cached.size());
+        String header = Files.readAllLines(cached.get(0)).get(0);
+        Files.writeString(cached.get(0), header + "\n" + "0".repeat(40) + "\nda39a3ee5e6b4b0d32");
+
+        assertAttribution(List.of(first, second), newBlame().blame(second, "file.txt"));
+    }
+
+    @Test
+    public void testMissingFile() throws Exception {
+        ObjectId first = commit("file.txt", "a\n");
+
+        assertThrows(GitException.class, () -> newBlame().blame(first, "missing.txt"));
+    }
+
+    private ObjectId commit(String filename, String content) throws IOException, GitException {
+        Path file = workingDir.resolve(filename);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+        git.add(List.of(filename));
+        git.commit(filename);
+        return git.resolveRevision("HEAD");
+    }
+
+    /**
+     * A new instance every time, so results come from the commits or the cache on disk only
+     */
+    private Blame newBlame() {
+        ObjectFilter objectFilter = ObjectFilter.of(repositoryDir);
+        HeadFile headFile = new HeadFile(
+            "HEAD",
+            repositoryDir.resolve("HEAD"),
+            new RefDatabase(repositoryDir.resolve("branches"), repositoryDir.resolve("packed-refs")),
+            repositoryDir.resolve("commits"),
+            repositoryDir.resolve("trees"),
+            objectFilter
+        );
+        ChunkStore chunkStore = new ChunkStore(
+            repositoryDir.resolve("chunks"),
+            repositoryDir.resolve("manifests"),
+            objectFilter
+        );
+        return new Blame(
+            headFile,
+            repositoryDir.resolve("trees"),
+            repositoryDir.resolve("blobs"),
+            chunkStore,
+            repositoryDir.resolve("blame")
+        );
+    }
+
+    private static void assertAttribution(List<ObjectId> expected, List<Blame.Line> lines) {
+        List<ObjectId> actual = new ArrayList<>();
+        for (Blame.Line line : lines) {
+            actual.add(line.commitHash());
+        }
+        assertEquals(expected, actual);
+    }
+}
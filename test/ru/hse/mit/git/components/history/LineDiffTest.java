@@ -0,0 +1,112 @@
+package ru.hse.mit.git.components.history;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LineDiffTest {
+    @Test
+    public void testPrefixAndSuffix() {
+        assertArrayEquals(new int[] {0, 1, 2}, LineDiff.matchLines(lines("a b c"), lines("a b c")));
+        assertArrayEquals(new int[] {0, -1, 1, 2}, LineDiff.matchLines(lines("a b c"), lines("a x b c")));
+        assertArrayEquals(new int[] {0, 2}, LineDiff.matchLines(lines("a b c"), lines("a c")));
+        assertArrayEquals(new int[] {-1, -1}, LineDiff.matchLines(List.of(), lines("a b")));
+        assertArrayEquals(new int[0], LineDiff.matchLines(lines("a b"), List.of()));
+    }
+
+    @Test
+    public void testMiddleIsMatchedByLongestCommonSubsequence() {
+        // the example of Myers' paper: 5 edits, so 4 lines are kept
+        List<String> older = lines("a b c a b b a");
+        List<String> newer = lines("c b a b a c");
+
+        int[] matches = LineDiff.matchLines(older, newer);
+
+        assertEquals(4, assertValidMatching(older, newer, matches));
+    }
+
+    @Test
+    public void testRepeatedLinesInTheMiddle() {
+        List<String> older = lines("x a b a b a b y");
+        List<String> newer = lines("x b a b c a y");
+
+        int[] matches = LineDiff.matchLines(older, newer);
+
+        // x b a b a y
+        assertEquals(6, assertValidMatching(older, newer, matches));
+        assertEquals(-1, matches[4]);
+    }
+
+    @Test
+    public void testRegionsAboveTheEditCostAreRewritten() {
+        List<String> older = new ArrayList<>();
+        List<String> newer = new ArrayList<>();
+        older.add("head");
+        newer.add("head");
+        for (int i = 0; i < 1500; i++) {
+            older.add("old " + i);
+            newer.add("new " + i);
+        }
+        older.add("shared");
+        newer.add("shared");
+        for (int i = 1500; i < 3000; i++) {
+            older.add("old " + i);
+            newer.add("new " + i);
+        }
+        older.add("tail");
+        newer.add("tail");
+
+        int[] matches = LineDiff.matchLines(older, newer);
+
+        assertEquals(0, matches[0]);
+        assertEquals(older.size() - 1, matches[newer.size() - 1]);
+        // matching the shared line takes 3000 edits, more than the search is allowed
+        assertEquals(-1, matches[newer.indexOf("shared")]);
+        assertEquals(2, assertValidMatching(older, newer, matches));
+    }
+
+    @Test
+    public void testRegionsBelowTheEditCostAreMatched() {
+        List<String> older = new ArrayList<>();
+        List<String> newer = new ArrayList<>();
+        older.add("first");
+        for (int i = 0; i < 500; i++) {
+            older.add("old " + i);
+            newer.add("new " + i);
+        }
+        older.add("shared");
+        newer.add("shared");
+        newer.add("last");
+
+        int[] matches = LineDiff.matchLines(older, newer);
+
+        assertEquals(older.indexOf("shared"), matches[newer.indexOf("shared")]);
+        assertEquals(1, assertValidMatching(older, newer, matches));
+    }
+
+    /**
+     * @return number of matched lines
+     */
+    private static int assertValidMatching(List<String> older, List<String> newer, int[] matches) {
+        assertEquals(newer.size(), matches.length);
+        int matched = 0;
+        int previous = -1;
+        for (int i = 0; i < matches.length; i++) {
+            if (matches[i] >= 0) {
+                assertTrue(matches[i] > previous, "matches are in order");
+                assertEquals(older.get(matches[i]), newer.get(i));
+                previous = matches[i];
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    private static List<String> lines(String words) {
+        return List.of(words.split(" "));
+    }
+}
@@ -0,0 +1,163 @@
+package ru.hse.mit.git.components.history;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.MiniGit;
+import ru.hse.mit.git.components.fs.CommitFile;
+import ru.hse.mit.git.components.stats.Counter;
+import ru.hse.mit.git.components.stats.GitStats;
+import ru.hse.mit.git.components.utils.ObjectId;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The index is used through {@link MiniGit#logCommits(ObjectId, String, String)}, which is how {@code log --grep}
+ * searches it
+ */
+public class MessageIndexTest {
+    @TempDir
+    Path workingDir;
+
+    private MiniGit git;
+    private int fileCounter = 0;
+
+    @BeforeEach
+    public void setUp() throws GitException {
+        git = new MiniGit(workingDir.toString());
+        git.init();
+    }
+
+    @Test
+    public void testPostingsOfAllTrigramsAreIntersected() throws Exception {
+        for (int i = 0; i < 40; i++) {
+            commit(i % 2 == 0 ? "fix lexer " + i : "parser cleanup " + i);
+        }
+        commit("fix parser crash");
+        commit("unrelated");
+        assertEquals(List.of("fix parser crash"), search("fix parser"));
+
+        // a fresh instance only reads the candidates, which every trigram of the text selects
+        MiniGit fresh = new MiniGit(workingDir.toString());
+        long objectsRead;
+        List<CommitFile> found;
+        try (GitStats.Collector collector = GitStats.start()) {
+            found = fresh.logCommits(fresh.resolveRevision("HEAD"), null, "fix parser");
+            objectsRead = collector.snapshot(0).get(Counter.OBJECTS_READ);
+        }
+        assertEquals(1, found.size());
+        assertTrue(objectsRead <= 2, "objects read: " + objectsRead);
+
+        assertEquals(20, search("parser cleanup").size());
+        assertEquals(List.of(), search("fix cleanup"));
+    }
+
+    @Test
+    public void testSegmentsAreMerged() throws Exception {
+        for (int i = 0; i < 8; i++) {
+            commit("change " + i + (i % 3 == 0 ? " with tests" : ""));
+            // every search indexes the new commit into a segment of its own
+            assertEquals(i / 3 + 1, search("with tests").size());
+        }
+
+        // segments of 4, 2, 1 and 1 commits are merged into one of 8
+        assertEquals(1, countSegments());
+        assertEquals(
+            List.of("change 6 with tests", "change 3 with tests", "change 0 with tests"),
+            search("with tests")
+        );
+        assertEquals(List.of("change 7"), search("change 7"));
+        assertEquals(8, search("change").size());
+    }
+
+    @Test
+    public void testSearchFromBranch() throws Exception {
+        commit("common fix");
+        git.createBranch("feature");
+        commit("feature fix");
+        commit("feature docs");
+        assertEquals(List.of("feature fix", "common fix"), search("fix"));
+
+        // the commit is indexed after the ones of the feature branch, with its parent in an earlier segment
+        git.checkout("master");
+        commit("master fix");
+
+        assertEquals(List.of("master fix", "common fix"), search("fix"));
+        List<CommitFile> feature = git.logCommits(git.resolveRevision("feature"), null, "fix");
+        assertEquals(List.of("feature fix", "common fix"), messages(feature));
+    }
+
+    @Test
+    public void testShortTextMatchesWithoutIndex() throws Exception {
+        commit("a1");
+        commit("b2");
+        commit("ab");
+
+        assertEquals(List.of("ab", "a1"), search("a"));
+        assertEquals(List.of("ab"), search("ab"));
+        assertEquals(List.of(), search("ba"));
+        assertEquals(3, search("").size());
+    }
+
+    @Test
+    public void testLostSegmentIsIndexedAgain() throws Exception {
+        commit("first");
+        commit("second");
+        assertEquals(List.of("second"), search("second"));
+
+        // segments are not synced, so a crash may leave them short or missing
+        List<Path> segments = listSegments();
+        for (Path segment : segments) {
+            byte[] content = Files.readAllBytes(segment);
+            Files.write(segment, Arrays.copyOf(content, content.length - 1));
+        }
+        git = new MiniGit(workingDir.toString());
+        assertEquals(List.of("second"), search("second"));
+
+        for (Path segment : listSegments()) {
+            Files.delete(segment);
+        }
+        git = new MiniGit(workingDir.toString());
+        assertEquals(List.of("second", "first"), search("s"));
+        assertEquals(1, countSegments());
+    }
+
+    private List<String> search(String text) throws GitException {
+        return messages(git.logCommits(git.resolveRevision("HEAD"), null, text));
+    }
+
+    private static List<String> messages(List<CommitFile> commits) throws GitException {
+        List<String> result = new ArrayList<>();
+        for (CommitFile commit : commits) {
+            result.add(commit.getMessage());
+        }
+        return result;
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (var files = Files.list(workingDir.resolve(".mini-git").resolve("message-index"))) {
+            return files.filter(file -> ObjectId.isValidHex(file.getFileName().toString())).toList();
+        }
+    }
+
+    private long countSegments() throws IOException {
+        return Files.readAllLines(workingDir.resolve(".mini-git").resolve("message-index").resolve("segments")).stream()
+            .filter(ObjectId::isValidHex)
+            .count();
+    }
+
+    private void commit(String message) throws IOException, GitException {
+        String filename = "file" + fileCounter++ + ".txt";
+        Files.writeString(workingDir.resolve(filename), message);
+        git.add(List.of(filename));
+        git.commit(message);
+    }
+}
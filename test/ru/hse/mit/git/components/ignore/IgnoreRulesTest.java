@@ -0,0 +1,119 @@
+package ru.hse.mit.git.components.ignore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.hse.mit.git.GitException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IgnoreRulesTest {
+    @TempDir
+    Path workingDir;
+
+    @Test
+    public void testNegation() throws IOException, GitException {
+        IgnoreRules rules = rules("", "*.log", "!keep.log");
+
+        assertTrue(rules.isIgnored("error.log", false));
+        assertTrue(rules.isIgnored("src/error.log", false));
+        assertFalse(rules.isIgnored("keep.log", false));
+        assertFalse(rules.isIgnored("src/keep.log", false));
+        assertFalse(rules.isIgnored("error.txt", false));
+    }
+
+    @Test
+    public void testLastMatchingLineWins() throws IOException, GitException {
+        IgnoreRules rules = rules("", "!keep.log", "*.log", "!important.*");
+
+        assertTrue(rules.isIgnored("keep.log", false));
+        assertFalse(rules.isIgnored("important.log", false));
+    }
+
+    @Test
+    public void testAnchoring() throws IOException, GitException {
+        IgnoreRules rules = rules("", "/build", "doc/*.txt", "tmp");
+
+        assertTrue(rules.isIgnored("build", true));
+        assertFalse(rules.isIgnored("src/build", true));
+        assertTrue(rules.isIgnored("doc/notes.txt", false));
+        assertFalse(rules.isIgnored("doc/api/notes.txt", false));
+        assertFalse(rules.isIgnored("src/doc/notes.txt", false));
+        // a pattern without a slash matches at any depth
+        assertTrue(rules.isIgnored("tmp", false));
+        assertTrue(rules.isIgnored("a/b/tmp", true));
+    }
+
+    @Test
+    public void testDirectoryOnly() throws IOException, GitException {
+        IgnoreRules rules = rules("", "out/");
+
+        assertTrue(rules.isIgnored("out", true));
+        assertTrue(rules.isIgnored("src/out", true));
+        assertFalse(rules.isIgnored("out", false));
+    }
+
+    @Test
+    public void testDoubleStar() throws IOException, GitException {
+        IgnoreRules rules = rules("", "**/cache", "a/**/z", "logs/**");
+
+        assertTrue(rules.isIgnored("cache", true));
+        assertTrue(rules.isIgnored("x/y/cache", true));
+        assertTrue(rules.isIgnored("a/z", false));
+        assertTrue(rules.isIgnored("a/b/c/z", false));
+        assertFalse(rules.isIgnored("b/a/z", false));
+        assertTrue(rules.isIgnored("logs/2024/01.txt", false));
+        assertFalse(rules.isIgnored("logs", true));
+    }
+
+    @Test
+    public void testNestedIgnoreFile() throws IOException, GitException {
+        write("", "*.tmp");
+        IgnoreRules rules = rules("sub", "!keep.tmp", "/local");
+
+        assertTrue(rules.isIgnored("keep.tmp", false));
+        assertFalse(rules.isIgnored("sub/keep.tmp", false));
+        assertTrue(rules.isIgnored("sub/other.tmp", false));
+        // anchored to the directory of its ignore file
+        assertTrue(rules.isIgnored("sub/local", false));
+        assertFalse(rules.isIgnored("local", false));
+        assertFalse(rules.isIgnored("sub/x/local", false));
+    }
+
+    @Test
+    public void testExcludedDirectoryCannotBeReincluded() throws IOException, GitException {
+        IgnoreRules rules = rules("", "build/", "!build/keep");
+
+        assertFalse(rules.isIgnored("build/keep", false));
+        assertTrue(rules.isExcluded("build/keep", false));
+        assertTrue(rules.isExcluded("build/a/b.class", false));
+        assertFalse(rules.isExcluded("src/build.java", false));
+    }
+
+    @Test
+    public void testCommentsEscapesAndSpaces() throws IOException, GitException {
+        IgnoreRules rules = rules("", "# comment", "", "\\#hash", "\\!bang", "trailing   ", "a?c", "[!x]y");
+
+        assertFalse(rules.isIgnored("# comment", false));
+        assertTrue(rules.isIgnored("#hash", false));
+        assertTrue(rules.isIgnored("!bang", false));
+        assertTrue(rules.isIgnored("trailing", false));
+        assertTrue(rules.isIgnored("abc", false));
+        assertFalse(rules.isIgnored("a/c", false));
+        assertTrue(rules.isIgnored("ay", false));
+        assertFalse(rules.isIgnored("xy", false));
+    }
+
+    private IgnoreRules rules(String dir, String... lines) throws IOException {
+        write(dir, lines);
+        return new IgnoreRules(workingDir);
+    }
+
+    private void write(String dir, String... lines) throws IOException {
+        Path directory = Files.createDirectories(workingDir.resolve(dir));
+        Files.write(directory.resolve(IgnoreRules.IGNORE_FILE), String.join("\n", lines).getBytes());
+    }
+}
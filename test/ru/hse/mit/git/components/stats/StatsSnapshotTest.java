@@ -0,0 +1,21 @@
+package ru.hse.mit.git.components.stats;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StatsSnapshotTest {
+    @Test
+    public void testCommandIsEscapedInJson() {
+        StatsSnapshot snapshot;
+        try (GitStats.Collector collector = GitStats.start()) {
+            GitStats.count(Counter.OBJECTS_READ, 3);
+            snapshot = collector.snapshot(42);
+        }
+
+        String json = snapshot.toJson("lo\"g\\\n\u0001");
+
+        assertTrue(json.startsWith("{\"command\":\"lo\\\"g\\\\\\n\\u0001\",\"totalNanos\":42,"), json);
+        assertTrue(json.contains("\"" + Counter.OBJECTS_READ.getKey() + "\":3"), json);
+    }
+}
@@ -0,0 +1,94 @@
+package ru.hse.mit.git.components.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GearChunkerTest {
+    @Test
+    public void testShortInputIsOneChunk() {
+        ByteBuffer data = ByteBuffer.wrap(randomBytes(GearChunker.MIN_CHUNK_SIZE, 1));
+        assertEquals(GearChunker.MIN_CHUNK_SIZE, GearChunker.nextChunkLength(data, 0, data.capacity()));
+        assertEquals(10, GearChunker.nextChunkLength(data, 0, 10));
+    }
+
+    @Test
+    public void testChunkLengthsAreBounded() {
+        byte[] data = randomBytes(4 * 1024 * 1024, 2);
+        List<Integer> lengths = chunkLengths(data);
+
+        int total = 0;
+        for (int i = 0; i < lengths.size(); i++) {
+            int length = lengths.get(i);
+            assertTrue(length <= GearChunker.MAX_CHUNK_SIZE, "chunk " + i + " is too long: " + length);
+            if (i < lengths.size() - 1) {
+                assertTrue(length >= GearChunker.MIN_CHUNK_SIZE, "chunk " + i + " is too short: " + length);
+            }
+            total += length;
+        }
+        assertEquals(data.length, total);
+    }
+
+    @Test
+    public void testConstantInputIsCutAtMaxSize() {
+        byte[] data = new byte[3 * GearChunker.MAX_CHUNK_SIZE + 5];
+        assertEquals(
+            List.of(GearChunker.MAX_CHUNK_SIZE, GearChunker.MAX_CHUNK_SIZE, GearChunker.MAX_CHUNK_SIZE, 5),
+            chunkLengths(data)
+        );
+    }
+
+    @Test
+    public void testInsertionKeepsLaterBoundaries() {
+        byte[] original = randomBytes(4 * 1024 * 1024, 3);
+        byte[] edited = new byte[original.length + 100];
+        System.arraycopy(original, 0, edited, 0, 1000);
+        System.arraycopy(randomBytes(100, 4), 0, edited, 1000, 100);
+        System.arraycopy(original, 1000, edited, 1100, original.length - 1000);
+
+        Set<ObjectId> originalChunks = chunkHashes(original);
+        Set<ObjectId> editedChunks = chunkHashes(edited);
+        int shared = 0;
+        for (ObjectId hash : editedChunks) {
+            if (originalChunks.contains(hash)) {
+                shared++;
+            }
+        }
+        // only the chunks around the insertion change
+        assertTrue(shared >= editedChunks.size() - 2, shared + " of " + editedChunks.size() + " chunks are shared");
+    }
+
+    private static List<Integer> chunkLengths(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        List<Integer> lengths = new ArrayList<>();
+        for (int offset = 0; offset < data.length; ) {
+            int length = GearChunker.nextChunkLength(buffer, offset, data.length - offset);
+            lengths.add(length);
+            offset += length;
+        }
+        return lengths;
+    }
+
+    private static Set<ObjectId> chunkHashes(byte[] data) {
+        Set<ObjectId> hashes = new HashSet<>();
+        int offset = 0;
+        for (int length : chunkLengths(data)) {
+            hashes.add(MiniGitUtils.getHashFromBytes(data, offset, length));
+            offset += length;
+        }
+        return hashes;
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
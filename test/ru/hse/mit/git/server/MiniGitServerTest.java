@@ -0,0 +1,158 @@
+package ru.hse.mit.git.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.hse.mit.git.GitException;
+import ru.hse.mit.git.MiniGit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MiniGitServerTest {
+    @TempDir
+    Path workingDir;
+
+    private Path socketPath;
+    private MiniGitServer server;
+    private CompletableFuture<Void> serving;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        MiniGit git = new MiniGit(workingDir.toString());
+        git.init();
+        socketPath = git.getServerSocketPath();
+        server = new MiniGitServer(workingDir.toString());
+        serving = start(server);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testCommandsRunInTheServer() throws Exception {
+        Files.writeString(workingDir.resolve("file.txt"), "content");
+
+        assertEquals(0, run("add", "file.txt").exitCode());
+        assertEquals(0, run("commit", "first").exitCode());
+        Result log = run("log");
+
+        assertEquals(0, log.exitCode());
+        assertTrue(log.output().contains("first"), log.output());
+        assertEquals("", log.errors());
+        // the commit is in the repository, not only in the memory of the server
+        MiniGit git = new MiniGit(workingDir.toString());
+        assertEquals(1, git.logCommits(git.resolveRevision("HEAD"), null, null).size());
+    }
+
+    @Test
+    public void testErrorsAreReportedToTheClient() throws Exception {
+        Result checkout = run("checkout", "missing");
+        assertEquals(1, checkout.exitCode());
+        assertFalse(checkout.errors().isEmpty());
+
+        Result serve = run("serve");
+        assertEquals(1, serve.exitCode());
+        assertEquals("Server is already running" + System.lineSeparator(), serve.errors());
+
+        // the server keeps serving after a failed command
+        assertEquals(0, run("status").exitCode());
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        Files.writeString(workingDir.resolve("file.txt"), "content");
+        run("add", "file.txt");
+        run("commit", "first");
+
+        List<CompletableFuture<Result>> reads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            String command = i % 2 == 0 ? "status" : "log";
+            reads.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return run(command);
+                } catch (GitException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        for (CompletableFuture<Result> read : reads) {
+            assertEquals(0, read.get(10, TimeUnit.SECONDS).exitCode());
+        }
+    }
+
+    @Test
+    public void testSecondServerIsRejected() throws Exception {
+        MiniGitServer second = new MiniGitServer(workingDir.toString());
+
+        assertThrows(GitException.class, second::serve);
+        assertEquals(0, run("status").exitCode());
+    }
+
+    @Test
+    public void testCloseRemovesTheSocket() throws Exception {
+        server.close();
+        serving.get(10, TimeUnit.SECONDS);
+
+        assertFalse(Files.exists(socketPath));
+        assertFalse(new MiniGitClient(socketPath).isServerRunning());
+        assertThrows(GitException.class, () -> run("status"));
+    }
+
+    @Test
+    public void testSocketOfKilledServerIsReplaced() throws Exception {
+        server.close();
+        serving.get(10, TimeUnit.SECONDS);
+        Files.createFile(socketPath);
+
+        server = new MiniGitServer(workingDir.toString());
+        serving = start(server);
+
+        assertEquals(0, run("status").exitCode());
+    }
+
+    private CompletableFuture<Void> start(MiniGitServer server) throws InterruptedException {
+        CompletableFuture<Void> result = CompletableFuture.runAsync(() -> {
+            try {
+                server.serve();
+            } catch (GitException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        MiniGitClient client = new MiniGitClient(socketPath);
+        for (int i = 0; i < 500 && !client.isServerRunning(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(client.isServerRunning());
+        return result;
+    }
+
+    private Result run(String... arguments) throws GitException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int exitCode = new MiniGitClient(socketPath).run(
+            List.of(arguments),
+            output,
+            new PrintStream(errors, true, StandardCharsets.UTF_8)
+        );
+        return new Result(exitCode, output.toString(StandardCharsets.UTF_8), errors.toString(StandardCharsets.UTF_8));
+    }
+
+    private record Result(int exitCode, String output, String errors) {
+    }
+}